@@ -0,0 +1,68 @@
+#!/bin/sh
+#
+# Helpers to drive a plugin process like lightningd does on startup - sourced by the other scripts.
+#
+
+GETMANIFEST_REQUEST='{"jsonrpc":"2.0","id":"getmanifest","method":"getmanifest","params":[]}'
+
+INIT_REQUEST='{"jsonrpc":"2.0","id":"init","method":"init","params":{"options":{"snr-dry-run":true},"configuration":{"lightning-dir":"/tmp/snr-startup/.lightning/regtest","rpc-file":"lightning-rpc","startup":true,"network":"regtest"}}}'
+
+# answered once exchange, metrics and persistence have been initialized in the background
+VERSION_REQUEST='{"jsonrpc":"2.0","id":"snr-version","method":"snr-version","params":[]}'
+
+SHUTDOWN_NOTIFICATION='{"jsonrpc":"2.0","method":"shutdown","params":{}}'
+
+now_millis() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+# wait_for_response <stdout-file> <request-id> - fails after 60 seconds
+wait_for_response() {
+  deadline=$(($(now_millis) + 60000))
+  until grep -q "\"id\" *: *\"$2\"" "$1" 2>/dev/null; do
+    if [ "$(now_millis)" -gt "$deadline" ]; then
+      echo "No response to '$2' within 60 seconds" >&2
+      return 1
+    fi
+    sleep 0.01
+  done
+}
+
+# run_session <command...> - starts the plugin, requests the manifest, initializes it on regtest, waits till it is
+# ready to answer rpc commands and shuts it down.
+#
+# Sets SESSION_MANIFEST_MILLIS (time from process start to the manifest response) and SESSION_PEAK_RSS_KB
+# (peak resident set size up to the manifest response).
+run_session() {
+  session_dir=$(mktemp -d)
+  mkfifo "$session_dir/stdin"
+
+  start_millis=$(now_millis)
+  "$@" \
+    "--org.tbk.cln.plugin.spend-and-replace.journal.directory=$session_dir/journal" \
+    "--logging.file.path=$session_dir" \
+    < "$session_dir/stdin" > "$session_dir/stdout" 2> "$session_dir/stderr" &
+  session_pid=$!
+  exec 3> "$session_dir/stdin"
+
+  echo "$GETMANIFEST_REQUEST" >&3
+  if ! wait_for_response "$session_dir/stdout" getmanifest; then
+    kill "$session_pid" 2>/dev/null
+    cat "$session_dir/stderr" >&2
+    return 1
+  fi
+  SESSION_MANIFEST_MILLIS=$(($(now_millis) - start_millis))
+  SESSION_PEAK_RSS_KB=$(sed -n 's/^VmHWM:[[:space:]]*\([0-9]*\) kB$/\1/p' "/proc/$session_pid/status")
+
+  echo "$INIT_REQUEST" >&3
+  wait_for_response "$session_dir/stdout" init || true
+
+  echo "$VERSION_REQUEST" >&3
+  wait_for_response "$session_dir/stdout" snr-version || true
+
+  echo "$SHUTDOWN_NOTIFICATION" >&3
+  exec 3>&-
+  wait "$session_pid" || true
+
+  rm -rf "$session_dir"
+}
@@ -0,0 +1,50 @@
+#!/bin/sh
+#
+# Measures the time from process start till the `getmanifest` response and the peak resident set size (VmHWM) till
+# then - for the executable jar as baseline and for the unpacked application with and without the class data sharing
+# archive and spring aot. Linux only (reads /proc).
+#
+# Results are appended to <results-csv>: variant, run, manifest millis, peak rss kB.
+#
+# Usage: startup-benchmark.sh <boot-jar> <results-csv> [runs]
+#
+set -eu
+
+if [ $# -lt 2 ]; then
+  echo "Usage: $0 <boot-jar> <results-csv> [runs]" >&2
+  exit 1
+fi
+
+SCRIPT_DIR=$(cd "$(dirname "$0")" && pwd)
+BOOT_JAR=$(readlink -f "$1")
+RESULTS=$2
+RUNS=${3:-5}
+
+. "$SCRIPT_DIR/plugin-session.sh"
+
+mkdir -p "$(dirname "$RESULTS")"
+if [ ! -f "$RESULTS" ]; then
+  echo "variant,run,manifest_millis,peak_rss_kb" > "$RESULTS"
+fi
+
+benchmark() {
+  variant=$1
+  shift
+  total_millis=0
+  total_rss_kb=0
+  run=1
+  while [ "$run" -le "$RUNS" ]; do
+    run_session "$@"
+    echo "$variant,$run,$SESSION_MANIFEST_MILLIS,$SESSION_PEAK_RSS_KB" >> "$RESULTS"
+    total_millis=$((total_millis + SESSION_MANIFEST_MILLIS))
+    total_rss_kb=$((total_rss_kb + SESSION_PEAK_RSS_KB))
+    run=$((run + 1))
+  done
+  printf '%-12s manifest after %6dms (mean)  peak rss %8dkB (mean)\n' "$variant" \
+    $((total_millis / RUNS)) $((total_rss_kb / RUNS))
+}
+
+benchmark jar java -Xlog:disable -Xlog:all=warning:stderr -jar "$BOOT_JAR"
+benchmark unpacked env SNR_CDS_ENABLED=false "$SCRIPT_DIR/spend-and-replace"
+benchmark cds "$SCRIPT_DIR/spend-and-replace"
+benchmark cds+aot env SNR_AOT_ENABLED=true "$SCRIPT_DIR/spend-and-replace"
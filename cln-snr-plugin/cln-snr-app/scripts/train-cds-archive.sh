@@ -0,0 +1,27 @@
+#!/bin/sh
+#
+# Trains the class data sharing archive of the unpacked application on a representative startup: the plugin is
+# started via `spend-and-replace`, answers `getmanifest`, is initialized on regtest, answers `snr-version` once its
+# services are ready and is shut down. The classes loaded till then are written to <app-home>/spend-and-replace.jsa.
+#
+# The archive is only valid for the jvm and the jar files it was trained with - run this script with the jvm that
+# runs the plugin (e.g. while building the docker image). Set SNR_AOT_ENABLED=true to train it for spring aot.
+#
+set -eu
+
+SCRIPT_DIR=$(cd "$(dirname "$0")" && pwd)
+APP_HOME=$(cd "$SCRIPT_DIR/.." && pwd)
+
+. "$SCRIPT_DIR/plugin-session.sh"
+
+rm -f "$APP_HOME/spend-and-replace.jsa"
+
+run_session env SNR_CDS_ENABLED=false \
+  JAVA_OPTS="${JAVA_OPTS:-} -XX:ArchiveClassesAtExit=$APP_HOME/spend-and-replace.jsa" \
+  "$SCRIPT_DIR/spend-and-replace"
+
+if [ ! -f "$APP_HOME/spend-and-replace.jsa" ]; then
+  echo "Class data sharing archive has not been written" >&2
+  exit 1
+fi
+echo "Trained class data sharing archive $APP_HOME/spend-and-replace.jsa (manifest after ${SESSION_MANIFEST_MILLIS}ms)"
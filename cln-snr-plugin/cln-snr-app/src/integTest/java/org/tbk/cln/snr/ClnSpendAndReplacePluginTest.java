@@ -1,6 +1,8 @@
 package org.tbk.cln.snr;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +13,8 @@ import org.springframework.test.context.ActiveProfiles;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.StreamSupport;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -93,7 +97,8 @@ class ClnSpendAndReplacePluginTest {
 
         JsonNode output = findObjectWithId(outCaptor, "getmanifest").orElseThrow();
 
-        JsonNode result = output.get("result");
+        // order of rpc methods depends on reflection - sort them by name to get a stable output
+        JsonNode result = withRpcMethodsSortedByName(output.get("result"));
         assertThat(result.toPrettyString(), is("""
                 {
                   "options" : [ {
@@ -108,33 +113,53 @@ class ClnSpendAndReplacePluginTest {
                     "description" : "The default fiat currency"
                   } ],
                   "rpcmethods" : [ {
-                    "name" : "snr-listconfigs",
+                    "name" : "snr-balance",
+                    "usage" : "[currencies]",
+                    "description" : "Get the balance of your accounts."
+                  }, {
+                    "name" : "snr-exchangeinfo",
                     "usage" : "",
-                    "description" : "Command to list all configuration options."
+                    "description" : "Command to list exchange specific information."
                   }, {
                     "name" : "snr-history",
-                    "usage" : "",
+                    "usage" : "[since] [until] [limit] [cursor]",
                     "description" : "Get the trade history of your account."
                   }, {
-                    "name" : "snr-placetestorder",
+                    "name" : "snr-latency",
                     "usage" : "",
-                    "description" : "Place a minimal, greatly undervalued limit order to test if exchange settings are working properly."
+                    "description" : "List latency percentiles of every stage from payment to placed order."
                   }, {
-                    "name" : "snr-balance",
+                    "name" : "snr-ledger",
                     "usage" : "",
-                    "description" : "Get the balance of your account."
+                    "description" : "List spent amounts per currency pair that are pending, inflight or have been replaced."
                   }, {
-                    "name" : "snr-version",
+                    "name" : "snr-listconfigs",
                     "usage" : "",
-                    "description" : "Command to print the plugin version."
+                    "description" : "Command to list all configuration options."
                   }, {
-                    "name" : "snr-exchangeinfo",
+                    "name" : "snr-metrics",
                     "usage" : "",
-                    "description" : "Command to list exchange specific information."
+                    "description" : "List metrics of rpc commands, notifications, exchange calls and placed orders."
+                  }, {
+                    "name" : "snr-pending",
+                    "usage" : "",
+                    "description" : "List payments that are waiting to be replaced."
+                  }, {
+                    "name" : "snr-placetestorder",
+                    "usage" : "",
+                    "description" : "Place a minimal, greatly undervalued limit order to test if exchange settings are working properly."
+                  }, {
+                    "name" : "snr-reconciliation",
+                    "usage" : "[payment-hash]",
+                    "description" : "List placed orders that have not been filled in time - or the order placed for a payment hash."
                   }, {
                     "name" : "snr-ticker",
-                    "usage" : "[fiat-currency]",
-                    "description" : "Get the ticker representing the current exchange rate for the provided currency."
+                    "usage" : "[fiat-currencies]",
+                    "description" : "Get the ticker representing the current exchange rate for the provided currencies."
+                  }, {
+                    "name" : "snr-version",
+                    "usage" : "",
+                    "description" : "Command to print the plugin version."
                   } ],
                   "subscriptions" : [ "shutdown", "sendpay_success" ],
                   "hooks" : [ ],
@@ -308,6 +333,29 @@ class ClnSpendAndReplacePluginTest {
                 }"""));
     }
 
+    @Test
+    void testSnrTickerWithMultipleCurrencies() throws IOException {
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-ticker-multiple",
+                    "method": "snr-ticker",
+                    "params": ['GBP', 'USD']
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-ticker-multiple"));
+
+        JsonNode output = findObjectWithId(outCaptor, "snr-ticker-multiple").orElseThrow();
+
+        JsonNode result = output.get("result").get("result");
+        assertThat(result.has("BTC/GBP"), is(true));
+        assertThat(result.has("BTC/USD"), is(true));
+        assertThat(result.has("partial"), is(false));
+    }
+
 
     @Test
     void testSnrBalance() throws IOException {
@@ -442,6 +490,33 @@ class ClnSpendAndReplacePluginTest {
                 }"""));
     }
 
+    @Test
+    void testSnrHistoryWithParams() throws IOException {
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-history-with-params",
+                    "method": "snr-history",
+                    "params": {
+                        "since": "2021-05-20T00:00:00Z",
+                        "limit": 1
+                    }
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-history-with-params"));
+
+        JsonNode output = findObjectWithId(outCaptor, "snr-history-with-params").orElseThrow();
+
+        // the only trade of the dummy exchange is older than `since`
+        JsonNode result = output.get("result").get("result");
+        assertThat(result.get("open").size(), is(1));
+        assertThat(result.get("closed").size(), is(0));
+        assertThat(result.has("next-cursor"), is(false));
+    }
+
     @Test
     void testSnrPlaceTestOrder() throws IOException {
         inWriter.write("""
@@ -473,4 +548,146 @@ class ClnSpendAndReplacePluginTest {
                   }
                 }"""));
     }
+
+    @Test
+    void testSnrLedger() throws IOException {
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-ledger",
+                    "method": "snr-ledger",
+                    "params": []
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-ledger"));
+
+        JsonNode output = findObjectWithId(outCaptor, "snr-ledger").orElseThrow();
+
+        JsonNode result = output.get("result");
+        assertThat(result.toPrettyString(), is("""
+                {
+                  "result" : { }
+                }"""));
+    }
+
+    @Test
+    void testSnrPending() throws IOException {
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-pending",
+                    "method": "snr-pending",
+                    "params": []
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-pending"));
+
+        JsonNode output = findObjectWithId(outCaptor, "snr-pending").orElseThrow();
+
+        JsonNode result = output.get("result").get("result");
+        assertThat(result.get("aggregator").get("payments").asInt(), is(0));
+        assertThat(result.get("pipeline").get("queued").asInt(), is(0));
+        assertThat(result.get("pipeline").get("capacity").asInt(), is(1000));
+        assertThat(result.get("pipeline").get("workers").asInt(), is(1));
+        assertThat(result.get("pipeline").get("overflow-policy").asText(), is("BLOCK"));
+    }
+
+    @Test
+    void testSnrReconciliation() throws IOException {
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-reconciliation",
+                    "method": "snr-reconciliation",
+                    "params": []
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-reconciliation"));
+
+        JsonNode output = findObjectWithId(outCaptor, "snr-reconciliation").orElseThrow();
+
+        JsonNode result = output.get("result").get("result");
+        assertThat(result.get("overdue-count").asInt(), is(0));
+        assertThat(result.get("ambiguous-trades").asInt(), is(0));
+        assertThat(result.get("overdue").isEmpty(), is(true));
+    }
+
+    @Test
+    void testSnrMetrics() throws IOException {
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-metrics-version",
+                    "method": "snr-version",
+                    "params": []
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-metrics-version"));
+
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-metrics",
+                    "method": "snr-metrics",
+                    "params": []
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-metrics"));
+
+        JsonNode output = findObjectWithId(outCaptor, "snr-metrics").orElseThrow();
+
+        JsonNode result = output.get("result").get("result");
+        boolean hasVersionTimer = StreamSupport.stream(result.get("snr.rpc.commands").spliterator(), false)
+                .map(it -> it.get("tags"))
+                .anyMatch(it -> "snr-version".equals(it.get("command").asText()) && "success".equals(it.get("outcome").asText()));
+        assertThat(hasVersionTimer, is(true));
+    }
+
+    @Test
+    void testSnrLatency() throws IOException {
+        inWriter.write("""
+                {
+                    "jsonrpc": "2.0",
+                    "id": "snr-latency",
+                    "method": "snr-latency",
+                    "params": []
+                }
+                """.getBytes(StandardCharsets.UTF_8));
+
+        await()
+                .atMost(Duration.ofSeconds(5))
+                .until(() -> containsObjectWithId(outCaptor, "snr-latency"));
+
+        JsonNode output = findObjectWithId(outCaptor, "snr-latency").orElseThrow();
+
+        // no payment has been replaced yet
+        JsonNode result = output.get("result").get("result");
+        assertThat(result.isObject(), is(true));
+        assertThat(result.has("error"), is(false));
+    }
+
+    private static JsonNode withRpcMethodsSortedByName(JsonNode manifest) {
+        ObjectNode copy = manifest.deepCopy();
+        ArrayNode sortedRpcMethods = copy.arrayNode();
+        StreamSupport.stream(manifest.get("rpcmethods").spliterator(), false)
+                .sorted(Comparator.comparing(it -> it.get("name").asText()))
+                .forEach(sortedRpcMethods::add);
+        copy.set("rpcmethods", sortedRpcMethods);
+        return copy;
+    }
 }
@@ -1,18 +1,65 @@
 package org.tbk.cln.snr;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.knowm.xchange.Exchange;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
+import org.tbk.cln.snr.exchange.ExchangeMetaDataHolder;
+import org.tbk.cln.snr.exchange.ExchangeRouter;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import org.tbk.cln.snr.exchange.ForwardingExchange;
+import org.tbk.cln.snr.exchange.MeteredExchange;
+import org.tbk.cln.snr.exchange.RateLimitedExchange;
+import org.tbk.cln.snr.exchange.ResilientExchange;
+import org.tbk.cln.snr.exchange.TickerCache;
+import org.tbk.cln.snr.exchange.stream.KrakenTickerMessageCodec;
+import org.tbk.cln.snr.exchange.stream.TopOfBook;
+import org.tbk.cln.snr.exchange.stream.WebSocketMarketDataStream;
+import org.tbk.cln.snr.history.TradeHistoryStore;
+import org.tbk.cln.snr.history.TradeHistorySync;
+import org.tbk.cln.snr.journal.PaymentHashIndex;
+import org.tbk.cln.snr.journal.ReplacementJournal;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.reconciliation.ReplacementReconciler;
+import org.tbk.cln.snr.replacement.ReplacementLedger;
+import org.tbk.cln.snr.replacement.ReplacementPipeline;
+import org.tbk.cln.snr.rpc.JsonRpcWriter;
+import org.tbk.cln.snr.rpc.RpcDispatcher;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -29,6 +76,61 @@ class ClnSpendAndReplaceConfig {
         this.properties = requireNonNull(properties);
     }
 
+    @Bean
+    @ConditionalOnMissingBean(MeterRegistry.class)
+    static PrometheusMeterRegistry prometheusMeterRegistry() {
+        return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    }
+
+    /**
+     * Measure and throttle all calls to the exchange - the exchange bean itself is provided by the xchange starter.
+     */
+    @Bean
+    static BeanPostProcessor rateLimitedExchangePostProcessor(ObjectProvider<ClnSpendAndReplaceProperties> properties,
+                                                              ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof Exchange exchange) || bean instanceof ForwardingExchange) {
+                    return bean;
+                }
+                MeteredExchange meteredExchange = new MeteredExchange(exchange, meterRegistry.getObject());
+                ResilientExchange resilientExchange = new ResilientExchange(meteredExchange, properties.getObject().getResilience().toPolicy());
+
+                ClnSpendAndReplaceProperties.RateLimitProperties rateLimitProperties = properties.getObject().getRateLimit();
+                if (!rateLimitProperties.getEnabled()) {
+                    log.warn("Rate limiting of exchange calls is disabled.");
+                    return resilientExchange;
+                }
+                // permits are acquired before the deadline of a call starts - retries acquire a new permit
+                return new RateLimitedExchange(resilientExchange, rateLimitProperties.toRateLimits());
+            }
+        };
+    }
+
+    /**
+     * Mark one exchange as primary if multiple exchanges are configured - it is used wherever a single exchange is needed.
+     */
+    @Bean
+    static BeanFactoryPostProcessor primaryExchangePostProcessor(Environment environment) {
+        return beanFactory -> {
+            String[] exchangeBeanNames = beanFactory.getBeanNamesForType(Exchange.class, true, false);
+            if (exchangeBeanNames.length <= 1) {
+                return;
+            }
+            String primaryExchange = environment.getProperty("org.tbk.cln.plugin.spend-and-replace.routing.primary-exchange",
+                    exchangeBeanNames[0]);
+            if (!Arrays.asList(exchangeBeanNames).contains(primaryExchange)) {
+                String errorMessage = String.format("Primary exchange '%s' is not configured - available: %s",
+                        primaryExchange, Arrays.toString(exchangeBeanNames));
+                throw new IllegalStateException(errorMessage);
+            }
+            BeanDefinition beanDefinition = beanFactory.getBeanDefinition(primaryExchange);
+            beanDefinition.setPrimary(true);
+            log.info("Using exchange '{}' as primary exchange of {} exchanges", primaryExchange, exchangeBeanNames.length);
+        };
+    }
+
     @Bean
     RunOptions runOptions(Environment env, ApplicationArguments applicationArguments) {
         boolean isExplicitTestEnvironment = env.acceptsProfiles(Profiles.of("test | debug | development | staging"));
@@ -41,6 +143,10 @@ class ClnSpendAndReplaceConfig {
 
         return RunOptions.builder()
                 .dryRun(dryRunEnabled)
+                .paymentAggregationWindow(properties.getPaymentAggregationWindow())
+                .exchangeCallTimeout(properties.getExchangeCallTimeout())
+                .deferredReplacementDelay(properties.getResilience().getDeferredReplacementDelay())
+                .deferredReplacementMaxDelay(properties.getResilience().getDeferredReplacementMaxDelay())
                 .build();
     }
 
@@ -49,32 +155,322 @@ class ClnSpendAndReplaceConfig {
         return new ApplicationShutdownManager(applicationContext);
     }
 
+    @Bean(destroyMethod = "close")
+    ExchangeMetaDataHolder exchangeMetaDataHolder(Exchange exchange) {
+        return new ExchangeMetaDataHolder(exchange, properties.getMetadataRefreshInterval());
+    }
+
+    @Bean(destroyMethod = "close")
+    TickerCache tickerCache(Exchange exchange) {
+        ClnSpendAndReplaceProperties.TickerProperties tickerProperties = properties.getTicker();
+        return new TickerCache(exchange, tickerProperties.getMaxAge(), tickerProperties.getStaleWhileRevalidate());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(value = "org.tbk.cln.plugin.spend-and-replace.market-data-stream.enabled", havingValue = "true")
+    TopOfBook topOfBook() {
+        ClnSpendAndReplaceProperties.MarketDataStreamProperties streamProperties = properties.getMarketDataStream();
+        WebSocketMarketDataStream stream = new WebSocketMarketDataStream(HttpClient.newHttpClient(), streamProperties.getUri(),
+                new KrakenTickerMessageCodec(), streamProperties.getIdleTimeout());
+        return new TopOfBook(stream, streamProperties.getReconnectDelay());
+    }
+
+    @Bean
+    ExchangeService exchangeService(Exchange exchange,
+                                    ExchangeMetaDataHolder exchangeMetaDataHolder,
+                                    TickerCache tickerCache,
+                                    ObjectProvider<TopOfBook> topOfBook) {
+        return new ExchangeService(exchange, exchangeMetaDataHolder, tickerCache, topOfBook.getIfAvailable());
+    }
+
+    /**
+     * Everything needed to place orders on exchanges other than the primary one.
+     */
+    @Bean(destroyMethod = "close")
+    SecondaryExchangeServices secondaryExchangeServices(Map<String, Exchange> exchanges, Exchange exchange) {
+        List<ExchangeService> exchangeServices = new ArrayList<>();
+        List<AutoCloseable> resources = new ArrayList<>();
+        for (Exchange secondaryExchange : exchanges.values()) {
+            if (secondaryExchange == exchange) {
+                continue;
+            }
+            ExchangeMetaDataHolder exchangeMetaDataHolder = new ExchangeMetaDataHolder(secondaryExchange, properties.getMetadataRefreshInterval());
+            TickerCache tickerCache = new TickerCache(secondaryExchange, properties.getTicker().getMaxAge(),
+                    properties.getTicker().getStaleWhileRevalidate());
+            resources.add(exchangeMetaDataHolder);
+            resources.add(tickerCache);
+
+            exchangeMetaDataHolder.start();
+            exchangeServices.add(new ExchangeService(secondaryExchange, exchangeMetaDataHolder, tickerCache));
+        }
+        return new SecondaryExchangeServices(exchangeServices, resources);
+    }
+
+    @Bean(destroyMethod = "close")
+    ExchangeRouter exchangeRouter(ExchangeService exchangeService,
+                                  SecondaryExchangeServices secondaryExchangeServices,
+                                  LatencyRecorder latencyRecorder) {
+        List<ExchangeService> exchangeServices = new ArrayList<>();
+        exchangeServices.add(exchangeService);
+        exchangeServices.addAll(secondaryExchangeServices.getExchangeServices());
+
+        ClnSpendAndReplaceProperties.RoutingProperties routingProperties = properties.getRouting();
+        return new ExchangeRouter(exchangeServices, routingProperties.getTickerDeadline(), routingProperties.getLatencyPenalty(), latencyRecorder);
+    }
+
+    @Bean
+    LatencyRecorder latencyRecorder() {
+        return new LatencyRecorder();
+    }
+
+    @Bean
+    ReplacementLedger replacementLedger() {
+        return new ReplacementLedger();
+    }
+
+    @Bean(destroyMethod = "close")
+    ReplacementPipeline replacementPipeline() {
+        ClnSpendAndReplaceProperties.PipelineProperties pipelineProperties = properties.getPipeline();
+        return new ReplacementPipeline(
+                pipelineProperties.getWorkers(),
+                pipelineProperties.getCapacity(),
+                pipelineProperties.getOverflowPolicy(),
+                pipelineProperties.getOfferTimeout()
+        );
+    }
+
+    @Bean(destroyMethod = "close")
+    ReplacementJournal replacementJournal() throws IOException {
+        ClnSpendAndReplaceProperties.JournalProperties journalProperties = properties.getJournal();
+        return ReplacementJournal.open(
+                journalProperties.getDirectory(),
+                journalProperties.getSyncInterval(),
+                journalProperties.getCompactionInterval()
+        );
+    }
+
+    @Bean(destroyMethod = "close")
+    PaymentHashIndex paymentHashIndex() throws IOException {
+        return PaymentHashIndex.open(properties.getJournal().getDirectory().resolve("payment-hashes.idx"));
+    }
+
+    @Bean(destroyMethod = "close")
+    ReplacementReconciler replacementReconciler() throws IOException {
+        return ReplacementReconciler.open(
+                properties.getJournal().getDirectory().resolve("reconciliation.log"),
+                properties.getReconciliation().getFillDeadline()
+        );
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(value = "org.tbk.cln.plugin.spend-and-replace.history.enabled", matchIfMissing = true)
+    TradeHistoryStore tradeHistoryStore() throws IOException {
+        return TradeHistoryStore.open(properties.getJournal().getDirectory().resolve("trade-history.log"));
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnBean(TradeHistoryStore.class)
+    TradeHistorySync tradeHistorySync(ExchangeService exchangeService,
+                                      TradeHistoryStore tradeHistoryStore,
+                                      ReplacementReconciler replacementReconciler) {
+        return createTradeHistorySync(exchangeService, tradeHistoryStore, replacementReconciler);
+    }
+
+    /**
+     * The trade history of every other exchange orders are routed to - orders are reconciled with the fills of the
+     * exchange they have been placed on.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnBean(TradeHistoryStore.class)
+    SecondaryTradeHistories secondaryTradeHistories(ExchangeService exchangeService,
+                                                    SecondaryExchangeServices secondaryExchangeServices,
+                                                    ReplacementReconciler replacementReconciler) throws IOException {
+        Map<String, TradeHistorySync> tradeHistorySyncs = new LinkedHashMap<>();
+        List<AutoCloseable> resources = new ArrayList<>();
+        Set<String> exchangeNames = new HashSet<>(Set.of(exchangeService.getExchangeName()));
+        for (ExchangeService secondaryExchangeService : secondaryExchangeServices.getExchangeServices()) {
+            String exchangeName = secondaryExchangeService.getExchangeName();
+            if (!exchangeNames.add(exchangeName)) {
+                log.warn("Will not sync the trade history of exchange '{}' - its name is shared with another exchange", exchangeName);
+                continue;
+            }
+            String fileName = "trade-history-" + exchangeName.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-") + ".log";
+            TradeHistoryStore tradeHistoryStore = TradeHistoryStore.open(properties.getJournal().getDirectory().resolve(fileName));
+            TradeHistorySync tradeHistorySync = createTradeHistorySync(secondaryExchangeService, tradeHistoryStore, replacementReconciler);
+            resources.add(tradeHistorySync);
+            resources.add(tradeHistoryStore);
+            tradeHistorySyncs.put(exchangeName, tradeHistorySync);
+        }
+        return new SecondaryTradeHistories(tradeHistorySyncs, resources);
+    }
+
+    private TradeHistorySync createTradeHistorySync(ExchangeService exchangeService,
+                                                    TradeHistoryStore tradeHistoryStore,
+                                                    ReplacementReconciler replacementReconciler) {
+        String exchangeName = exchangeService.getExchangeName();
+        TradeHistorySync tradeHistorySync = new TradeHistorySync(exchangeService.getExchange(), tradeHistoryStore,
+                properties.getHistory().getSyncInterval());
+        replacementReconciler.catchUp(exchangeName, tradeHistoryStore::tradesByOrderId);
+        tradeHistorySync.addTradeListener(trades -> replacementReconciler.match(exchangeName, trades));
+        return tradeHistorySync;
+    }
+
+    /**
+     * The plugin itself only needs light-weight beans - so it can answer `getmanifest` and `init` right away.
+     */
     @Bean
     ClnSpendAndReplacePlugin clnSpendAndReplacePlugin(ApplicationShutdownManager applicationShutdownManager,
-                                                             Exchange exchange,
-                                                             RunOptions dryRunOption) {
-        return new ClnSpendAndReplacePlugin(applicationShutdownManager, exchange, dryRunOption);
+                                                      RunOptions dryRunOption) {
+        return new ClnSpendAndReplacePlugin(applicationShutdownManager, dryRunOption);
     }
 
     @Bean
-    PluginInitializer pluginInitializer(ClnSpendAndReplacePlugin plugin) {
-        return new PluginInitializer(plugin);
+    PluginServices pluginServices(Exchange exchange,
+                                  ExchangeMetaDataHolder exchangeMetaDataHolder,
+                                  ExchangeService exchangeService,
+                                  ExchangeRouter exchangeRouter,
+                                  ReplacementLedger replacementLedger,
+                                  ReplacementPipeline replacementPipeline,
+                                  ReplacementJournal replacementJournal,
+                                  PaymentHashIndex paymentHashIndex,
+                                  MeterRegistry meterRegistry,
+                                  LatencyRecorder latencyRecorder,
+                                  ReplacementReconciler replacementReconciler,
+                                  ObjectProvider<TradeHistorySync> tradeHistorySync,
+                                  ObjectProvider<SecondaryTradeHistories> secondaryTradeHistories,
+                                  ObjectProvider<TopOfBook> topOfBook) {
+        Map<String, TradeHistorySync> tradeHistorySyncs = new LinkedHashMap<>();
+        if (tradeHistorySync.getIfAvailable() != null) {
+            tradeHistorySyncs.put(exchangeService.getExchangeName(), tradeHistorySync.getIfAvailable());
+            tradeHistorySyncs.putAll(secondaryTradeHistories.getObject().getTradeHistorySyncs());
+        }
+        // the trade history cannot tell which of them an order of unknown outcome has been sent to
+        Set<String> exchangeNames = new HashSet<>();
+        for (ExchangeService it : exchangeRouter.exchangeServices()) {
+            if (!exchangeNames.add(it.getExchangeName()) && tradeHistorySyncs.remove(it.getExchangeName()) != null) {
+                log.warn("Orders of unknown outcome on exchange '{}' will not be resolved automatically - its name is shared "
+                        + "with another exchange", it.getExchangeName());
+            }
+        }
+
+        return PluginServices.builder()
+                .exchange(exchange)
+                .exchangeMetaData(exchangeMetaDataHolder)
+                .exchangeService(exchangeService)
+                .exchangeRouter(exchangeRouter)
+                .ledger(replacementLedger)
+                .pipeline(replacementPipeline)
+                .journal(replacementJournal)
+                .processedPayments(paymentHashIndex)
+                .meterRegistry(meterRegistry)
+                .latencyRecorder(latencyRecorder)
+                .reconciler(replacementReconciler)
+                .tradeHistorySync(tradeHistorySync.getIfAvailable())
+                .tradeHistorySyncs(tradeHistorySyncs)
+                .topOfBook(topOfBook.getIfAvailable())
+                .build();
+    }
+
+    /**
+     * The only bean initialized eagerly (see `spring.main.lazy-initialization`): starts the plugin and initializes
+     * its services in the background.
+     */
+    @Bean
+    @Lazy(false)
+    PluginInitializer pluginInitializer(ClnSpendAndReplacePlugin plugin, ObjectProvider<PluginServices> pluginServices) {
+        ClnSpendAndReplaceProperties.RpcProperties rpcProperties = properties.getRpc();
+        // CHECKSTYLE IGNORE RegexpSinglelineJava FOR NEXT 1 LINES - stdout is the channel to lightningd
+        PrintStream stdout = System.out;
+        RpcDispatcher rpcDispatcher = new RpcDispatcher(
+                plugin.rpcHandlers(),
+                rpcProperties.getWorkers(),
+                rpcProperties.getMaxConcurrency(),
+                rpcProperties.getCommandMaxConcurrency(),
+                rpcProperties.getTimeout(),
+                new JsonRpcWriter(stdout)
+        );
+        return new PluginInitializer(plugin, pluginServices, rpcDispatcher);
+    }
+
+    @RequiredArgsConstructor
+    static final class SecondaryExchangeServices implements AutoCloseable {
+
+        @Getter
+        private final List<ExchangeService> exchangeServices;
+
+        private final List<AutoCloseable> resources;
+
+        @Override
+        public void close() {
+            for (AutoCloseable resource : resources) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    log.warn("Could not close exchange resource: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    static final class SecondaryTradeHistories implements AutoCloseable {
+
+        // by exchange name
+        @Getter
+        private final Map<String, TradeHistorySync> tradeHistorySyncs;
+
+        private final List<AutoCloseable> resources;
+
+        @Override
+        public void close() {
+            for (AutoCloseable resource : resources) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    log.warn("Could not close trade history: {}", e.getMessage());
+                }
+            }
+        }
     }
 
     @RequiredArgsConstructor
     public static final class PluginInitializer implements InitializingBean, DisposableBean {
 
+        private static final int PLUGIN_INPUT_BUFFER_SIZE = 64 * 1024;
+
         private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        private final ExecutorService servicesExecutor = Executors.newSingleThreadExecutor();
+        private final ExecutorService rpcExecutor = Executors.newSingleThreadExecutor();
         private final ClnSpendAndReplacePlugin plugin;
-
+        private final ObjectProvider<PluginServices> pluginServices;
+        private final RpcDispatcher rpcDispatcher;
 
         @Override
-        public void afterPropertiesSet() {
+        public void afterPropertiesSet() throws IOException {
+            // read from stdin first: rpc requests are dispatched concurrently, everything else is passed to the plugin
+            InputStream stdin = System.in;
+            PipedOutputStream pluginInput = new PipedOutputStream();
+            System.setIn(new PipedInputStream(pluginInput, PLUGIN_INPUT_BUFFER_SIZE));
+            rpcExecutor.submit(() -> rpcDispatcher.run(stdin, pluginInput));
+
             executor.submit(plugin::start);
+
+            // exchange, metrics and persistence are created lazily - on this thread instead of the plugin's
+            servicesExecutor.submit(() -> {
+                try {
+                    plugin.onServicesReady(pluginServices.getObject());
+                } catch (RuntimeException e) {
+                    log.error("Could not initialize plugin services", e);
+                    plugin.onServicesFailed(e);
+                }
+            });
         }
 
         @Override
         public void destroy() {
+            rpcDispatcher.close();
+            rpcExecutor.shutdown();
+            servicesExecutor.shutdown();
             executor.shutdown();
         }
     }
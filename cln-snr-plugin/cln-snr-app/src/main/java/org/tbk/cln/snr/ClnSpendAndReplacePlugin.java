@@ -1,6 +1,10 @@
 package org.tbk.cln.snr;
 
 import com.google.gson.JsonObject;
+import fr.acinq.lightning.MilliSatoshi;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jrpc.clightning.annotation.PluginOption;
 import jrpc.clightning.annotation.RPCMethod;
 import jrpc.clightning.annotation.Subscription;
@@ -16,28 +20,59 @@ import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.instrument.Instrument;
 import org.knowm.xchange.service.trade.params.TradeHistoryParamsAll;
 import org.knowm.xchange.service.trade.params.orders.DefaultOpenOrdersParamInstrument;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import org.tbk.cln.snr.exchange.SatoshiMath;
+import org.tbk.cln.snr.history.TradeHistorySync;
+import org.tbk.cln.snr.reconciliation.ReplacementReconciler;
+import org.tbk.cln.snr.replacement.DeferredReplacements;
+import org.tbk.cln.snr.replacement.PaymentAggregator;
+import org.tbk.cln.snr.replacement.ReplacementLedger;
+import org.tbk.cln.snr.replacement.ReplacementService;
+import org.tbk.cln.snr.replacement.SpentPayment;
+import org.tbk.cln.snr.rpc.RpcDispatcher;
 import org.tbk.cln.snr.rpc.command.*;
 import org.tbk.cln.snr.rpc.subscription.ClnSubscription;
+import org.tbk.cln.snr.rpc.subscription.NotificationBuffer;
 import org.tbk.cln.snr.rpc.subscription.SendpaySuccess;
-
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 @RequiredArgsConstructor
 public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
 
     private static final String DEFAULT_FIAT_CURRENCY = "USD";
 
-    @NonNull
-    private final ApplicationShutdownManager shutdownManager;
+    private static final int MAX_PENDING_PAYMENTS = 1_000;
+
+    // how long rpc commands wait for the plugin to finish its startup
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(30);
 
     @NonNull
-    private final Exchange exchange;
+    private final ApplicationShutdownManager shutdownManager;
 
     @NonNull
     private final RunOptions runOption;
 
+    // completed once exchange, metrics and persistence have been initialized in the background
+    private final CompletableFuture<PluginServices> pluginServices = new CompletableFuture<>();
+
+    // completed once the plugin has been initialized by lightningd and its services are ready
+    private final CompletableFuture<PluginServices> activated = new CompletableFuture<>();
+
+    // notifications received before the plugin has been activated
+    private final NotificationBuffer notifications = new NotificationBuffer(MAX_PENDING_PAYMENTS);
+
     @PluginOption(
             name = "snr-dry-run",
             typeValue = "flag",
@@ -54,11 +89,28 @@ public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
     )
     String defaultFiatCurrency = DEFAULT_FIAT_CURRENCY;
 
+    private volatile PaymentAggregator paymentAggregator;
+
+    private volatile DeferredReplacements deferredReplacements;
+
     @Override
     public void start() {
         super.start();
     }
 
+    /**
+     * Hand over exchange, metrics and persistence once they have been initialized in the background.
+     */
+    public void onServicesReady(PluginServices services) {
+        this.pluginServices.complete(services);
+    }
+
+    public void onServicesFailed(Throwable error) {
+        log(PluginLog.ERROR, "Could not initialize spend-and-replace: " + error.getMessage());
+        this.pluginServices.completeExceptionally(error);
+        this.activated.completeExceptionally(error);
+    }
+
     @Override
     public void onInit(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
         super.onInit(plugin, request, response);
@@ -80,6 +132,9 @@ public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
 
         this.dryRun = this.dryRun || this.runOption.isDryRun() || !isMainnet;
 
+        // exchange, metrics and persistence might still be initializing - do not keep lightningd waiting
+        this.pluginServices.thenAcceptAsync(this::activate);
+
         // test disable (hint: works!)
         // DEBUG   plugin-spend-and-replace: Killing plugin: disabled itself at init: just testing if disabling works
         // response.add("disable", "just testing if disabling works");
@@ -90,22 +145,7 @@ public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
             description = "Command to list all configuration options."
     )
     public void rpcListconfigs(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
-        log(PluginLog.DEBUG, "rpc 'snr-listconfigs' invoked: " + request.getWrapper());
-
-        execute(plugin, request, response, () -> {
-            JsonObject config = new JsonObject();
-            config.addProperty("dry-run", dryRun);
-
-            JsonObject fiatCurrencyData = new JsonObject();
-            fiatCurrencyData.addProperty("default", defaultFiatCurrency);
-            config.add("fiat-currency", fiatCurrencyData);
-
-            JsonObject exchangeData = new JsonObject();
-            exchangeData.addProperty("name", exchange.getExchangeSpecification().getExchangeName());
-            exchangeData.addProperty("host", exchange.getExchangeSpecification().getHost());
-            config.add("exchange", exchangeData);
-            return new ListconfigsCommand(config);
-        });
+        execute("snr-listconfigs", plugin, request, response);
     }
 
     @RPCMethod(
@@ -113,9 +153,7 @@ public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
             description = "Command to print the plugin version."
     )
     public void rpcVersion(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
-        log(PluginLog.DEBUG, "rpc 'snr-version' invoked: " + request.getWrapper());
-
-        execute(plugin, request, response, VersionCommand::new);
+        execute("snr-version", plugin, request, response);
     }
 
     @RPCMethod(
@@ -123,80 +161,143 @@ public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
             description = "Command to list exchange specific information."
     )
     public void rpcExchangeinfo(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
-        log(PluginLog.DEBUG, "rpc 'snr-exchangeinfo' invoked: " + request.getWrapper());
-
-        execute(plugin, request, response, () -> {
-            initExchangeIfNecessary();
-
-            Set<Instrument> currencyPairs = Set.of(
-                    new CurrencyPair(Currency.BTC, Currency.getInstance(defaultFiatCurrency))
-            );
-
-            return new ExchangeInfoCommand(exchange, currencyPairs);
-        });
+        execute("snr-exchangeinfo", plugin, request, response);
     }
 
     @RPCMethod(
             name = "snr-ticker",
-            description = "Get the ticker representing the current exchange rate for the provided currency.",
-            parameter = "[fiat-currency]"
+            description = "Get the ticker representing the current exchange rate for the provided currencies.",
+            parameter = "[fiat-currencies]"
     )
     public void rpcTicker(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
-        plugin.log(PluginLog.DEBUG, "rpc 'snr-ticker' invoked: " + request.getWrapper());
-
-        execute(plugin, request, response, () -> {
-            initExchangeIfNecessary();
-            return new TickerCommand(exchange, Currency.getInstance(defaultFiatCurrency));
-        });
+        execute("snr-ticker", plugin, request, response);
     }
 
     @RPCMethod(
             name = "snr-balance",
-            description = "Get the balance of your account."
+            parameter = "[currencies]",
+            description = "Get the balance of your accounts."
     )
     public void rpcBalance(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
-        log(PluginLog.DEBUG, "rpc 'snr-balance' invoked: " + request.getWrapper());
-
-        execute(plugin, request, response, () -> {
-            initExchangeIfNecessary();
-
-            Set<Currency> currencies = Set.of(Currency.BTC, Currency.getInstance(defaultFiatCurrency));
-            return new BalanceCommand(exchange, currencies);
-        });
+        execute("snr-balance", plugin, request, response);
     }
 
     @RPCMethod(
             name = "snr-history",
+            parameter = "[since] [until] [limit] [cursor]",
             description = "Get the trade history of your account."
     )
     public void rpcHistory(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
-        log(PluginLog.DEBUG, "rpc 'snr-history' invoked: " + request.getWrapper());
+        execute("snr-history", plugin, request, response);
+    }
 
-        execute(plugin, request, response, () -> {
-            initExchangeIfNecessary();
+    @RPCMethod(
+            name = "snr-placetestorder",
+            description = "Place a minimal, greatly undervalued limit order to test if exchange settings are working properly."
+    )
+    public void rpcPlaceTestOrder(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        execute("snr-placetestorder", plugin, request, response);
+    }
 
-            Instrument instrument = new CurrencyPair(Currency.BTC, Currency.getInstance(defaultFiatCurrency));
+    @RPCMethod(
+            name = "snr-ledger",
+            description = "List spent amounts per currency pair that are pending, inflight or have been replaced."
+    )
+    public void rpcLedger(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        execute("snr-ledger", plugin, request, response);
+    }
 
-            DefaultOpenOrdersParamInstrument openOrdersParams = new DefaultOpenOrdersParamInstrument(instrument);
+    @RPCMethod(
+            name = "snr-pending",
+            description = "List payments that are waiting to be replaced."
+    )
+    public void rpcPending(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        execute("snr-pending", plugin, request, response);
+    }
 
-            TradeHistoryParamsAll tradeHistoryParams = new TradeHistoryParamsAll();
-            tradeHistoryParams.setInstrument(instrument);
-            return new HistoryCommand(exchange, openOrdersParams, tradeHistoryParams);
-        });
+    @RPCMethod(
+            name = "snr-metrics",
+            description = "List metrics of rpc commands, notifications, exchange calls and placed orders."
+    )
+    public void rpcMetrics(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        execute("snr-metrics", plugin, request, response);
     }
 
     @RPCMethod(
-            name = "snr-placetestorder",
-            description = "Place a minimal, greatly undervalued limit order to test if exchange settings are working properly."
+            name = "snr-latency",
+            description = "List latency percentiles of every stage from payment to placed order."
     )
-    public void rpcPlaceTestOrder(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
-        log(PluginLog.DEBUG, "rpc 'snr-placetestorder' invoked: " + request.getWrapper());
+    public void rpcLatency(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        execute("snr-latency", plugin, request, response);
+    }
+
+    @RPCMethod(
+            name = "snr-reconciliation",
+            parameter = "[payment-hash]",
+            description = "List placed orders that have not been filled in time - or the order placed for a payment hash."
+    )
+    public void rpcReconciliation(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        execute("snr-reconciliation", plugin, request, response);
+    }
+
+    /**
+     * Creates the command answering an rpc request.
+     */
+    private RpcCommand rpcCommand(String command, PluginServices services) {
+        Currency fiatCurrency = Currency.getInstance(defaultFiatCurrency);
+        return switch (command) {
+            case "snr-listconfigs" -> listconfigsCommand(services);
+            case "snr-version" -> new VersionCommand();
+            case "snr-exchangeinfo" -> new ExchangeInfoCommand(services.getExchange(), services.getExchangeMetaData(),
+                    Set.<Instrument>of(new CurrencyPair(Currency.BTC, fiatCurrency)));
+            case "snr-ticker" -> new TickerCommand(services.getExchangeService(), fiatCurrency, runOptions().getExchangeCallTimeout());
+            case "snr-balance" -> {
+                initExchangeIfNecessary(services);
+                yield new BalanceCommand(accounts(services), Set.of(Currency.BTC, fiatCurrency), runOptions().getExchangeCallTimeout());
+            }
+            case "snr-history" -> historyCommand(services);
+            case "snr-placetestorder" -> new PlaceTestOrderCommand(services.getExchangeService(), fiatCurrency);
+            case "snr-ledger" -> new LedgerCommand(services.getLedger());
+            case "snr-pending" -> new PendingCommand(paymentAggregator, services.getPipeline());
+            case "snr-metrics" -> new MetricsCommand(services.getMeterRegistry());
+            case "snr-latency" -> new LatencyCommand(services.getLatencyRecorder());
+            case "snr-reconciliation" -> new ReconciliationCommand(services.getReconciler());
+            default -> throw new IllegalArgumentException("Unknown rpc command: " + command);
+        };
+    }
+
+    private RpcCommand listconfigsCommand(PluginServices services) {
+        JsonObject config = new JsonObject();
+        config.addProperty("dry-run", dryRun);
 
-        execute(plugin, request, response, () -> {
-            initExchangeIfNecessary();
+        JsonObject fiatCurrencyData = new JsonObject();
+        fiatCurrencyData.addProperty("default", defaultFiatCurrency);
+        config.add("fiat-currency", fiatCurrencyData);
 
-            return new PlaceTestOrderCommand(exchange, Currency.getInstance(defaultFiatCurrency));
-        });
+        JsonObject exchangeData = new JsonObject();
+        exchangeData.addProperty("name", services.getExchange().getExchangeSpecification().getExchangeName());
+        exchangeData.addProperty("host", services.getExchange().getExchangeSpecification().getHost());
+        config.add("exchange", exchangeData);
+        return new ListconfigsCommand(config);
+    }
+
+    private RpcCommand historyCommand(PluginServices services) {
+        initExchangeIfNecessary(services);
+
+        Instrument instrument = new CurrencyPair(Currency.BTC, Currency.getInstance(defaultFiatCurrency));
+
+        // answer from the local trade history once it has been synced - without calling private endpoints
+        TradeHistorySync tradeHistorySync = services.getTradeHistorySync();
+        boolean isLocalHistoryAvailable = tradeHistorySync != null && tradeHistorySync.syncedAt().isPresent();
+        if (isLocalHistoryAvailable) {
+            return new LocalHistoryCommand(tradeHistorySync.getStore(), instrument);
+        }
+
+        DefaultOpenOrdersParamInstrument openOrdersParams = new DefaultOpenOrdersParamInstrument(instrument);
+
+        TradeHistoryParamsAll tradeHistoryParams = new TradeHistoryParamsAll();
+        tradeHistoryParams.setInstrument(instrument);
+        return new HistoryCommand(services.getExchange(), openOrdersParams, tradeHistoryParams);
     }
 
     /**
@@ -214,6 +315,22 @@ public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
     @Subscription(notification = "shutdown")
     public void onNotificationShutdown(CLightningJsonObject data) {
         log(PluginLog.DEBUG, "Notification shutdown received.");
+
+        if (paymentAggregator != null) {
+            paymentAggregator.close();
+        }
+        if (deferredReplacements != null) {
+            deferredReplacements.close();
+        }
+        if (activated.isDone() && !activated.isCompletedExceptionally()) {
+            PluginServices services = activated.join();
+            services.getJournal().sync();
+            services.getProcessedPayments().sync();
+        } else if (notifications.size() > 0) {
+            log(PluginLog.WARNING, String.format("Shutting down before startup completed - %d notifications have not been processed",
+                    notifications.size()));
+        }
+
         System.exit(shutdownManager.initiateShutdown(0));
     }
 
@@ -230,41 +347,280 @@ public final class ClnSpendAndReplacePlugin extends CLightningPlugin {
     public void onNotificationSendpaySuccess(CLightningJsonObject data) {
         log(PluginLog.DEBUG, "Notification 'sendpay_success' received.");
 
-        this.execute(data, () -> {
-            initExchangeIfNecessary();
-            return new SendpaySuccess(exchange, Currency.getInstance(defaultFiatCurrency), runOptions());
-        });
+        // notifications received while the plugin is still starting are processed once it has been activated
+        boolean accepted = notifications.submit(() -> this.execute("sendpay_success", data, services ->
+                new SendpaySuccess(Currency.getInstance(defaultFiatCurrency), services.getProcessedPayments(), services.getJournal(),
+                        paymentAggregator, services.getLatencyRecorder(), services.getExchangeService().getExchangeName())));
+        if (!accepted) {
+            log(PluginLog.ERROR, "Too many notifications received during startup - dropping 'sendpay_success': " + data);
+        }
+    }
+
+    /**
+     * Start everything that needs the services - as soon as the plugin has been initialized and its services are ready.
+     */
+    private void activate(PluginServices services) {
+        try {
+            CurrencyPair currencyPair = new CurrencyPair(Currency.BTC, Currency.getInstance(defaultFiatCurrency));
+
+            services.getExchangeMetaData().start();
+
+            // orders of unknown outcome are resolved with the trade history of the exchange they have been sent to
+            for (Map.Entry<String, TradeHistorySync> it : services.getTradeHistorySyncs().entrySet()) {
+                String exchangeName = it.getKey();
+                TradeHistorySync tradeHistorySync = it.getValue();
+                tradeHistorySync.addSyncListener(syncedAt -> {
+                    if (services.getReconciler().stats().getUnknown() > 0) {
+                        services.getPipeline().submit(currencyPair.toString(),
+                                () -> resolveUnknown(services, exchangeName, tradeHistorySync, currencyPair, syncedAt));
+                    }
+                });
+                tradeHistorySync.start(currencyPair);
+            }
+            if (services.getTradeHistorySync() != null) {
+                // no-op if it has already been started above
+                services.getTradeHistorySync().start(currencyPair);
+            }
+
+            if (services.getTopOfBook() != null) {
+                services.getTopOfBook().start(Set.of(currencyPair));
+            }
+
+            this.deferredReplacements = new DeferredReplacements(
+                    this.runOption.getDeferredReplacementDelay(),
+                    this.runOption.getDeferredReplacementMaxDelay(),
+                    it -> services.getPipeline().submit(it.toString(), () -> replacePending(services, it))
+            );
+
+            this.paymentAggregator = new PaymentAggregator(
+                    this.runOption.getPaymentAggregationWindow(),
+                    MAX_PENDING_PAYMENTS,
+                    payment -> onSpentPayment(services, payment)
+            );
+
+            registerGauges(services);
+
+            replayJournal(services);
+        } catch (RuntimeException e) {
+            log(PluginLog.ERROR, "Could not activate spend-and-replace: " + e.getMessage());
+            activated.completeExceptionally(e);
+            return;
+        }
+
+        activated.complete(services);
+
+        if (notifications.size() > 0) {
+            log(PluginLog.INFO, String.format("Processing %d notifications received during startup", notifications.size()));
+        }
+        notifications.open();
+    }
+
+    private Mono<PluginServices> awaitActivation() {
+        return Mono.fromFuture(activated, true)
+                .onErrorMap(e -> new IllegalStateException("spend-and-replace could not be started: " + Exceptions.unwrap(e).getMessage(), e))
+                .timeout(STARTUP_TIMEOUT, Mono.error(() -> new IllegalStateException("spend-and-replace is still starting - try again later")));
+    }
+
+    private void onSpentPayment(PluginServices services, SpentPayment payment) {
+        CurrencyPair currencyPair = new CurrencyPair(Currency.BTC, Currency.getInstance(defaultFiatCurrency));
+        // all replacements of a currency pair share its ledger entry - they are executed one after another
+        boolean accepted = services.getPipeline().submit(currencyPair.toString(), () -> replace(services, payment));
+        if (!accepted) {
+            // do not lose the amount - it will be replaced together with one of the next payments
+            ReplacementLedger.Entry entry = services.getLedger().credit(currencyPair, payment.getAmountSent(), payment.getPaymentHash());
+
+            String warnMessage = String.format("Replacement queue is full - carrying over amount %s (pending: %s)",
+                    payment.getAmountSent(), entry.getPending());
+            log(PluginLog.WARNING, warnMessage);
+        }
+    }
+
+    private void replace(PluginServices services, SpentPayment payment) {
+        try {
+            new ReplacementService(services.getExchangeRouter(), Currency.getInstance(defaultFiatCurrency), runOptions(), services.getLedger(),
+                    services.getJournal(), services.getMeterRegistry(), services.getLatencyRecorder(), services.getReconciler(), deferredReplacements)
+                    .replace(this, payment);
+        } catch (Exception e) {
+            log(PluginLog.ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * Amounts that have been journaled but not been replaced (e.g. because the plugin has been killed) are
+     * credited to the ledger again and replaced as soon as possible - except for orders of unknown outcome, which
+     * stay inflight till they have been resolved.
+     */
+    private void replayJournal(PluginServices services) {
+        for (Map.Entry<CurrencyPair, Long> unreplaced : services.getJournal().unreplaced().entrySet()) {
+            CurrencyPair currencyPair = unreplaced.getKey();
+            services.getLedger().credit(currencyPair, new MilliSatoshi(unreplaced.getValue()));
+            for (ReplacementReconciler.Attempt attempt : services.getReconciler().unresolved()) {
+                MilliSatoshi orderAmount = new MilliSatoshi(SatoshiMath.satToMsat(attempt.getAmountSats()));
+                if (attempt.getCurrencyPair().equals(currencyPair) && services.getLedger().reserve(currencyPair, orderAmount).isEmpty()) {
+                    log(PluginLog.WARNING, String.format("Could not keep order with ref '%s' of unknown outcome inflight: %s",
+                            attempt.getUserReference(), orderAmount));
+                }
+            }
+            ReplacementLedger.Entry entry = services.getLedger().entry(currencyPair);
+            log(PluginLog.INFO, String.format("Replaying unreplaced amount from journal for %s (pending: %s)",
+                    currencyPair, entry.getPending()));
+
+            services.getPipeline().submit(currencyPair.toString(), () -> replacePending(services, currencyPair));
+        }
     }
 
-    private void execute(CLightningJsonObject data,
-                         Supplier<ClnSubscription> subscriptionSupplier) {
+    private void resolveUnknown(PluginServices services, String exchangeName, TradeHistorySync tradeHistorySync,
+                                CurrencyPair currencyPair, Instant syncedAt) {
         try {
-            subscriptionSupplier.get().execute(this, data);
+            new ReplacementService(services.getExchangeRouter(), currencyPair.getCounter(), runOptions(), services.getLedger(),
+                    services.getJournal(), services.getMeterRegistry(), services.getLatencyRecorder(), services.getReconciler(), deferredReplacements)
+                    .resolveUnknown(this, exchangeName, tradeHistorySync.getStore(), syncedAt);
         } catch (Exception e) {
             log(PluginLog.ERROR, e.getMessage());
         }
     }
 
-    private void execute(ICLightningPlugin plugin,
-                         CLightningJsonObject request,
-                         CLightningJsonObject response,
-                         Supplier<RpcCommand> commandSupplier) {
+    private void replacePending(PluginServices services, CurrencyPair currencyPair) {
         try {
-            commandSupplier.get().execute(plugin, request, response);
+            new ReplacementService(services.getExchangeRouter(), currencyPair.getCounter(), runOptions(), services.getLedger(),
+                    services.getJournal(), services.getMeterRegistry(), services.getLatencyRecorder(), services.getReconciler(), deferredReplacements)
+                    .replacePending(this);
         } catch (Exception e) {
-            response.add("error", e.getMessage());
+            log(PluginLog.ERROR, e.getMessage());
         }
     }
 
-    private void initExchangeIfNecessary() {
+    private void execute(String notification,
+                         CLightningJsonObject data,
+                         Function<PluginServices, ClnSubscription> subscriptionFactory) {
+        // only invoked once the plugin has been activated
+        PluginServices services = activated.join();
+        MeterRegistry meterRegistry = services.getMeterRegistry();
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
         try {
-            boolean needsInit = exchange.getExchangeMetaData() == null || exchange.getExchangeMetaData().getInstruments() == null;
-            if (needsInit) {
-                exchange.remoteInit();
+            // awaited - notifications are handled one after another in order of their receipt
+            subscriptionFactory.apply(services).executeAsync(this, data).block();
+        } catch (RuntimeException e) {
+            outcome = "error";
+            log(PluginLog.ERROR, Exceptions.unwrap(e).getMessage());
+        } finally {
+            sample.stop(meterRegistry.timer("snr.subscriptions", "notification", notification, "outcome", outcome));
+        }
+    }
+
+    /**
+     * Answers a request the plugin library did not hand over to the {@link RpcDispatcher}.
+     */
+    private void execute(String command, ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        executeAsync(command, plugin, request, response).block();
+    }
+
+    /**
+     * Returns the execution of an rpc request - completes once the response contains a result or an error.
+     */
+    private Mono<Void> executeAsync(String command, ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        log(PluginLog.DEBUG, "rpc '" + command + "' invoked: " + request.getWrapper());
+
+        return awaitActivation()
+                .onErrorResume(e -> {
+                    response.add("error", e.getMessage());
+                    return Mono.empty();
+                })
+                .flatMap(services -> {
+                    MeterRegistry meterRegistry = services.getMeterRegistry();
+                    Timer.Sample sample = Timer.start(meterRegistry);
+                    // creating a command might block, e.g. till the exchange metadata has been loaded
+                    return Mono.fromCallable(() -> rpcCommand(command, services))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMap(it -> it.executeAsync(plugin, request, response))
+                            .doOnSuccess(it -> stopTimer(sample, meterRegistry, command, "success"))
+                            .onErrorResume(e -> {
+                                stopTimer(sample, meterRegistry, command, "error");
+                                Throwable cause = Exceptions.unwrap(e);
+                                response.add("error", cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+                                return Mono.empty();
+                            })
+                            // e.g. timed out
+                            .doOnCancel(() -> stopTimer(sample, meterRegistry, command, "cancelled"));
+                });
+    }
+
+    private static void stopTimer(Timer.Sample sample, MeterRegistry meterRegistry, String command, String outcome) {
+        sample.stop(meterRegistry.timer("snr.rpc.commands", "command", command, "outcome", outcome));
+    }
+
+    private void registerGauges(PluginServices services) {
+        MeterRegistry meterRegistry = services.getMeterRegistry();
+        CurrencyPair currencyPair = new CurrencyPair(Currency.BTC, Currency.getInstance(defaultFiatCurrency));
+
+        Gauge.builder("snr.replacement.queued", services.getPipeline(), it -> it.stats().getQueued())
+                .description("Replacements waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("snr.replacement.active", services.getPipeline(), it -> it.stats().getActive())
+                .description("Replacements currently being processed")
+                .register(meterRegistry);
+        Gauge.builder("snr.replacement.aggregating", this, it -> it.paymentAggregator.pendingPayments())
+                .description("Payments waiting for their remaining parts")
+                .register(meterRegistry);
+        Gauge.builder("snr.ledger.pending", services.getLedger(), it -> it.entry(currencyPair).getPending().getMsat())
+                .description("Spent amount that has not been replaced yet")
+                .baseUnit("msat")
+                .tag("currency_pair", currencyPair.toString())
+                .register(meterRegistry);
+        Gauge.builder("snr.replacement.deferred", this, it -> it.deferredReplacements.size())
+                .description("Currency pairs with a scheduled attempt to replace amounts that could not be placed on any exchange")
+                .register(meterRegistry);
+        Gauge.builder("snr.reconciliation.unfilled", services.getReconciler(), it -> it.stats().getUnfilled())
+                .description("Placed orders that have not been filled completely")
+                .register(meterRegistry);
+        Gauge.builder("snr.reconciliation.overdue", services.getReconciler(), it -> it.stats().getOverdue())
+                .description("Placed orders that have not been filled completely within the fill deadline")
+                .register(meterRegistry);
+        Gauge.builder("snr.reconciliation.unknown", services.getReconciler(), it -> it.stats().getUnknown())
+                .description("Orders whose placement timed out and whose outcome is still unknown")
+                .register(meterRegistry);
+        if (services.getTopOfBook() != null) {
+            Gauge.builder("snr.market_data_stream.connected", services.getTopOfBook(), it -> it.isConnected() ? 1 : 0)
+                    .description("Whether tickers are currently served from the market data stream")
+                    .register(meterRegistry);
+        }
+    }
+
+    private void initExchangeIfNecessary(PluginServices services) {
+        // metadata is warmed up on activation - this only blocks if it has not been loaded yet
+        services.getExchangeMetaData().get();
+    }
+
+    /**
+     * Returns all configured exchange accounts by name - suffixed with a counter if names are ambiguous.
+     */
+    private Map<String, Exchange> accounts(PluginServices services) {
+        Map<String, Exchange> accounts = new LinkedHashMap<>();
+        for (ExchangeService it : services.getExchangeRouter().exchangeServices()) {
+            String name = it.getExchangeName();
+            for (int i = 2; accounts.containsKey(name); i++) {
+                name = it.getExchangeName() + "#" + i;
+            }
+            accounts.put(name, it.getExchange());
+        }
+        return accounts;
+    }
+
+    /**
+     * Returns the handlers of all rpc methods of this plugin by name - to dispatch requests concurrently without
+     * blocking a thread per request.
+     */
+    public Map<String, RpcDispatcher.Handler> rpcHandlers() {
+        Map<String, RpcDispatcher.Handler> handlers = new LinkedHashMap<>();
+        for (Method method : getClass().getMethods()) {
+            RPCMethod rpcMethod = method.getAnnotation(RPCMethod.class);
+            if (rpcMethod != null) {
+                handlers.put(rpcMethod.name(), (request, response) -> executeAsync(rpcMethod.name(), this, request, response));
             }
-        } catch (Exception e) {
-            throw new IllegalStateException("Could not initialize exchange", e);
         }
+        return handlers;
     }
 
     private RunOptions runOptions() {
@@ -4,8 +4,19 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.knowm.xchange.dto.meta.RateLimit;
+import org.tbk.cln.snr.exchange.ExchangeRateLimiter;
+import org.tbk.cln.snr.exchange.ResilientExchange;
+import org.tbk.cln.snr.replacement.ReplacementPipeline;
 
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 @ConfigurationProperties(
         prefix = "org.tbk.cln.plugin.spend-and-replace",
@@ -14,9 +25,392 @@ import java.util.Objects;
 @Getter
 @AllArgsConstructor(onConstructor = @__(@ConstructorBinding))
 public class ClnSpendAndReplaceProperties {
+    private static final Duration DEFAULT_PAYMENT_AGGREGATION_WINDOW = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_METADATA_REFRESH_INTERVAL = Duration.ofHours(1);
+    private static final Duration DEFAULT_EXCHANGE_CALL_TIMEOUT = Duration.ofSeconds(10);
+
     private Boolean dry;
 
+    private Duration paymentAggregationWindow;
+
+    private Duration metadataRefreshInterval;
+
+    private Duration exchangeCallTimeout;
+
+    private TickerProperties ticker;
+
+    private PipelineProperties pipeline;
+
+    private JournalProperties journal;
+
+    private RateLimitProperties rateLimit;
+
+    private HistoryProperties history;
+
+    private ReconciliationProperties reconciliation;
+
+    private RoutingProperties routing;
+
+    private MarketDataStreamProperties marketDataStream;
+
+    private ResilienceProperties resilience;
+
+    private RpcProperties rpc;
+
     public boolean getDry() {
         return Objects.requireNonNullElse(dry, false);
     }
-}
+
+    public Duration getPaymentAggregationWindow() {
+        return Objects.requireNonNullElse(paymentAggregationWindow, DEFAULT_PAYMENT_AGGREGATION_WINDOW);
+    }
+
+    public Duration getMetadataRefreshInterval() {
+        return Objects.requireNonNullElse(metadataRefreshInterval, DEFAULT_METADATA_REFRESH_INTERVAL);
+    }
+
+    public Duration getExchangeCallTimeout() {
+        return Objects.requireNonNullElse(exchangeCallTimeout, DEFAULT_EXCHANGE_CALL_TIMEOUT);
+    }
+
+    public TickerProperties getTicker() {
+        return Objects.requireNonNullElseGet(ticker, () -> new TickerProperties(null, null));
+    }
+
+    public PipelineProperties getPipeline() {
+        return Objects.requireNonNullElseGet(pipeline, () -> new PipelineProperties(null, null, null, null));
+    }
+
+    public JournalProperties getJournal() {
+        return Objects.requireNonNullElseGet(journal, () -> new JournalProperties(null, null, null));
+    }
+
+    public RateLimitProperties getRateLimit() {
+        return Objects.requireNonNullElseGet(rateLimit, () -> new RateLimitProperties(null, null));
+    }
+
+    public HistoryProperties getHistory() {
+        return Objects.requireNonNullElseGet(history, () -> new HistoryProperties(null, null));
+    }
+
+    public ReconciliationProperties getReconciliation() {
+        return Objects.requireNonNullElseGet(reconciliation, () -> new ReconciliationProperties(null));
+    }
+
+    public RoutingProperties getRouting() {
+        return Objects.requireNonNullElseGet(routing, () -> new RoutingProperties(null, null, null));
+    }
+
+    public MarketDataStreamProperties getMarketDataStream() {
+        return Objects.requireNonNullElseGet(marketDataStream, () -> new MarketDataStreamProperties(null, null, null, null));
+    }
+
+    public ResilienceProperties getResilience() {
+        return Objects.requireNonNullElseGet(resilience, () -> new ResilienceProperties(null, null, null, null, null, null, null, null, null, null));
+    }
+
+    public RpcProperties getRpc() {
+        return Objects.requireNonNullElseGet(rpc, () -> new RpcProperties(null, null, null, null));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class TickerProperties {
+        private static final Duration DEFAULT_MAX_AGE = Duration.ofSeconds(10);
+        private static final Duration DEFAULT_STALE_WHILE_REVALIDATE = Duration.ofSeconds(30);
+
+        private Duration maxAge;
+
+        private Duration staleWhileRevalidate;
+
+        public Duration getMaxAge() {
+            return Objects.requireNonNullElse(maxAge, DEFAULT_MAX_AGE);
+        }
+
+        public Duration getStaleWhileRevalidate() {
+            return Objects.requireNonNullElse(staleWhileRevalidate, DEFAULT_STALE_WHILE_REVALIDATE);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class PipelineProperties {
+        // a single worker by default - concurrent private api calls can lead to "invalid nonce" errors on some exchanges
+        private static final int DEFAULT_WORKERS = 1;
+        private static final int DEFAULT_CAPACITY = 1_000;
+        private static final ReplacementPipeline.OverflowPolicy DEFAULT_OVERFLOW_POLICY = ReplacementPipeline.OverflowPolicy.BLOCK;
+        private static final Duration DEFAULT_OFFER_TIMEOUT = Duration.ofSeconds(1);
+
+        private Integer workers;
+
+        private Integer capacity;
+
+        private ReplacementPipeline.OverflowPolicy overflowPolicy;
+
+        private Duration offerTimeout;
+
+        public int getWorkers() {
+            return Objects.requireNonNullElse(workers, DEFAULT_WORKERS);
+        }
+
+        public int getCapacity() {
+            return Objects.requireNonNullElse(capacity, DEFAULT_CAPACITY);
+        }
+
+        public ReplacementPipeline.OverflowPolicy getOverflowPolicy() {
+            return Objects.requireNonNullElse(overflowPolicy, DEFAULT_OVERFLOW_POLICY);
+        }
+
+        public Duration getOfferTimeout() {
+            return Objects.requireNonNullElse(offerTimeout, DEFAULT_OFFER_TIMEOUT);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class JournalProperties {
+        private static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".cln-spend-and-replace", "journal");
+        private static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(200);
+        private static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofHours(1);
+
+        private Path directory;
+
+        private Duration syncInterval;
+
+        private Duration compactionInterval;
+
+        public Path getDirectory() {
+            return Objects.requireNonNullElse(directory, DEFAULT_DIRECTORY);
+        }
+
+        public Duration getSyncInterval() {
+            return Objects.requireNonNullElse(syncInterval, DEFAULT_SYNC_INTERVAL);
+        }
+
+        public Duration getCompactionInterval() {
+            return Objects.requireNonNullElse(compactionInterval, DEFAULT_COMPACTION_INTERVAL);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RateLimitProperties {
+        private Boolean enabled;
+
+        // overrides the rate limits of the exchange metadata
+        private Map<ExchangeRateLimiter.EndpointClass, LimitProperties> endpoints;
+
+        public boolean getEnabled() {
+            return Objects.requireNonNullElse(enabled, true);
+        }
+
+        public Map<ExchangeRateLimiter.EndpointClass, LimitProperties> getEndpoints() {
+            return Objects.requireNonNullElseGet(endpoints, Map::of);
+        }
+
+        public Map<ExchangeRateLimiter.EndpointClass, RateLimit> toRateLimits() {
+            Map<ExchangeRateLimiter.EndpointClass, RateLimit> rateLimits = new EnumMap<>(ExchangeRateLimiter.EndpointClass.class);
+            getEndpoints().forEach((endpointClass, limit) -> rateLimits.put(endpointClass, limit.toRateLimit()));
+            return rateLimits;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class HistoryProperties {
+        private static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMinutes(1);
+
+        // keep a local copy of the trade history - stored in the journal directory
+        private Boolean enabled;
+
+        private Duration syncInterval;
+
+        public boolean getEnabled() {
+            return Objects.requireNonNullElse(enabled, true);
+        }
+
+        public Duration getSyncInterval() {
+            return Objects.requireNonNullElse(syncInterval, DEFAULT_SYNC_INTERVAL);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class ReconciliationProperties {
+        private static final Duration DEFAULT_FILL_DEADLINE = Duration.ofMinutes(15);
+
+        // placed orders not filled completely within this duration are flagged as overdue
+        private Duration fillDeadline;
+
+        public Duration getFillDeadline() {
+            return Objects.requireNonNullElse(fillDeadline, DEFAULT_FILL_DEADLINE);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RoutingProperties {
+        private static final Duration DEFAULT_TICKER_DEADLINE = Duration.ofSeconds(1);
+        private static final BigDecimal DEFAULT_LATENCY_PENALTY = new BigDecimal("0.001");
+
+        // name of the exchange used for rpc commands and the trade history - the first configured exchange if empty
+        private String primaryExchange;
+
+        // time to wait for the tickers of all exchanges before routing an order
+        private Duration tickerDeadline;
+
+        // price penalty per second of recent latency of an exchange, e.g. 0.001 = 0.1% per second
+        private BigDecimal latencyPenalty;
+
+        public Duration getTickerDeadline() {
+            return Objects.requireNonNullElse(tickerDeadline, DEFAULT_TICKER_DEADLINE);
+        }
+
+        public BigDecimal getLatencyPenalty() {
+            return Objects.requireNonNullElse(latencyPenalty, DEFAULT_LATENCY_PENALTY);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class MarketDataStreamProperties {
+        private static final URI DEFAULT_URI = URI.create("wss://ws.kraken.com/v2");
+        private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(10);
+        private static final Duration DEFAULT_RECONNECT_DELAY = Duration.ofSeconds(1);
+
+        // stream tickers of the primary exchange via websocket instead of fetching them via REST
+        private Boolean enabled;
+
+        // websocket endpoint speaking the ticker channel of the kraken websocket api v2
+        private URI uri;
+
+        // reconnect if no message (including heartbeats) has been received for this long
+        private Duration idleTimeout;
+
+        // initial delay before reconnecting - doubled on every failed attempt
+        private Duration reconnectDelay;
+
+        public boolean getEnabled() {
+            return Objects.requireNonNullElse(enabled, false);
+        }
+
+        public URI getUri() {
+            return Objects.requireNonNullElse(uri, DEFAULT_URI);
+        }
+
+        public Duration getIdleTimeout() {
+            return Objects.requireNonNullElse(idleTimeout, DEFAULT_IDLE_TIMEOUT);
+        }
+
+        public Duration getReconnectDelay() {
+            return Objects.requireNonNullElse(reconnectDelay, DEFAULT_RECONNECT_DELAY);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class ResilienceProperties {
+        private static final ResilientExchange.Policy DEFAULT_POLICY = ResilientExchange.Policy.builder().build();
+        private static final Duration DEFAULT_DEFERRED_REPLACEMENT_DELAY = Duration.ofSeconds(30);
+        private static final Duration DEFAULT_DEFERRED_REPLACEMENT_MAX_DELAY = Duration.ofMinutes(10);
+
+        // a single attempt of an exchange call is abandoned after this time
+        private Duration attemptTimeout;
+
+        // all attempts of an exchange call (including backoff) are abandoned after this time
+        private Duration deadline;
+
+        // attempts of exchange calls that are safe to repeat, e.g. reading data
+        private Integer maxAttempts;
+
+        private Duration initialBackoff;
+
+        private Duration maxBackoff;
+
+        // consecutive failures after which calls to the exchange fail fast
+        private Integer failureThreshold;
+
+        // how long calls to the exchange fail fast before a trial call is permitted
+        private Duration openDuration;
+
+        // only enable if the exchange rejects duplicate orders by user reference
+        private Boolean retryOrdersWithUserReference;
+
+        // delay before trying again to replace an amount that could not be placed on any exchange
+        private Duration deferredReplacementDelay;
+
+        private Duration deferredReplacementMaxDelay;
+
+        public Duration getDeferredReplacementDelay() {
+            return Objects.requireNonNullElse(deferredReplacementDelay, DEFAULT_DEFERRED_REPLACEMENT_DELAY);
+        }
+
+        public Duration getDeferredReplacementMaxDelay() {
+            return Objects.requireNonNullElse(deferredReplacementMaxDelay, DEFAULT_DEFERRED_REPLACEMENT_MAX_DELAY);
+        }
+
+        public ResilientExchange.Policy toPolicy() {
+            return ResilientExchange.Policy.builder()
+                    .attemptTimeout(Objects.requireNonNullElse(attemptTimeout, DEFAULT_POLICY.getAttemptTimeout()))
+                    .deadline(Objects.requireNonNullElse(deadline, DEFAULT_POLICY.getDeadline()))
+                    .maxAttempts(Objects.requireNonNullElse(maxAttempts, DEFAULT_POLICY.getMaxAttempts()))
+                    .initialBackoff(Objects.requireNonNullElse(initialBackoff, DEFAULT_POLICY.getInitialBackoff()))
+                    .maxBackoff(Objects.requireNonNullElse(maxBackoff, DEFAULT_POLICY.getMaxBackoff()))
+                    .failureThreshold(Objects.requireNonNullElse(failureThreshold, DEFAULT_POLICY.getFailureThreshold()))
+                    .openDuration(Objects.requireNonNullElse(openDuration, DEFAULT_POLICY.getOpenDuration()))
+                    .retryOrdersWithUserReference(Objects.requireNonNullElse(retryOrdersWithUserReference, false))
+                    .build();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RpcProperties {
+        private static final int DEFAULT_WORKERS = 4;
+        private static final int DEFAULT_MAX_CONCURRENCY = 2;
+        private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+
+        // threads running rpc commands - independent of the threads placing orders
+        private Integer workers;
+
+        // concurrent requests per rpc command - requests exceeding the limit are rejected
+        private Integer maxConcurrency;
+
+        // overrides of `max-concurrency` by rpc command, e.g. `snr-history: 1`
+        private Map<String, Integer> commandMaxConcurrency;
+
+        // requests not answered in time are cancelled and answered with an error
+        private Duration timeout;
+
+        public int getWorkers() {
+            return Objects.requireNonNullElse(workers, DEFAULT_WORKERS);
+        }
+
+        public int getMaxConcurrency() {
+            return Objects.requireNonNullElse(maxConcurrency, DEFAULT_MAX_CONCURRENCY);
+        }
+
+        public Map<String, Integer> getCommandMaxConcurrency() {
+            return Objects.requireNonNullElse(commandMaxConcurrency, Map.of());
+        }
+
+        public Duration getTimeout() {
+            return Objects.requireNonNullElse(timeout, DEFAULT_TIMEOUT);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class LimitProperties {
+        private Integer calls;
+
+        private Duration period;
+
+        public RateLimit toRateLimit() {
+            if (calls == null || period == null) {
+                throw new IllegalStateException("Rate limit must specify 'calls' and 'period'");
+            }
+            return new RateLimit(calls, Math.toIntExact(period.toMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+}
\ No newline at end of file
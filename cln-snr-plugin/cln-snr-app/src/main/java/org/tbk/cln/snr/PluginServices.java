@@ -0,0 +1,72 @@
+package org.tbk.cln.snr;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import org.knowm.xchange.Exchange;
+import org.tbk.cln.snr.exchange.ExchangeMetaDataHolder;
+import org.tbk.cln.snr.exchange.ExchangeRouter;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import org.tbk.cln.snr.exchange.stream.TopOfBook;
+import org.tbk.cln.snr.history.TradeHistorySync;
+import org.tbk.cln.snr.journal.PaymentHashIndex;
+import org.tbk.cln.snr.journal.ReplacementJournal;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.reconciliation.ReplacementReconciler;
+import org.tbk.cln.snr.replacement.ReplacementLedger;
+import org.tbk.cln.snr.replacement.ReplacementPipeline;
+
+import java.util.Map;
+
+/**
+ * Everything the plugin needs besides answering {@code getmanifest} and {@code init}: exchange, metrics and
+ * persistence. Initialized in the background while the plugin is already talking to lightningd.
+ */
+@Value
+@Builder
+public class PluginServices {
+    @NonNull
+    Exchange exchange;
+
+    @NonNull
+    ExchangeMetaDataHolder exchangeMetaData;
+
+    @NonNull
+    ExchangeService exchangeService;
+
+    @NonNull
+    ExchangeRouter exchangeRouter;
+
+    @NonNull
+    ReplacementLedger ledger;
+
+    @NonNull
+    ReplacementPipeline pipeline;
+
+    @NonNull
+    ReplacementJournal journal;
+
+    @NonNull
+    PaymentHashIndex processedPayments;
+
+    @NonNull
+    MeterRegistry meterRegistry;
+
+    @NonNull
+    LatencyRecorder latencyRecorder;
+
+    @NonNull
+    ReplacementReconciler reconciler;
+
+    // the trade history of the primary exchange - null if the local trade history is disabled
+    TradeHistorySync tradeHistorySync;
+
+    // the trade histories of all exchanges orders are routed to by exchange name - empty if the local trade history
+    // is disabled (or the name of an exchange is shared with another exchange)
+    @NonNull
+    Map<String, TradeHistorySync> tradeHistorySyncs;
+
+    // null if market data is not streamed
+    TopOfBook topOfBook;
+}
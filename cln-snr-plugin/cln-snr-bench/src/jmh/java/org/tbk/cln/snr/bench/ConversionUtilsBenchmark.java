@@ -0,0 +1,45 @@
+package org.tbk.cln.snr.bench;
+
+import fr.acinq.bitcoin.Satoshi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.tbk.cln.snr.exchange.ConversionUtils;
+import org.tbk.cln.snr.exchange.SatoshiMath;
+
+import java.math.BigDecimal;
+
+@State(Scope.Benchmark)
+public class ConversionUtilsBenchmark {
+
+    private final Satoshi sats = new Satoshi(21_000L);
+
+    private final BigDecimal btc = new BigDecimal("0.00021000");
+
+    private final long msat = 21_000_042L;
+
+    @Benchmark
+    public BigDecimal satsToBtc() {
+        return ConversionUtils.satsToBtc(sats);
+    }
+
+    @Benchmark
+    public Satoshi btcToSats() {
+        return ConversionUtils.btcToSats(btc);
+    }
+
+    @Benchmark
+    public BigDecimal satsToBtcLong() {
+        return SatoshiMath.satsToBtc(sats.toLong());
+    }
+
+    @Benchmark
+    public long btcToSatsLong() {
+        return SatoshiMath.btcToSats(btc);
+    }
+
+    @Benchmark
+    public long msatToSatFloorToScaleLong() {
+        return SatoshiMath.floorToScale(SatoshiMath.msatToSat(msat), 5);
+    }
+}
@@ -0,0 +1,60 @@
+package org.tbk.cln.snr.bench;
+
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeFactory;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.MarketOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.tbk.cln.snr.demo.exchange.DummyExchange;
+import org.tbk.cln.snr.exchange.ExchangeMetaDataHolder;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import org.tbk.cln.snr.exchange.TickerCache;
+
+import java.time.Duration;
+
+/**
+ * Creation of orders for spent amounts - tickers and metadata are served from memory, like in a running plugin.
+ */
+@State(Scope.Benchmark)
+public class ExchangeServiceBenchmark {
+
+    private final long amountSats = 21_000L;
+
+    private ExchangeMetaDataHolder exchangeMetaData;
+
+    private TickerCache tickerCache;
+
+    private ExchangeService exchangeService;
+
+    @Setup
+    public void setup() {
+        Exchange exchange = ExchangeFactory.INSTANCE.createExchange(DummyExchange.class);
+        exchangeMetaData = new ExchangeMetaDataHolder(exchange, Duration.ofHours(1));
+        tickerCache = new TickerCache(exchange, Duration.ofSeconds(10), Duration.ofSeconds(30));
+        exchangeService = new ExchangeService(exchange, exchangeMetaData, tickerCache);
+
+        // warm the ticker cache and metadata snapshot
+        exchangeService.createTestLimitOrder(CurrencyPair.BTC_USD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tickerCache.close();
+        exchangeMetaData.close();
+    }
+
+    @Benchmark
+    public MarketOrder createMarketOrder() {
+        return exchangeService.createMarketOrder(CurrencyPair.BTC_USD, amountSats).build();
+    }
+
+    @Benchmark
+    public LimitOrder createTestLimitOrder() {
+        return exchangeService.createTestLimitOrder(CurrencyPair.BTC_USD).build();
+    }
+}
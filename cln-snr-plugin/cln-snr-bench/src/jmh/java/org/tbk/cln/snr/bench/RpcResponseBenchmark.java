@@ -0,0 +1,59 @@
+package org.tbk.cln.snr.bench;
+
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeFactory;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.service.trade.params.TradeHistoryParamsAll;
+import org.knowm.xchange.service.trade.params.orders.DefaultOpenOrdersParamInstrument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tbk.cln.snr.demo.exchange.DummyExchange;
+import org.tbk.cln.snr.rpc.command.BalanceCommand;
+import org.tbk.cln.snr.rpc.command.HistoryCommand;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSON rendering of rpc responses - the dummy exchange answers from memory, so the cost is dominated by rendering.
+ */
+@State(Scope.Benchmark)
+public class RpcResponseBenchmark {
+
+    private final CLightningJsonObject request = new CLightningJsonObject();
+
+    private BalanceCommand balanceCommand;
+
+    private HistoryCommand historyCommand;
+
+    @Setup
+    public void setup() {
+        Exchange exchange = ExchangeFactory.INSTANCE.createExchange(DummyExchange.class);
+
+        balanceCommand = new BalanceCommand(Map.of("Dummy", exchange), Set.of(Currency.BTC, Currency.USD), Duration.ofSeconds(10));
+
+        TradeHistoryParamsAll tradeHistoryParams = new TradeHistoryParamsAll();
+        tradeHistoryParams.setInstrument(CurrencyPair.BTC_USD);
+        historyCommand = new HistoryCommand(exchange, new DefaultOpenOrdersParamInstrument(CurrencyPair.BTC_USD), tradeHistoryParams);
+    }
+
+    @Benchmark
+    public CLightningJsonObject balance() throws Exception {
+        CLightningJsonObject response = new CLightningJsonObject();
+        balanceCommand.execute(null, request, response);
+        return response;
+    }
+
+    @Benchmark
+    public CLightningJsonObject history() throws IOException {
+        CLightningJsonObject response = new CLightningJsonObject();
+        historyCommand.execute(null, request, response);
+        return response;
+    }
+}
@@ -0,0 +1,94 @@
+package org.tbk.cln.snr.bench;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import fr.acinq.lightning.MilliSatoshi;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tbk.cln.snr.replacement.SpentPayment;
+import org.tbk.cln.snr.rpc.subscription.SendpaySuccess;
+import org.tbk.cln.snr.rpc.subscription.SendpaySuccessDecoder;
+import org.tbk.cln.snr.rpc.subscription.SendpaySuccessPayload;
+
+import java.util.Optional;
+
+/**
+ * Extraction of spent payments from {@code sendpay_success} notifications - runs on every payment.
+ */
+@State(Scope.Benchmark)
+public class SendpaySuccessBenchmark {
+
+    private static final String NOTIFICATION = """
+            {
+              "jsonrpc": "2.0",
+              "method": "sendpay_success",
+              "params": {
+                "sendpay_success": {
+                  "id": 42,
+                  "payment_hash": "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                  "groupid": 1,
+                  "partid": 2,
+                  "destination": "02eec7245d6b7d2ccb30380bfbe2a3648cd7a942653f5aa340edcea1f283686619",
+                  "amount_msat": 21000000,
+                  "amount_sent_msat": 21000021,
+                  "msatoshi": 21000000,
+                  "msatoshi_sent": 21000021,
+                  "created_at": 1684756800,
+                  "status": "complete",
+                  "payment_preimage": "0000000000000000000000000000000000000000000000000000000000000000"
+                }
+              }
+            }
+            """;
+
+    private CLightningJsonObject notification;
+
+    @Setup
+    public void setup() {
+        notification = new CLightningJsonObject(JsonParser.parseString(NOTIFICATION).getAsJsonObject());
+    }
+
+    /**
+     * Baseline: walking the parsed tree via {@link Optional} chains - as done before {@link SendpaySuccessDecoder}.
+     */
+    @Benchmark
+    public SpentPayment extractWithOptionals() {
+        Optional<JsonObject> payload = Optional.ofNullable(notification.getAsJsonObject("params"))
+                .map(it -> it.getAsJsonObject("sendpay_success"));
+
+        return SpentPayment.builder()
+                .paymentHash(payload.map(it -> it.getAsJsonPrimitive("payment_hash"))
+                        .map(JsonPrimitive::getAsString)
+                        .orElseThrow())
+                .groupId(payload.map(it -> it.getAsJsonPrimitive("groupid")).map(JsonPrimitive::getAsLong).orElse(0L))
+                .partId(payload.map(it -> it.getAsJsonPrimitive("partid")).map(JsonPrimitive::getAsLong).orElse(0L))
+                .amountSent(payload.map(it -> it.getAsJsonPrimitive("msatoshi_sent"))
+                        .map(it -> new MilliSatoshi(it.getAsLong()))
+                        .orElseThrow())
+                .build();
+    }
+
+    @Benchmark
+    public SpentPayment extract() {
+        return SendpaySuccess.toSpentPayment(notification);
+    }
+
+    @Benchmark
+    public SendpaySuccessPayload decodeTree() {
+        return SendpaySuccessDecoder.decode(notification.getWrapper());
+    }
+
+    @Benchmark
+    public SendpaySuccessPayload parseAndDecodeTree() {
+        return SendpaySuccessDecoder.decode(JsonParser.parseString(NOTIFICATION).getAsJsonObject());
+    }
+
+    @Benchmark
+    public SendpaySuccessPayload decodeStream() {
+        return SendpaySuccessDecoder.decode(NOTIFICATION);
+    }
+}
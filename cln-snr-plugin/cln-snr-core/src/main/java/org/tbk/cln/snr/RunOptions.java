@@ -1,10 +1,41 @@
 package org.tbk.cln.snr;
 
 import lombok.Builder;
+import lombok.NonNull;
 import lombok.Value;
 
+import java.time.Duration;
+
 @Value
 @Builder(toBuilder = true)
 public class RunOptions {
     boolean dryRun;
+
+    /**
+     * How long to collect the parts of a multi-part payment before replacing them as one payment.
+     */
+    @NonNull
+    @Builder.Default
+    Duration paymentAggregationWindow = Duration.ofSeconds(5);
+
+    /**
+     * How long to wait for a single exchange call issued by an rpc command, e.g. fetching the balance of an account.
+     */
+    @NonNull
+    @Builder.Default
+    Duration exchangeCallTimeout = Duration.ofSeconds(10);
+
+    /**
+     * How long to wait before trying again to replace an amount that could not be placed on any exchange.
+     */
+    @NonNull
+    @Builder.Default
+    Duration deferredReplacementDelay = Duration.ofSeconds(30);
+
+    /**
+     * The maximum delay between attempts to replace an amount - the delay doubles with every failed attempt.
+     */
+    @NonNull
+    @Builder.Default
+    Duration deferredReplacementMaxDelay = Duration.ofMinutes(10);
 }
\ No newline at end of file
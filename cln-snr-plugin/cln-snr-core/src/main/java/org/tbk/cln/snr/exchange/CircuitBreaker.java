@@ -0,0 +1,121 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A circuit breaker guarding the calls to a single exchange.
+ * <p>
+ * The circuit opens after {@code failureThreshold} consecutive failures - while open, calls are rejected
+ * immediately. After {@code openDuration}, a single trial call is permitted (half-open): if it succeeds, the circuit
+ * closes again, otherwise it stays open for another {@code openDuration}.
+ */
+@Slf4j
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int failureThreshold;
+
+    private final Duration openDuration;
+
+    private final Clock clock;
+
+    // all fields below are guarded by "this"
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openUntil = Instant.MIN;
+    private boolean trialCallInflight;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this(name, failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    CircuitBreaker(@NonNull String name, int failureThreshold, @NonNull Duration openDuration, @NonNull Clock clock) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Failure threshold must be positive");
+        }
+        if (openDuration.isZero() || openDuration.isNegative()) {
+            throw new IllegalArgumentException("Open duration must be positive");
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether a call may be performed - every permitted call must be followed by
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (clock.instant().isBefore(openUntil)) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                trialCallInflight = true;
+                yield true;
+            }
+            case HALF_OPEN -> {
+                if (trialCallInflight) {
+                    yield false;
+                }
+                trialCallInflight = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Circuit breaker of {} closed", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialCallInflight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        trialCallInflight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("Circuit breaker of {} opened after {} consecutive failures", name, consecutiveFailures);
+            }
+            state = State.OPEN;
+            openUntil = clock.instant().plus(openDuration);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns how long calls will be rejected at least - zero if calls are permitted.
+     */
+    public synchronized Duration remainingOpenDuration() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        Duration remaining = Duration.between(clock.instant(), openUntil);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
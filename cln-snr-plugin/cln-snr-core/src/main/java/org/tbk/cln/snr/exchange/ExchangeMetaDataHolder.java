@@ -0,0 +1,113 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the metadata of an exchange, so that it does not need to be (re-)initialized while handling a payment.
+ * <p>
+ * The metadata is loaded once on {@link #start()} and refreshed periodically in the background.
+ * Readers get an immutable {@link ExchangeMetaDataSnapshot} without any locking. If a refresh fails, the
+ * last good snapshot is kept.
+ */
+@Slf4j
+public final class ExchangeMetaDataHolder implements AutoCloseable {
+
+    private final Exchange exchange;
+
+    private final Duration refreshInterval;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snr-exchange-metadata");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private volatile ExchangeMetaDataSnapshot snapshot;
+
+    public ExchangeMetaDataHolder(@NonNull Exchange exchange, @NonNull Duration refreshInterval) {
+        if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+            throw new IllegalArgumentException("Refresh interval must be positive");
+        }
+        this.exchange = exchange;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Warm up the metadata in the background and refresh it periodically.
+     */
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0L, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the current snapshot - or loads it, if it is not available yet.
+     *
+     * @throws IllegalStateException if the metadata could not be loaded
+     */
+    public ExchangeMetaDataSnapshot get() {
+        ExchangeMetaDataSnapshot current = snapshot;
+        return current != null ? current : refresh();
+    }
+
+    public Optional<ExchangeMetaDataSnapshot> current() {
+        return Optional.ofNullable(snapshot);
+    }
+
+    /**
+     * Load the metadata from the exchange.
+     *
+     * @throws IllegalStateException if the metadata could not be loaded
+     */
+    public synchronized ExchangeMetaDataSnapshot refresh() {
+        try {
+            ExchangeMetaData metaData = exchange.getExchangeMetaData();
+            boolean missingMetaData = metaData == null || metaData.getInstruments() == null;
+
+            // only reload remote metadata on refreshes - the exchange already did so on creation
+            boolean refreshRemoteMetaData = snapshot != null && exchange.getExchangeSpecification().isShouldLoadRemoteMetaData();
+            if (missingMetaData || refreshRemoteMetaData) {
+                exchange.remoteInit();
+                metaData = exchange.getExchangeMetaData();
+            }
+
+            if (metaData == null || metaData.getInstruments() == null) {
+                throw new IllegalStateException("Exchange did not provide any metadata");
+            }
+
+            ExchangeMetaDataSnapshot newSnapshot = ExchangeMetaDataSnapshot.of(metaData, Instant.now());
+            this.snapshot = newSnapshot;
+            return newSnapshot;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not initialize exchange", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Could not refresh exchange metadata - keeping snapshot from {}: {}",
+                    current().map(ExchangeMetaDataSnapshot::getRefreshedAt).orElse(null), e.getMessage());
+        }
+    }
+}
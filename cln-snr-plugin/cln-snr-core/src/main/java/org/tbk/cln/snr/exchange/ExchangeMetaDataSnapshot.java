@@ -0,0 +1,58 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.Value;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.dto.meta.CurrencyMetaData;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.InstrumentMetaData;
+import org.knowm.xchange.dto.meta.RateLimit;
+import org.knowm.xchange.instrument.Instrument;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * An immutable copy of the metadata of an exchange at a certain point in time.
+ */
+@Value
+public class ExchangeMetaDataSnapshot {
+
+    static ExchangeMetaDataSnapshot of(ExchangeMetaData metaData, Instant refreshedAt) {
+        Map<Instrument, InstrumentMetaData> instruments = copyOf(metaData.getInstruments());
+        return new ExchangeMetaDataSnapshot(
+                instruments,
+                InstrumentIndex.of(instruments),
+                copyOf(metaData.getCurrencies()),
+                copyOf(metaData.getPublicRateLimits()),
+                copyOf(metaData.getPrivateRateLimits()),
+                refreshedAt
+        );
+    }
+
+    Map<Instrument, InstrumentMetaData> instruments;
+
+    InstrumentIndex instrumentIndex;
+
+    Map<Currency, CurrencyMetaData> currencies;
+
+    List<RateLimit> publicRateLimits;
+
+    List<RateLimit> privateRateLimits;
+
+    Instant refreshedAt;
+
+    public Optional<InstrumentMetaData> instrument(Instrument instrument) {
+        return Optional.ofNullable(instruments.get(instrument));
+    }
+
+    private static <K, V> Map<K, V> copyOf(Map<K, V> map) {
+        return map == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(map));
+    }
+
+    private static List<RateLimit> copyOf(RateLimit[] rateLimits) {
+        return rateLimits == null ? Collections.emptyList() : Arrays.stream(rateLimits)
+                .filter(Objects::nonNull)
+                .map(it -> new RateLimit(it.calls, it.timeSpan, it.timeUnit))
+                .toList();
+    }
+}
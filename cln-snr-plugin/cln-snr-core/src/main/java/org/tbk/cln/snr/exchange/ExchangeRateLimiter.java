@@ -0,0 +1,131 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.RateLimit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits for calls to an exchange - one {@link RateLimiter} per class of endpoints.
+ */
+@Slf4j
+public final class ExchangeRateLimiter {
+
+    public enum EndpointClass {
+        /**
+         * Unauthenticated calls, e.g. market data.
+         */
+        PUBLIC,
+        /**
+         * Authenticated calls, e.g. balances or trade history.
+         */
+        PRIVATE,
+        /**
+         * Placing and cancelling orders.
+         */
+        TRADING
+    }
+
+    private static final RateLimit FALLBACK_PUBLIC_RATE_LIMIT = new RateLimit(1, 1, TimeUnit.SECONDS);
+
+    // e.g. kraken: a counter of max 15 that decays by 0.33 per second
+    private static final RateLimit FALLBACK_PRIVATE_RATE_LIMIT = new RateLimit(15, 45, TimeUnit.SECONDS);
+
+    /**
+     * Creates rate limiters from the given overrides or the rate limits announced in the exchange metadata.
+     * Trading calls share the limiter of private calls unless a trading limit is configured.
+     */
+    public static ExchangeRateLimiter of(ExchangeMetaData metaData, Map<EndpointClass, RateLimit> overrides) {
+        RateLimit publicRateLimit = Optional.ofNullable(overrides.get(EndpointClass.PUBLIC))
+                .or(() -> mostRestrictive(metaData == null ? null : metaData.getPublicRateLimits()))
+                .orElse(FALLBACK_PUBLIC_RATE_LIMIT);
+        RateLimit privateRateLimit = Optional.ofNullable(overrides.get(EndpointClass.PRIVATE))
+                .or(() -> mostRestrictive(metaData == null ? null : metaData.getPrivateRateLimits()))
+                .orElse(FALLBACK_PRIVATE_RATE_LIMIT);
+        Optional<RateLimit> tradingOverride = Optional.ofNullable(overrides.get(EndpointClass.TRADING));
+        // without an override, trading calls count against the private limit - and take precedence over other calls
+        boolean tradingSharesPrivateLimit = tradingOverride.isEmpty();
+        RateLimit tradingRateLimit = tradingOverride.orElse(privateRateLimit);
+
+        Map<EndpointClass, RateLimiter> rateLimiters = new EnumMap<>(EndpointClass.class);
+        if (metaData != null && metaData.isShareRateLimits()) {
+            // public and private calls count against the same limit
+            RateLimiter sharedRateLimiter = toRateLimiter(mostRestrictive(new RateLimit[]{publicRateLimit, privateRateLimit})
+                    .orElse(privateRateLimit), tradingSharesPrivateLimit);
+            rateLimiters.put(EndpointClass.PUBLIC, sharedRateLimiter);
+            rateLimiters.put(EndpointClass.PRIVATE, sharedRateLimiter);
+        } else {
+            rateLimiters.put(EndpointClass.PUBLIC, toRateLimiter(publicRateLimit, false));
+            rateLimiters.put(EndpointClass.PRIVATE, toRateLimiter(privateRateLimit, tradingSharesPrivateLimit));
+        }
+        rateLimiters.put(EndpointClass.TRADING, tradingSharesPrivateLimit
+                ? rateLimiters.get(EndpointClass.PRIVATE)
+                : toRateLimiter(tradingRateLimit, false));
+
+        log.debug("Exchange rate limits: public={}, private={}, trading={}", publicRateLimit, privateRateLimit, tradingRateLimit);
+
+        Limits limits = new Limits(Limit.of(publicRateLimit), Limit.of(privateRateLimit), Limit.of(tradingRateLimit),
+                metaData != null && metaData.isShareRateLimits(), tradingSharesPrivateLimit);
+        return new ExchangeRateLimiter(rateLimiters, limits);
+    }
+
+    private record Limit(int calls, long periodNanos) {
+        static Limit of(RateLimit rateLimit) {
+            return new Limit(rateLimit.calls, rateLimit.timeUnit.toNanos(rateLimit.timeSpan));
+        }
+    }
+
+    private record Limits(Limit publicLimit, Limit privateLimit, Limit tradingLimit, boolean shared, boolean tradingSharesPrivateLimit) {
+    }
+
+    private final Map<EndpointClass, RateLimiter> rateLimiters;
+
+    private final Limits limits;
+
+    private ExchangeRateLimiter(Map<EndpointClass, RateLimiter> rateLimiters, Limits limits) {
+        this.rateLimiters = rateLimiters;
+        this.limits = limits;
+    }
+
+    /**
+     * Returns whether both enforce the same rate limits.
+     */
+    public boolean hasSameLimits(ExchangeRateLimiter other) {
+        return limits.equals(other.limits);
+    }
+
+    /**
+     * Take a permit for a call to the given class of endpoints - waits till one is available.
+     * Trading calls have priority over other calls sharing the same limiter.
+     */
+    public void acquire(EndpointClass endpointClass) throws InterruptedException {
+        RateLimiter.Priority priority = endpointClass == EndpointClass.TRADING
+                ? RateLimiter.Priority.HIGH
+                : RateLimiter.Priority.LOW;
+        rateLimiters.get(endpointClass).acquire(priority);
+    }
+
+    public RateLimiter rateLimiter(EndpointClass endpointClass) {
+        return rateLimiters.get(endpointClass);
+    }
+
+    private static Optional<RateLimit> mostRestrictive(RateLimit[] rateLimits) {
+        return Optional.ofNullable(rateLimits).stream()
+                .flatMap(Arrays::stream)
+                .filter(Objects::nonNull)
+                .filter(it -> it.calls > 0 && it.timeSpan > 0 && it.timeUnit != null)
+                .min(Comparator.comparingDouble(it -> it.calls / (double) it.timeUnit.toNanos(it.timeSpan)));
+    }
+
+    private static RateLimiter toRateLimiter(RateLimit rateLimit, boolean sharedWithTrading) {
+        return new RateLimiter(rateLimit.calls, Duration.ofNanos(rateLimit.timeUnit.toNanos(rateLimit.timeSpan)), sharedWithTrading);
+    }
+}
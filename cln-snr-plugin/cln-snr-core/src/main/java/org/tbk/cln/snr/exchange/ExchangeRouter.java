@@ -0,0 +1,189 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.latency.LatencyStage;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes replacement orders to the exchange with the best effective price.
+ * <p>
+ * Tickers of all exchanges are fetched in parallel and ranked by their ask price plus trading fee. The price is
+ * penalised by the recent latency (p90 of fetching its ticker and placing orders) of the exchange. Exchanges that
+ * do not support the currency pair or whose minimum order amount is larger than the amount are skipped. Exchanges
+ * that did not answer within the deadline (or failed) are not skipped - they are kept as fallbacks after all
+ * ranked exchanges, in the configured order. With a single exchange, no tickers are fetched at all.
+ */
+@Slf4j
+public final class ExchangeRouter implements AutoCloseable {
+
+    private static final Duration LATENCY_WINDOW = Duration.ofMinutes(5);
+
+    private final List<ExchangeService> exchangeServices;
+
+    private final Duration tickerDeadline;
+
+    private final BigDecimal latencyPenaltyPerSecond;
+
+    private final LatencyRecorder latencyRecorder;
+
+    private final ExecutorService executor;
+
+    public ExchangeRouter(@NonNull List<ExchangeService> exchangeServices,
+                          @NonNull Duration tickerDeadline,
+                          @NonNull BigDecimal latencyPenaltyPerSecond,
+                          @NonNull LatencyRecorder latencyRecorder) {
+        if (exchangeServices.isEmpty()) {
+            throw new IllegalArgumentException("At least one exchange is required");
+        }
+        if (tickerDeadline.isZero() || tickerDeadline.isNegative()) {
+            throw new IllegalArgumentException("Ticker deadline must be positive");
+        }
+        if (latencyPenaltyPerSecond.signum() < 0) {
+            throw new IllegalArgumentException("Latency penalty must not be negative");
+        }
+        this.exchangeServices = List.copyOf(exchangeServices);
+        this.tickerDeadline = tickerDeadline;
+        this.latencyPenaltyPerSecond = latencyPenaltyPerSecond;
+        this.latencyRecorder = latencyRecorder;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "snr-router-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the exchange used for everything but placing replacement orders, e.g. rpc commands.
+     */
+    public ExchangeService primary() {
+        return exchangeServices.get(0);
+    }
+
+    public List<ExchangeService> exchangeServices() {
+        return exchangeServices;
+    }
+
+    /**
+     * Returns the exchanges to place an order of the given amount on - best first, followed by fallbacks.
+     */
+    public List<ExchangeService> route(CurrencyPair currencyPair, long amountSats) {
+        if (exchangeServices.size() == 1) {
+            return exchangeServices;
+        }
+
+        List<CompletableFuture<Optional<Quote>>> futures = exchangeServices.stream()
+                .map(it -> CompletableFuture.supplyAsync(() -> quote(it, currencyPair, amountSats), executor))
+                .toList();
+
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                    .get(tickerDeadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // slow or failing exchanges are used as fallbacks
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Quote> quotes = new ArrayList<>();
+        List<ExchangeService> fallbacks = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<Optional<Quote>> future = futures.get(i);
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                future.join().ifPresent(quotes::add);
+            } else {
+                log.debug("No ticker from {} within {} - using it as fallback", exchangeServices.get(i).getExchangeName(), tickerDeadline);
+                fallbacks.add(exchangeServices.get(i));
+            }
+        }
+
+        quotes.sort(Comparator.comparing(Quote::getScore));
+
+        if (log.isDebugEnabled()) {
+            quotes.forEach(it -> log.debug("Quote for {} sat on {}: {} (score: {})", amountSats,
+                    it.getExchangeService().getExchangeName(), it.getEffectivePrice().toPlainString(), it.getScore().toPlainString()));
+        }
+
+        List<ExchangeService> route = new ArrayList<>(quotes.size() + fallbacks.size());
+        quotes.forEach(it -> route.add(it.getExchangeService()));
+        route.addAll(fallbacks);
+
+        if (route.isEmpty()) {
+            // no exchange accepts the amount - let the caller handle it with the primary exchange
+            return List.of(primary());
+        }
+        return route;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Optional<Quote> quote(ExchangeService exchangeService, CurrencyPair currencyPair, long amountSats) {
+        Optional<InstrumentSpec> spec = exchangeService.getExchangeMetaData().get().getInstrumentIndex().find(currencyPair);
+        if (spec.isEmpty() || amountSats < spec.get().getMinimumAmountSats()) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        Ticker ticker = exchangeService.fetchTicker(currencyPair);
+        latencyRecorder.recordSince(exchangeService.getExchangeName(), LatencyStage.QUOTE, start);
+
+        if (ticker.getAsk() == null) {
+            return Optional.empty();
+        }
+
+        BigDecimal effectivePrice = effectivePrice(ticker.getAsk(), spec.get().getTradingFee());
+        return Optional.of(new Quote(exchangeService, effectivePrice, penalise(effectivePrice, latencyMicros(exchangeService))));
+    }
+
+    private long latencyMicros(ExchangeService exchangeService) {
+        return latencyRecorder.summary(exchangeService.getExchangeName(), LatencyStage.QUOTE, LATENCY_WINDOW)
+                .map(LatencyRecorder.Summary::getP90).orElse(0L)
+                + latencyRecorder.summary(exchangeService.getExchangeName(), LatencyStage.PLACE_ORDER, LATENCY_WINDOW)
+                .map(LatencyRecorder.Summary::getP90).orElse(0L);
+    }
+
+    /**
+     * Returns the price of one bitcoin including the trading fee.
+     */
+    static BigDecimal effectivePrice(BigDecimal ask, BigDecimal tradingFee) {
+        return tradingFee == null ? ask : ask.multiply(BigDecimal.ONE.add(tradingFee));
+    }
+
+    /**
+     * Returns the price increased by the latency penalty, e.g. 0.1% per second of latency.
+     */
+    BigDecimal penalise(BigDecimal price, long latencyMicros) {
+        BigDecimal latencySeconds = BigDecimal.valueOf(latencyMicros).movePointLeft(6);
+        return price.multiply(BigDecimal.ONE.add(latencyPenaltyPerSecond.multiply(latencySeconds)), MathContext.DECIMAL64);
+    }
+
+    @Value
+    private static class Quote {
+        ExchangeService exchangeService;
+        BigDecimal effectivePrice;
+        BigDecimal score;
+    }
+}
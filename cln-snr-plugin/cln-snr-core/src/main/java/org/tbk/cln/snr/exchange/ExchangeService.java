@@ -1,26 +1,22 @@
 package org.tbk.cln.snr.exchange;
 
 import fr.acinq.bitcoin.Satoshi;
+import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.Order;
 import org.knowm.xchange.dto.marketdata.Ticker;
-import org.knowm.xchange.dto.meta.InstrumentMetaData;
 import org.knowm.xchange.dto.trade.LimitOrder;
 import org.knowm.xchange.dto.trade.MarketOrder;
-import org.knowm.xchange.service.marketdata.params.CurrencyPairsParam;
 import org.knowm.xchange.service.trade.TradeService;
-import org.knowm.xchange.utils.OrderValuesHelper;
+import org.tbk.cln.snr.exchange.stream.TopOfBook;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.List;
 import java.util.Optional;
 
-@RequiredArgsConstructor
 public final class ExchangeService {
 
     // Run in demo with massively undervalued order!
@@ -32,27 +28,52 @@ public final class ExchangeService {
     // most exchange settings have 0.00001 included (e.g. kraken.json in v5.1.0)
     private static final Satoshi FALLBACK_MIN_AMOUNT = new Satoshi(1_000L);
 
-    private static void initExchangeIfNecessary(Exchange exchange) {
-        try {
-            boolean needsInit = exchange.getExchangeMetaData() == null || exchange.getExchangeMetaData().getInstruments() == null;
-            if (needsInit) {
-                exchange.remoteInit();
-            }
-        } catch (Exception e) {
-            throw new IllegalStateException("Could not initialize exchange", e);
-        }
-    }
-
+    @Getter
     @NonNull
     private final Exchange exchange;
 
+    @Getter
+    @NonNull
+    private final ExchangeMetaDataHolder exchangeMetaData;
+
+    private final TickerCache tickerCache;
+
+    // null if market data is not streamed
+    private final TopOfBook topOfBook;
+
+    public ExchangeService(Exchange exchange, ExchangeMetaDataHolder exchangeMetaData, TickerCache tickerCache) {
+        this(exchange, exchangeMetaData, tickerCache, null);
+    }
+
+    public ExchangeService(@NonNull Exchange exchange,
+                           @NonNull ExchangeMetaDataHolder exchangeMetaData,
+                           @NonNull TickerCache tickerCache,
+                           TopOfBook topOfBook) {
+        this.exchange = exchange;
+        this.exchangeMetaData = exchangeMetaData;
+        this.tickerCache = tickerCache;
+        this.topOfBook = topOfBook;
+    }
+
+    /**
+     * Returns the name of the exchange - or the simple name of its class if no name is configured.
+     */
+    public String getExchangeName() {
+        String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        return exchangeName != null ? exchangeName : exchange.getClass().getSimpleName();
+    }
+
     public MarketOrder.Builder createMarketOrder(CurrencyPair currencyPair, Satoshi amount) {
-        initExchangeIfNecessary(exchange);
+        return createMarketOrder(currencyPair, amount.toLong());
+    }
 
-        InstrumentMetaData instrumentMetaData = exchange.getExchangeMetaData().getInstruments().get(currencyPair);
-        OrderValuesHelper orderValuesHelper = new OrderValuesHelper(instrumentMetaData);
+    /**
+     * Creates a market order for the given amount - without boxing it, e.g. while replacing a payment.
+     */
+    public MarketOrder.Builder createMarketOrder(CurrencyPair currencyPair, long amountSats) {
+        InstrumentSpec spec = exchangeMetaData.get().getInstrumentIndex().require(currencyPair);
 
-        BigDecimal bitcoinAmount = orderValuesHelper.adjustAmount(ConversionUtils.satsToBtc(amount));
+        BigDecimal bitcoinAmount = spec.getOrderValuesHelper().adjustAmount(SatoshiMath.satsToBtc(amountSats));
 
         MarketOrder marketOrder = new MarketOrder.Builder(Order.OrderType.BID, currencyPair)
                 .originalAmount(bitcoinAmount)
@@ -62,8 +83,6 @@ public final class ExchangeService {
     }
 
     public OrderId placeOrder(Order order) throws IOException {
-        initExchangeIfNecessary(exchange);
-
         TradeService tradeService = exchange.getTradeService();
         if (order instanceof MarketOrder marketOrder) {
             return OrderId.of(tradeService.placeMarketOrder(marketOrder));
@@ -77,55 +96,44 @@ public final class ExchangeService {
     }
 
     public LimitOrder.Builder createTestLimitOrder(CurrencyPair currencyPair) {
-        initExchangeIfNecessary(exchange);
-
         Satoshi amount = minimumOrderAmount(currencyPair);
 
         return createTestLimitOrder(currencyPair, amount);
     }
 
     public LimitOrder.Builder createTestLimitOrder(CurrencyPair currencyPair, Satoshi amount) {
-        initExchangeIfNecessary(exchange);
+        return createTestLimitOrder(currencyPair, amount.toLong());
+    }
 
+    public LimitOrder.Builder createTestLimitOrder(CurrencyPair currencyPair, long amountSats) {
         Ticker ticker = this.fetchTicker(currencyPair);
         BigDecimal buyingPrice = ticker.getBid().multiply(TEST_LIMIT_ORDER_PRICE_FACTOR);
 
-        return createLimitOrder(currencyPair, amount, buyingPrice);
+        return createLimitOrder(currencyPair, amountSats, buyingPrice);
     }
 
-    private LimitOrder.Builder createLimitOrder(CurrencyPair currencyPair, Satoshi amount, BigDecimal buyingPrice) {
-        initExchangeIfNecessary(exchange);
+    private LimitOrder.Builder createLimitOrder(CurrencyPair currencyPair, long amountSats, BigDecimal buyingPrice) {
+        InstrumentSpec spec = exchangeMetaData.get().getInstrumentIndex().require(currencyPair);
 
-        InstrumentMetaData instrumentMetaData = exchange.getExchangeMetaData().getInstruments().get(currencyPair);
-        OrderValuesHelper orderValuesHelper = new OrderValuesHelper(instrumentMetaData);
+        BigDecimal adjustedBuyingPrice = spec.getOrderValuesHelper().adjustPrice(buyingPrice, RoundingMode.CEILING);
 
-        BigDecimal adjustedBuyingPrice = orderValuesHelper.adjustPrice(buyingPrice, RoundingMode.CEILING);
-
-        return LimitOrder.Builder.from(createMarketOrder(currencyPair, amount).build())
+        return LimitOrder.Builder.from(createMarketOrder(currencyPair, amountSats).build())
                 .limitPrice(adjustedBuyingPrice);
     }
 
     private Satoshi minimumOrderAmount(CurrencyPair currencyPair) {
-        initExchangeIfNecessary(exchange);
-        return Optional.ofNullable(exchange.getExchangeMetaData().getInstruments().get(currencyPair))
-                .map(InstrumentMetaData::getMinimumAmount)
-                .map(ConversionUtils::btcToSats)
+        return exchangeMetaData.get().getInstrumentIndex().find(currencyPair)
+                .map(InstrumentSpec::getMinimumAmountSats)
+                .filter(it -> it > 0L)
+                .map(Satoshi::new)
                 .orElse(FALLBACK_MIN_AMOUNT);
     }
 
-    private Ticker fetchTicker(CurrencyPair currencyPair) {
-        initExchangeIfNecessary(exchange);
-
-        try {
-            CurrencyPairsParam currencyPairsParam = () -> List.of(currencyPair);
-            return exchange.getMarketDataService().getTickers(currencyPairsParam).stream()
-                    .filter(it -> currencyPair.equals(it.getInstrument()))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Could not find ticker data for currency pair."));
-        } catch (Exception e) {
-            String errorMessage = String.format("Could not fetch ticker from '%s' for currency pair '%s'.",
-                    exchange.getExchangeSpecification().getExchangeName(), currencyPair);
-            throw new IllegalStateException(errorMessage, e);
-        }
+    /**
+     * Returns the streamed ticker of the currency pair if available - or a (cached) ticker fetched via REST.
+     */
+    public Ticker fetchTicker(CurrencyPair currencyPair) {
+        Optional<Ticker> streamedTicker = topOfBook != null ? topOfBook.get(currencyPair) : Optional.empty();
+        return streamedTicker.orElseGet(() -> tickerCache.get(currencyPair));
     }
 }
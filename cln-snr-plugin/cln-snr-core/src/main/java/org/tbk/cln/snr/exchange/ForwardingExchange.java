@@ -0,0 +1,191 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.client.ResilienceRegistries;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.instrument.Instrument;
+import org.knowm.xchange.service.account.AccountService;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+import org.knowm.xchange.service.trade.TradeService;
+import si.mazi.rescu.SynchronizedValueFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An {@link Exchange} that forwards all calls to another exchange. Calls to its services can be intercepted
+ * by overriding {@link #invokeService}.
+ */
+public abstract class ForwardingExchange implements Exchange {
+
+    public enum ServiceType {
+        MARKET_DATA,
+        TRADE,
+        ACCOUNT
+    }
+
+    /**
+     * A call to a service of the underlying exchange.
+     */
+    protected interface ServiceCall {
+        /**
+         * Performs the call - can be invoked multiple times, e.g. to retry a failed call.
+         */
+        Object proceed() throws Throwable;
+
+        /**
+         * Returns the arguments the service method has been invoked with.
+         */
+        default Object[] arguments() {
+            return new Object[0];
+        }
+    }
+
+    private final Exchange delegate;
+
+    // all fields below are guarded by "this"
+    private MarketDataService marketDataService;
+    private TradeService tradeService;
+    private AccountService accountService;
+
+    protected ForwardingExchange(@NonNull Exchange delegate) {
+        this.delegate = delegate;
+    }
+
+    public Exchange getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Invoked on every call to a service of the underlying exchange - implementations must invoke
+     * {@link ServiceCall#proceed()} to perform the call.
+     */
+    protected abstract Object invokeService(ServiceType serviceType, Method method, ServiceCall call) throws Throwable;
+
+    /**
+     * Invoked after a new specification has been applied to the underlying exchange.
+     */
+    protected void onSpecificationApplied() {
+    }
+
+    /**
+     * Returns whether the method performs a remote call, i.e. declares to throw an {@link IOException}.
+     */
+    protected static boolean isRemoteCall(Method method) {
+        return Arrays.stream(method.getExceptionTypes()).anyMatch(IOException.class::isAssignableFrom);
+    }
+
+    @Override
+    public ExchangeSpecification getExchangeSpecification() {
+        return delegate.getExchangeSpecification();
+    }
+
+    @Override
+    public ExchangeMetaData getExchangeMetaData() {
+        return delegate.getExchangeMetaData();
+    }
+
+    @Override
+    public List<Instrument> getExchangeInstruments() {
+        return delegate.getExchangeInstruments();
+    }
+
+    @Override
+    public SynchronizedValueFactory<Long> getNonceFactory() {
+        return delegate.getNonceFactory();
+    }
+
+    @Override
+    public ResilienceRegistries getResilienceRegistries() {
+        return delegate.getResilienceRegistries();
+    }
+
+    @Override
+    public ExchangeSpecification getDefaultExchangeSpecification() {
+        return delegate.getDefaultExchangeSpecification();
+    }
+
+    @Override
+    public void applySpecification(ExchangeSpecification exchangeSpecification) {
+        delegate.applySpecification(exchangeSpecification);
+        synchronized (this) {
+            // services might have changed
+            this.marketDataService = null;
+            this.tradeService = null;
+            this.accountService = null;
+        }
+        onSpecificationApplied();
+    }
+
+    @Override
+    public synchronized MarketDataService getMarketDataService() {
+        if (marketDataService == null) {
+            marketDataService = wrap(ServiceType.MARKET_DATA, MarketDataService.class, delegate.getMarketDataService());
+        }
+        return marketDataService;
+    }
+
+    @Override
+    public synchronized TradeService getTradeService() {
+        if (tradeService == null) {
+            tradeService = wrap(ServiceType.TRADE, TradeService.class, delegate.getTradeService());
+        }
+        return tradeService;
+    }
+
+    @Override
+    public synchronized AccountService getAccountService() {
+        if (accountService == null) {
+            accountService = wrap(ServiceType.ACCOUNT, AccountService.class, delegate.getAccountService());
+        }
+        return accountService;
+    }
+
+    @Override
+    public void remoteInit() throws IOException {
+        delegate.remoteInit();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + delegate + "]";
+    }
+
+    private <T> T wrap(ServiceType serviceType, Class<T> serviceClass, T service) {
+        if (service == null) {
+            return null;
+        }
+        Object proxy = Proxy.newProxyInstance(serviceClass.getClassLoader(), new Class<?>[]{serviceClass}, (it, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> it == args[0];
+                    case "hashCode" -> System.identityHashCode(it);
+                    case "toString" -> getClass().getSimpleName() + "[" + service + "]";
+                    default -> method.invoke(service, args);
+                };
+            }
+            return invokeService(serviceType, method, new ServiceCall() {
+                @Override
+                public Object proceed() throws Throwable {
+                    try {
+                        return method.invoke(service, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+
+                @Override
+                public Object[] arguments() {
+                    return args == null ? new Object[0] : args.clone();
+                }
+            });
+        });
+        return serviceClass.cast(proxy);
+    }
+}
@@ -0,0 +1,59 @@
+package org.tbk.cln.snr.exchange;
+
+import org.knowm.xchange.dto.meta.InstrumentMetaData;
+import org.knowm.xchange.instrument.Instrument;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Precomputed {@link InstrumentSpec}s of all instruments of an exchange.
+ * <p>
+ * Lookups are a single hash lookup - in contrast to {@code Exchange#getExchangeInstruments()}, which creates
+ * a new list of all instruments on every call.
+ */
+public final class InstrumentIndex {
+
+    static InstrumentIndex of(Map<Instrument, InstrumentMetaData> instruments) {
+        Map<Instrument, InstrumentSpec> specs = new HashMap<>(instruments.size() * 2);
+        instruments.forEach((instrument, metaData) -> {
+            if (instrument != null && metaData != null) {
+                specs.put(instrument, InstrumentSpec.of(instrument, metaData));
+            }
+        });
+        return new InstrumentIndex(Collections.unmodifiableMap(specs));
+    }
+
+    private final Map<Instrument, InstrumentSpec> specs;
+
+    private InstrumentIndex(Map<Instrument, InstrumentSpec> specs) {
+        this.specs = specs;
+    }
+
+    public boolean supports(Instrument instrument) {
+        return specs.containsKey(instrument);
+    }
+
+    public Optional<InstrumentSpec> find(Instrument instrument) {
+        return Optional.ofNullable(specs.get(instrument));
+    }
+
+    /**
+     * Returns the spec of the given instrument.
+     *
+     * @throws IllegalStateException if the instrument is not supported by the exchange
+     */
+    public InstrumentSpec require(Instrument instrument) {
+        InstrumentSpec spec = specs.get(instrument);
+        if (spec == null) {
+            throw new IllegalStateException("Currency pair is not supported: " + instrument);
+        }
+        return spec;
+    }
+
+    public int size() {
+        return specs.size();
+    }
+}
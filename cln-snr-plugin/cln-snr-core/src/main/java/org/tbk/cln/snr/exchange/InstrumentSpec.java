@@ -0,0 +1,63 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+import lombok.Value;
+import org.knowm.xchange.dto.meta.InstrumentMetaData;
+import org.knowm.xchange.instrument.Instrument;
+import org.knowm.xchange.utils.OrderValuesHelper;
+
+import java.math.BigDecimal;
+
+/**
+ * Everything needed to create orders for a single instrument - resolved once per metadata snapshot.
+ */
+@Value
+public class InstrumentSpec {
+
+    static InstrumentSpec of(Instrument instrument, InstrumentMetaData metaData) {
+        return new InstrumentSpec(
+                instrument,
+                metaData,
+                metaData.getVolumeScale(),
+                metaData.getPriceScale(),
+                metaData.getMinimumAmount(),
+                metaData.getMinimumAmount() == null ? 0L : SatoshiMath.btcToSatsCeiling(metaData.getMinimumAmount()),
+                metaData.getTradingFee(),
+                new OrderValuesHelper(metaData)
+        );
+    }
+
+    @NonNull
+    Instrument instrument;
+
+    @NonNull
+    InstrumentMetaData metaData;
+
+    /**
+     * Number of decimal places of order amounts - `null` if unknown.
+     */
+    Integer amountScale;
+
+    /**
+     * Number of decimal places of order prices - `null` if unknown.
+     */
+    Integer priceScale;
+
+    /**
+     * Minimum order amount - `null` if unknown.
+     */
+    BigDecimal minimumAmount;
+
+    /**
+     * Minimum order amount in satoshi (rounded up) - `0` if unknown.
+     */
+    long minimumAmountSats;
+
+    /**
+     * Trading fee as fraction of the order value (e.g. 0.0026 for 0.26%) - `null` if unknown.
+     */
+    BigDecimal tradingFee;
+
+    @NonNull
+    OrderValuesHelper orderValuesHelper;
+}
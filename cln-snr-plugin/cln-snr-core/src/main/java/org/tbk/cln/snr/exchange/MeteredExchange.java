@@ -0,0 +1,55 @@
+package org.tbk.cln.snr.exchange;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.NonNull;
+import org.knowm.xchange.Exchange;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+/**
+ * An {@link Exchange} that records the latency of all remote calls (methods declaring {@link IOException}) as
+ * timer {@code snr.exchange.calls} - tagged by exchange, service, method and outcome.
+ */
+public final class MeteredExchange extends ForwardingExchange {
+
+    public static final String METRIC_NAME = "snr.exchange.calls";
+
+    private final MeterRegistry meterRegistry;
+
+    public MeteredExchange(Exchange delegate, @NonNull MeterRegistry meterRegistry) {
+        super(delegate);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected Object invokeService(ServiceType serviceType, Method method, ServiceCall call) throws Throwable {
+        if (!isRemoteCall(method)) {
+            return call.proceed();
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            Object result = call.proceed();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder(METRIC_NAME)
+                    .description("Latency of calls to the exchange")
+                    .tag("exchange", exchangeName())
+                    .tag("service", serviceType.name().toLowerCase(Locale.US))
+                    .tag("method", method.getName())
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    private String exchangeName() {
+        String exchangeName = getExchangeSpecification().getExchangeName();
+        return exchangeName == null ? "unknown" : exchangeName;
+    }
+}
@@ -0,0 +1,100 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.RateLimit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link Exchange} whose remote calls are throttled client-side, so that the exchange's rate limits are never
+ * exceeded - even if multiple components (replacements, rpc commands, metadata refreshes) call it concurrently.
+ * <p>
+ * Rate limits are taken from the given overrides or the exchange metadata - the limiters are rebuilt if refreshed
+ * metadata announces different limits (starting with all permits available). Placing and cancelling orders have
+ * priority over all other calls. Only methods that actually perform a remote call (declaring {@link IOException})
+ * are throttled.
+ * <p>
+ * Wrap a {@link ResilientExchange} (not the other way round): a permit is acquired before the deadline of a call
+ * starts - waiting for one does not count as a timed out attempt, and a call that has never been sent fails
+ * cleanly instead of with an unknown outcome. Retries of the wrapped exchange acquire a new permit.
+ */
+public final class RateLimitedExchange extends ForwardingExchange {
+
+    private static final Set<String> TRADING_METHOD_PREFIXES = Set.of("place", "cancel", "changeOrder");
+
+    private final Map<ExchangeRateLimiter.EndpointClass, RateLimit> overrides;
+
+    // guarded by "this"
+    private ExchangeRateLimiter rateLimiter;
+    private ExchangeMetaData rateLimiterMetaData;
+
+    public RateLimitedExchange(Exchange delegate, @NonNull Map<ExchangeRateLimiter.EndpointClass, RateLimit> overrides) {
+        super(delegate);
+        this.overrides = Map.copyOf(overrides);
+        if (delegate instanceof ResilientExchange resilientExchange) {
+            resilientExchange.throttleRetries((serviceType, method) -> acquire(endpointClass(serviceType, method)));
+        }
+    }
+
+    public synchronized ExchangeRateLimiter getRateLimiter() {
+        ExchangeMetaData metaData = getDelegate().getExchangeMetaData();
+        if (rateLimiter == null) {
+            rateLimiter = ExchangeRateLimiter.of(metaData, overrides);
+        } else if (metaData != rateLimiterMetaData) {
+            // e.g. the metadata has been reloaded - keep the state of the limiters unless the limits changed
+            ExchangeRateLimiter refreshed = ExchangeRateLimiter.of(metaData, overrides);
+            if (!refreshed.hasSameLimits(rateLimiter)) {
+                rateLimiter = refreshed;
+            }
+        }
+        rateLimiterMetaData = metaData;
+        return rateLimiter;
+    }
+
+    @Override
+    public void remoteInit() throws IOException {
+        acquire(ExchangeRateLimiter.EndpointClass.PUBLIC);
+        super.remoteInit();
+    }
+
+    @Override
+    protected Object invokeService(ServiceType serviceType, Method method, ServiceCall call) throws Throwable {
+        if (isRemoteCall(method)) {
+            acquire(endpointClass(serviceType, method));
+        }
+        return call.proceed();
+    }
+
+    @Override
+    protected synchronized void onSpecificationApplied() {
+        // rate limits might have changed
+        this.rateLimiter = null;
+    }
+
+    private void acquire(ExchangeRateLimiter.EndpointClass endpointClass) throws InterruptedIOException {
+        try {
+            getRateLimiter().acquire(endpointClass);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for rate limit");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private static ExchangeRateLimiter.EndpointClass endpointClass(ServiceType serviceType, Method method) {
+        return switch (serviceType) {
+            case MARKET_DATA -> ExchangeRateLimiter.EndpointClass.PUBLIC;
+            case ACCOUNT -> ExchangeRateLimiter.EndpointClass.PRIVATE;
+            case TRADE -> TRADING_METHOD_PREFIXES.stream().anyMatch(it -> method.getName().startsWith(it))
+                    ? ExchangeRateLimiter.EndpointClass.TRADING
+                    : ExchangeRateLimiter.EndpointClass.PRIVATE;
+        };
+    }
+}
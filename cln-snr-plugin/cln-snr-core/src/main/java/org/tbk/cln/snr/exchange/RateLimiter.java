@@ -0,0 +1,134 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket: holds up to {@code calls} tokens and refills {@code calls} tokens per {@code period}.
+ * This is equivalent to a decaying call counter as used by some exchanges (e.g. kraken).
+ * <p>
+ * High priority callers are preferred: low priority callers cannot take the last token (if the bucket holds
+ * more than one) and have to wait as long as a high priority caller is waiting.
+ */
+public final class RateLimiter {
+
+    public enum Priority {
+        HIGH,
+        LOW
+    }
+
+    private final double capacity;
+
+    private final double tokensPerNano;
+
+    private final double reservedForHighPriority;
+
+    private final LongSupplier nanoTime;
+
+    // all fields below are guarded by "this"
+    private double tokens;
+    private long lastRefillNanos;
+    private int waitingHighPriority;
+
+    public RateLimiter(int calls, Duration period) {
+        this(calls, period, true);
+    }
+
+    /**
+     * Creates a limiter that optionally does not reserve its last token for high priority callers.
+     *
+     * @param reserveForHighPriority whether the last token is reserved for high priority callers - only useful if
+     *                               high and low priority callers share this limiter
+     */
+    public RateLimiter(int calls, Duration period, boolean reserveForHighPriority) {
+        this(calls, period, reserveForHighPriority, System::nanoTime);
+    }
+
+    RateLimiter(int calls, Duration period, LongSupplier nanoTime) {
+        this(calls, period, true, nanoTime);
+    }
+
+    RateLimiter(int calls, @NonNull Duration period, boolean reserveForHighPriority, @NonNull LongSupplier nanoTime) {
+        if (calls <= 0) {
+            throw new IllegalArgumentException("Calls must be positive");
+        }
+        if (period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        this.capacity = calls;
+        this.tokensPerNano = calls / (double) period.toNanos();
+        this.reservedForHighPriority = reserveForHighPriority && calls > 1 ? 1d : 0d;
+        this.nanoTime = nanoTime;
+        this.tokens = calls;
+        this.lastRefillNanos = nanoTime.getAsLong();
+    }
+
+    /**
+     * Take a token without waiting.
+     *
+     * @return true if a token has been taken
+     */
+    public synchronized boolean tryAcquire(Priority priority) {
+        refill();
+        if (priority == Priority.LOW && waitingHighPriority > 0) {
+            return false;
+        }
+        double required = required(priority);
+        if (tokens >= required) {
+            tokens -= 1d;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Take a token - waits till one is available.
+     */
+    public synchronized void acquire(Priority priority) throws InterruptedException {
+        boolean highPriority = priority == Priority.HIGH;
+        if (highPriority) {
+            waitingHighPriority++;
+        }
+        try {
+            while (true) {
+                refill();
+                boolean blockedByHighPriority = !highPriority && waitingHighPriority > 0;
+                double required = required(priority);
+                if (!blockedByHighPriority && tokens >= required) {
+                    tokens -= 1d;
+                    return;
+                }
+                long waitNanos = blockedByHighPriority
+                        ? TimeUnit.MILLISECONDS.toNanos(10)
+                        : (long) Math.ceil((required - tokens) / tokensPerNano);
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        } finally {
+            if (highPriority) {
+                waitingHighPriority--;
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized double availableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private double required(Priority priority) {
+        return priority == Priority.HIGH ? 1d : 1d + reservedForHighPriority;
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
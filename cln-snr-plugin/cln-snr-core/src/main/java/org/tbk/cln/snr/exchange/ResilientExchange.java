@@ -0,0 +1,264 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.dto.Order;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Exchange} whose remote calls are guarded by deadlines, bounded retries and a circuit breaker.
+ * <p>
+ * Every attempt is abandoned after {@code attemptTimeout}, all attempts of a call together after
+ * {@code deadline} - a hung http call does not pin the caller indefinitely. Failed attempts (i.e. I/O errors and
+ * timeouts) are retried with exponential backoff and jitter - but only for calls that are safe to repeat: reading
+ * data and cancelling orders. Placing orders is only retried if the order carries a user reference and
+ * {@code retryOrdersWithUserReference} is enabled, which must only be done for exchanges that reject duplicate
+ * orders by user reference.
+ * <p>
+ * A timed out order is not necessarily rejected: the exchange might execute it anyway. Such orders are left to
+ * complete in the background and fail with an {@link OutcomeUnknownException} - the caller must not treat them
+ * as failed, but resolve their outcome later, e.g. by user reference from the trade history.
+ * <p>
+ * If wrapped by a {@link RateLimitedExchange}, retries acquire a new permit from its rate limiter - outside of the
+ * deadlines: time spent waiting for a permit is not counted as time spent on the call.
+ * <p>
+ * Consecutive failures open the {@link CircuitBreaker} of the exchange: while open, calls fail immediately
+ * with a {@link CircuitOpenException}. Errors reported by the exchange itself (e.g. insufficient funds) prove that the
+ * exchange is reachable - they are neither retried nor counted as failures.
+ */
+@Slf4j
+public final class ResilientExchange extends ForwardingExchange {
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    // threads of abandoned calls finish in the background - e.g. when the http read timeout is reached
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "snr-exchange-call-" + threadCounter.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Policy {
+        @NonNull
+        @Builder.Default
+        Duration attemptTimeout = Duration.ofSeconds(10);
+
+        @NonNull
+        @Builder.Default
+        Duration deadline = Duration.ofSeconds(30);
+
+        @Builder.Default
+        int maxAttempts = 3;
+
+        @NonNull
+        @Builder.Default
+        Duration initialBackoff = Duration.ofMillis(200);
+
+        @NonNull
+        @Builder.Default
+        Duration maxBackoff = Duration.ofSeconds(5);
+
+        @Builder.Default
+        int failureThreshold = 5;
+
+        @NonNull
+        @Builder.Default
+        Duration openDuration = Duration.ofSeconds(30);
+
+        boolean retryOrdersWithUserReference;
+    }
+
+    /**
+     * Thrown instead of performing a call while the circuit breaker of the exchange is open.
+     */
+    public static final class CircuitOpenException extends IOException {
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown if placing an order timed out - the order might have been executed by the exchange anyway.
+     */
+    public static final class OutcomeUnknownException extends InterruptedIOException {
+        OutcomeUnknownException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Blocks till a remote call may be performed.
+     */
+    @FunctionalInterface
+    interface Throttle {
+        Throttle NONE = (serviceType, method) -> {
+        };
+
+        void acquire(ServiceType serviceType, Method method) throws InterruptedIOException;
+    }
+
+    private final Policy policy;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private volatile Throttle retryThrottle = Throttle.NONE;
+
+    public ResilientExchange(Exchange delegate, @NonNull Policy policy) {
+        super(delegate);
+        if (policy.getMaxAttempts() <= 0) {
+            throw new IllegalArgumentException("Max attempts must be positive");
+        }
+        this.policy = policy;
+        this.circuitBreaker = new CircuitBreaker(exchangeName(delegate), policy.getFailureThreshold(), policy.getOpenDuration());
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    void throttleRetries(@NonNull Throttle throttle) {
+        this.retryThrottle = throttle;
+    }
+
+    @Override
+    protected Object invokeService(ServiceType serviceType, Method method, ServiceCall call) throws Throwable {
+        if (!isRemoteCall(method)) {
+            return call.proceed();
+        }
+
+        int maxAttempts = isRetryable(method, call.arguments()) ? policy.getMaxAttempts() : 1;
+        long deadlineNanos = System.nanoTime() + policy.getDeadline().toNanos();
+
+        for (int attempt = 1; ; attempt++) {
+            if (attempt > 1) {
+                long waitStartNanos = System.nanoTime();
+                retryThrottle.acquire(serviceType, method);
+                deadlineNanos += System.nanoTime() - waitStartNanos;
+            }
+            if (!circuitBreaker.tryAcquirePermission()) {
+                throw new CircuitOpenException(String.format("Circuit breaker of %s is open - not calling %s (retry in %s)",
+                        circuitBreaker.getName(), method.getName(), circuitBreaker.remainingOpenDuration()));
+            }
+
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            Duration attemptTimeout = Duration.ofNanos(Math.min(policy.getAttemptTimeout().toNanos(), Math.max(remainingNanos, 0L)));
+            try {
+                Object result = callWithTimeout(method, call, attemptTimeout, isIdempotent(method));
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (IOException e) {
+                circuitBreaker.onFailure();
+
+                Duration backoff = backoff(attempt);
+                boolean hasTimeLeft = deadlineNanos - System.nanoTime() > backoff.toNanos();
+                if (attempt >= maxAttempts || !hasTimeLeft) {
+                    throw e;
+                }
+                log.debug("Attempt {} of {} on {} failed - retrying in {}: {}", attempt, method.getName(),
+                        circuitBreaker.getName(), backoff, e.getMessage());
+                sleep(backoff);
+            } catch (Throwable e) {
+                // the exchange answered - it is healthy even if it rejected the call
+                circuitBreaker.onSuccess();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a failed call can be repeated without changing the outcome.
+     */
+    private boolean isRetryable(Method method, Object[] arguments) {
+        if (isIdempotent(method)) {
+            return true;
+        }
+        if (method.getName().startsWith("place") && policy.isRetryOrdersWithUserReference()) {
+            return Arrays.stream(arguments)
+                    .filter(Order.class::isInstance)
+                    .map(Order.class::cast)
+                    .anyMatch(it -> it.getUserReference() != null && !it.getUserReference().isBlank());
+        }
+        return false;
+    }
+
+    private static boolean isIdempotent(Method method) {
+        String name = method.getName();
+        return name.startsWith("get") || name.startsWith("cancel");
+    }
+
+    /**
+     * Returns the exponential backoff of the attempt with "equal jitter": half of it fixed, half of it random.
+     */
+    Duration backoff(int attempt) {
+        long exponentialMillis = policy.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20);
+        long cappedMillis = Math.min(exponentialMillis, policy.getMaxBackoff().toMillis());
+        long halfMillis = cappedMillis / 2;
+        return Duration.ofMillis(halfMillis + ThreadLocalRandom.current().nextLong(halfMillis + 1));
+    }
+
+    private static Object callWithTimeout(Method method, ServiceCall call, Duration timeout, boolean idempotent) throws Throwable {
+        Callable<Object> task = () -> {
+            try {
+                return call.proceed();
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        Future<Object> future = executor.submit(task);
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            if (!idempotent) {
+                // the request might have reached the exchange already - interrupting it would not revoke it
+                throw new OutcomeUnknownException(String.format("Call %s timed out after %s - outcome is unknown", method.getName(), timeout));
+            }
+            future.cancel(true);
+            throw new InterruptedIOException(String.format("Call %s timed out after %s", method.getName(), timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!idempotent) {
+                throw new OutcomeUnknownException("Interrupted while waiting for " + method.getName() + " - outcome is unknown");
+            }
+            future.cancel(true);
+            throw new InterruptedIOException("Interrupted while waiting for " + method.getName());
+        }
+    }
+
+    private static void sleep(Duration duration) throws InterruptedIOException {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for retry");
+        }
+    }
+
+    private static String exchangeName(Exchange exchange) {
+        String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        return exchangeName != null ? exchangeName : exchange.getClass().getSimpleName();
+    }
+}
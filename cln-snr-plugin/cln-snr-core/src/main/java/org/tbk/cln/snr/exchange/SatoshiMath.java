@@ -0,0 +1,109 @@
+package org.tbk.cln.snr.exchange;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic on amounts given as plain {@code long}s of satoshi or millisatoshi.
+ * <p>
+ * Amounts are converted to {@link BigDecimal} only when handed over to XChange. All results are exactly equal to
+ * the {@link BigDecimal} based counterparts (e.g. {@link ConversionUtils}), but most of them do not allocate.
+ */
+public final class SatoshiMath {
+
+    private SatoshiMath() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static final int BTC_FRACTION_DIGITS = 8;
+
+    public static final long MSAT_PER_SAT = 1_000L;
+
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L
+    };
+
+    /**
+     * Returns the whole satoshi of a millisatoshi amount - same as {@code MilliSatoshi#truncateToSatoshi()}.
+     */
+    public static long msatToSat(long msat) {
+        return msat / MSAT_PER_SAT;
+    }
+
+    /**
+     * Returns the millisatoshi of a satoshi amount.
+     *
+     * @throws ArithmeticException on overflow
+     */
+    public static long satToMsat(long sat) {
+        return Math.multiplyExact(sat, MSAT_PER_SAT);
+    }
+
+    /**
+     * Returns the sub-satoshi remainder of a millisatoshi amount.
+     */
+    public static long subSatMsat(long msat) {
+        return msat % MSAT_PER_SAT;
+    }
+
+    /**
+     * Returns the bitcoin value of a satoshi amount with a scale of 8 - same as {@link ConversionUtils#satsToBtc}.
+     */
+    public static BigDecimal satsToBtc(long sats) {
+        return BigDecimal.valueOf(sats, BTC_FRACTION_DIGITS);
+    }
+
+    /**
+     * Returns the satoshi of a bitcoin value - same as {@link ConversionUtils#btcToSats}.
+     *
+     * @throws ArithmeticException if the value has a fraction of a satoshi
+     */
+    public static long btcToSats(BigDecimal btc) {
+        int scale = btc.scale();
+        if (scale >= 0 && scale <= BTC_FRACTION_DIGITS && btc.precision() + BTC_FRACTION_DIGITS - scale <= MAX_LONG_DIGITS) {
+            // the result has at most 18 digits - it fits into a long
+            return btc.unscaledValue().longValue() * POWERS_OF_TEN[BTC_FRACTION_DIGITS - scale];
+        }
+        return btc.movePointRight(BTC_FRACTION_DIGITS)
+                .setScale(0, RoundingMode.UNNECESSARY)
+                .longValue();
+    }
+
+    /**
+     * Returns the smallest satoshi amount that is not below the given bitcoin value - i.e. for all satoshi
+     * amounts {@code n}: {@code n >= btcToSatsCeiling(min)} if and only if {@code satsToBtc(n) >= min}.
+     */
+    public static long btcToSatsCeiling(BigDecimal btc) {
+        return btc.movePointRight(BTC_FRACTION_DIGITS)
+                .setScale(0, RoundingMode.CEILING)
+                .longValueExact();
+    }
+
+    /**
+     * Rounds a satoshi amount down (towards negative infinity) to the given number of bitcoin decimal places -
+     * same as {@code satsToBtc(sats).setScale(scale, RoundingMode.FLOOR)}.
+     */
+    public static long floorToScale(long sats, int scale) {
+        if (scale >= BTC_FRACTION_DIGITS) {
+            return sats;
+        }
+        if (scale < 0) {
+            return floorToScaleSlow(sats, scale);
+        }
+        long unit = POWERS_OF_TEN[BTC_FRACTION_DIGITS - scale];
+        return Math.floorDiv(sats, unit) * unit;
+    }
+
+    /**
+     * Returns whether a satoshi amount is below the given minimum - a minimum of {@code 0} means "no minimum".
+     */
+    public static boolean isUnderMinimum(long sats, long minimumSats) {
+        return sats < minimumSats;
+    }
+
+    private static long floorToScaleSlow(long sats, int scale) {
+        return btcToSats(satsToBtc(sats).setScale(scale, RoundingMode.FLOOR));
+    }
+}
@@ -0,0 +1,198 @@
+package org.tbk.cln.snr.exchange;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.service.marketdata.params.CurrencyPairsParam;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Caches tickers per currency pair.
+ * <p>
+ * A ticker younger than {@code maxAge} is served from the cache. Concurrent requests for the same currency pair
+ * share a single in-flight fetch. If a {@code staleWhileRevalidate} window is given, a ticker that has exceeded
+ * its max age by less than the window is served immediately while it is refreshed in the background.
+ * Older tickers are never served.
+ * <p>
+ * Every entry carries a generation that is incremented on {@link #invalidate(CurrencyPair)}: the result of a fetch
+ * that started before is handed to its waiting callers, but never cached - later requests start a new fetch.
+ */
+@Slf4j
+public final class TickerCache implements AutoCloseable {
+
+    interface TickerFetcher {
+        Ticker fetch(CurrencyPair currencyPair) throws Exception;
+    }
+
+    private final TickerFetcher fetcher;
+
+    private final Duration maxAge;
+
+    private final Duration staleWhileRevalidate;
+
+    private final Clock clock;
+
+    private final ConcurrentMap<CurrencyPair, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ExecutorService refreshExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "snr-ticker-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TickerCache(Exchange exchange, Duration maxAge, Duration staleWhileRevalidate) {
+        this(currencyPair -> fetchTicker(exchange, currencyPair), maxAge, staleWhileRevalidate, Clock.systemUTC());
+    }
+
+    TickerCache(@NonNull TickerFetcher fetcher, @NonNull Duration maxAge, @NonNull Duration staleWhileRevalidate, @NonNull Clock clock) {
+        if (maxAge.isNegative() || staleWhileRevalidate.isNegative()) {
+            throw new IllegalArgumentException("Durations must not be negative");
+        }
+        this.fetcher = fetcher;
+        this.maxAge = maxAge;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns a ticker for the given currency pair that satisfies the configured staleness bounds.
+     *
+     * @throws IllegalStateException if the ticker could not be fetched
+     */
+    public Ticker get(CurrencyPair currencyPair) {
+        Entry entry = entries.computeIfAbsent(currencyPair, it -> new Entry());
+
+        CachedTicker cached = entry.cached;
+        if (cached != null) {
+            Duration age = Duration.between(cached.fetchedAt, clock.instant());
+            if (age.compareTo(maxAge) <= 0) {
+                return cached.ticker;
+            }
+            if (age.compareTo(maxAge.plus(staleWhileRevalidate)) <= 0) {
+                refreshInBackground(currencyPair, entry);
+                return cached.ticker;
+            }
+        }
+
+        try {
+            return fetch(currencyPair, entry, false).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IllegalStateException illegalStateException) {
+                throw illegalStateException;
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        }
+    }
+
+    public void invalidate(CurrencyPair currencyPair) {
+        Entry entry = entries.get(currencyPair);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.generation++;
+                entry.cached = null;
+                entry.inflight = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private void refreshInBackground(CurrencyPair currencyPair, Entry entry) {
+        fetch(currencyPair, entry, true).exceptionally(e -> {
+            log.warn("Could not refresh ticker for {}: {}", currencyPair, e.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Returns the in-flight fetch of the currency pair or starts a new one.
+     */
+    private CompletableFuture<Ticker> fetch(CurrencyPair currencyPair, Entry entry, boolean async) {
+        CompletableFuture<Ticker> future;
+        long generation;
+        synchronized (entry) {
+            if (entry.inflight != null) {
+                return entry.inflight;
+            }
+            future = new CompletableFuture<>();
+            entry.inflight = future;
+            generation = entry.generation;
+        }
+
+        Runnable task = () -> {
+            try {
+                Ticker ticker = fetcher.fetch(currencyPair);
+                complete(entry, generation, future, new CachedTicker(ticker, clock.instant()), null);
+            } catch (Exception e) {
+                complete(entry, generation, future, null, e);
+            }
+        };
+
+        if (async) {
+            refreshExecutor.execute(task);
+        } else {
+            // the first caller fetches the ticker itself - all others wait for the result
+            task.run();
+        }
+        return future;
+    }
+
+    private static void complete(Entry entry, long generation, CompletableFuture<Ticker> future, CachedTicker cached, Exception error) {
+        synchronized (entry) {
+            // the entry has been invalidated while fetching - the ticker might be outdated already
+            if (entry.generation == generation) {
+                entry.inflight = null;
+                if (cached != null) {
+                    entry.cached = cached;
+                }
+            }
+        }
+        if (error == null) {
+            future.complete(cached.ticker());
+        } else {
+            future.completeExceptionally(error);
+        }
+    }
+
+    private static Ticker fetchTicker(Exchange exchange, CurrencyPair currencyPair) {
+        try {
+            CurrencyPairsParam currencyPairsParam = () -> List.of(currencyPair);
+            return exchange.getMarketDataService().getTickers(currencyPairsParam).stream()
+                    .filter(it -> currencyPair.equals(it.getInstrument()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Could not find ticker data for currency pair."));
+        } catch (Exception e) {
+            String errorMessage = String.format("Could not fetch ticker from '%s' for currency pair '%s'.",
+                    exchange.getExchangeSpecification().getExchangeName(), currencyPair);
+            throw new IllegalStateException(errorMessage, e);
+        }
+    }
+
+    private static final class Entry {
+        // written while holding "this"
+        private volatile CachedTicker cached;
+
+        // guarded by "this"
+        private CompletableFuture<Ticker> inflight;
+        private long generation;
+    }
+
+    private record CachedTicker(Ticker ticker, Instant fetchedAt) {
+    }
+}
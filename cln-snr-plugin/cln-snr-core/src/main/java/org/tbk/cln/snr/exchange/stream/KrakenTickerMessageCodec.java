@@ -0,0 +1,87 @@
+package org.tbk.cln.snr.exchange.stream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Codec for the ticker channel of the Kraken websocket api v2.
+ * <p>
+ * Subscribes with event trigger {@code bbo}, so an update is sent whenever the best bid or offer changes - the last
+ * received ticker is always the current top of book. The open price is derived from the last price and the change
+ * over the last 24 hours.
+ *
+ * @see <a href="https://docs.kraken.com/api/docs/websocket-v2/ticker">Kraken websocket api v2: Ticker</a>
+ */
+public final class KrakenTickerMessageCodec implements TickerMessageCodec {
+
+    @Override
+    public String subscribeMessage(Set<CurrencyPair> currencyPairs) {
+        JsonArray symbols = new JsonArray();
+        currencyPairs.forEach(it -> symbols.add(it.toString()));
+
+        JsonObject params = new JsonObject();
+        params.addProperty("channel", "ticker");
+        params.add("symbol", symbols);
+        params.addProperty("event_trigger", "bbo");
+
+        JsonObject message = new JsonObject();
+        message.addProperty("method", "subscribe");
+        message.add("params", params);
+        return message.toString();
+    }
+
+    @Override
+    public List<Ticker> decode(String message) {
+        JsonObject json = JsonParser.parseString(message).getAsJsonObject();
+
+        if (json.has("success") && !json.get("success").getAsBoolean()) {
+            String errorMessage = json.has("error") ? json.get("error").getAsString() : "unknown error";
+            throw new IllegalStateException("Request rejected by exchange: " + errorMessage);
+        }
+
+        boolean isTicker = json.has("channel") && "ticker".equals(json.get("channel").getAsString());
+        if (!isTicker || !json.has("data")) {
+            return Collections.emptyList();
+        }
+
+        List<Ticker> tickers = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray("data")) {
+            tickers.add(toTicker(element.getAsJsonObject()));
+        }
+        return tickers;
+    }
+
+    private static Ticker toTicker(JsonObject data) {
+        BigDecimal last = decimal(data, "last");
+        BigDecimal change = decimal(data, "change");
+
+        return new Ticker.Builder()
+                .instrument(new CurrencyPair(data.get("symbol").getAsString()))
+                .ask(decimal(data, "ask"))
+                .askSize(decimal(data, "ask_qty"))
+                .bid(decimal(data, "bid"))
+                .bidSize(decimal(data, "bid_qty"))
+                .last(last)
+                .high(decimal(data, "high"))
+                .low(decimal(data, "low"))
+                .open(last != null && change != null ? last.subtract(change) : null)
+                .volume(decimal(data, "volume"))
+                .vwap(decimal(data, "vwap"))
+                .build();
+    }
+
+    private static BigDecimal decimal(JsonObject data, String name) {
+        JsonElement value = data.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsBigDecimal();
+    }
+}
@@ -0,0 +1,21 @@
+package org.tbk.cln.snr.exchange.stream;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import reactor.core.publisher.Flux;
+
+import java.util.Set;
+
+/**
+ * A streaming source of market data, e.g. an exchange websocket.
+ */
+public interface MarketDataStream {
+
+    /**
+     * Connects on subscription and emits every ticker update of the given currency pairs.
+     * <p>
+     * Terminates (with an error or completion) as soon as the connection is lost - it is up to the subscriber
+     * to reconnect by subscribing again.
+     */
+    Flux<Ticker> tickers(Set<CurrencyPair> currencyPairs);
+}
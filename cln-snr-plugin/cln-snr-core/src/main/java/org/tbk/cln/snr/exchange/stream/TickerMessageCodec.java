@@ -0,0 +1,25 @@
+package org.tbk.cln.snr.exchange.stream;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Translates between tickers and the messages of an exchange specific websocket protocol.
+ */
+public interface TickerMessageCodec {
+
+    /**
+     * Returns the message subscribing to ticker updates of the given currency pairs.
+     */
+    String subscribeMessage(Set<CurrencyPair> currencyPairs);
+
+    /**
+     * Returns the tickers contained in the given message - empty for all other messages, e.g. heartbeats.
+     *
+     * @throws IllegalStateException if the message reports an error, e.g. a rejected subscription
+     */
+    List<Ticker> decode(String message);
+}
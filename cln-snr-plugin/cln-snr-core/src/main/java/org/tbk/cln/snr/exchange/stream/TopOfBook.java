@@ -0,0 +1,106 @@
+package org.tbk.cln.snr.exchange.stream;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the latest ticker of every subscribed currency pair in memory - fed by a {@link MarketDataStream}.
+ * <p>
+ * Tickers are only served while the stream is connected: as soon as the connection is lost, all tickers are
+ * dropped and callers have to fall back to fetching tickers via REST. The stream is reconnected automatically
+ * with an exponential backoff starting at {@code reconnectDelay} (reset after every received ticker).
+ */
+@Slf4j
+public final class TopOfBook implements AutoCloseable {
+
+    private static final int MAX_BACKOFF_FACTOR = 60;
+
+    private final MarketDataStream stream;
+
+    private final Duration reconnectDelay;
+
+    private final ConcurrentMap<CurrencyPair, Ticker> tickers = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    private volatile Disposable subscription;
+
+    public TopOfBook(@NonNull MarketDataStream stream, @NonNull Duration reconnectDelay) {
+        if (reconnectDelay.isZero() || reconnectDelay.isNegative()) {
+            throw new IllegalArgumentException("Reconnect delay must be positive");
+        }
+        this.stream = stream;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Starts streaming tickers of the given currency pairs - can only be called once.
+     */
+    public synchronized void start(Set<CurrencyPair> currencyPairs) {
+        if (subscription != null) {
+            throw new IllegalStateException("Already started");
+        }
+
+        Set<CurrencyPair> subscribedPairs = Set.copyOf(currencyPairs);
+        this.subscription = Flux.defer(() -> stream.tickers(subscribedPairs))
+                .doOnNext(this::onTicker)
+                .doOnError(e -> onDisconnect("Market data stream failed: " + e.getMessage()))
+                .doOnComplete(() -> onDisconnect("Market data stream closed"))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, reconnectDelay)
+                        .maxBackoff(reconnectDelay.multipliedBy(MAX_BACKOFF_FACTOR))
+                        .transientErrors(true))
+                .repeatWhen(completed -> completed.delayElements(reconnectDelay))
+                .subscribe();
+    }
+
+    /**
+     * Returns the latest ticker of the given currency pair - or empty if the stream is not connected or has not
+     * received a ticker of the pair yet.
+     */
+    public Optional<Ticker> get(CurrencyPair currencyPair) {
+        return Optional.ofNullable(tickers.get(currencyPair));
+    }
+
+    public boolean isConnected() {
+        return connected.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        tickers.clear();
+        connected.set(false);
+    }
+
+    private void onTicker(Ticker ticker) {
+        if (ticker.getInstrument() instanceof CurrencyPair currencyPair) {
+            tickers.put(currencyPair, ticker);
+        }
+        if (connected.compareAndSet(false, true)) {
+            log.info("Market data stream connected - serving tickers from the stream");
+        }
+    }
+
+    private void onDisconnect(String reason) {
+        tickers.clear();
+        if (connected.compareAndSet(true, false)) {
+            log.warn("{} - falling back to REST till reconnected", reason);
+        } else {
+            log.debug("{} - retrying in the background", reason);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.tbk.cln.snr.exchange.stream;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Streams tickers from a websocket endpoint.
+ * <p>
+ * A new connection is opened per subscription. The stream fails if the connection cannot be established or no
+ * message (including heartbeats) is received within the idle timeout - a silently dropped connection is detected
+ * this way.
+ */
+@Slf4j
+public final class WebSocketMarketDataStream implements MarketDataStream {
+
+    private final HttpClient httpClient;
+
+    private final URI uri;
+
+    private final TickerMessageCodec codec;
+
+    private final Duration idleTimeout;
+
+    public WebSocketMarketDataStream(@NonNull HttpClient httpClient,
+                                     @NonNull URI uri,
+                                     @NonNull TickerMessageCodec codec,
+                                     @NonNull Duration idleTimeout) {
+        if (idleTimeout.isZero() || idleTimeout.isNegative()) {
+            throw new IllegalArgumentException("Idle timeout must be positive");
+        }
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.codec = codec;
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public Flux<Ticker> tickers(Set<CurrencyPair> currencyPairs) {
+        String subscribeMessage = codec.subscribeMessage(currencyPairs);
+
+        return Flux.<String>create(sink -> {
+                    CompletableFuture<WebSocket> webSocket = httpClient.newWebSocketBuilder()
+                            .connectTimeout(idleTimeout)
+                            .buildAsync(uri, new Listener(sink));
+
+                    webSocket.thenCompose(it -> it.sendText(subscribeMessage, true))
+                            .whenComplete((it, e) -> {
+                                if (e != null) {
+                                    sink.error(e);
+                                } else {
+                                    log.debug("Subscribed to tickers of {} via {}", currencyPairs, uri);
+                                }
+                            });
+
+                    sink.onDispose(() -> webSocket.thenAccept(WebSocket::abort));
+                })
+                .timeout(idleTimeout)
+                .concatMapIterable(codec::decode);
+    }
+
+    private static final class Listener implements WebSocket.Listener {
+
+        private final FluxSink<String> sink;
+
+        // only accessed by the websocket - messages are delivered sequentially
+        private final StringBuilder message = new StringBuilder();
+
+        Listener(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            message.append(data);
+            if (last) {
+                sink.next(message.toString());
+                message.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            log.debug("Websocket closed with status {}: {}", statusCode, reason);
+            sink.complete();
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            sink.error(error);
+        }
+    }
+}
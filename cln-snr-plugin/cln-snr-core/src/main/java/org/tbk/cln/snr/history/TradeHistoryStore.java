@@ -0,0 +1,405 @@
+package org.tbk.cln.snr.history;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.UserTrade;
+import org.knowm.xchange.instrument.Instrument;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+// CHECKSTYLE IGNORE RegexpSinglelineJava FOR NEXT 1 LINES - xchange requires legacy dates
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded, file-backed store of the trades and order states of an account.
+ * <p>
+ * Trades and order states are appended to a single log file and indexed in memory by trade id, order id,
+ * user reference and timestamp - the log is read once on {@link #open(Path)}. Trades are immutable and stored
+ * once, the last written state of an order wins. Appends are forced to the storage device per batch.
+ */
+@Slf4j
+public final class TradeHistoryStore implements AutoCloseable {
+
+    // header: payload length (int) + crc32 of type and payload (int) + type (byte)
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+
+    private static final byte TYPE_TRADE = 1;
+    private static final byte TYPE_ORDER = 2;
+
+    private static final Comparator<UserTrade> BY_TIMESTAMP = Comparator
+            .comparing((UserTrade it) -> it.getTimestamp().toInstant())
+            .thenComparing(UserTrade::getId);
+
+    public static TradeHistoryStore open(Path file) throws IOException {
+        TradeHistoryStore store = new TradeHistoryStore(file);
+        store.recover();
+        return store;
+    }
+
+    private final Path file;
+
+    // all fields below are guarded by "this"
+    private final Map<String, UserTrade> tradesById = new HashMap<>();
+    private final NavigableSet<UserTrade> tradesByTimestamp = new TreeSet<>(BY_TIMESTAMP);
+    private final Map<String, List<UserTrade>> tradesByOrderId = new HashMap<>();
+    private final Map<String, List<UserTrade>> tradesByUserReference = new HashMap<>();
+    private final Map<String, LimitOrder> ordersById = new LinkedHashMap<>();
+    private final Map<String, List<LimitOrder>> ordersByUserReference = new HashMap<>();
+    private FileChannel channel;
+    private boolean closed;
+
+    private TradeHistoryStore(@NonNull Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Store all trades that are not known yet.
+     *
+     * @return the number of newly stored trades
+     */
+    public synchronized int addTrades(Collection<UserTrade> trades) {
+        List<byte[]> records = new ArrayList<>();
+        for (UserTrade trade : trades) {
+            boolean isValid = trade.getId() != null && trade.getTimestamp() != null;
+            if (isValid && !tradesById.containsKey(trade.getId())) {
+                records.add(record(TYPE_TRADE, encodeTrade(trade)));
+                indexTrade(trade);
+            }
+        }
+        write(records);
+        return records.size();
+    }
+
+    /**
+     * Store the current state of the given orders - previous states are replaced.
+     */
+    public synchronized void putOrders(Collection<LimitOrder> orders) {
+        List<byte[]> records = new ArrayList<>();
+        for (LimitOrder order : orders) {
+            if (order.getId() != null && !isSameState(order, ordersById.get(order.getId()))) {
+                records.add(record(TYPE_ORDER, encodeOrder(order)));
+                indexOrder(order);
+            }
+        }
+        write(records);
+    }
+
+    public synchronized Optional<UserTrade> trade(String tradeId) {
+        return Optional.ofNullable(tradesById.get(tradeId));
+    }
+
+    public synchronized Optional<UserTrade> lastTrade() {
+        return tradesByTimestamp.isEmpty() ? Optional.empty() : Optional.of(tradesByTimestamp.last());
+    }
+
+    public synchronized int tradeCount() {
+        return tradesById.size();
+    }
+
+    public synchronized List<UserTrade> tradesByOrderId(String orderId) {
+        return List.copyOf(tradesByOrderId.getOrDefault(orderId, List.of()));
+    }
+
+    public synchronized List<UserTrade> tradesByUserReference(String userReference) {
+        return List.copyOf(tradesByUserReference.getOrDefault(userReference, List.of()));
+    }
+
+    /**
+     * Returns the trades of an instrument ordered by timestamp.
+     *
+     * @param since  inclusive lower bound of the timestamp - or null
+     * @param until  exclusive upper bound of the timestamp - or null
+     * @param offset the number of matching trades to skip
+     * @param limit  the maximum number of trades to return
+     */
+    public synchronized List<UserTrade> trades(Instrument instrument, Instant since, Instant until, long offset, int limit) {
+        NavigableSet<UserTrade> candidates = since == null
+                ? tradesByTimestamp
+                : tradesByTimestamp.tailSet(new UserTrade.Builder().id("").timestamp(Date.from(since)).build(), true);
+
+        List<UserTrade> result = new ArrayList<>(Math.min(limit, candidates.size()));
+        long skip = offset;
+        for (UserTrade trade : candidates) {
+            if (result.size() == limit || (until != null && !trade.getTimestamp().toInstant().isBefore(until))) {
+                break;
+            }
+            if (!instrument.equals(trade.getInstrument())) {
+                continue;
+            }
+            if (skip > 0L) {
+                skip--;
+                continue;
+            }
+            result.add(trade);
+        }
+        return result;
+    }
+
+    public synchronized Optional<LimitOrder> order(String orderId) {
+        return Optional.ofNullable(ordersById.get(orderId));
+    }
+
+    public synchronized List<LimitOrder> ordersByUserReference(String userReference) {
+        return List.copyOf(ordersByUserReference.getOrDefault(userReference, List.of()));
+    }
+
+    /**
+     * Returns all orders of an instrument whose last known state is open.
+     */
+    public synchronized List<LimitOrder> openOrders(Instrument instrument) {
+        return ordersById.values().stream()
+                .filter(it -> instrument.equals(it.getInstrument()))
+                .filter(it -> it.getStatus() != null && it.getStatus().isOpen())
+                .toList();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close trade history store: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isSameState(LimitOrder order, LimitOrder other) {
+        return other != null
+                && order.getStatus() == other.getStatus()
+                && Objects.equals(order.getCumulativeAmount(), other.getCumulativeAmount())
+                && Objects.equals(order.getAveragePrice(), other.getAveragePrice())
+                && Objects.equals(order.getFee(), other.getFee());
+    }
+
+    private void indexTrade(UserTrade trade) {
+        tradesById.put(trade.getId(), trade);
+        tradesByTimestamp.add(trade);
+        if (trade.getOrderId() != null) {
+            tradesByOrderId.computeIfAbsent(trade.getOrderId(), it -> new ArrayList<>()).add(trade);
+        }
+        if (trade.getOrderUserReference() != null && !trade.getOrderUserReference().isEmpty()) {
+            tradesByUserReference.computeIfAbsent(trade.getOrderUserReference(), it -> new ArrayList<>()).add(trade);
+        }
+    }
+
+    private void indexOrder(LimitOrder order) {
+        LimitOrder previous = ordersById.put(order.getId(), order);
+        if (previous != null && previous.getUserReference() != null) {
+            ordersByUserReference.getOrDefault(previous.getUserReference(), new ArrayList<>()).remove(previous);
+        }
+        if (order.getUserReference() != null && !order.getUserReference().isEmpty()) {
+            ordersByUserReference.computeIfAbsent(order.getUserReference(), it -> new ArrayList<>()).add(order);
+        }
+    }
+
+    private void write(List<byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("Trade history store is closed");
+        }
+        try {
+            for (byte[] record : records) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to trade history store", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        while (buffer.remaining() > HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            byte type = buffer.get();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            if (checksum(type, payload) != checksum) {
+                log.warn("Found corrupt trade history record at position {} - ignoring the remainder of the file", start);
+                buffer.position(start);
+                break;
+            }
+
+            try {
+                switch (type) {
+                    case TYPE_TRADE -> indexTrade(decodeTrade(payload));
+                    case TYPE_ORDER -> indexOrder(decodeOrder(payload));
+                    default -> log.warn("Found trade history record of unknown type {} at position {}", type, start);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Found invalid trade history record at position {}: {}", start, e.getMessage());
+            }
+        }
+
+        // drop any partially written record
+        channel.truncate(buffer.position());
+        channel.position(buffer.position());
+
+        log.debug("Recovered trade history store with {} trade(s) and {} order(s)", tradesById.size(), ordersById.size());
+    }
+
+    private static byte[] record(byte type, byte[] payload) {
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt(checksum(type, payload))
+                .put(type)
+                .put(payload)
+                .array();
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encodeTrade(UserTrade trade) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeUTF(trade.getId());
+            writeNullable(data, trade.getOrderId());
+            writeNullable(data, trade.getType() == null ? null : trade.getType().name());
+            writeNullable(data, trade.getInstrument() == null ? null : trade.getInstrument().toString());
+            writeNullable(data, trade.getPrice());
+            writeNullable(data, trade.getOriginalAmount());
+            writeNullable(data, trade.getFeeAmount());
+            writeNullable(data, trade.getFeeCurrency() == null ? null : trade.getFeeCurrency().getCurrencyCode());
+            writeNullable(data, trade.getOrderUserReference());
+            data.writeLong(trade.getTimestamp().getTime());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static UserTrade decodeTrade(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            UserTrade.Builder builder = new UserTrade.Builder();
+            builder.id(in.readUTF());
+            builder.orderId(readNullable(in));
+            builder.type(Optional.ofNullable(readNullable(in)).map(Order.OrderType::valueOf).orElse(null));
+            builder.instrument(Optional.ofNullable(readNullable(in)).map(CurrencyPair::new).orElse(null));
+            builder.price(readNullableDecimal(in));
+            builder.originalAmount(readNullableDecimal(in));
+            builder.feeAmount(readNullableDecimal(in));
+            builder.feeCurrency(Optional.ofNullable(readNullable(in)).map(Currency::getInstance).orElse(null));
+            builder.orderUserReference(readNullable(in));
+            builder.timestamp(new Date(in.readLong()));
+            return builder.build();
+        }
+    }
+
+    private static byte[] encodeOrder(LimitOrder order) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeUTF(order.getId());
+            data.writeUTF(order.getType().name());
+            data.writeUTF(order.getInstrument().toString());
+            writeNullable(data, order.getStatus() == null ? null : order.getStatus().name());
+            writeNullable(data, order.getOriginalAmount());
+            writeNullable(data, order.getCumulativeAmount());
+            writeNullable(data, order.getLimitPrice());
+            writeNullable(data, order.getAveragePrice());
+            writeNullable(data, order.getFee());
+            writeNullable(data, order.getUserReference());
+            data.writeBoolean(order.getTimestamp() != null);
+            if (order.getTimestamp() != null) {
+                data.writeLong(order.getTimestamp().getTime());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static LimitOrder decodeOrder(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String id = in.readUTF();
+            Order.OrderType type = Order.OrderType.valueOf(in.readUTF());
+            CurrencyPair instrument = new CurrencyPair(in.readUTF());
+            return new LimitOrder.Builder(type, instrument)
+                    .id(id)
+                    .orderStatus(Optional.ofNullable(readNullable(in)).map(Order.OrderStatus::valueOf).orElse(null))
+                    .originalAmount(readNullableDecimal(in))
+                    .cumulativeAmount(readNullableDecimal(in))
+                    .limitPrice(readNullableDecimal(in))
+                    .averagePrice(readNullableDecimal(in))
+                    .fee(readNullableDecimal(in))
+                    .userReference(readNullable(in))
+                    .timestamp(in.readBoolean() ? new Date(in.readLong()) : null)
+                    .build();
+        }
+    }
+
+    private static void writeNullable(DataOutputStream data, BigDecimal value) throws IOException {
+        writeNullable(data, value == null ? null : value.toPlainString());
+    }
+
+    private static void writeNullable(DataOutputStream data, String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        try {
+            return in.readBoolean() ? in.readUTF() : null;
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Unexpected end of record", e);
+        }
+    }
+
+    private static BigDecimal readNullableDecimal(DataInputStream in) throws IOException {
+        String value = readNullable(in);
+        return value == null ? null : new BigDecimal(value);
+    }
+}
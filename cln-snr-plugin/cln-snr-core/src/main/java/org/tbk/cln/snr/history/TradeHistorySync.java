@@ -0,0 +1,222 @@
+package org.tbk.cln.snr.history;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.UserTrade;
+import org.knowm.xchange.exceptions.NotAvailableFromExchangeException;
+import org.knowm.xchange.exceptions.NotYetImplementedForExchangeException;
+import org.knowm.xchange.instrument.Instrument;
+import org.knowm.xchange.service.trade.TradeService;
+import org.knowm.xchange.service.trade.params.TradeHistoryParamsAll;
+import org.knowm.xchange.service.trade.params.orders.DefaultOpenOrdersParamInstrument;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Syncs the {@link TradeHistoryStore} with the exchange in the background.
+ * <p>
+ * Trades are fetched incrementally - starting from the last stored trade (by id and timestamp) page by page,
+ * till a page does not contain any new trade. Open orders are fetched on every sync; orders that are not open
+ * anymore are looked up once to store their final state. Newly stored trades are handed over to all registered
+ * trade listeners, the time of every successful sync to all registered sync listeners.
+ */
+@Slf4j
+public final class TradeHistorySync implements AutoCloseable {
+
+    private static final int PAGE_LENGTH = 100;
+
+    private static final int MAX_PAGES_PER_SYNC = 50;
+
+    private final Exchange exchange;
+
+    private final TradeHistoryStore store;
+
+    private final Duration syncInterval;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snr-history-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private final List<Consumer<List<UserTrade>>> tradeListeners = new CopyOnWriteArrayList<>();
+
+    private final List<Consumer<Instant>> syncListeners = new CopyOnWriteArrayList<>();
+
+    private volatile Instrument instrument;
+
+    private volatile Instant syncedAt;
+
+    public TradeHistorySync(@NonNull Exchange exchange,
+                            @NonNull TradeHistoryStore store,
+                            @NonNull Duration syncInterval) {
+        if (syncInterval.isZero() || syncInterval.isNegative()) {
+            throw new IllegalArgumentException("Sync interval must be positive");
+        }
+        this.exchange = exchange;
+        this.store = store;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Sync trades and orders of the given instrument in the background - immediately and periodically afterwards.
+     */
+    public void start(@NonNull Instrument instrument) {
+        if (started.compareAndSet(false, true)) {
+            this.instrument = instrument;
+            scheduler.scheduleWithFixedDelay(this::syncQuietly, 0L, syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Register a listener that is called with all newly stored trades after every sync.
+     */
+    public void addTradeListener(@NonNull Consumer<List<UserTrade>> listener) {
+        tradeListeners.add(listener);
+    }
+
+    /**
+     * Register a listener that is called with the time of every successful sync - after all trade listeners.
+     */
+    public void addSyncListener(@NonNull Consumer<Instant> listener) {
+        syncListeners.add(listener);
+    }
+
+    public TradeHistoryStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the time of the last successful sync - or empty if the store has not been synced yet.
+     */
+    public Optional<Instant> syncedAt() {
+        return Optional.ofNullable(syncedAt);
+    }
+
+    /**
+     * Fetch new trades and the state of orders from the exchange.
+     *
+     * @return the number of newly stored trades
+     */
+    public synchronized int sync() throws IOException {
+        if (instrument == null) {
+            throw new IllegalStateException("Trade history sync has not been started");
+        }
+        TradeService tradeService = exchange.getTradeService();
+
+        List<UserTrade> added = syncTrades(tradeService);
+        syncOrders(tradeService);
+
+        Instant now = Instant.now();
+        this.syncedAt = now;
+
+        if (!added.isEmpty()) {
+            for (Consumer<List<UserTrade>> listener : tradeListeners) {
+                listener.accept(added);
+            }
+        }
+        for (Consumer<Instant> listener : syncListeners) {
+            listener.accept(now);
+        }
+        return added.size();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private List<UserTrade> syncTrades(TradeService tradeService) throws IOException {
+        Optional<UserTrade> lastTrade = store.lastTrade();
+
+        TradeHistoryParamsAll params = new TradeHistoryParamsAll();
+        params.setInstrument(instrument);
+        lastTrade.ifPresent(it -> {
+            params.setStartTime(it.getTimestamp());
+            params.setStartId(it.getId());
+        });
+        params.setPageLength(PAGE_LENGTH);
+        params.setLimit(PAGE_LENGTH);
+
+        List<UserTrade> added = new ArrayList<>();
+        for (int page = 0; page < MAX_PAGES_PER_SYNC; page++) {
+            params.setPageNumber(page);
+            params.setOffset((long) page * PAGE_LENGTH);
+
+            List<UserTrade> trades = tradeService.getTradeHistory(params).getUserTrades();
+            List<UserTrade> newTrades = trades.stream()
+                    .filter(it -> it.getId() != null && store.trade(it.getId()).isEmpty())
+                    .toList();
+            int addedFromPage = store.addTrades(newTrades);
+            added.addAll(newTrades);
+
+            // also stops if the exchange ignores the paging params and returns the same trades again
+            if (addedFromPage == 0 || trades.size() < PAGE_LENGTH) {
+                break;
+            }
+        }
+
+        if (!added.isEmpty()) {
+            log.debug("Stored {} new trade(s) of {}", added.size(), instrument);
+        }
+        return added;
+    }
+
+    private void syncOrders(TradeService tradeService) throws IOException {
+        List<LimitOrder> openOrders = tradeService.getOpenOrders(new DefaultOpenOrdersParamInstrument(instrument)).getOpenOrders();
+        Set<String> openOrderIds = openOrders.stream().map(Order::getId).collect(Collectors.toSet());
+
+        List<LimitOrder> orders = new ArrayList<>(openOrders);
+
+        List<LimitOrder> closedOrders = store.openOrders(instrument).stream()
+                .filter(it -> !openOrderIds.contains(it.getId()))
+                .toList();
+        if (!closedOrders.isEmpty()) {
+            orders.addAll(fetchFinalStates(tradeService, closedOrders));
+        }
+
+        store.putOrders(orders);
+    }
+
+    private static List<LimitOrder> fetchFinalStates(TradeService tradeService, List<LimitOrder> closedOrders) throws IOException {
+        try {
+            String[] orderIds = closedOrders.stream().map(Order::getId).toArray(String[]::new);
+            Collection<Order> orders = tradeService.getOrder(orderIds);
+            return orders.stream()
+                    .map(it -> it instanceof LimitOrder limitOrder ? limitOrder : LimitOrder.Builder.from(it).build())
+                    .toList();
+        } catch (NotAvailableFromExchangeException | NotYetImplementedForExchangeException e) {
+            // the final state is unknown - the order is not open anymore though
+            return closedOrders.stream()
+                    .map(it -> LimitOrder.Builder.from(it).orderStatus(Order.OrderStatus.CLOSED).build())
+                    .toList();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (Exception e) {
+            log.warn("Could not sync trade history - last successful sync at {}: {}", syncedAt, e.getMessage());
+        }
+    }
+}
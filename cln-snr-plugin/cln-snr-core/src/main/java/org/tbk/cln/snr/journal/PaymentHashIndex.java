@@ -0,0 +1,317 @@
+package org.tbk.cln.snr.journal;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persistent set of 32-byte payment hashes that have already been processed.
+ * <p>
+ * The hashes are stored in an open-addressed hash table (linear probing) in a memory-mapped file - 32 bytes per
+ * slot and no per-entry objects on the heap. As payment hashes are uniformly distributed, the first 8 bytes are
+ * used as hash code directly. The table is doubled when it is more than 70% full: it takes between 46 and 92 bytes
+ * per hash, e.g. one million hashes need 2^21 slots (64 MiB of disk space and page cache). The table starts with
+ * 2^16 slots (2 MiB) and holds at most 2^25 slots (1 GiB, roughly 23 million hashes).
+ * <p>
+ * Growing the table writes a copy to a temporary file, which atomically replaces the index file - the index stays
+ * usable if that fails.
+ * <p>
+ * Writes go to the mapped file and survive a crash of the plugin process. They are forced to the storage
+ * device on {@link #sync()} and {@link #close()}.
+ */
+@Slf4j
+public final class PaymentHashIndex implements AutoCloseable {
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+
+    // a mapped buffer can address at most 2 GiB - header and table must stay below Integer.MAX_VALUE bytes
+    private static final long MAX_CAPACITY = 1L << 25;
+
+    private static final double MAX_LOAD_FACTOR = 0.7d;
+
+    private static final int MAGIC = 0x534e5249;
+    private static final int VERSION = 1;
+
+    // header: magic (int) + version (int) + capacity (long) + size (long) + contains zero hash (byte)
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int ZERO_HASH_OFFSET = 24;
+
+    public static PaymentHashIndex open(Path file) throws IOException {
+        return open(file, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    static PaymentHashIndex open(@NonNull Path file, int initialCapacity) throws IOException {
+        if (Integer.bitCount(initialCapacity) != 1 || initialCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Initial capacity must be a power of two <= " + MAX_CAPACITY);
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        PaymentHashIndex index = new PaymentHashIndex(file);
+        if (Files.exists(file) && Files.size(file) > 0) {
+            index.load();
+        } else {
+            index.create(initialCapacity);
+        }
+        return index;
+    }
+
+    private final Path file;
+
+    // all fields below are guarded by "this"
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long capacity;
+    private long size;
+    private boolean closed;
+
+    private PaymentHashIndex(Path file) {
+        this.file = file;
+    }
+
+    public synchronized boolean contains(byte[] hash) {
+        checkHash(hash);
+        ensureOpen();
+
+        if (isZero(hash)) {
+            return buffer.get(ZERO_HASH_OFFSET) != 0;
+        }
+        return findSlot(buffer, capacity, hash) >= 0;
+    }
+
+    /**
+     * Add a hash to the index.
+     *
+     * @return true if the hash has been added, false if it has already been present
+     */
+    public synchronized boolean add(byte[] hash) {
+        checkHash(hash);
+        ensureOpen();
+
+        if (isZero(hash)) {
+            if (buffer.get(ZERO_HASH_OFFSET) != 0) {
+                return false;
+            }
+            buffer.put(ZERO_HASH_OFFSET, (byte) 1);
+            return true;
+        }
+
+        long slot = findSlot(buffer, capacity, hash);
+        if (slot >= 0) {
+            return false;
+        }
+
+        if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+            grow();
+            slot = findSlot(buffer, capacity, hash);
+        }
+
+        writeSlot(buffer, -slot - 1, hash);
+        size++;
+        buffer.putLong(SIZE_OFFSET, size);
+        return true;
+    }
+
+    public synchronized long size() {
+        return size + (buffer.get(ZERO_HASH_OFFSET) != 0 ? 1 : 0);
+    }
+
+    public synchronized long capacity() {
+        return capacity;
+    }
+
+    public synchronized void sync() {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close payment hash index: {}", e.getMessage());
+        }
+    }
+
+    private void create(long newCapacity) throws IOException {
+        FileChannel newChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.buffer = mapTable(newChannel, newCapacity);
+        } catch (IOException | RuntimeException e) {
+            newChannel.close();
+            throw e;
+        }
+        this.channel = newChannel;
+        this.capacity = newCapacity;
+        this.size = 0L;
+    }
+
+    private static MappedByteBuffer mapTable(FileChannel channel, long capacity) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * HASH_LENGTH);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(SIZE_OFFSET, 0L);
+        return buffer;
+    }
+
+    private void load() throws IOException {
+        FileChannel existingChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer existingBuffer = existingChannel.map(FileChannel.MapMode.READ_WRITE, 0, existingChannel.size());
+
+        long existingCapacity = existingBuffer.getLong(CAPACITY_OFFSET);
+        boolean valid = existingBuffer.getInt(0) == MAGIC
+                && existingBuffer.getInt(4) == VERSION
+                && Long.bitCount(existingCapacity) == 1
+                && existingCapacity <= MAX_CAPACITY
+                && existingChannel.size() == HEADER_SIZE + existingCapacity * HASH_LENGTH;
+        if (!valid) {
+            existingChannel.close();
+            throw new IllegalStateException("Invalid payment hash index file: " + file);
+        }
+
+        this.channel = existingChannel;
+        this.buffer = existingBuffer;
+        this.capacity = existingCapacity;
+        this.size = existingBuffer.getLong(SIZE_OFFSET);
+    }
+
+    private void grow() {
+        long newCapacity = capacity * 2;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Payment hash index is full: " + size);
+        }
+
+        // the current table stays in use till the new one has replaced it
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        FileChannel newChannel = null;
+        MappedByteBuffer newBuffer;
+        try {
+            Files.deleteIfExists(tmpFile);
+            newChannel = FileChannel.open(tmpFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            newBuffer = mapTable(newChannel, newCapacity);
+
+            byte[] hash = new byte[HASH_LENGTH];
+            for (long slot = 0; slot < capacity; slot++) {
+                buffer.get(slotOffset(slot), hash);
+                if (!isZero(hash)) {
+                    writeSlot(newBuffer, -findSlot(newBuffer, newCapacity, hash) - 1, hash);
+                }
+            }
+            newBuffer.putLong(SIZE_OFFSET, size);
+            newBuffer.put(ZERO_HASH_OFFSET, buffer.get(ZERO_HASH_OFFSET));
+            newBuffer.force();
+
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            discard(newChannel, tmpFile);
+            throw new UncheckedIOException("Could not grow payment hash index", e);
+        } catch (RuntimeException e) {
+            discard(newChannel, tmpFile);
+            throw e;
+        }
+
+        FileChannel oldChannel = channel;
+        long oldCapacity = capacity;
+        this.channel = newChannel;
+        this.buffer = newBuffer;
+        this.capacity = newCapacity;
+        try {
+            oldChannel.close();
+        } catch (IOException e) {
+            log.warn("Could not close replaced payment hash index: {}", e.getMessage());
+        }
+
+        log.debug("Payment hash index grew from {} to {} slots", oldCapacity, newCapacity);
+    }
+
+    private static void discard(FileChannel channel, Path file) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not discard temporary payment hash index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the slot containing the hash or (-insertionPoint - 1) if the hash is not present.
+     */
+    private static long findSlot(ByteBuffer buffer, long capacity, byte[] hash) {
+        ByteBuffer key = ByteBuffer.wrap(hash);
+        long k0 = key.getLong(0);
+        long k1 = key.getLong(8);
+        long k2 = key.getLong(16);
+        long k3 = key.getLong(24);
+
+        long mask = capacity - 1;
+        long slot = k0 & mask;
+        while (true) {
+            int offset = slotOffset(slot);
+            long s0 = buffer.getLong(offset);
+            long s1 = buffer.getLong(offset + 8);
+            long s2 = buffer.getLong(offset + 16);
+            long s3 = buffer.getLong(offset + 24);
+
+            if (s0 == 0L && s1 == 0L && s2 == 0L && s3 == 0L) {
+                return -slot - 1;
+            }
+            if (s0 == k0 && s1 == k1 && s2 == k2 && s3 == k3) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void writeSlot(ByteBuffer buffer, long slot, byte[] hash) {
+        buffer.put(slotOffset(slot), hash);
+    }
+
+    private static int slotOffset(long slot) {
+        return Math.toIntExact(HEADER_SIZE + slot * HASH_LENGTH);
+    }
+
+    private static boolean isZero(byte[] hash) {
+        for (byte b : hash) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkHash(byte[] hash) {
+        if (hash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Hash must be " + HASH_LENGTH + " bytes");
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Payment hash index is closed");
+        }
+    }
+}
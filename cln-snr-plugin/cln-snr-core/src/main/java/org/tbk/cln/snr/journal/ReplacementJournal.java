@@ -0,0 +1,422 @@
+package org.tbk.cln.snr.journal;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped write-ahead journal of replacement intents.
+ * <p>
+ * Every spent amount is written as an "intent" before any exchange is contacted. After an order has been
+ * placed successfully, its amount is written as "placed". The difference of both (per currency pair) is the
+ * amount that has not been replaced yet - it survives restarts and crashes of the plugin and is replayed on startup.
+ * <p>
+ * Records are written to memory-mapped segment files. Appends do not wait for the disk: dirty segments are
+ * forced to the storage device periodically by a background thread ("group commit"). Data written to the
+ * mapped segments survives a crash of the plugin process - only an os crash or power loss can lose the
+ * records written since the last sync.
+ * <p>
+ * Segments are compacted periodically: A new segment is started with a snapshot of all unreplaced amounts
+ * and all previous segments are deleted.
+ */
+@Slf4j
+public final class ReplacementJournal implements AutoCloseable {
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+    private static final Pattern SEGMENT_FILE_NAME_PATTERN = Pattern.compile("^journal-(\\d{16})\\.seg$");
+
+    // header: payload length (int) + crc32 of type and payload (int) + type (byte)
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+
+    private static final byte TYPE_INTENT = 1;
+    private static final byte TYPE_PLACED = 2;
+    private static final byte TYPE_SNAPSHOT = 3;
+
+    public static ReplacementJournal open(Path directory, Duration syncInterval, Duration compactionInterval) throws IOException {
+        return open(directory, syncInterval, compactionInterval, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static ReplacementJournal open(Path directory, Duration syncInterval, Duration compactionInterval, int segmentSize) throws IOException {
+        ReplacementJournal journal = new ReplacementJournal(directory, segmentSize);
+        journal.recover();
+        journal.scheduleMaintenance(syncInterval, compactionInterval);
+        return journal;
+    }
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snr-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // all fields below are guarded by "this"
+    private final Map<String, Long> unreplacedMsat = new TreeMap<>();
+    private final NavigableMap<Long, Path> segments = new TreeMap<>();
+    private long activeIndex;
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private long recordsSinceCompaction;
+    private boolean dirty;
+    private boolean closed;
+
+    private ReplacementJournal(@NonNull Path directory, int segmentSize) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Write the intent to replace an amount - must be called before any exchange is contacted.
+     */
+    public void appendIntent(CurrencyPair currencyPair, byte[] paymentHash, long partId, long amountMsat) {
+        if (paymentHash.length != 32) {
+            throw new IllegalArgumentException("Payment hash must be 32 bytes");
+        }
+        byte[] symbol = symbolBytes(currencyPair);
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES + Short.BYTES + symbol.length + paymentHash.length + Long.BYTES + Long.BYTES)
+                .putLong(System.currentTimeMillis())
+                .putShort((short) symbol.length)
+                .put(symbol)
+                .put(paymentHash)
+                .putLong(partId)
+                .putLong(amountMsat);
+
+        synchronized (this) {
+            append(TYPE_INTENT, payload.array());
+            unreplacedMsat.merge(currencyPair.toString(), amountMsat, Math::addExact);
+        }
+    }
+
+    /**
+     * Write the outcome of a successfully placed order.
+     */
+    public void appendPlaced(CurrencyPair currencyPair, long amountMsat, String orderId) {
+        byte[] symbol = symbolBytes(currencyPair);
+        byte[] orderIdBytes = orderId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES + Short.BYTES + symbol.length + Long.BYTES + Short.BYTES + orderIdBytes.length)
+                .putLong(System.currentTimeMillis())
+                .putShort((short) symbol.length)
+                .put(symbol)
+                .putLong(amountMsat)
+                .putShort((short) orderIdBytes.length)
+                .put(orderIdBytes);
+
+        synchronized (this) {
+            append(TYPE_PLACED, payload.array());
+            unreplacedMsat.merge(currencyPair.toString(), -amountMsat, Math::addExact);
+        }
+    }
+
+    /**
+     * Amounts (in msat) per currency pair that have been journaled, but not been replaced yet.
+     */
+    public synchronized Map<CurrencyPair, Long> unreplaced() {
+        return unreplacedMsat.entrySet().stream()
+                .filter(it -> it.getValue() > 0L)
+                .collect(Collectors.toUnmodifiableMap(it -> new CurrencyPair(it.getKey()), Map.Entry::getValue));
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Force all written records to the storage device.
+     */
+    public void sync() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (closed || !dirty) {
+                return;
+            }
+            dirty = false;
+            buffer = active;
+        }
+        buffer.force();
+    }
+
+    /**
+     * Start a new segment with a snapshot of all unreplaced amounts and delete all previous segments.
+     */
+    public synchronized void compact() throws IOException {
+        if (closed || segments.size() <= 1 && recordsSinceCompaction == 0) {
+            return;
+        }
+
+        long coveredIndex = activeIndex;
+        startSegment(coveredIndex + 1);
+        append(TYPE_SNAPSHOT, snapshotPayload(coveredIndex));
+        active.force();
+        dirty = false;
+
+        deleteSegmentsUpTo(coveredIndex);
+        recordsSinceCompaction = 0;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            active.force();
+            try {
+                activeChannel.close();
+            } catch (IOException e) {
+                log.warn("Could not close journal segment: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void scheduleMaintenance(Duration syncInterval, Duration compactionInterval) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (Exception e) {
+                log.warn("Could not sync journal: {}", e.getMessage());
+            }
+        }, syncInterval.toMillis(), syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (Exception e) {
+                log.warn("Could not compact journal: {}", e.getMessage());
+            }
+        }, compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void append(byte type, byte[] payload) {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Record is too large: " + recordSize);
+        }
+        if (active.remaining() < recordSize) {
+            rollSegment();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        active.putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(type)
+                .put(payload);
+        dirty = true;
+        if (type != TYPE_SNAPSHOT) {
+            recordsSinceCompaction++;
+        }
+    }
+
+    private void rollSegment() {
+        try {
+            active.force();
+            startSegment(activeIndex + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start new journal segment", e);
+        }
+    }
+
+    private void startSegment(long index) throws IOException {
+        Path path = directory.resolve(String.format("journal-%016d.seg", index));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (activeChannel != null) {
+            activeChannel.close();
+        }
+        activeChannel = channel;
+        active = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        activeIndex = index;
+        segments.put(index, path);
+    }
+
+    private byte[] snapshotPayload(long coveredIndex) {
+        List<byte[]> symbols = new ArrayList<>();
+        int size = Long.BYTES + Integer.BYTES;
+        for (String symbol : unreplacedMsat.keySet()) {
+            byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+            symbols.add(bytes);
+            size += Short.BYTES + bytes.length + Long.BYTES;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(size)
+                .putLong(coveredIndex)
+                .putInt(unreplacedMsat.size());
+        Iterator<Long> amounts = unreplacedMsat.values().iterator();
+        for (byte[] symbol : symbols) {
+            payload.putShort((short) symbol.length)
+                    .put(symbol)
+                    .putLong(amounts.next());
+        }
+        return payload.array();
+    }
+
+    private void deleteSegmentsUpTo(long index) throws IOException {
+        NavigableMap<Long, Path> obsolete = segments.headMap(index, true);
+        for (Path path : obsolete.values()) {
+            Files.deleteIfExists(path);
+        }
+        obsolete.clear();
+    }
+
+    private synchronized void recover() throws IOException {
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                Matcher matcher = SEGMENT_FILE_NAME_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.put(Long.parseLong(matcher.group(1)), path);
+                }
+            });
+        }
+
+        if (segments.isEmpty()) {
+            startSegment(1);
+            return;
+        }
+
+        long coveredIndex = 0;
+        long lastIndex = segments.lastKey();
+        int lastPosition = 0;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                long snapshotCoveredIndex = readRecords(buffer);
+                coveredIndex = Math.max(coveredIndex, snapshotCoveredIndex);
+                if (segment.getKey() == lastIndex) {
+                    lastPosition = buffer.position();
+                }
+            }
+        }
+
+        // remove leftovers of an interrupted compaction
+        deleteSegmentsUpTo(coveredIndex);
+
+        activeChannel = FileChannel.open(segments.get(lastIndex), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        activeIndex = lastIndex;
+
+        // clear any partially written record
+        active.position(lastPosition);
+        while (active.hasRemaining()) {
+            active.put((byte) 0);
+        }
+        active.position(lastPosition);
+
+        log.debug("Recovered journal with {} segment(s): {}", segments.size(), unreplacedMsat);
+    }
+
+    /**
+     * Reads all valid records and leaves the buffer positioned after the last valid record.
+     *
+     * @return the index of the last segment covered by a snapshot in this segment or 0
+     */
+    private long readRecords(ByteBuffer buffer) {
+        long coveredIndex = 0;
+        while (buffer.remaining() > HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            byte type = buffer.get();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Found corrupt journal record at position {} - ignoring the remainder of the segment", start);
+                buffer.position(start);
+                break;
+            }
+
+            if (type != TYPE_SNAPSHOT) {
+                recordsSinceCompaction++;
+            }
+            try {
+                coveredIndex = Math.max(coveredIndex, applyRecord(type, ByteBuffer.wrap(payload)));
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                log.warn("Found invalid journal record at position {}: {}", start, e.getMessage());
+            }
+        }
+        return coveredIndex;
+    }
+
+    private long applyRecord(byte type, ByteBuffer payload) {
+        switch (type) {
+            case TYPE_INTENT -> {
+                payload.getLong(); // timestamp
+                String symbol = readSymbol(payload);
+                payload.position(payload.position() + 32 + Long.BYTES); // payment hash and part id
+                unreplacedMsat.merge(symbol, payload.getLong(), Math::addExact);
+                return 0;
+            }
+            case TYPE_PLACED -> {
+                payload.getLong(); // timestamp
+                String symbol = readSymbol(payload);
+                unreplacedMsat.merge(symbol, -payload.getLong(), Math::addExact);
+                return 0;
+            }
+            case TYPE_SNAPSHOT -> {
+                long coveredIndex = payload.getLong();
+                int count = payload.getInt();
+                unreplacedMsat.clear();
+                for (int i = 0; i < count; i++) {
+                    unreplacedMsat.put(readSymbol(payload), payload.getLong());
+                }
+                return coveredIndex;
+            }
+            default -> throw new IllegalArgumentException("Unknown record type " + type);
+        }
+    }
+
+    private static String readSymbol(ByteBuffer payload) {
+        byte[] symbol = new byte[payload.getShort()];
+        payload.get(symbol);
+        return new String(symbol, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] symbolBytes(CurrencyPair currencyPair) {
+        return currencyPair.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
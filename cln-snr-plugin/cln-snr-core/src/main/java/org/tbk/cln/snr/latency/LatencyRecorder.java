@@ -0,0 +1,111 @@
+package org.tbk.cln.snr.latency;
+
+import lombok.NonNull;
+import lombok.Value;
+import org.HdrHistogram.Histogram;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Records the latency of every {@link LatencyStage} of a replacement in HDR histograms per exchange.
+ * <p>
+ * Latencies are tracked in microseconds (up to one hour) and can be summarized over sliding windows
+ * of one, five and fifteen minutes.
+ */
+public final class LatencyRecorder {
+
+    public static final List<Duration> WINDOWS = List.of(Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMinutes(15));
+
+    private static final Duration INTERVAL = Duration.ofSeconds(15);
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static final int NUMBER_OF_SIGNIFICANT_VALUE_DIGITS = 2;
+
+    private record Key(String exchange, LatencyStage stage) {
+    }
+
+    private final Map<Key, SlidingWindowHistogram> histograms = new ConcurrentHashMap<>();
+
+    private final Clock clock;
+
+    public LatencyRecorder() {
+        this(Clock.systemUTC());
+    }
+
+    LatencyRecorder(Clock clock) {
+        this.clock = requireNonNull(clock);
+    }
+
+    /**
+     * Records the latency of a stage.
+     *
+     * @param exchange the name of the exchange
+     * @param stage    the stage
+     * @param nanos    the latency in nanoseconds
+     */
+    public void record(@NonNull String exchange, @NonNull LatencyStage stage, long nanos) {
+        histograms.computeIfAbsent(new Key(exchange, stage), it -> newHistogram())
+                .record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}.
+     */
+    public void recordSince(@NonNull String exchange, @NonNull LatencyStage stage, long startNanos) {
+        record(exchange, stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the names of all exchanges latencies have been recorded for.
+     */
+    public Set<String> exchanges() {
+        Set<String> exchanges = new TreeSet<>();
+        histograms.keySet().forEach(it -> exchanges.add(it.exchange()));
+        return exchanges;
+    }
+
+    /**
+     * Returns a summary of all latencies of a stage recorded within the given window - or empty if nothing has
+     * been recorded (yet).
+     */
+    public Optional<Summary> summary(@NonNull String exchange, @NonNull LatencyStage stage, @NonNull Duration window) {
+        return Optional.ofNullable(histograms.get(new Key(exchange, stage)))
+                .map(it -> it.snapshot(window))
+                .filter(it -> it.getTotalCount() > 0)
+                .map(Summary::of);
+    }
+
+    private SlidingWindowHistogram newHistogram() {
+        Duration maxWindow = WINDOWS.get(WINDOWS.size() - 1);
+        return new SlidingWindowHistogram(INTERVAL, maxWindow, HIGHEST_TRACKABLE_MICROS,
+                NUMBER_OF_SIGNIFICANT_VALUE_DIGITS, clock::millis);
+    }
+
+    /**
+     * Latency percentiles in microseconds.
+     */
+    @Value
+    public static class Summary {
+        long count;
+        long p50;
+        long p90;
+        long p99;
+        long max;
+
+        static Summary of(Histogram histogram) {
+            return new Summary(histogram.getTotalCount(), histogram.getValueAtPercentile(50.0d),
+                    histogram.getValueAtPercentile(90.0d), histogram.getValueAtPercentile(99.0d), histogram.getMaxValue());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.tbk.cln.snr.latency;
+
+/**
+ * The stages a spent payment passes through till the exchange acknowledged the order replacing it.
+ */
+public enum LatencyStage {
+    /**
+     * Decoding the {@code sendpay_success} notification.
+     */
+    DECODE("decode"),
+    /**
+     * From notification receipt till the replacement starts (aggregation of parts and waiting for a worker).
+     */
+    QUEUE("queue"),
+    /**
+     * Fetching the ticker of an exchange to compare its price while routing the order.
+     */
+    QUOTE("quote"),
+    /**
+     * Looking up exchange metadata of the currency pair.
+     */
+    MARKET_DATA("market-data"),
+    /**
+     * Building the order (including the ticker lookup for test limit orders).
+     */
+    ORDER_BUILD("order-build"),
+    /**
+     * The round trip of placing the order on the exchange.
+     */
+    PLACE_ORDER("place-order"),
+    /**
+     * From notification receipt till the exchange acknowledged the order.
+     */
+    TOTAL("total");
+
+    private final String jsonName;
+
+    LatencyStage(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+}
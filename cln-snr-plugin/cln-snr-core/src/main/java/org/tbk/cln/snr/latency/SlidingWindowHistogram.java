@@ -0,0 +1,110 @@
+package org.tbk.cln.snr.latency;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A histogram of values recorded within a sliding window of time.
+ * <p>
+ * Values are recorded wait-free into a {@link Recorder} and moved into one of a ring of fixed intervals whenever
+ * the interval changes or a snapshot is taken. A window is approximated by whole intervals - the current, partially
+ * filled interval included - and therefore covers up to one interval more than requested.
+ */
+final class SlidingWindowHistogram {
+
+    private final Recorder recorder;
+
+    private final long intervalMillis;
+
+    private final LongSupplier clock;
+
+    private final long highestTrackableValue;
+
+    private final int numberOfSignificantValueDigits;
+
+    // all fields below are guarded by "this"
+    private final Histogram[] intervals;
+    private final long[] intervalIndexes;
+    private Histogram recycled;
+
+    private volatile long currentIntervalIndex;
+
+    SlidingWindowHistogram(Duration interval,
+                           Duration maxWindow,
+                           long highestTrackableValue,
+                           int numberOfSignificantValueDigits,
+                           LongSupplier clock) {
+        this.intervalMillis = interval.toMillis();
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.clock = requireNonNull(clock);
+        this.highestTrackableValue = highestTrackableValue;
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+        this.recorder = new Recorder(highestTrackableValue, numberOfSignificantValueDigits);
+
+        int intervalCount = Math.toIntExact((maxWindow.toMillis() + intervalMillis - 1) / intervalMillis) + 1;
+        this.intervals = new Histogram[intervalCount];
+        this.intervalIndexes = new long[intervalCount];
+        this.currentIntervalIndex = intervalIndex(clock.getAsLong());
+    }
+
+    /**
+     * Records a value - values above the highest trackable value are capped.
+     */
+    void record(long value) {
+        long intervalIndex = intervalIndex(clock.getAsLong());
+        if (intervalIndex != currentIntervalIndex) {
+            rotate(intervalIndex);
+        }
+        recorder.recordValue(Math.min(Math.max(value, 0L), highestTrackableValue));
+    }
+
+    /**
+     * Returns a copy of all values recorded within the given window.
+     */
+    synchronized Histogram snapshot(Duration window) {
+        long intervalIndex = intervalIndex(clock.getAsLong());
+        rotate(intervalIndex);
+
+        long oldestIntervalIndex = intervalIndex - window.toMillis() / intervalMillis;
+
+        Histogram result = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+        for (int i = 0; i < intervals.length; i++) {
+            if (intervals[i] != null && intervalIndexes[i] >= oldestIntervalIndex && intervalIndexes[i] <= intervalIndex) {
+                result.add(intervals[i]);
+            }
+        }
+        return result;
+    }
+
+    private synchronized void rotate(long nextIntervalIndex) {
+        // all values of the recorder have been recorded in the current interval
+        long intervalIndex = currentIntervalIndex;
+        Histogram intervalHistogram = recorder.getIntervalHistogram(recycled);
+
+        // intervals are allocated lazily - idle stages do not take up memory
+        if (intervalHistogram.getTotalCount() > 0) {
+            int slot = (int) Math.floorMod(intervalIndex, (long) intervals.length);
+            if (intervals[slot] == null) {
+                intervals[slot] = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+            } else if (intervalIndexes[slot] != intervalIndex) {
+                intervals[slot].reset();
+            }
+            intervalIndexes[slot] = intervalIndex;
+            intervals[slot].add(intervalHistogram);
+        }
+
+        this.recycled = intervalHistogram;
+        this.currentIntervalIndex = Math.max(intervalIndex, nextIntervalIndex);
+    }
+
+    private long intervalIndex(long epochMillis) {
+        return Math.floorDiv(epochMillis, intervalMillis);
+    }
+}
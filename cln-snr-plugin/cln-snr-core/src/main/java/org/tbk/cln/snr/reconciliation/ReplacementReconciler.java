@@ -0,0 +1,644 @@
+package org.tbk.cln.snr.reconciliation;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.UserTrade;
+import org.tbk.cln.snr.exchange.SatoshiMath;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Reconciles placed orders with the fills reported by the exchange.
+ * <p>
+ * Every placed order is recorded with the exchange it has been placed on, the full hashes of all payments it has been
+ * placed for (i.e. including carried over amounts) and the (truncated) user reference it has been tagged with. Trades
+ * are matched to orders of the exchange they have been synced from by order id - or by user reference if the
+ * exchange does not report the order id of a trade. As user references are truncated payment hashes, they
+ * can collide: a trade is only matched by user reference if exactly one unfilled order carries it, otherwise
+ * it is counted as ambiguous.
+ * <p>
+ * Orders that have not been filled completely within the fill deadline are flagged as overdue.
+ * <p>
+ * Orders whose placement timed out have an unknown outcome: they are recorded with a unique id and resolved by user reference with
+ * the trade history of the exchange they have been sent to - as placed once an order or a trade carrying the user reference shows up, or as not placed if
+ * none did within the fill deadline (market orders are filled right away). All lookups
+ * are backed by in-memory indices - orders and fills are appended to a single log file, which is read once
+ * on {@link #open(Path, Duration)}.
+ */
+@Slf4j
+public final class ReplacementReconciler implements AutoCloseable {
+
+    // header: payload length (int) + crc32 of type and payload (int) + type (byte)
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+
+    private static final byte TYPE_PLACED = 1;
+    private static final byte TYPE_FILL = 2;
+    private static final byte TYPE_UNKNOWN = 3;
+    private static final byte TYPE_RESOLVED = 4;
+
+    private static final Comparator<Placement> BY_PLACED_AT = Comparator
+            .comparing((Placement it) -> it.placedAt)
+            .thenComparing(it -> it.orderId);
+
+    public static ReplacementReconciler open(Path file, Duration fillDeadline) throws IOException {
+        return open(file, fillDeadline, Clock.systemUTC());
+    }
+
+    static ReplacementReconciler open(Path file, Duration fillDeadline, Clock clock) throws IOException {
+        ReplacementReconciler reconciler = new ReplacementReconciler(file, fillDeadline, clock);
+        reconciler.recover();
+        return reconciler;
+    }
+
+    private final Path file;
+
+    private final Duration fillDeadline;
+
+    private final Clock clock;
+
+    // all fields below are guarded by "this"
+    private final Map<String, Placement> placementsByOrderId = new HashMap<>();
+    private final Map<String, Placement> placementsByPaymentHash = new HashMap<>();
+    private final Map<String, List<Placement>> unfilledByUserReference = new HashMap<>();
+    private final NavigableSet<Placement> unfilledByPlacedAt = new TreeSet<>(BY_PLACED_AT);
+    private final Map<Long, Attempt> unknownById = new LinkedHashMap<>();
+    private long nextAttemptId = 1L;
+    private final Set<String> matchedTradeIds = new HashSet<>();
+    private long ambiguousTrades;
+    // placements older than this have already been reported as overdue
+    private Instant overdueReportedUntil = Instant.EPOCH;
+    private FileChannel channel;
+    private boolean closed;
+
+    private ReplacementReconciler(@NonNull Path file, @NonNull Duration fillDeadline, @NonNull Clock clock) {
+        if (fillDeadline.isZero() || fillDeadline.isNegative()) {
+            throw new IllegalArgumentException("Fill deadline must be positive");
+        }
+        this.file = file;
+        this.fillDeadline = fillDeadline;
+        this.clock = clock;
+    }
+
+    /**
+     * Record an order that has been placed to replace spent amounts.
+     *
+     * @param exchange      the name of the exchange the order has been placed on
+     * @param paymentHashes the hashes of all payments the order has been placed for - empty if unknown (e.g. amounts
+     *                      replayed from the journal)
+     * @param orderId       the id of the order assigned by the exchange
+     * @param userReference the user reference the order has been tagged with
+     * @param amountSats    the amount of the order
+     */
+    public synchronized void placed(@NonNull String exchange, @NonNull Collection<String> paymentHashes, @NonNull String orderId,
+                                    @NonNull String userReference, long amountSats) {
+        if (placementsByOrderId.containsKey(orderId)) {
+            return;
+        }
+        Placement placement = new Placement(exchange, List.copyOf(paymentHashes), orderId, userReference, amountSats, clock.instant());
+        write(List.of(record(TYPE_PLACED, encodePlacement(placement))));
+        indexPlacement(placement);
+    }
+
+    /**
+     * Record an order whose placement timed out - the exchange might have executed it anyway.
+     *
+     * @param exchange      the name of the exchange the order has been sent to
+     * @param currencyPair  the currency pair of the order
+     * @param paymentHashes the hashes of all payments the order has been placed for
+     * @param userReference the user reference the order has been tagged with
+     * @param amountSats    the amount of the order
+     */
+    public synchronized void unknown(@NonNull String exchange, @NonNull CurrencyPair currencyPair, @NonNull Collection<String> paymentHashes,
+                                     @NonNull String userReference, long amountSats) {
+        // attempts might share a user reference - e.g. retries of the same pending amount
+        Attempt attempt = new Attempt(nextAttemptId, exchange, currencyPair, List.copyOf(paymentHashes), userReference, amountSats,
+                clock.instant());
+        write(List.of(record(TYPE_UNKNOWN, encodeAttempt(attempt))));
+        indexAttempt(attempt);
+    }
+
+    /**
+     * Resolve orders of unknown outcome sent to the given exchange with its trade history. An order that has been placed
+     * is recorded (and matched with its trades) like any other placed order.
+     *
+     * @param exchange              the name of the exchange the trade history has been synced from
+     * @param tradesByUserReference the known trades by user reference
+     * @param ordersByUserReference the known orders by user reference
+     * @param syncedAt              the time the trade history has been synced with the exchange
+     * @return the orders whose outcome has been resolved
+     */
+    public synchronized List<Resolution> resolve(@NonNull String exchange,
+                                                 Function<String, List<UserTrade>> tradesByUserReference,
+                                                 Function<String, List<LimitOrder>> ordersByUserReference,
+                                                 Instant syncedAt) {
+        List<Resolution> resolutions = new ArrayList<>();
+        for (Attempt attempt : List.copyOf(unknownById.values())) {
+            // the order does not show up in the trade history of any other exchange
+            if (!attempt.getExchange().equals(exchange)) {
+                continue;
+            }
+            // ignore orders and trades of other orders with the same user reference
+            List<UserTrade> trades = tradesByUserReference.apply(attempt.getUserReference()).stream()
+                    .filter(it -> it.getOrderId() != null ? !placementsByOrderId.containsKey(it.getOrderId()) : !matchedTradeIds.contains(it.getId()))
+                    .toList();
+            Optional<String> orderId = ordersByUserReference.apply(attempt.getUserReference()).stream()
+                    .map(Order::getId)
+                    .filter(it -> it != null && !placementsByOrderId.containsKey(it))
+                    .findFirst()
+                    .or(() -> trades.stream().map(UserTrade::getOrderId).filter(Objects::nonNull).findFirst());
+
+            if (orderId.isPresent() || !trades.isEmpty()) {
+                // the exchange might not report order ids - trades are matched by user reference then
+                Placement placement = new Placement(exchange, attempt.getPaymentHashes(), orderId.orElse("ref:" + attempt.getUserReference() + ":" + attempt.getId()),
+                        attempt.getUserReference(), attempt.getAmountSats(), attempt.getAttemptedAt());
+                write(List.of(record(TYPE_PLACED, encodePlacement(placement)), record(TYPE_RESOLVED, encodeResolved(attempt))));
+                unknownById.remove(attempt.getId());
+                indexPlacement(placement);
+                match(exchange, trades);
+                resolutions.add(new Resolution(attempt, placement.orderId));
+            } else if (!syncedAt.isBefore(attempt.getAttemptedAt().plus(fillDeadline))) {
+                write(List.of(record(TYPE_RESOLVED, encodeResolved(attempt))));
+                unknownById.remove(attempt.getId());
+                resolutions.add(new Resolution(attempt, null));
+            }
+        }
+        return resolutions;
+    }
+
+    /**
+     * Returns all orders whose outcome is still unknown - oldest first.
+     */
+    public synchronized List<Attempt> unresolved() {
+        return List.copyOf(unknownById.values());
+    }
+
+    /**
+     * Match the given trades against unfilled orders placed on the given exchange. Trades that have already been matched
+     * are ignored.
+     *
+     * @param exchange the name of the exchange the trades have been synced from
+     * @return the number of newly matched trades
+     */
+    public synchronized int match(@NonNull String exchange, Collection<UserTrade> trades) {
+        List<byte[]> records = new ArrayList<>();
+        for (UserTrade trade : trades) {
+            if (trade.getId() == null || trade.getOriginalAmount() == null || matchedTradeIds.contains(trade.getId())) {
+                continue;
+            }
+            Placement placement = findUnfilled(exchange, trade);
+            if (placement != null) {
+                Fill fill = new Fill(trade.getId(), placement.orderId, SatoshiMath.btcToSatsCeiling(trade.getOriginalAmount()));
+                records.add(record(TYPE_FILL, encodeFill(fill)));
+                applyFill(fill);
+            }
+        }
+        write(records);
+
+        reportOverdue();
+        return records.size();
+    }
+
+    /**
+     * Match all unfilled orders placed on the given exchange against the trades already known for their order id, e.g.
+     * from a local trade history on startup.
+     *
+     * @param exchange the name of the exchange the trades have been synced from
+     * @return the number of newly matched trades
+     */
+    public synchronized int catchUp(@NonNull String exchange, Function<String, List<UserTrade>> tradesByOrderId) {
+        List<UserTrade> trades = new ArrayList<>();
+        for (Placement placement : unfilledByPlacedAt) {
+            if (placement.exchange.equals(exchange)) {
+                trades.addAll(tradesByOrderId.apply(placement.orderId));
+            }
+        }
+        return match(exchange, trades);
+    }
+
+    public synchronized Optional<Entry> byOrderId(String orderId) {
+        return Optional.ofNullable(placementsByOrderId.get(orderId)).map(this::toEntry);
+    }
+
+    public synchronized Optional<Entry> byPaymentHash(String paymentHash) {
+        return Optional.ofNullable(placementsByPaymentHash.get(paymentHash)).map(this::toEntry);
+    }
+
+    /**
+     * Returns all orders that have not been filled completely within the fill deadline - oldest first.
+     */
+    public synchronized List<Entry> overdue() {
+        return overduePlacements().stream().map(this::toEntry).toList();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(placementsByOrderId.size(), unfilledByPlacedAt.size(), overduePlacements().size(), ambiguousTrades,
+                unknownById.size());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close replacement reconciler: {}", e.getMessage());
+        }
+    }
+
+    private Placement findUnfilled(String exchange, UserTrade trade) {
+        if (trade.getOrderId() != null) {
+            Placement placement = placementsByOrderId.get(trade.getOrderId());
+            return placement != null && placement.exchange.equals(exchange) && !placement.isFilled() ? placement : null;
+        }
+        if (trade.getOrderUserReference() == null) {
+            return null;
+        }
+        List<Placement> candidates = unfilledByUserReference.getOrDefault(trade.getOrderUserReference(), List.of()).stream()
+                .filter(it -> it.exchange.equals(exchange))
+                .toList();
+        if (candidates.size() > 1) {
+            ambiguousTrades++;
+            log.warn("Cannot match trade {} - user reference {} is shared by {} unfilled orders",
+                    trade.getId(), trade.getOrderUserReference(), candidates.size());
+            return null;
+        }
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    private NavigableSet<Placement> overduePlacements() {
+        Placement deadline = new Placement("", List.of(), "", "", 0L, clock.instant().minus(fillDeadline));
+        return unfilledByPlacedAt.headSet(deadline, false);
+    }
+
+    private void reportOverdue() {
+        Instant deadline = clock.instant().minus(fillDeadline);
+        if (!deadline.isAfter(overdueReportedUntil)) {
+            return;
+        }
+        Placement from = new Placement("", List.of(), "", "", 0L, overdueReportedUntil);
+        Placement to = new Placement("", List.of(), "", "", 0L, deadline);
+        for (Placement placement : unfilledByPlacedAt.subSet(from, true, to, false)) {
+            log.warn("Order {} (ref {}) on {} has not been filled within {} - filled {} of {} sat",
+                    placement.orderId, placement.userReference, placement.exchange, fillDeadline, placement.filledSats, placement.amountSats);
+        }
+        overdueReportedUntil = deadline;
+    }
+
+    private void indexPlacement(Placement placement) {
+        placementsByOrderId.put(placement.orderId, placement);
+        for (String paymentHash : placement.paymentHashes) {
+            placementsByPaymentHash.put(paymentHash, placement);
+        }
+        unfilledByUserReference.computeIfAbsent(placement.userReference, it -> new ArrayList<>(1)).add(placement);
+        unfilledByPlacedAt.add(placement);
+    }
+
+    private void applyFill(Fill fill) {
+        matchedTradeIds.add(fill.tradeId);
+
+        Placement placement = placementsByOrderId.get(fill.orderId);
+        if (placement == null || placement.isFilled()) {
+            return;
+        }
+        placement.filledSats = Math.addExact(placement.filledSats, fill.amountSats);
+        if (placement.isFilled()) {
+            unfilledByPlacedAt.remove(placement);
+            List<Placement> sameReference = unfilledByUserReference.get(placement.userReference);
+            sameReference.remove(placement);
+            if (sameReference.isEmpty()) {
+                unfilledByUserReference.remove(placement.userReference);
+            }
+        }
+    }
+
+    private Entry toEntry(Placement placement) {
+        return new Entry(placement.exchange, placement.paymentHashes, placement.orderId, placement.userReference, placement.amountSats,
+                placement.filledSats, placement.placedAt, toState(placement));
+    }
+
+    private State toState(Placement placement) {
+        if (placement.isFilled()) {
+            return State.FILLED;
+        }
+        if (placement.placedAt.isBefore(clock.instant().minus(fillDeadline))) {
+            return State.OVERDUE;
+        }
+        return placement.filledSats > 0L ? State.PARTIALLY_FILLED : State.UNFILLED;
+    }
+
+    private void write(List<byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("Replacement reconciler is closed");
+        }
+        try {
+            for (byte[] record : records) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to replacement reconciler", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        while (buffer.remaining() > HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            byte type = buffer.get();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            if (checksum(type, payload) != checksum) {
+                log.warn("Found corrupt reconciliation record at position {} - ignoring the remainder of the file", start);
+                buffer.position(start);
+                break;
+            }
+
+            try {
+                switch (type) {
+                    case TYPE_PLACED -> indexPlacement(decodePlacement(payload));
+                    case TYPE_FILL -> applyFill(decodeFill(payload));
+                    case TYPE_UNKNOWN -> indexAttempt(decodeAttempt(payload));
+                    case TYPE_RESOLVED -> unknownById.remove(decodeResolved(payload));
+                    default -> log.warn("Found reconciliation record of unknown type {} at position {}", type, start);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Found invalid reconciliation record at position {}: {}", start, e.getMessage());
+            }
+        }
+
+        // drop any partially written record
+        channel.truncate(buffer.position());
+        channel.position(buffer.position());
+
+        log.debug("Recovered replacement reconciler with {} order(s) ({} unfilled)", placementsByOrderId.size(), unfilledByPlacedAt.size());
+    }
+
+    private void indexAttempt(Attempt attempt) {
+        unknownById.put(attempt.getId(), attempt);
+        nextAttemptId = Math.max(nextAttemptId, attempt.getId() + 1L);
+    }
+
+    private static byte[] record(byte type, byte[] payload) {
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt(checksum(type, payload))
+                .put(type)
+                .put(payload)
+                .array();
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encodePlacement(Placement placement) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeUTF(placement.exchange);
+            writePaymentHashes(data, placement.paymentHashes);
+            data.writeUTF(placement.orderId);
+            data.writeUTF(placement.userReference);
+            data.writeLong(placement.amountSats);
+            data.writeLong(placement.placedAt.toEpochMilli());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Placement decodePlacement(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String exchange = in.readUTF();
+            List<String> paymentHashes = readPaymentHashes(in);
+            return new Placement(exchange, paymentHashes, in.readUTF(), in.readUTF(), in.readLong(), Instant.ofEpochMilli(in.readLong()));
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Unexpected end of record", e);
+        }
+    }
+
+    private static void writePaymentHashes(DataOutputStream data, List<String> paymentHashes) throws IOException {
+        data.writeInt(paymentHashes.size());
+        for (String paymentHash : paymentHashes) {
+            data.writeUTF(paymentHash);
+        }
+    }
+
+    private static List<String> readPaymentHashes(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) {
+            throw new IllegalArgumentException("Invalid number of payment hashes: " + count);
+        }
+        List<String> paymentHashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            paymentHashes.add(in.readUTF());
+        }
+        return List.copyOf(paymentHashes);
+    }
+
+    private static byte[] encodeAttempt(Attempt attempt) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeLong(attempt.getId());
+            data.writeUTF(attempt.getExchange());
+            data.writeUTF(attempt.getCurrencyPair().toString());
+            writePaymentHashes(data, attempt.getPaymentHashes());
+            data.writeUTF(attempt.getUserReference());
+            data.writeLong(attempt.getAmountSats());
+            data.writeLong(attempt.getAttemptedAt().toEpochMilli());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Attempt decodeAttempt(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            long id = in.readLong();
+            String exchange = in.readUTF();
+            CurrencyPair currencyPair = new CurrencyPair(in.readUTF());
+            List<String> paymentHashes = readPaymentHashes(in);
+            return new Attempt(id, exchange, currencyPair, paymentHashes, in.readUTF(), in.readLong(), Instant.ofEpochMilli(in.readLong()));
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Unexpected end of record", e);
+        }
+    }
+
+    private static byte[] encodeResolved(Attempt attempt) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Long.BYTES);
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeLong(attempt.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long decodeResolved(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            return in.readLong();
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Unexpected end of record", e);
+        }
+    }
+
+    private static byte[] encodeFill(Fill fill) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            data.writeUTF(fill.tradeId);
+            data.writeUTF(fill.orderId);
+            data.writeLong(fill.amountSats);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Fill decodeFill(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            return new Fill(in.readUTF(), in.readUTF(), in.readLong());
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Unexpected end of record", e);
+        }
+    }
+
+    public enum State {
+        UNFILLED,
+        PARTIALLY_FILLED,
+        FILLED,
+        OVERDUE
+    }
+
+    @Value
+    public static class Entry {
+        String exchange;
+        List<String> paymentHashes;
+        String orderId;
+        String userReference;
+        long amountSats;
+        long filledSats;
+        Instant placedAt;
+        State state;
+    }
+
+    @Value
+    public static class Stats {
+        long orders;
+        long unfilled;
+        long overdue;
+        long ambiguousTrades;
+        long unknown;
+    }
+
+    /**
+     * An order whose placement timed out.
+     */
+    @Value
+    public static class Attempt {
+        /**
+         * Identifies the attempt - unlike the user reference, which might be shared by multiple attempts.
+         */
+        long id;
+        String exchange;
+        CurrencyPair currencyPair;
+        List<String> paymentHashes;
+        String userReference;
+        long amountSats;
+        Instant attemptedAt;
+    }
+
+    @Value
+    public static class Resolution {
+        Attempt attempt;
+
+        /**
+         * The id of the order if it has been placed - `null` otherwise.
+         */
+        String orderId;
+
+        public boolean isPlaced() {
+            return orderId != null;
+        }
+    }
+
+    private static final class Placement {
+        private final String exchange;
+        private final List<String> paymentHashes;
+        private final String orderId;
+        private final String userReference;
+        private final long amountSats;
+        private final Instant placedAt;
+        private long filledSats;
+
+        Placement(String exchange, List<String> paymentHashes, String orderId, String userReference, long amountSats, Instant placedAt) {
+            this.exchange = exchange;
+            this.paymentHashes = paymentHashes;
+            this.orderId = orderId;
+            this.userReference = userReference;
+            this.amountSats = amountSats;
+            this.placedAt = placedAt;
+        }
+
+        boolean isFilled() {
+            return filledSats >= amountSats;
+        }
+    }
+
+    private record Fill(String tradeId, String orderId, long amountSats) {
+    }
+}
@@ -0,0 +1,109 @@
+package org.tbk.cln.snr.replacement;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Schedules another attempt to replace the pending amount of a currency pair after placing an order failed on
+ * every exchange, e.g. because the exchanges are down or their circuit breakers are open.
+ * <p>
+ * The amount itself stays pending in the {@link ReplacementLedger} - only the intent to replace it is deferred.
+ * At most one attempt per currency pair is scheduled at a time. The delay doubles with every failed attempt (up to
+ * {@code maxDelay}) and is reset as soon as an order has been placed.
+ */
+@Slf4j
+public final class DeferredReplacements implements AutoCloseable {
+
+    private final Duration initialDelay;
+
+    private final Duration maxDelay;
+
+    private final Consumer<CurrencyPair> replacePending;
+
+    private final Map<CurrencyPair, Deferral> deferrals = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snr-deferred-replacements");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DeferredReplacements(@NonNull Duration initialDelay, @NonNull Duration maxDelay, @NonNull Consumer<CurrencyPair> replacePending) {
+        if (initialDelay.isZero() || initialDelay.isNegative()) {
+            throw new IllegalArgumentException("Initial delay must be positive");
+        }
+        if (maxDelay.compareTo(initialDelay) < 0) {
+            throw new IllegalArgumentException("Max delay must not be smaller than initial delay");
+        }
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.replacePending = replacePending;
+    }
+
+    /**
+     * Schedules an attempt to replace the pending amount of the currency pair - unless one is already scheduled.
+     *
+     * @return the delay till the attempt
+     */
+    public Duration defer(CurrencyPair currencyPair) {
+        Deferral deferral = deferrals.compute(currencyPair, (key, existing) -> {
+            if (existing != null && !existing.future.isDone()) {
+                return existing;
+            }
+            int attempt = existing == null ? 0 : existing.attempt + 1;
+            Duration delay = delay(attempt);
+            ScheduledFuture<?> future = scheduler.schedule(() -> run(currencyPair), delay.toMillis(), TimeUnit.MILLISECONDS);
+            return new Deferral(attempt, delay, future);
+        });
+        return deferral.delay;
+    }
+
+    /**
+     * Resets the delay of the currency pair after an order has been placed - and cancels a scheduled attempt.
+     */
+    public void succeeded(CurrencyPair currencyPair) {
+        Deferral deferral = deferrals.remove(currencyPair);
+        if (deferral != null) {
+            deferral.future.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the number of currency pairs with a scheduled attempt.
+     */
+    public int size() {
+        return (int) deferrals.values().stream().filter(it -> !it.future.isDone()).count();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void run(CurrencyPair currencyPair) {
+        log.info("Retrying deferred replacement of {}", currencyPair);
+        try {
+            replacePending.accept(currencyPair);
+        } catch (Exception e) {
+            log.warn("Deferred replacement of {} failed: {}", currencyPair, e.getMessage());
+        }
+    }
+
+    private Duration delay(int attempt) {
+        Duration delay = initialDelay.multipliedBy(1L << Math.min(attempt, 20));
+        return delay.compareTo(maxDelay) > 0 ? maxDelay : delay;
+    }
+
+    private record Deferral(int attempt, Duration delay, ScheduledFuture<?> future) {
+    }
+}
@@ -0,0 +1,148 @@
+package org.tbk.cln.snr.replacement;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Combines all parts of a multi-part payment into a single {@link SpentPayment}.
+ * <p>
+ * cln emits one `sendpay_success` notification per part of a multi-part payment. Instead of replacing
+ * every part on its own, parts are collected by `payment_hash` and `groupid` for a bounded window (starting with
+ * the first part) and handed over to the sink as one payment with the summed amount. A group is handed over
+ * before its window ends as soon as its parts cover the amount of the whole payment (e.g. a single
+ * successful retry part). Payments that have not been split are handed over immediately.
+ * <p>
+ * The number of payments collected at the same time is bounded: If the limit is exceeded, the oldest
+ * payment is handed over early.
+ */
+public final class PaymentAggregator implements AutoCloseable {
+
+    private record Key(String paymentHash, long groupId) {
+        static Key of(SpentPayment payment) {
+            return new Key(payment.getPaymentHash(), payment.getGroupId());
+        }
+    }
+
+    private static final class Group {
+        private final Set<Long> partIds = new HashSet<>();
+        private SpentPayment payment;
+
+        Group(SpentPayment payment) {
+            this.payment = payment;
+            this.partIds.add(payment.getPartId());
+        }
+
+        boolean add(SpentPayment part) {
+            if (!partIds.add(part.getPartId())) {
+                return false;
+            }
+            payment = payment.combine(part);
+            return true;
+        }
+    }
+
+    private final Duration window;
+
+    private final int maxPendingPayments;
+
+    private final Consumer<SpentPayment> sink;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snr-payment-aggregator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guarded by "this" - insertion order is used to find the oldest payment
+    private final LinkedHashMap<Key, Group> pending = new LinkedHashMap<>();
+
+    public PaymentAggregator(@NonNull Duration window, int maxPendingPayments, @NonNull Consumer<SpentPayment> sink) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        if (maxPendingPayments <= 0) {
+            throw new IllegalArgumentException("Max pending payments must be positive");
+        }
+        this.window = window;
+        this.maxPendingPayments = maxPendingPayments;
+        this.sink = requireNonNull(sink);
+    }
+
+    public void add(SpentPayment payment) {
+        if (!payment.isPart()) {
+            sink.accept(payment);
+            return;
+        }
+
+        Key key = Key.of(payment);
+        Group completed = null;
+        Group evicted = null;
+
+        synchronized (this) {
+            Group group = pending.get(key);
+            if (group != null) {
+                if (group.add(payment) && group.payment.coversPaymentAmount()) {
+                    pending.remove(key);
+                    completed = group;
+                }
+            } else if (payment.coversPaymentAmount()) {
+                completed = new Group(payment);
+            } else {
+                Group created = new Group(payment);
+                pending.put(key, created);
+                scheduler.schedule(() -> flush(key, created), window.toMillis(), TimeUnit.MILLISECONDS);
+
+                if (pending.size() > maxPendingPayments) {
+                    Iterator<Group> iterator = pending.values().iterator();
+                    evicted = iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (completed != null) {
+            sink.accept(completed.payment);
+        }
+        if (evicted != null) {
+            sink.accept(evicted.payment);
+        }
+    }
+
+    public synchronized int pendingPayments() {
+        return pending.size();
+    }
+
+    private void flush(Key key, Group group) {
+        boolean removed;
+        synchronized (this) {
+            // the group might have been handed over already and replaced by a new one with the same key
+            removed = pending.remove(key, group);
+        }
+        if (removed) {
+            sink.accept(group.payment);
+        }
+    }
+
+    /**
+     * Hand over all payments that are currently collected and stop accepting new ones.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        List<Group> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        remaining.forEach(it -> sink.accept(it.payment));
+    }
+}
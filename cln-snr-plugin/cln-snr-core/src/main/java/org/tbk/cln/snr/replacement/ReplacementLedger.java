@@ -0,0 +1,182 @@
+package org.tbk.cln.snr.replacement;
+
+import fr.acinq.lightning.MilliSatoshi;
+import lombok.Value;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of spent amounts that still need to be replaced, per currency pair.
+ * <p>
+ * Payments that are too small to be replaced on their own (below the minimum order amount of the exchange)
+ * and the rounding remainder of placed orders are carried over till the pending amount is large enough
+ * to place a single order.
+ * <p>
+ * Amounts go through three states: `pending` (spent, but not yet replaced), `inflight` (reserved for an
+ * order that is currently being placed) and `replaced` (an order has been placed successfully).
+ * <p>
+ * The payment hashes contributing to the pending amount are tracked as well: an order covers all payments that
+ * are pending when its amount is reserved.
+ */
+public final class ReplacementLedger {
+
+    private final ConcurrentMap<CurrencyPair, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Add a spent amount that needs to be replaced.
+     *
+     * @return the state of the ledger for the given currency pair after crediting the amount
+     */
+    public Entry credit(CurrencyPair currencyPair, MilliSatoshi amount) {
+        return credit(currencyPair, amount, null);
+    }
+
+    /**
+     * Add a spent amount of the given payment that needs to be replaced.
+     *
+     * @param paymentHash the hash of the payment - or null if unknown (e.g. replayed from the journal)
+     * @return the state of the ledger for the given currency pair after crediting the amount
+     */
+    public Entry credit(CurrencyPair currencyPair, MilliSatoshi amount, String paymentHash) {
+        requirePositive(amount);
+        return account(currencyPair).credit(amount.getMsat(), paymentHash);
+    }
+
+    /**
+     * Move the given amount from `pending` to `inflight` - together with all payment hashes contributing to the
+     * pending amount.
+     *
+     * @return the reservation - or empty if there is not enough pending amount
+     */
+    public Optional<Reservation> reserve(CurrencyPair currencyPair, MilliSatoshi amount) {
+        requirePositive(amount);
+        return account(currencyPair).reserve(amount.getMsat());
+    }
+
+    /**
+     * Mark a previously reserved amount as replaced (an order has been placed successfully).
+     */
+    public Entry commit(CurrencyPair currencyPair, Reservation reservation) {
+        requirePositive(reservation.getAmount());
+        return account(currencyPair).commit(reservation.getAmount().getMsat());
+    }
+
+    /**
+     * Give back a previously reserved amount and its payment hashes (e.g. placing the order failed) so it is
+     * replaced later.
+     */
+    public Entry release(CurrencyPair currencyPair, Reservation reservation) {
+        requirePositive(reservation.getAmount());
+        return account(currencyPair).release(reservation.getAmount().getMsat(), reservation.getPaymentHashes());
+    }
+
+    public Entry entry(CurrencyPair currencyPair) {
+        return account(currencyPair).toEntry();
+    }
+
+    public Map<CurrencyPair, Entry> entries() {
+        return accounts.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, it -> it.getValue().toEntry()));
+    }
+
+    private Account account(CurrencyPair currencyPair) {
+        return accounts.computeIfAbsent(currencyPair, it -> new Account());
+    }
+
+    private static void requirePositive(MilliSatoshi amount) {
+        if (amount.getMsat() <= 0L) {
+            throw new IllegalArgumentException("Amount must be positive, got: " + amount);
+        }
+    }
+
+    @Value
+    public static class Entry {
+        MilliSatoshi pending;
+        MilliSatoshi inflight;
+        MilliSatoshi replaced;
+        long orders;
+
+        /**
+         * The hashes of the payments contributing to the pending amount - oldest first.
+         */
+        List<String> paymentHashes;
+    }
+
+    @Value
+    public static class Reservation {
+        MilliSatoshi amount;
+
+        /**
+         * The hashes of the payments covered by the reserved amount - oldest first.
+         */
+        List<String> paymentHashes;
+    }
+
+    private static final class Account {
+        private final Set<String> pendingPaymentHashes = new LinkedHashSet<>();
+        private long pendingMsat;
+        private long inflightMsat;
+        private long replacedMsat;
+        private long orders;
+
+        synchronized Entry credit(long msat, String paymentHash) {
+            pendingMsat = Math.addExact(pendingMsat, msat);
+            if (paymentHash != null) {
+                pendingPaymentHashes.add(paymentHash);
+            }
+            return toEntry();
+        }
+
+        synchronized Optional<Reservation> reserve(long msat) {
+            if (pendingMsat < msat) {
+                return Optional.empty();
+            }
+            pendingMsat -= msat;
+            inflightMsat += msat;
+
+            Reservation reservation = new Reservation(new MilliSatoshi(msat), List.copyOf(pendingPaymentHashes));
+            pendingPaymentHashes.clear();
+            return Optional.of(reservation);
+        }
+
+        synchronized Entry commit(long msat) {
+            requireInflight(msat);
+            inflightMsat -= msat;
+            replacedMsat = Math.addExact(replacedMsat, msat);
+            orders++;
+            return toEntry();
+        }
+
+        synchronized Entry release(long msat, List<String> paymentHashes) {
+            requireInflight(msat);
+            inflightMsat -= msat;
+            pendingMsat = Math.addExact(pendingMsat, msat);
+
+            // the released payments are older than the ones credited in the meantime
+            List<String> newerPaymentHashes = List.copyOf(pendingPaymentHashes);
+            pendingPaymentHashes.clear();
+            pendingPaymentHashes.addAll(paymentHashes);
+            pendingPaymentHashes.addAll(newerPaymentHashes);
+            return toEntry();
+        }
+
+        synchronized Entry toEntry() {
+            return new Entry(new MilliSatoshi(pendingMsat), new MilliSatoshi(inflightMsat), new MilliSatoshi(replacedMsat), orders,
+                    List.copyOf(pendingPaymentHashes));
+        }
+
+        private void requireInflight(long msat) {
+            if (inflightMsat < msat) {
+                throw new IllegalStateException("Cannot settle more than currently inflight: " + msat + " > " + inflightMsat);
+            }
+        }
+    }
+}
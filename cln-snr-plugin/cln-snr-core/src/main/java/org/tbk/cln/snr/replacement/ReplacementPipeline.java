@@ -0,0 +1,253 @@
+package org.tbk.cln.snr.replacement;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes replacements off the notification thread.
+ * <p>
+ * Tasks are accepted into bounded in-memory queues ("lanes") and processed by one dedicated worker per lane.
+ * All tasks with the same key (e.g. a currency pair) end up in the same lane and are executed in submission order.
+ * If a lane is full, the {@link OverflowPolicy} decides whether the caller waits for free capacity (up to a timeout)
+ * or is rejected immediately. Rejected tasks must be handled by the caller.
+ * <p>
+ * Workers run on virtual threads if the runtime supports them (Java 21+) and on platform threads otherwise.
+ */
+@Slf4j
+public final class ReplacementPipeline implements AutoCloseable {
+
+    public enum OverflowPolicy {
+        /**
+         * Wait for free capacity (up to the offer timeout) before rejecting the task.
+         */
+        BLOCK,
+        /**
+         * Reject the task immediately.
+         */
+        REJECT
+    }
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    private final Lane[] lanes;
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Duration offerTimeout;
+
+    private final boolean virtualThreads;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public ReplacementPipeline(int workers, int capacity, @NonNull OverflowPolicy overflowPolicy, @NonNull Duration offerTimeout) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Workers must be positive");
+        }
+        if (capacity < workers) {
+            throw new IllegalArgumentException("Capacity must not be less than the number of workers");
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.offerTimeout = offerTimeout;
+
+        ThreadFactory virtualThreadFactory = virtualThreadFactoryOrNull("snr-replacement-");
+        this.virtualThreads = virtualThreadFactory != null;
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory : platformThreadFactory("snr-replacement-");
+
+        int laneCapacity = capacity / workers;
+        this.capacity = laneCapacity * workers;
+        this.lanes = new Lane[workers];
+        for (int i = 0; i < workers; i++) {
+            this.lanes[i] = new Lane(laneCapacity);
+            this.lanes[i].start(threadFactory);
+        }
+    }
+
+    /**
+     * Submit a task for execution.
+     *
+     * @param key  tasks with the same key are executed in submission order
+     * @param task the task to execute
+     * @return true if the task has been accepted, false if it has been rejected
+     */
+    public boolean submit(String key, Runnable task) {
+        if (closed.get()) {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        Lane lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+
+        boolean offered = switch (overflowPolicy) {
+            case BLOCK -> lane.offer(task, offerTimeout);
+            case REJECT -> lane.offer(task);
+        };
+
+        if (offered) {
+            accepted.incrementAndGet();
+        } else {
+            rejected.incrementAndGet();
+        }
+        return offered;
+    }
+
+    public Stats stats() {
+        return new Stats(
+                lanes.length,
+                capacity,
+                Arrays.stream(lanes).mapToInt(it -> it.queue.size()).sum(),
+                Arrays.stream(lanes).mapToInt(it -> it.active.get()).sum(),
+                accepted.get(),
+                rejected.get(),
+                completed.get(),
+                failed.get(),
+                overflowPolicy,
+                virtualThreads
+        );
+    }
+
+    /**
+     * Stop accepting new tasks and wait for queued tasks to finish (up to the given timeout).
+     */
+    public void close(Duration timeout) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (Lane lane : lanes) {
+            lane.awaitTermination(deadline);
+        }
+    }
+
+    @Override
+    public void close() {
+        close(Duration.ofSeconds(20));
+    }
+
+    @Value
+    public static class Stats {
+        int workers;
+        int capacity;
+        int queued;
+        int active;
+        long accepted;
+        long rejected;
+        long completed;
+        long failed;
+        OverflowPolicy overflowPolicy;
+        boolean virtualThreads;
+    }
+
+    private final class Lane {
+        private final BlockingQueue<Runnable> queue;
+        private final AtomicInteger active = new AtomicInteger();
+        private Thread worker;
+
+        Lane(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void start(ThreadFactory threadFactory) {
+            this.worker = threadFactory.newThread(this::run);
+            this.worker.start();
+        }
+
+        boolean offer(Runnable task) {
+            return queue.offer(task);
+        }
+
+        boolean offer(Runnable task, Duration timeout) {
+            try {
+                return queue.offer(task, timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        void run() {
+            while (!closed.get() || !queue.isEmpty()) {
+                Runnable task;
+                try {
+                    task = queue.poll(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (task == null) {
+                    continue;
+                }
+
+                active.incrementAndGet();
+                try {
+                    task.run();
+                    completed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.warn("Replacement task failed: {}", e.getMessage());
+                } finally {
+                    active.decrementAndGet();
+                }
+            }
+        }
+
+        void awaitTermination(long deadlineNanos) {
+            Thread thread = this.worker;
+            try {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+                thread.join(Math.max(1L, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                log.warn("Replacement worker did not finish in time - {} task(s) left", queue.size());
+                thread.interrupt();
+            }
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns a factory for virtual threads on Java 21+ or null if not supported.
+     * Reflection is needed as the project is compiled against Java 17.
+     */
+    private static ThreadFactory virtualThreadFactoryOrNull(String prefix) {
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Could not create virtual thread factory - falling back to platform threads: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package org.tbk.cln.snr.replacement;
+
+import fr.acinq.lightning.MilliSatoshi;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.clightning.plugins.log.PluginLog;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.tbk.cln.snr.RunOptions;
+import org.tbk.cln.snr.exchange.ExchangeRouter;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import org.tbk.cln.snr.exchange.InstrumentSpec;
+import org.tbk.cln.snr.exchange.OrderId;
+import org.tbk.cln.snr.exchange.ResilientExchange;
+import org.tbk.cln.snr.exchange.SatoshiMath;
+import org.tbk.cln.snr.history.TradeHistoryStore;
+import org.tbk.cln.snr.journal.ReplacementJournal;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.latency.LatencyStage;
+import org.tbk.cln.snr.reconciliation.ReplacementReconciler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Places an order for a spent payment - or carries the amount over in the {@link ReplacementLedger} till
+ * it is large enough to be replaced.
+ * <p>
+ * The order is placed on the exchange with the best effective price as ranked by the {@link ExchangeRouter}.
+ * If placing the order fails (or the amount is below the minimum of the exchange), the next exchange is tried.
+ * <p>
+ * If placing the order failed on every exchange, another attempt is scheduled via {@link DeferredReplacements}.
+ * <p>
+ * If placing the order timed out, the exchange might have executed it anyway: no other exchange is tried and the
+ * amount stays inflight till the {@link ReplacementReconciler} resolved the outcome of the order with the trade history.
+ * <p>
+ * Placed orders are written to the {@link ReplacementJournal}. The outcome of every attempt is counted
+ * in {@code snr.orders} - tagged by currency pair and result ("placed", "skipped", "failed" or "unknown"). The latency of
+ * every {@link LatencyStage} is recorded in the {@link LatencyRecorder} for the exchange the order has been placed
+ * on - queue and total latency only for payments that have been replaced by an order immediately. Placed orders are handed over to the {@link ReplacementReconciler}
+ * to be matched with their fills.
+ */
+public class ReplacementService {
+
+    private enum Outcome {
+        PLACED(false),
+        UNDER_MINIMUM(true),
+        // the pending amount has been reserved concurrently - it is covered by another order
+        NOT_RESERVED(false),
+        FAILED(true),
+        // the order might have been placed - trying the next exchange could replace the amount twice
+        UNKNOWN(false);
+
+        // whether the next exchange should be tried
+        private final boolean tryNext;
+
+        Outcome(boolean tryNext) {
+            this.tryNext = tryNext;
+        }
+    }
+
+    private final ExchangeRouter exchangeRouter;
+
+    private final Currency fiatCurrency;
+
+    private final RunOptions runOptions;
+
+    private final ReplacementLedger ledger;
+
+    private final ReplacementJournal journal;
+
+    private final MeterRegistry meterRegistry;
+
+    private final LatencyRecorder latencyRecorder;
+
+    private final ReplacementReconciler reconciler;
+
+    private final DeferredReplacements deferredReplacements;
+
+    public ReplacementService(ExchangeRouter exchangeRouter,
+                              Currency fiatCurrency,
+                              RunOptions runOptions,
+                              ReplacementLedger ledger,
+                              ReplacementJournal journal,
+                              MeterRegistry meterRegistry,
+                              LatencyRecorder latencyRecorder,
+                              ReplacementReconciler reconciler,
+                              DeferredReplacements deferredReplacements) {
+        this.exchangeRouter = requireNonNull(exchangeRouter);
+        this.fiatCurrency = requireNonNull(fiatCurrency);
+        this.runOptions = requireNonNull(runOptions);
+        this.ledger = requireNonNull(ledger);
+        this.journal = requireNonNull(journal);
+        this.meterRegistry = requireNonNull(meterRegistry);
+        this.latencyRecorder = requireNonNull(latencyRecorder);
+        this.reconciler = requireNonNull(reconciler);
+        this.deferredReplacements = requireNonNull(deferredReplacements);
+    }
+
+    public void replace(ICLightningPlugin plugin, SpentPayment payment) {
+        // recorded once the exchange the order is placed on is known
+        Timing timing = new Timing(payment.getReceivedAt(), System.nanoTime() - payment.getReceivedAt());
+
+        CurrencyPair currencyPair = new CurrencyPair(Currency.BTC, fiatCurrency);
+
+        plugin.log(PluginLog.DEBUG, String.format("Spent amount which needs to be replaced: %s (parts: %d)",
+                payment.getAmountSent(), payment.getParts()));
+
+        ReplacementLedger.Entry ledgerEntry = ledger.credit(currencyPair, payment.getAmountSent(), payment.getPaymentHash());
+
+        placePendingAmount(plugin, currencyPair, ledgerEntry, Optional.of(timing));
+    }
+
+    /**
+     * Try to place an order for the amount already pending in the ledger, e.g. after it has been replayed from the journal.
+     */
+    public void replacePending(ICLightningPlugin plugin) {
+        CurrencyPair currencyPair = new CurrencyPair(Currency.BTC, fiatCurrency);
+
+        placePendingAmount(plugin, currencyPair, ledger.entry(currencyPair), Optional.empty());
+    }
+
+    /**
+     * Resolve orders of unknown outcome sent to the given exchange with its trade history - the amount of orders that
+     * have been placed is marked as replaced, the amount of all others is given back and replaced again.
+     */
+    public void resolveUnknown(ICLightningPlugin plugin, String exchangeName, TradeHistoryStore tradeHistory, Instant syncedAt) {
+        List<ReplacementReconciler.Resolution> resolutions = reconciler.resolve(exchangeName, tradeHistory::tradesByUserReference,
+                tradeHistory::ordersByUserReference, syncedAt);
+
+        boolean released = false;
+        for (ReplacementReconciler.Resolution resolution : resolutions) {
+            ReplacementReconciler.Attempt attempt = resolution.getAttempt();
+            ReplacementLedger.Reservation reservation = new ReplacementLedger.Reservation(
+                    new MilliSatoshi(SatoshiMath.satToMsat(attempt.getAmountSats())), attempt.getPaymentHashes());
+
+            if (resolution.isPlaced()) {
+                ReplacementLedger.Entry entry = ledger.commit(attempt.getCurrencyPair(), reservation);
+                journal.appendPlaced(attempt.getCurrencyPair(), reservation.getAmount().getMsat(), resolution.getOrderId());
+                plugin.log(PluginLog.INFO, String.format("Order with ref '%s' of unknown outcome has been placed with id '%s' (pending: %s)",
+                        attempt.getUserReference(), resolution.getOrderId(), entry.getPending()));
+                countOrder(attempt.getCurrencyPair(), "placed");
+            } else {
+                ReplacementLedger.Entry entry = ledger.release(attempt.getCurrencyPair(), reservation);
+                plugin.log(PluginLog.WARNING, String.format("Order with ref '%s' of unknown outcome has not been placed (pending: %s)",
+                        attempt.getUserReference(), entry.getPending()));
+                countOrder(attempt.getCurrencyPair(), "failed");
+                released = true;
+            }
+        }
+
+        if (released) {
+            replacePending(plugin);
+        }
+    }
+
+    private void placePendingAmount(ICLightningPlugin plugin,
+                                    CurrencyPair currencyPair,
+                                    ReplacementLedger.Entry ledgerEntry,
+                                    Optional<Timing> timing) {
+        // sub-satoshi amounts stay in the ledger and are replaced with one of the next payments
+        long amountToReplace = SatoshiMath.msatToSat(ledgerEntry.getPending().getMsat());
+
+        // each payment is covered by a single order - the oldest payment it covers identifies the order
+        int userReference = ledgerEntry.getPaymentHashes().isEmpty()
+                // e.g. amounts replayed from the journal
+                ? ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE)
+                : HexFormat.fromHexDigits(ledgerEntry.getPaymentHashes().get(0), 0, 8);
+
+        List<ExchangeService> route = exchangeRouter.route(currencyPair, amountToReplace);
+        boolean failed = false;
+        for (int i = 0; i < route.size(); i++) {
+            boolean hasFallback = i + 1 < route.size();
+            Outcome outcome = placePendingAmount(plugin, route.get(i), currencyPair, ledgerEntry, userReference, timing);
+            if (outcome == Outcome.PLACED) {
+                deferredReplacements.succeeded(currencyPair);
+            }
+            if (!outcome.tryNext) {
+                return;
+            }
+            failed |= outcome == Outcome.FAILED;
+            if (hasFallback) {
+                plugin.log(PluginLog.INFO, String.format("Falling back to %s", route.get(i + 1).getExchangeName()));
+            }
+        }
+
+        if (failed) {
+            Duration delay = deferredReplacements.defer(currencyPair);
+            plugin.log(PluginLog.INFO, String.format("Could not place an order on any exchange - will try again in %s (pending: %s)",
+                    delay, ledger.entry(currencyPair).getPending()));
+        }
+    }
+
+    /**
+     * Place an order on a single exchange.
+     */
+    private Outcome placePendingAmount(ICLightningPlugin plugin,
+                                       ExchangeService exchangeService,
+                                       CurrencyPair currencyPair,
+                                       ReplacementLedger.Entry ledgerEntry,
+                                       int userReference,
+                                       Optional<Timing> timing) {
+        long amountToReplace = SatoshiMath.msatToSat(ledgerEntry.getPending().getMsat());
+
+        long marketDataStart = System.nanoTime();
+        InstrumentSpec instrumentSpec = exchangeService.getExchangeMetaData().get().getInstrumentIndex().require(currencyPair);
+        latencyRecorder.recordSince(exchangeService.getExchangeName(), LatencyStage.MARKET_DATA, marketDataStart);
+
+        long orderBuildStart = System.nanoTime();
+        Order order = createOrder(exchangeService, currencyPair, amountToReplace)
+                // e.g. kraken needs a 32-byte integer as user reference
+                .userReference(String.valueOf(userReference))
+                .build();
+        latencyRecorder.recordSince(exchangeService.getExchangeName(), LatencyStage.ORDER_BUILD, orderBuildStart);
+
+        long orderAmountSats = SatoshiMath.btcToSats(order.getOriginalAmount());
+
+        // e.g. less than a satoshi pending on an exchange without a minimum amount
+        boolean isUnderMinimum = orderAmountSats <= 0L
+                || SatoshiMath.isUnderMinimum(orderAmountSats, instrumentSpec.getMinimumAmountSats());
+        if (isUnderMinimum) {
+            String infoMessage = String.format("Will not place order yet, pending amount is too small: %s < %s (pending: %s)",
+                    // the exchange might not have a minimum amount at all
+                    order.getOriginalAmount().toPlainString(), SatoshiMath.satsToBtc(instrumentSpec.getMinimumAmountSats()).toPlainString(),
+                    ledgerEntry.getPending());
+            plugin.log(PluginLog.INFO, infoMessage);
+            countOrder(currencyPair, "skipped");
+            return Outcome.UNDER_MINIMUM;
+        }
+
+        // the order amount might have been rounded down - the remainder stays pending in the ledger
+        MilliSatoshi orderAmount = new MilliSatoshi(SatoshiMath.satToMsat(orderAmountSats));
+
+        Optional<ReplacementLedger.Reservation> reservation = ledger.reserve(currencyPair, orderAmount);
+        if (reservation.isEmpty()) {
+            String infoMessage = String.format("Will not place order: %s has already been reserved by another order (pending: %s)",
+                    orderAmount, ledger.entry(currencyPair).getPending());
+            plugin.log(PluginLog.INFO, infoMessage);
+            return Outcome.NOT_RESERVED;
+        }
+
+        plugin.log(PluginLog.INFO, "Will place order: " + order);
+
+        OrderId orderId;
+        long placeOrderStart = System.nanoTime();
+        try {
+            orderId = exchangeService.placeOrder(order);
+            latencyRecorder.recordSince(exchangeService.getExchangeName(), LatencyStage.PLACE_ORDER, placeOrderStart);
+            timing.ifPresent(it -> {
+                latencyRecorder.record(exchangeService.getExchangeName(), LatencyStage.QUEUE, it.queueNanos());
+                latencyRecorder.recordSince(exchangeService.getExchangeName(), LatencyStage.TOTAL, it.receivedAt());
+            });
+        } catch (ResilientExchange.OutcomeUnknownException e) {
+            String warnMessage = String.format("Outcome of order on %s for amount %s is unknown - keeping it inflight till "
+                            + "it shows up in the trade history: %s (pending: %s)", exchangeService.getExchangeName(),
+                    order.getOriginalAmount().toPlainString(), e.getMessage(), ledger.entry(currencyPair).getPending());
+            plugin.log(PluginLog.WARNING, warnMessage);
+            countOrder(currencyPair, "unknown");
+
+            try {
+                reconciler.unknown(exchangeService.getExchangeName(), currencyPair, reservation.get().getPaymentHashes(),
+                        order.getUserReference(), orderAmountSats);
+            } catch (Exception recordException) {
+                plugin.log(PluginLog.ERROR, String.format("Could not record order with ref '%s' for reconciliation: %s",
+                        order.getUserReference(), recordException.getMessage()));
+            }
+            return Outcome.UNKNOWN;
+        } catch (Exception e) {
+            ReplacementLedger.Entry entry = ledger.release(currencyPair, reservation.get());
+
+            String errorMessage = String.format("Could not place order on %s for amount %s: %s (pending: %s)",
+                    exchangeService.getExchangeName(), order.getOriginalAmount().toPlainString(),
+                    e.getMessage(), entry.getPending());
+            plugin.log(PluginLog.ERROR, errorMessage);
+            countOrder(currencyPair, "failed");
+            return Outcome.FAILED;
+        }
+
+        ReplacementLedger.Entry entry = ledger.commit(currencyPair, reservation.get());
+
+        String successMessage = String.format("Placed an order on %s with id '%s' and ref '%s' (pending: %s)",
+                exchangeService.getExchangeName(), orderId, order.getUserReference(), entry.getPending());
+        plugin.log(PluginLog.INFO, successMessage);
+        countOrder(currencyPair, "placed");
+
+        journal.appendPlaced(currencyPair, orderAmount.getMsat(), orderId.toString());
+
+        try {
+            reconciler.placed(exchangeService.getExchangeName(), reservation.get().getPaymentHashes(), orderId.toString(),
+                    order.getUserReference(), orderAmountSats);
+        } catch (Exception e) {
+            plugin.log(PluginLog.WARNING, String.format("Could not record order '%s' for reconciliation: %s", orderId, e.getMessage()));
+        }
+        return Outcome.PLACED;
+    }
+
+    private void countOrder(CurrencyPair currencyPair, String result) {
+        Counter.builder("snr.orders")
+                .description("Attempts to place an order for spent amounts")
+                .tag("currency_pair", currencyPair.toString())
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Order.Builder createOrder(ExchangeService exchangeService, CurrencyPair currencyPair, long amountSats) {
+        if (!runOptions.isDryRun()) {
+            return exchangeService.createMarketOrder(currencyPair, amountSats);
+        } else {
+            return exchangeService.createTestLimitOrder(currencyPair, amountSats);
+        }
+    }
+
+    /**
+     * Timings of a payment that is replaced right away.
+     *
+     * @param receivedAt the {@link System#nanoTime()} the payment has been received at
+     * @param queueNanos the time the payment waited till the replacement started
+     */
+    private record Timing(long receivedAt, long queueNanos) {
+    }
+}
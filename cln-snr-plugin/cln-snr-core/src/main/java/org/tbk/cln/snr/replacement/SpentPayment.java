@@ -0,0 +1,91 @@
+package org.tbk.cln.snr.replacement;
+
+import fr.acinq.lightning.MilliSatoshi;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * An outgoing payment (or a single part of a multi-part payment) that needs to be replaced.
+ */
+@Value
+@Builder(toBuilder = true)
+public class SpentPayment {
+
+    @NonNull
+    String paymentHash;
+
+    long groupId;
+
+    /**
+     * The part id of a multi-part payment - `0` if the payment has not been split or parts have been combined.
+     */
+    long partId;
+
+    @NonNull
+    MilliSatoshi amountSent;
+
+    /**
+     * The amount delivered to the destination by the whole payment - shared by all parts of a multi-part payment,
+     * `null` if unknown.
+     */
+    MilliSatoshi paymentAmount;
+
+    @Builder.Default
+    int parts = 1;
+
+    /**
+     * The {@link System#nanoTime()} the payment has been received at - of the earliest part if parts have been combined.
+     */
+    @Builder.Default
+    long receivedAt = System.nanoTime();
+
+    public boolean isPart() {
+        return partId > 0L;
+    }
+
+    /**
+     * Whether the amount sent covers the whole payment, i.e. no further parts are to be expected.
+     * As the amount sent includes fees, parts smaller than the fees paid so far might still follow - those are
+     * replaced on their own.
+     */
+    public boolean coversPaymentAmount() {
+        return paymentAmount != null && amountSent.getMsat() >= paymentAmount.getMsat();
+    }
+
+    /**
+     * A 32-byte key identifying this payment: the payment hash itself - or, for a single part of a multi-part
+     * payment, a hash of the payment hash, group id and part id (all parts share the same payment hash).
+     */
+    public byte[] idempotencyKey() {
+        byte[] paymentHashBytes = HexFormat.of().parseHex(paymentHash);
+        if (!isPart()) {
+            return paymentHashBytes;
+        }
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update("snr-part".getBytes(StandardCharsets.US_ASCII));
+            sha256.update(paymentHashBytes);
+            sha256.update(ByteBuffer.allocate(2 * Long.BYTES).putLong(groupId).putLong(partId).array());
+            return sha256.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    SpentPayment combine(SpentPayment other) {
+        return this.toBuilder()
+                .partId(0L)
+                .paymentAmount(paymentAmount != null ? paymentAmount : other.getPaymentAmount())
+                .amountSent(new MilliSatoshi(Math.addExact(amountSent.getMsat(), other.getAmountSent().getMsat())))
+                .parts(parts + other.getParts())
+                .receivedAt(other.getReceivedAt() - receivedAt < 0L ? other.getReceivedAt() : receivedAt)
+                .build();
+    }
+}
@@ -0,0 +1,40 @@
+package org.tbk.cln.snr.rpc;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import lombok.NonNull;
+
+import java.io.PrintStream;
+
+/**
+ * Writes json-rpc messages to lightningd - one complete message at a time, regardless of the calling thread.
+ */
+public final class JsonRpcWriter {
+
+    private final PrintStream stream;
+
+    public JsonRpcWriter(@NonNull PrintStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Writes the response to the request with the given id - in the same format as the plugin library does.
+     */
+    public void writeResult(JsonElement id, JsonObject result) {
+        JsonObject message = new JsonObject();
+        message.add("id", id);
+        message.addProperty("jsonrpc", "2.0");
+        message.add("result", result);
+        write(message);
+    }
+
+    public void write(JsonObject message) {
+        String json = message.toString();
+
+        // lock the stream itself - the plugin library writes its messages (e.g. logs) to the same stream
+        synchronized (stream) {
+            stream.print(json);
+            stream.flush();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.tbk.cln.snr.rpc;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reads json-rpc messages from lightningd and subscribes to the execution of requests of known rpc methods on a pool
+ * of workers - the response to each request is written as soon as its execution completes, i.e. not necessarily in
+ * order of the requests.
+ * <p>
+ * All other messages (e.g. {@code getmanifest}, {@code init} and notifications) are forwarded unchanged to the
+ * plugin library, which reads them from {@code forward}. So a slow rpc command neither blocks other commands nor
+ * the handling of notifications.
+ * <p>
+ * The number of concurrent requests is limited per rpc method. Requests exceeding the limit are answered with an
+ * error right away - an rpc storm cannot queue up exchange calls that compete with placing orders. Requests not
+ * completed within the timeout are answered with an error - their execution keeps running (calls to the exchange
+ * are bounded by their own deadlines) and holds its permit till the handler has actually terminated. Pending
+ * executions are cancelled on close (interrupting pending blocking calls).
+ */
+@Slf4j
+public final class RpcDispatcher implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Returns the execution of the request - completes once the response has been filled.
+         */
+        Mono<Void> handle(CLightningJsonObject request, CLightningJsonObject response);
+    }
+
+    private final Map<String, Handler> handlers;
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    private final Duration timeout;
+
+    private final JsonRpcWriter writer;
+
+    private final Scheduler scheduler;
+
+    // cancels all pending requests on close
+    private final Sinks.One<Boolean> closed = Sinks.one();
+
+    /**
+     * Creates a dispatcher for the given rpc methods.
+     *
+     * @param handlers              the handlers of the rpc methods by name
+     * @param workers               the number of threads running rpc requests
+     * @param defaultMaxConcurrency the maximum number of concurrent requests of an rpc method
+     * @param maxConcurrency        the maximum number of concurrent requests of specific rpc methods by name
+     * @param timeout               the time after which a request is cancelled
+     * @param writer                the writer of responses to lightningd
+     */
+    public RpcDispatcher(@NonNull Map<String, Handler> handlers,
+                         int workers,
+                         int defaultMaxConcurrency,
+                         @NonNull Map<String, Integer> maxConcurrency,
+                         @NonNull Duration timeout,
+                         @NonNull JsonRpcWriter writer) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Workers must be positive");
+        }
+        if (timeout.isZero() || timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        for (String method : handlers.keySet()) {
+            int limit = maxConcurrency.getOrDefault(method, defaultMaxConcurrency);
+            if (limit <= 0) {
+                throw new IllegalArgumentException(String.format("Concurrency limit of '%s' must be positive", method));
+            }
+            this.permits.put(method, new Semaphore(limit));
+        }
+        this.handlers = Map.copyOf(handlers);
+        this.timeout = timeout;
+        this.writer = writer;
+        this.scheduler = Schedulers.newBoundedElastic(workers, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "snr-rpc", 60, true);
+    }
+
+    /**
+     * Reads messages till the end of {@code input} - and closes {@code forward} afterwards.
+     */
+    public void run(InputStream input, OutputStream forward) {
+        try (forward) {
+            JsonReader reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            reader.setLenient(true);
+
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                JsonElement message = JsonParser.parseReader(reader);
+                if (!dispatch(message)) {
+                    // lightningd separates messages by a blank line
+                    forward.write((message + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    forward.flush();
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            log.warn("Stopped reading messages from lightningd: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        closed.tryEmitValue(true);
+        scheduler.dispose();
+    }
+
+    /**
+     * Subscribes to the execution of the message on a worker if it is a request of a known rpc method.
+     *
+     * @return false if the message must be forwarded to the plugin library
+     */
+    private boolean dispatch(JsonElement message) {
+        if (!message.isJsonObject()) {
+            return false;
+        }
+        JsonObject request = message.getAsJsonObject();
+        JsonElement method = request.get("method");
+        JsonElement id = request.get("id");
+        if (method == null || !method.isJsonPrimitive() || id == null || id.isJsonNull()) {
+            return false;
+        }
+        Handler handler = handlers.get(method.getAsString());
+        if (handler == null) {
+            return false;
+        }
+
+        Semaphore methodPermits = permits.get(method.getAsString());
+        if (!methodPermits.tryAcquire()) {
+            writer.writeResult(id, error(String.format("Too many concurrent '%s' requests - try again later", method.getAsString())));
+            return true;
+        }
+
+        CLightningJsonObject response = new CLightningJsonObject();
+        Sinks.One<JsonObject> execution = Sinks.one();
+        // not cancelled by the timeout of the request - the permit is held till the handler has terminated
+        Mono.defer(() -> handler.handle(new CLightningJsonObject(request), response))
+                .subscribeOn(scheduler)
+                .then(Mono.fromCallable(response::getWrapper))
+                .takeUntilOther(closed.asMono())
+                .doFinally(signal -> methodPermits.release())
+                .subscribe(execution::tryEmitValue, execution::tryEmitError, execution::tryEmitEmpty);
+
+        execution.asMono()
+                .timeout(timeout)
+                .onErrorResume(e -> Mono.just(error(errorMessage(e))))
+                // nothing is written for requests cancelled on close
+                .takeUntilOther(closed.asMono())
+                .subscribe(result -> writer.writeResult(id, result));
+        return true;
+    }
+
+    private String errorMessage(Throwable e) {
+        Throwable cause = Exceptions.unwrap(e);
+        if (cause instanceof TimeoutException) {
+            return "Timed out after " + timeout;
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return "Plugin is shutting down";
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject result = new JsonObject();
+        result.addProperty("error", message);
+        return result;
+    }
+}
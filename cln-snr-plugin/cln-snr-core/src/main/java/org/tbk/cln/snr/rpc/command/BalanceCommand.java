@@ -1,5 +1,6 @@
 package org.tbk.cln.snr.rpc.command;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import jrpc.clightning.plugins.ICLightningPlugin;
 import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
@@ -8,33 +9,88 @@ import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.dto.account.Balance;
 import org.knowm.xchange.dto.account.Wallet;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Collections;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
-import static java.util.Objects.requireNonNull;
 
-public class BalanceCommand implements RpcCommand {
+/**
+ * Fetches the balances of one or more exchange accounts concurrently - without blocking the subscribing thread.
+ * <p>
+ * With a single account, the wallets of the account are returned. With multiple accounts, the wallets are returned
+ * per account - if some accounts cannot be fetched within the timeout, the others are returned with
+ * {@code "partial": true} and the errors per account. The command only fails if no account can be fetched at all.
+ */
+public class BalanceCommand implements ReactiveRpcCommand {
     private static BigDecimal nullToZero(BigDecimal valOrNull) {
         return firstNonNull(valOrNull, BigDecimal.ZERO);
     }
 
-    private final Exchange exchange;
+    private final Map<String, Exchange> accounts;
 
     private final Set<Currency> currencies;
 
-    public BalanceCommand(Exchange exchange, Set<Currency> currencies) {
-        this.exchange = requireNonNull(exchange);
-        this.currencies = Collections.unmodifiableSet(currencies);
+    private final Duration callTimeout;
+
+    public BalanceCommand(@NonNull Map<String, Exchange> accounts, @NonNull Set<Currency> currencies, @NonNull Duration callTimeout) {
+        if (accounts.isEmpty()) {
+            throw new IllegalArgumentException("At least one account is required");
+        }
+        this.accounts = new LinkedHashMap<>(accounts);
+        this.currencies = Set.copyOf(currencies);
+        this.callTimeout = callTimeout;
     }
 
     @Override
-    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) throws IOException {
+    public Mono<JsonElement> result(ICLightningPlugin plugin, CLightningJsonObject request) {
+        return Mono.defer(() -> {
+            Set<Currency> currencies = CurrencyParams.of(request.getWrapper().get("params"), this.currencies);
+
+            Map<String, Mono<JsonObject>> calls = new LinkedHashMap<>();
+            accounts.forEach((name, exchange) -> calls.put(name, FanOut.blocking(() -> fetchWallets(exchange, currencies))));
+
+            return FanOut.callAsync(calls, callTimeout).flatMap(BalanceCommand::toResult);
+        });
+    }
+
+    private static Mono<JsonElement> toResult(Map<String, FanOut.Result<JsonObject>> results) {
+        if (results.size() == 1) {
+            FanOut.Result<JsonObject> result = results.values().iterator().next();
+            if (!result.isSuccess()) {
+                return Mono.error(new IllegalStateException(result.getError()));
+            }
+            return Mono.just(result.getValue());
+        }
+
+        JsonObject accountsData = new JsonObject();
+        JsonObject errors = new JsonObject();
+        results.forEach((name, result) -> {
+            if (result.isSuccess()) {
+                accountsData.add(name, result.getValue());
+            } else {
+                errors.addProperty(name, result.getError());
+            }
+        });
+
+        if (accountsData.size() == 0) {
+            return Mono.error(new IllegalStateException(results.values().iterator().next().getError()));
+        }
+
+        JsonObject data = new JsonObject();
+        data.add("accounts", accountsData);
+        data.addProperty("partial", errors.size() > 0);
+        data.add("errors", errors);
+        return Mono.just(data);
+    }
+
+    private static JsonObject fetchWallets(Exchange exchange, Set<Currency> currencies) throws IOException {
         Map<String, Wallet> wallets = exchange.getAccountService()
                 .getAccountInfo()
                 .getWallets();
@@ -51,8 +107,7 @@ public class BalanceCommand implements RpcCommand {
             String safeKey = firstNonNull(key, "_");
             walletsData.add(safeKey, val);
         });
-
-        response.add("result", walletsData);
+        return walletsData;
     }
 
     private static JsonObject toJson(Wallet wallet, Set<Currency> currencies) {
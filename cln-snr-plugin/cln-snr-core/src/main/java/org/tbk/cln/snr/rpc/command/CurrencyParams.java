@@ -0,0 +1,54 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.knowm.xchange.currency.Currency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses the currencies of an rpc command - either positional (e.g. {@code ["USD", "EUR"]} or {@code ["USD,EUR"]})
+ * or named (e.g. {@code {"currencies": "USD,EUR"}}).
+ */
+final class CurrencyParams {
+
+    private CurrencyParams() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the requested currencies in the given order without duplicates - or the defaults if none are requested.
+     */
+    static Set<Currency> of(JsonElement params, Collection<Currency> defaults) {
+        List<JsonElement> values = new ArrayList<>();
+        if (params != null && params.isJsonArray()) {
+            params.getAsJsonArray().forEach(values::add);
+        } else if (params != null && params.isJsonObject()) {
+            JsonObject namedParams = params.getAsJsonObject();
+            JsonElement currencies = namedParams.get("currencies");
+            if (currencies != null && currencies.isJsonArray()) {
+                currencies.getAsJsonArray().forEach(values::add);
+            } else if (currencies != null) {
+                values.add(currencies);
+            }
+        }
+
+        Set<Currency> currencies = new LinkedHashSet<>();
+        for (JsonElement value : values) {
+            if (value == null || value.isJsonNull()) {
+                continue;
+            }
+            for (String code : value.getAsString().split(",")) {
+                if (!code.isBlank()) {
+                    currencies.add(Currency.getInstance(code.strip()));
+                }
+            }
+        }
+
+        return currencies.isEmpty() ? new LinkedHashSet<>(defaults) : currencies;
+    }
+}
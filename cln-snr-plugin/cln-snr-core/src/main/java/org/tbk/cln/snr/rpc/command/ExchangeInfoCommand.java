@@ -5,9 +5,10 @@ import jrpc.clightning.plugins.ICLightningPlugin;
 import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeSpecification;
-import org.knowm.xchange.dto.meta.ExchangeMetaData;
 import org.knowm.xchange.dto.meta.InstrumentMetaData;
 import org.knowm.xchange.instrument.Instrument;
+import org.tbk.cln.snr.exchange.ExchangeMetaDataHolder;
+import org.tbk.cln.snr.exchange.ExchangeMetaDataSnapshot;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -19,10 +20,13 @@ public class ExchangeInfoCommand implements RpcCommand {
 
     private final Exchange exchange;
 
+    private final ExchangeMetaDataHolder exchangeMetaData;
+
     private final Set<Instrument> instruments;
 
-    public ExchangeInfoCommand(Exchange exchange, Set<Instrument> instruments) {
+    public ExchangeInfoCommand(Exchange exchange, ExchangeMetaDataHolder exchangeMetaData, Set<Instrument> instruments) {
         this.exchange = requireNonNull(exchange);
+        this.exchangeMetaData = requireNonNull(exchangeMetaData);
         this.instruments = Collections.unmodifiableSet(instruments);
     }
 
@@ -35,7 +39,7 @@ public class ExchangeInfoCommand implements RpcCommand {
         result.addProperty("description", spec.getExchangeDescription());
         result.addProperty("host", spec.getHost());
 
-        ExchangeMetaData metadata = exchange.getExchangeMetaData();
+        ExchangeMetaDataSnapshot metadata = exchangeMetaData.get();
         JsonObject metadataJson = new JsonObject();
 
         JsonObject metadataInstrumentsJson = new JsonObject();
@@ -0,0 +1,69 @@
+package org.tbk.cln.snr.rpc.command;
+
+import lombok.Value;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Issues independent exchange calls of an rpc command concurrently - each with its own timeout.
+ * <p>
+ * A call that fails or times out does not fail the others: its error message is returned instead of a value.
+ * Calls that timed out are cancelled - blocking calls are interrupted.
+ */
+final class FanOut {
+
+    private FanOut() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns a blocking call that is subscribed on {@link Schedulers#boundedElastic()}.
+     */
+    static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Subscribe to all calls concurrently.
+     *
+     * @return the results in the order of the given calls
+     */
+    static <K, T> Mono<Map<K, Result<T>>> callAsync(Map<K, Mono<T>> calls, Duration timeout) {
+        return Flux.fromIterable(calls.entrySet())
+                .flatMapSequential(entry -> entry.getValue()
+                        .timeout(timeout)
+                        .map(value -> new Result<>(value, null))
+                        .defaultIfEmpty(new Result<>(null, null))
+                        .onErrorResume(e -> Mono.just(new Result<>(null, errorMessage(e, timeout))))
+                        .map(result -> Map.entry(entry.getKey(), result)), Math.max(calls.size(), 1))
+                .<Map<K, Result<T>>>collect(LinkedHashMap::new, (results, entry) -> results.put(entry.getKey(), entry.getValue()));
+    }
+
+    private static String errorMessage(Throwable e, Duration timeout) {
+        if (e instanceof TimeoutException) {
+            return "Timed out after " + timeout;
+        }
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    @Value
+    static class Result<T> {
+        T value;
+
+        /**
+         * The error message if the call failed or timed out - `null` otherwise.
+         */
+        String error;
+
+        boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
@@ -9,13 +9,28 @@ import org.knowm.xchange.Exchange;
 import org.knowm.xchange.dto.trade.LimitOrder;
 import org.knowm.xchange.dto.trade.OpenOrders;
 import org.knowm.xchange.dto.trade.UserTrade;
-import org.knowm.xchange.dto.trade.UserTrades;
 import org.knowm.xchange.service.trade.TradeService;
+import org.knowm.xchange.service.trade.params.TradeHistoryParamLimit;
+import org.knowm.xchange.service.trade.params.TradeHistoryParamOffset;
+import org.knowm.xchange.service.trade.params.TradeHistoryParamPaging;
 import org.knowm.xchange.service.trade.params.TradeHistoryParams;
+import org.knowm.xchange.service.trade.params.TradeHistoryParamsTimeSpan;
 import org.knowm.xchange.service.trade.params.orders.OpenOrdersParams;
 
 import java.io.IOException;
+// CHECKSTYLE IGNORE RegexpSinglelineJava FOR NEXT 1 LINES - xchange requires legacy dates
+import java.util.Date;
+import java.util.List;
 
+/**
+ * Lists open orders and a single page of the trade history.
+ * <p>
+ * The page is requested from the exchange via the paging, offset, limit and time span params it supports - only a
+ * single page is rendered at a time, even if the exchange ignores these params and returns its complete history.
+ * Open orders are only listed on the first page. If more trades might be available, the result contains a
+ * {@code next-cursor} to request the next page with - the cursor holds the number of trades already consumed, as
+ * exchanges may return fewer trades per call than requested (e.g. kraken returns at most 50).
+ */
 @RequiredArgsConstructor
 public class HistoryCommand implements RpcCommand {
 
@@ -30,24 +45,98 @@ public class HistoryCommand implements RpcCommand {
 
     @Override
     public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) throws IOException {
+        HistoryQuery query = HistoryQuery.of(request.getWrapper().get("params"));
+
         TradeService tradeService = exchange.getTradeService();
 
-        OpenOrders openOrders = tradeService.getOpenOrders(openOrdersParams);
         JsonObject openOrdersJson = new JsonObject();
-        openOrders.getOpenOrders().forEach(val -> openOrdersJson.add(val.getId(), toJson(val)));
+        if (query.isFirstPage()) {
+            OpenOrders openOrders = tradeService.getOpenOrders(openOrdersParams);
+            openOrders.getOpenOrders().forEach(val -> openOrdersJson.add(val.getId(), toJson(val)));
+        }
+
+        // the offset the exchange applied - null if it does not support any paging params
+        Long exchangeOffset = applyQuery(query);
+        List<UserTrade> userTrades = tradeService.getTradeHistory(tradeHistoryParams).getUserTrades();
+
+        // exchanges ignoring the paging params return more than a page - page them here
+        boolean isPagedByExchange = exchangeOffset != null && userTrades.size() <= query.getLimit();
 
-        UserTrades userTrades = tradeService.getTradeHistory(tradeHistoryParams);
         JsonObject closedOrdersJson = new JsonObject();
-        userTrades.getUserTrades().forEach(val -> closedOrdersJson.add(val.getId(), toJson(val)));
+        Long nextOffset = null;
+        if (isPagedByExchange) {
+            // e.g. kraken returns at most 50 trades per call - a short page does not indicate the end of the history
+            long skip = query.getOffset() - exchangeOffset;
+            for (UserTrade userTrade : userTrades) {
+                if (skip > 0L) {
+                    skip--;
+                } else if (query.contains(userTrade.getTimestamp().toInstant())) {
+                    closedOrdersJson.add(userTrade.getId(), toJson(userTrade));
+                }
+            }
+            // the history ends with the first empty page
+            if (!userTrades.isEmpty() && exchangeOffset + userTrades.size() > query.getOffset()) {
+                nextOffset = exchangeOffset + userTrades.size();
+            }
+        } else {
+            // the offset counts the trades within the requested time span
+            long skip = query.getOffset();
+            int rendered = 0;
+            for (UserTrade userTrade : userTrades) {
+                if (!query.contains(userTrade.getTimestamp().toInstant())) {
+                    continue;
+                }
+                if (skip > 0L) {
+                    skip--;
+                    continue;
+                }
+                if (rendered == query.getLimit()) {
+                    nextOffset = query.getOffset() + rendered;
+                    break;
+                }
+                closedOrdersJson.add(userTrade.getId(), toJson(userTrade));
+                rendered++;
+            }
+        }
 
         JsonObject result = new JsonObject();
         result.add("open", openOrdersJson);
         result.add("closed", closedOrdersJson);
+        if (nextOffset != null) {
+            result.addProperty("next-cursor", query.nextCursor(nextOffset));
+        }
 
         response.add("result", result);
     }
 
-    private static JsonObject toJson(LimitOrder val) {
+    /**
+     * Apply the query to the trade history params.
+     *
+     * @return the offset of the first trade the exchange will return - or null if paging is not supported
+     */
+    private Long applyQuery(HistoryQuery query) {
+        if (tradeHistoryParams instanceof TradeHistoryParamsTimeSpan timeSpanParams) {
+            timeSpanParams.setStartTime(query.getSince() == null ? null : Date.from(query.getSince()));
+            timeSpanParams.setEndTime(query.getUntil() == null ? null : Date.from(query.getUntil()));
+        }
+        if (tradeHistoryParams instanceof TradeHistoryParamLimit limitParams) {
+            limitParams.setLimit(query.getLimit());
+        }
+        if (tradeHistoryParams instanceof TradeHistoryParamOffset offsetParams) {
+            offsetParams.setOffset(query.getOffset());
+            return query.getOffset();
+        }
+        if (tradeHistoryParams instanceof TradeHistoryParamPaging pagingParams) {
+            // the remainder of the offset is skipped here
+            long page = query.getOffset() / query.getLimit();
+            pagingParams.setPageLength(query.getLimit());
+            pagingParams.setPageNumber(Math.toIntExact(page));
+            return page * query.getLimit();
+        }
+        return null;
+    }
+
+    static JsonObject toJson(LimitOrder val) {
         JsonObject json = new JsonObject();
         json.addProperty("id", val.getId());
         json.addProperty("type", val.getType().name());
@@ -64,7 +153,7 @@ public class HistoryCommand implements RpcCommand {
         return json;
     }
 
-    private static JsonObject toJson(UserTrade val) {
+    static JsonObject toJson(UserTrade val) {
         JsonObject json = new JsonObject();
         json.addProperty("id", val.getId());
         json.addProperty("type", val.getType().name());
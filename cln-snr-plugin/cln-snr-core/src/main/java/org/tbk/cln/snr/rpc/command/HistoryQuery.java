@@ -0,0 +1,150 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * A page of the trade history requested via {@code snr-history}.
+ * <p>
+ * Parameters can be given by name ({@code since}, {@code until}, {@code limit}, {@code cursor}) or by position
+ * in the same order. Points in time are accepted as epoch seconds or ISO-8601 instants. A cursor contains the
+ * complete query of the next page - if given, all other parameters are ignored.
+ */
+@Value
+class HistoryQuery {
+
+    static final int DEFAULT_LIMIT = 100;
+
+    static final int MAX_LIMIT = 1_000;
+
+    private static final String[] PARAM_NAMES = {"since", "until", "limit", "cursor"};
+
+    private static final String CURSOR_VERSION = "2";
+
+    /**
+     * Inclusive lower bound of the trade timestamp - `null` if unbounded.
+     */
+    Instant since;
+
+    /**
+     * Exclusive upper bound of the trade timestamp - `null` if unbounded.
+     */
+    Instant until;
+
+    int limit;
+
+    /**
+     * The number of trades already consumed by previous pages.
+     */
+    long offset;
+
+    static HistoryQuery of(JsonElement params) {
+        JsonObject namedParams = toNamedParams(params);
+
+        JsonElement cursor = namedParams.get("cursor");
+        if (cursor != null && !cursor.isJsonNull()) {
+            return fromCursor(cursor.getAsString());
+        }
+
+        int limit = namedParams.has("limit") && !namedParams.get("limit").isJsonNull()
+                ? namedParams.get("limit").getAsInt()
+                : DEFAULT_LIMIT;
+
+        return new HistoryQuery(toInstant(namedParams.get("since")), toInstant(namedParams.get("until")), requireValidLimit(limit), 0L);
+    }
+
+    boolean isFirstPage() {
+        return offset == 0L;
+    }
+
+    boolean contains(Instant timestamp) {
+        return (since == null || !timestamp.isBefore(since)) && (until == null || timestamp.isBefore(until));
+    }
+
+    /**
+     * Returns an opaque cursor pointing to the page starting after the given number of consumed trades.
+     */
+    String nextCursor(long nextOffset) {
+        if (nextOffset <= offset) {
+            throw new IllegalArgumentException("Next offset must be greater than the current offset");
+        }
+        String value = String.join(":", CURSOR_VERSION, Long.toString(nextOffset), Integer.toString(limit),
+                since == null ? "" : Long.toString(since.getEpochSecond()),
+                until == null ? "" : Long.toString(until.getEpochSecond()));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static int requireValidLimit(int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException(String.format("Limit must be between 1 and %d", MAX_LIMIT));
+        }
+        return limit;
+    }
+
+    private static HistoryQuery fromCursor(String cursor) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII).split(":", -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (parts.length != 5 || !CURSOR_VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            long offset = Long.parseLong(parts[1]);
+            if (offset < 0L) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new HistoryQuery(
+                    parts[3].isEmpty() ? null : Instant.ofEpochSecond(Long.parseLong(parts[3])),
+                    parts[4].isEmpty() ? null : Instant.ofEpochSecond(Long.parseLong(parts[4])),
+                    requireValidLimit(Integer.parseInt(parts[2])),
+                    offset
+            );
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private static JsonObject toNamedParams(JsonElement params) {
+        if (params == null || params.isJsonNull()) {
+            return new JsonObject();
+        }
+        if (params.isJsonObject()) {
+            return params.getAsJsonObject();
+        }
+        JsonObject namedParams = new JsonObject();
+        if (params.isJsonArray()) {
+            JsonArray positionalParams = params.getAsJsonArray();
+            for (int i = 0; i < Math.min(positionalParams.size(), PARAM_NAMES.length); i++) {
+                namedParams.add(PARAM_NAMES[i], positionalParams.get(i));
+            }
+        }
+        return namedParams;
+    }
+
+    private static Instant toInstant(JsonElement param) {
+        if (param == null || param.isJsonNull()) {
+            return null;
+        }
+        JsonPrimitive primitive = param.getAsJsonPrimitive();
+        if (primitive.isNumber()) {
+            return Instant.ofEpochSecond(primitive.getAsLong());
+        }
+        String value = primitive.getAsString();
+        try {
+            return value.chars().allMatch(Character::isDigit) ? Instant.ofEpochSecond(Long.parseLong(value)) : Instant.parse(value);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException(String.format("Invalid point in time: '%s'", value), e);
+        }
+    }
+}
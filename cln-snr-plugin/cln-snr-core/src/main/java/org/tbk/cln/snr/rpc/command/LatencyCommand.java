@@ -0,0 +1,55 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonObject;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.latency.LatencyStage;
+
+import java.time.Duration;
+import java.util.Optional;
+
+@RequiredArgsConstructor
+public class LatencyCommand implements RpcCommand {
+
+    @NonNull
+    private final LatencyRecorder latencyRecorder;
+
+    @Override
+    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        JsonObject result = new JsonObject();
+
+        for (String exchange : latencyRecorder.exchanges()) {
+            JsonObject exchangeJson = new JsonObject();
+            for (LatencyStage stage : LatencyStage.values()) {
+                JsonObject stageJson = new JsonObject();
+                for (Duration window : LatencyRecorder.WINDOWS) {
+                    Optional<LatencyRecorder.Summary> summary = latencyRecorder.summary(exchange, stage, window);
+                    stageJson.add(window.toMinutes() + "m", summary.map(LatencyCommand::toJson).orElseGet(LatencyCommand::emptyJson));
+                }
+                exchangeJson.add(stage.getJsonName(), stageJson);
+            }
+            result.add(exchange, exchangeJson);
+        }
+
+        response.add("result", result);
+    }
+
+    private static JsonObject toJson(LatencyRecorder.Summary summary) {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", summary.getCount());
+        json.addProperty("p50-us", summary.getP50());
+        json.addProperty("p90-us", summary.getP90());
+        json.addProperty("p99-us", summary.getP99());
+        json.addProperty("max-us", summary.getMax());
+        return json;
+    }
+
+    private static JsonObject emptyJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", 0L);
+        return json;
+    }
+}
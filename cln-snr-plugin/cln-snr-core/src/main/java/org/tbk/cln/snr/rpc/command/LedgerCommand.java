@@ -0,0 +1,32 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonObject;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.tbk.cln.snr.replacement.ReplacementLedger;
+
+@RequiredArgsConstructor
+public class LedgerCommand implements RpcCommand {
+
+    @NonNull
+    private final ReplacementLedger ledger;
+
+    @Override
+    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        JsonObject result = new JsonObject();
+        ledger.entries().forEach((currencyPair, entry) -> result.add(currencyPair.toString(), toJson(entry)));
+
+        response.add("result", result);
+    }
+
+    private static JsonObject toJson(ReplacementLedger.Entry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("pending-msat", entry.getPending().getMsat());
+        json.addProperty("inflight-msat", entry.getInflight().getMsat());
+        json.addProperty("replaced-msat", entry.getReplaced().getMsat());
+        json.addProperty("orders", entry.getOrders());
+        return json;
+    }
+}
@@ -0,0 +1,53 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonObject;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.knowm.xchange.dto.trade.UserTrade;
+import org.knowm.xchange.instrument.Instrument;
+import org.tbk.cln.snr.history.TradeHistoryStore;
+
+import java.util.List;
+
+/**
+ * Same as {@link HistoryCommand} - but answered from the local {@link TradeHistoryStore} without contacting
+ * the exchange.
+ */
+@RequiredArgsConstructor
+public class LocalHistoryCommand implements RpcCommand {
+
+    @NonNull
+    private final TradeHistoryStore store;
+
+    @NonNull
+    private final Instrument instrument;
+
+    @Override
+    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        HistoryQuery query = HistoryQuery.of(request.getWrapper().get("params"));
+
+        JsonObject openOrdersJson = new JsonObject();
+        if (query.isFirstPage()) {
+            store.openOrders(instrument).forEach(val -> openOrdersJson.add(val.getId(), HistoryCommand.toJson(val)));
+        }
+
+        // one more than requested to find out whether there is a next page
+        List<UserTrade> userTrades = store.trades(instrument, query.getSince(), query.getUntil(), query.getOffset(), query.getLimit() + 1);
+
+        JsonObject closedOrdersJson = new JsonObject();
+        userTrades.stream()
+                .limit(query.getLimit())
+                .forEach(val -> closedOrdersJson.add(val.getId(), HistoryCommand.toJson(val)));
+
+        JsonObject result = new JsonObject();
+        result.add("open", openOrdersJson);
+        result.add("closed", closedOrdersJson);
+        if (userTrades.size() > query.getLimit()) {
+            result.addProperty("next-cursor", query.nextCursor(query.getOffset() + query.getLimit()));
+        }
+
+        response.add("result", result);
+    }
+}
@@ -0,0 +1,61 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Tag;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+@RequiredArgsConstructor
+public class MetricsCommand implements RpcCommand {
+
+    private static final String METRIC_PREFIX = "snr.";
+
+    @NonNull
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        JsonObject result = new JsonObject();
+
+        meterRegistry.getMeters().stream()
+                .filter(it -> it.getId().getName().startsWith(METRIC_PREFIX))
+                .sorted(Comparator.comparing((Meter it) -> it.getId().getName())
+                        .thenComparing(it -> it.getId().getTags().toString()))
+                .forEach(meter -> {
+                    String name = meter.getId().getName();
+                    if (!result.has(name)) {
+                        result.add(name, new JsonArray());
+                    }
+                    result.getAsJsonArray(name).add(toJson(meter));
+                });
+
+        response.add("result", result);
+    }
+
+    private static JsonObject toJson(Meter meter) {
+        JsonObject tags = new JsonObject();
+        for (Tag tag : meter.getId().getTags()) {
+            tags.addProperty(tag.getKey(), tag.getValue());
+        }
+
+        JsonObject json = new JsonObject();
+        json.add("tags", tags);
+        if (meter.getId().getBaseUnit() != null) {
+            json.addProperty("base-unit", meter.getId().getBaseUnit());
+        }
+        for (Measurement measurement : meter.measure()) {
+            String statistic = measurement.getStatistic().name().toLowerCase(Locale.US).replace('_', '-');
+            json.addProperty(statistic, measurement.getValue());
+        }
+        return json;
+    }
+}
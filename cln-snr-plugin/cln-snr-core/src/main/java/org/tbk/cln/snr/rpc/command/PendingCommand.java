@@ -0,0 +1,44 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonObject;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.tbk.cln.snr.replacement.PaymentAggregator;
+import org.tbk.cln.snr.replacement.ReplacementPipeline;
+
+@RequiredArgsConstructor
+public class PendingCommand implements RpcCommand {
+
+    @NonNull
+    private final PaymentAggregator paymentAggregator;
+
+    @NonNull
+    private final ReplacementPipeline pipeline;
+
+    @Override
+    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        JsonObject aggregatorJson = new JsonObject();
+        aggregatorJson.addProperty("payments", paymentAggregator.pendingPayments());
+
+        ReplacementPipeline.Stats stats = pipeline.stats();
+        JsonObject pipelineJson = new JsonObject();
+        pipelineJson.addProperty("queued", stats.getQueued());
+        pipelineJson.addProperty("active", stats.getActive());
+        pipelineJson.addProperty("capacity", stats.getCapacity());
+        pipelineJson.addProperty("workers", stats.getWorkers());
+        pipelineJson.addProperty("virtual-threads", stats.isVirtualThreads());
+        pipelineJson.addProperty("overflow-policy", stats.getOverflowPolicy().name());
+        pipelineJson.addProperty("accepted", stats.getAccepted());
+        pipelineJson.addProperty("rejected", stats.getRejected());
+        pipelineJson.addProperty("completed", stats.getCompleted());
+        pipelineJson.addProperty("failed", stats.getFailed());
+
+        JsonObject result = new JsonObject();
+        result.add("aggregator", aggregatorJson);
+        result.add("pipeline", pipelineJson);
+
+        response.add("result", result);
+    }
+}
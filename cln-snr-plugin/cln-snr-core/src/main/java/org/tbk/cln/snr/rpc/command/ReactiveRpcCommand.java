@@ -0,0 +1,43 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonElement;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * An {@link RpcCommand} that computes its result without blocking the subscribing thread.
+ * <p>
+ * Blocking calls (e.g. to an exchange) must be subscribed on {@link Schedulers#boundedElastic()}. As results are
+ * plain {@link Mono}s, commands can be composed (e.g. tickers and balances with {@link Mono#zip}) and timeouts or
+ * cancellation of the result propagate to all pending calls.
+ */
+public interface ReactiveRpcCommand extends RpcCommand {
+
+    /**
+     * Returns the result of the command - emitted as {@code "result"} of the response.
+     */
+    Mono<JsonElement> result(ICLightningPlugin plugin, CLightningJsonObject request);
+
+    @Override
+    default Mono<Void> executeAsync(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        return result(plugin, request)
+                .doOnNext(result -> response.add("result", result))
+                .then();
+    }
+
+    @Override
+    default void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) throws Exception {
+        try {
+            executeAsync(plugin, request, response).block();
+        } catch (RuntimeException e) {
+            // checked exceptions are wrapped by reactor
+            if (Exceptions.unwrap(e) instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.tbk.cln.snr.reconciliation.ReplacementReconciler;
+
+import java.util.List;
+
+/**
+ * Lists the reconciliation state of placed orders - or the order placed for a single payment hash.
+ */
+@RequiredArgsConstructor
+public class ReconciliationCommand implements RpcCommand {
+
+    private static final int MAX_OVERDUE_ENTRIES = 100;
+
+    @NonNull
+    private final ReplacementReconciler reconciler;
+
+    @Override
+    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        String paymentHash = paymentHashParam(request.getWrapper().get("params"));
+        if (paymentHash != null) {
+            ReplacementReconciler.Entry entry = reconciler.byPaymentHash(paymentHash)
+                    .orElseThrow(() -> new IllegalArgumentException("No order found for payment hash " + paymentHash));
+            response.add("result", toJson(entry));
+            return;
+        }
+
+        ReplacementReconciler.Stats stats = reconciler.stats();
+        List<ReplacementReconciler.Entry> overdue = reconciler.overdue();
+
+        JsonArray overdueJson = new JsonArray();
+        overdue.stream().limit(MAX_OVERDUE_ENTRIES).forEach(it -> overdueJson.add(toJson(it)));
+
+        JsonObject result = new JsonObject();
+        result.addProperty("orders", stats.getOrders());
+        result.addProperty("unfilled", stats.getUnfilled());
+        result.addProperty("overdue-count", stats.getOverdue());
+        result.addProperty("ambiguous-trades", stats.getAmbiguousTrades());
+        result.addProperty("unknown", stats.getUnknown());
+        result.add("overdue", overdueJson);
+
+        response.add("result", result);
+    }
+
+    private static String paymentHashParam(JsonElement params) {
+        JsonElement param = null;
+        if (params != null && params.isJsonArray() && !params.getAsJsonArray().isEmpty()) {
+            param = params.getAsJsonArray().get(0);
+        } else if (params != null && params.isJsonObject()) {
+            param = params.getAsJsonObject().get("payment-hash");
+        }
+        return param == null || param.isJsonNull() ? null : param.getAsString();
+    }
+
+    private static JsonObject toJson(ReplacementReconciler.Entry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("exchange", entry.getExchange());
+        JsonArray paymentHashes = new JsonArray();
+        entry.getPaymentHashes().forEach(paymentHashes::add);
+        json.add("payment-hashes", paymentHashes);
+        json.addProperty("order-id", entry.getOrderId());
+        json.addProperty("ref", entry.getUserReference());
+        json.addProperty("state", entry.getState().name());
+        json.addProperty("amount-sat", entry.getAmountSats());
+        json.addProperty("filled-sat", entry.getFilledSats());
+        json.addProperty("date", entry.getPlacedAt().toString());
+        json.addProperty("timestamp", entry.getPlacedAt().getEpochSecond());
+        return json;
+    }
+}
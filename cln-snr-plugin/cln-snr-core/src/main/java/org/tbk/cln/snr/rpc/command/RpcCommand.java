@@ -2,7 +2,22 @@ package org.tbk.cln.snr.rpc.command;
 
 import jrpc.clightning.plugins.ICLightningPlugin;
 import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 public interface RpcCommand {
     void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) throws Exception;
+
+    /**
+     * Executes the command without blocking the calling thread.
+     * <p>
+     * By default, the blocking {@link #execute} is subscribed on {@link Schedulers#boundedElastic()} - see
+     * {@link ReactiveRpcCommand} for commands that do not block at all.
+     */
+    default Mono<Void> executeAsync(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) {
+        return Mono.fromCallable(() -> {
+            execute(plugin, request, response);
+            return response;
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
 }
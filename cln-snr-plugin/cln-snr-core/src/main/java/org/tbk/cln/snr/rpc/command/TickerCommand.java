@@ -6,61 +6,84 @@ import jrpc.clightning.plugins.ICLightningPlugin;
 import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
-import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.marketdata.Ticker;
-import org.knowm.xchange.service.marketdata.params.CurrencyPairsParam;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import reactor.core.publisher.Mono;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import static java.util.Optional.ofNullable;
-
+/**
+ * Fetches the tickers of one or more fiat currencies concurrently - without blocking the subscribing thread.
+ * <p>
+ * If some tickers cannot be fetched within the timeout, the others are returned with {@code "partial": true} and
+ * the errors per currency pair. The command only fails if no ticker can be fetched at all.
+ */
 @RequiredArgsConstructor
-public class TickerCommand implements RpcCommand {
+public class TickerCommand implements ReactiveRpcCommand {
     @NonNull
-    private final Exchange exchange;
+    private final ExchangeService exchangeService;
 
     @NonNull
     private final Currency fiatCurrency;
 
+    @NonNull
+    private final Duration callTimeout;
+
     @Override
-    public void execute(ICLightningPlugin plugin, CLightningJsonObject request, CLightningJsonObject response) throws IOException {
-        Currency bitcoinCurrency = Currency.BTC;
-        Currency fiatCurrency = ofNullable(request.getAsJsonArray("params"))
-                .filter(JsonElement::isJsonArray)
-                .filter(it -> !it.isEmpty())
-                .map(it -> it.get(0))
-                .map(it -> it.getAsJsonPrimitive().getAsString())
-                .map(Currency::getInstance)
-                .orElse(this.fiatCurrency);
+    public Mono<JsonElement> result(ICLightningPlugin plugin, CLightningJsonObject request) {
+        return Mono.defer(() -> {
+            Set<Currency> fiatCurrencies = CurrencyParams.of(request.getWrapper().get("params"), List.of(this.fiatCurrency));
 
-        CurrencyPair currencyPair = new CurrencyPair(bitcoinCurrency, fiatCurrency);
+            Map<CurrencyPair, Mono<Ticker>> calls = new LinkedHashMap<>();
+            for (Currency fiatCurrency : fiatCurrencies) {
+                CurrencyPair currencyPair = new CurrencyPair(Currency.BTC, fiatCurrency);
+                // an unsupported currency pair is reported as error of its own - it does not fail the others
+                calls.put(currencyPair, FanOut.blocking(() -> {
+                    exchangeService.getExchangeMetaData().get().getInstrumentIndex().require(currencyPair);
+                    return exchangeService.fetchTicker(currencyPair);
+                }));
+            }
 
-        boolean supportedCurrencyPair = exchange.getExchangeInstruments().contains(currencyPair);
-        if (!supportedCurrencyPair) {
-            throw new IllegalStateException("Currency pair is not supported: " + currencyPair);
-        }
-
-        CurrencyPairsParam currencyPairsParam = () -> List.of(currencyPair);
-        List<Ticker> tickers = exchange.getMarketDataService().getTickers(currencyPairsParam).stream()
-                .filter(it -> currencyPair.equals(it.getInstrument()))
-                .toList();
+            return FanOut.callAsync(calls, callTimeout).flatMap(TickerCommand::toResult);
+        });
+    }
 
+    private static Mono<JsonElement> toResult(Map<CurrencyPair, FanOut.Result<Ticker>> tickers) {
         JsonObject result = new JsonObject();
-        tickers.forEach(ticker -> {
-            JsonObject data = new JsonObject();
-            data.addProperty("ask", ticker.getAsk().toPlainString());
-            data.addProperty("bid", ticker.getBid().toPlainString());
-            data.addProperty("high", ticker.getHigh().toPlainString());
-            data.addProperty("low", ticker.getLow().toPlainString());
-            data.addProperty("open", ticker.getOpen().toPlainString());
-            data.addProperty("last", ticker.getLast().toPlainString());
-
-            result.add(ticker.getInstrument().toString(), data);
+        JsonObject errors = new JsonObject();
+        tickers.forEach((currencyPair, ticker) -> {
+            if (ticker.isSuccess()) {
+                result.add(currencyPair.toString(), toJson(ticker.getValue()));
+            } else {
+                errors.addProperty(currencyPair.toString(), ticker.getError());
+            }
         });
 
-        response.add("result", result);
+        if (result.size() == 0) {
+            return Mono.error(new IllegalStateException(tickers.values().iterator().next().getError()));
+        }
+        if (errors.size() > 0) {
+            result.addProperty("partial", true);
+            result.add("errors", errors);
+        }
+
+        return Mono.just(result);
+    }
+
+    private static JsonObject toJson(Ticker ticker) {
+        JsonObject data = new JsonObject();
+        data.addProperty("ask", ticker.getAsk().toPlainString());
+        data.addProperty("bid", ticker.getBid().toPlainString());
+        data.addProperty("high", ticker.getHigh().toPlainString());
+        data.addProperty("low", ticker.getLow().toPlainString());
+        data.addProperty("open", ticker.getOpen().toPlainString());
+        data.addProperty("last", ticker.getLast().toPlainString());
+        return data;
     }
 }
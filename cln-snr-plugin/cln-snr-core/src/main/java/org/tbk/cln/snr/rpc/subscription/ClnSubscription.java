@@ -2,7 +2,21 @@ package org.tbk.cln.snr.rpc.subscription;
 
 import jrpc.clightning.plugins.ICLightningPlugin;
 import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 public interface ClnSubscription {
     void execute(ICLightningPlugin plugin, CLightningJsonObject data) throws Exception;
+
+    /**
+     * Handles the notification without blocking the calling thread.
+     * <p>
+     * By default, the blocking {@link #execute} is subscribed on {@link Schedulers#boundedElastic()}.
+     */
+    default Mono<Void> executeAsync(ICLightningPlugin plugin, CLightningJsonObject data) {
+        return Mono.fromCallable(() -> {
+            execute(plugin, data);
+            return data;
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
 }
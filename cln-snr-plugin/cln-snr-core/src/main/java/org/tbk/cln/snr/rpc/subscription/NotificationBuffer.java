@@ -0,0 +1,72 @@
+package org.tbk.cln.snr.rpc.subscription;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Holds back notification handlers till the plugin is ready to process them, e.g. while exchange, metrics and
+ * persistence are still being initialized in the background.
+ * <p>
+ * Handlers submitted before {@link #open()} are buffered (up to {@code capacity}) and run in order of their
+ * submission once the buffer is opened. Afterwards, handlers run right away on the calling thread.
+ */
+public final class NotificationBuffer {
+
+    private final int capacity;
+
+    private final Queue<Runnable> buffered = new ArrayDeque<>();
+
+    private boolean open;
+
+    public NotificationBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Runs the handler right away if the buffer is open - buffers it otherwise.
+     *
+     * @return false if the handler has been rejected because the buffer is full
+     */
+    public boolean submit(Runnable handler) {
+        synchronized (this) {
+            if (!open) {
+                if (buffered.size() >= capacity) {
+                    return false;
+                }
+                buffered.add(handler);
+                return true;
+            }
+        }
+        handler.run();
+        return true;
+    }
+
+    /**
+     * Runs all buffered handlers on the calling thread and lets subsequent handlers pass through.
+     * <p>
+     * Handlers submitted while the buffered ones are running are appended - so the order of submission is kept.
+     */
+    public void open() {
+        while (true) {
+            Runnable handler;
+            synchronized (this) {
+                handler = buffered.poll();
+                if (handler == null) {
+                    open = true;
+                    return;
+                }
+            }
+            handler.run();
+        }
+    }
+
+    /**
+     * Returns the number of buffered handlers.
+     */
+    public synchronized int size() {
+        return buffered.size();
+    }
+}
@@ -1,108 +1,79 @@
 package org.tbk.cln.snr.rpc.subscription;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
-import fr.acinq.bitcoin.Satoshi;
-import fr.acinq.lightning.MilliSatoshi;
 import jrpc.clightning.plugins.ICLightningPlugin;
 import jrpc.clightning.plugins.log.PluginLog;
 import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
-import org.knowm.xchange.Exchange;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.currency.CurrencyPair;
-import org.knowm.xchange.dto.Order;
-import org.knowm.xchange.dto.meta.InstrumentMetaData;
-import org.knowm.xchange.utils.OrderValuesHelper;
-import org.tbk.cln.snr.RunOptions;
-import org.tbk.cln.snr.exchange.ExchangeService;
-import org.tbk.cln.snr.exchange.OrderId;
+import org.tbk.cln.snr.journal.PaymentHashIndex;
+import org.tbk.cln.snr.journal.ReplacementJournal;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.latency.LatencyStage;
+import org.tbk.cln.snr.replacement.PaymentAggregator;
+import org.tbk.cln.snr.replacement.SpentPayment;
+
+@RequiredArgsConstructor
+public class SendpaySuccess implements ClnSubscription {
 
-import java.util.HexFormat;
-import java.util.Optional;
+    @NonNull
+    private final Currency fiatCurrency;
 
-import static java.util.Objects.requireNonNull;
+    @NonNull
+    private final PaymentHashIndex processedPayments;
 
-public class SendpaySuccess implements ClnSubscription {
+    @NonNull
+    private final ReplacementJournal journal;
 
-    private final Exchange exchange;
+    @NonNull
+    private final PaymentAggregator paymentAggregator;
 
-    private final Currency fiatCurrency;
+    @NonNull
+    private final LatencyRecorder latencyRecorder;
 
-    private final RunOptions runOptions;
+    @NonNull
+    private final String exchangeName;
 
-    private final ExchangeService exchangeService;
+    @Override
+    public void execute(ICLightningPlugin plugin, CLightningJsonObject data) {
+        long receivedAt = System.nanoTime();
+        SendpaySuccessPayload payload = SendpaySuccessDecoder.decode(data.getWrapper());
+        latencyRecorder.recordSince(exchangeName, LatencyStage.DECODE, receivedAt);
+
+        if (!payload.isComplete()) {
+            plugin.log(PluginLog.WARNING, String.format("Ignoring payment with unexpected status '%s'", payload.getStatus()));
+            return;
+        }
 
-    public SendpaySuccess(Exchange exchange, Currency fiatCurrency, RunOptions runOptions) {
-        this.exchange = requireNonNull(exchange);
-        this.fiatCurrency = requireNonNull(fiatCurrency);
-        this.runOptions = requireNonNull(runOptions);
+        SpentPayment payment = payload.toSpentPayment(receivedAt);
+        long partId = payload.getPartId();
+        long groupId = payload.getGroupId();
 
-        this.exchangeService = new ExchangeService(exchange);
-    }
+        // e.g. redelivered notifications must not be replaced twice
+        byte[] idempotencyKey = payment.idempotencyKey();
+        if (processedPayments.contains(idempotencyKey)) {
+            plugin.log(PluginLog.INFO, String.format("Ignoring already processed payment %s (part: %d, group: %d)",
+                    payment.getPaymentHash(), partId, groupId));
+            return;
+        }
 
-    @Override
-    public void execute(ICLightningPlugin plugin, CLightningJsonObject data) throws Exception {
-        plugin.log(PluginLog.DEBUG, data);
+        plugin.log(PluginLog.DEBUG, String.format("Spent amount %s (part: %d, group: %d)", payment.getAmountSent(), partId, groupId));
 
+        // journal the payment before anything else happens - it is replayed on startup if it is never replaced
         CurrencyPair currencyPair = new CurrencyPair(Currency.BTC, fiatCurrency);
-        boolean supportedCurrencyPair = exchange.getExchangeInstruments().contains(currencyPair);
-        if (!supportedCurrencyPair) {
-            throw new IllegalStateException("Currency pair is not supported: " + currencyPair);
-        }
+        journal.appendIntent(currencyPair, payload.getPaymentHash(), partId, payload.getAmountSentMsat());
+        processedPayments.add(idempotencyKey);
 
-        Optional<JsonObject> payload = Optional.ofNullable(data.getAsJsonObject("params"))
-                .map(it -> it.getAsJsonObject("sendpay_success"));
-
-        MilliSatoshi amountSent = payload
-                .map(it -> it.getAsJsonPrimitive("msatoshi_sent"))
-                .map(it -> new MilliSatoshi(it.getAsLong()))
-                .orElseThrow(() -> new IllegalStateException("Could not extract 'msatoshi_sent' from payload."));
-
-        plugin.log(PluginLog.DEBUG, "Spent amount which needs to be replaced: " + amountSent);
-
-        Satoshi amountToReplace = amountSent.truncateToSatoshi().plus(new Satoshi(1L));
-
-        int shortPaymentHash = payload
-                .map(it -> it.getAsJsonPrimitive("payment_hash"))
-                .map(JsonPrimitive::getAsString)
-                .map(it -> HexFormat.fromHexDigits(it, 0, 8))
-                .orElseThrow(() -> new IllegalStateException("Could not extract 'payment_hash' from payload."));
-
-        InstrumentMetaData instrumentMetaData = exchange.getExchangeMetaData().getInstruments().get(currencyPair);
-        OrderValuesHelper orderValuesHelper = new OrderValuesHelper(instrumentMetaData);
-
-        Order order = createOrder(currencyPair, amountToReplace)
-                // e.g. kraken needs a 32-byte integer as user reference
-                .userReference(String.valueOf(shortPaymentHash))
-                .build();
-
-        boolean isUnderMinimum = orderValuesHelper.amountUnderMinimum(order.getOriginalAmount());
-        if (isUnderMinimum) {
-            String warnMessage = String.format("Will **NOT** place order for outgoing payment. Amount is too small: %s < %s",
-                    order.getOriginalAmount().toPlainString(), instrumentMetaData.getMinimumAmount().toPlainString());
-            plugin.log(PluginLog.WARNING, warnMessage);
-        } else {
-            plugin.log(PluginLog.INFO, "Will place order: " + order);
-
-            try {
-                OrderId orderId = exchangeService.placeOrder(order);
-
-                String successMessage = String.format("Placed an order on %s with id '%s' and ref '%s'",
-                        exchange.getExchangeSpecification().getExchangeName(), orderId, order.getUserReference());
-                plugin.log(PluginLog.INFO, successMessage);
-            } catch (Exception e) {
-                String errorMessage = String.format("Could not place order on %s for amount %s: %s",
-                        exchange.getExchangeSpecification().getExchangeName(), order.getOriginalAmount().toPlainString(), e.getMessage());
-                plugin.log(PluginLog.ERROR, errorMessage);
-            }
-        }
+        paymentAggregator.add(payment);
     }
 
-    private Order.Builder createOrder(CurrencyPair currencyPair, Satoshi amount) {
-        if (!runOptions.isDryRun()) {
-            return exchangeService.createMarketOrder(currencyPair, amount);
-        } else {
-            return exchangeService.createTestLimitOrder(currencyPair, amount);
-        }
+    /**
+     * Extracts the spent payment from a {@code sendpay_success} notification.
+     *
+     * @throws IllegalStateException if a required field is missing
+     */
+    public static SpentPayment toSpentPayment(CLightningJsonObject data) {
+        return SendpaySuccessDecoder.decode(data.getWrapper()).toSpentPayment();
     }
 }
@@ -0,0 +1,220 @@
+package org.tbk.cln.snr.rpc.subscription;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HexFormat;
+
+/**
+ * Decodes {@code sendpay_success} notifications.
+ * <p>
+ * Only the needed fields are read - everything else is skipped without being materialized. Supports the field
+ * names of older (e.g. {@code msatoshi_sent}) and newer (e.g. {@code amount_sent_msat}) versions of CLN.
+ * Amounts can be given as number or as string with suffix "msat" (e.g. {@code "21000msat"}).
+ */
+public final class SendpaySuccessDecoder {
+
+    private SendpaySuccessDecoder() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static final String MSAT_SUFFIX = "msat";
+
+    private static final int PAYMENT_HASH_LENGTH = 32;
+
+    /**
+     * Decodes a notification from its raw json representation.
+     *
+     * @throws IllegalStateException if the notification is malformed or a required field is missing
+     */
+    public static SendpaySuccessPayload decode(Reader json) {
+        try (JsonReader reader = new JsonReader(json)) {
+            Fields fields = new Fields();
+            readEnvelope(reader, fields);
+            return fields.toPayload();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Could not decode 'sendpay_success' notification: " + e.getMessage(), e);
+        }
+    }
+
+    public static SendpaySuccessPayload decode(String json) {
+        return decode(new StringReader(json));
+    }
+
+    /**
+     * Decodes an already parsed notification - either the whole request or just its {@code params}.
+     *
+     * @throws IllegalStateException if a required field is missing
+     */
+    public static SendpaySuccessPayload decode(JsonObject notification) {
+        JsonObject params = notification.has("params") ? asObject(notification.get("params")) : notification;
+        JsonObject payload = params == null ? null : asObject(params.get("sendpay_success"));
+        if (payload == null) {
+            throw new IllegalStateException("Could not extract 'sendpay_success' from notification.");
+        }
+
+        Fields fields = new Fields();
+        fields.hasPayload = true;
+        try {
+            JsonPrimitive amountSentMsat = asPrimitive(payload.get("amount_sent_msat"));
+            if (amountSentMsat == null) {
+                amountSentMsat = asPrimitive(payload.get("msatoshi_sent"));
+            }
+            if (amountSentMsat != null) {
+                fields.amountSentMsat = amountSentMsat.isNumber()
+                        ? amountSentMsat.getAsLong()
+                        : parseMsat(amountSentMsat.getAsString());
+                fields.hasAmountSent = true;
+            }
+
+            JsonPrimitive amountMsat = asPrimitive(payload.get("amount_msat"));
+            if (amountMsat == null) {
+                amountMsat = asPrimitive(payload.get("msatoshi"));
+            }
+            if (amountMsat != null) {
+                fields.amountMsat = amountMsat.isNumber()
+                        ? amountMsat.getAsLong()
+                        : parseMsat(amountMsat.getAsString());
+            }
+
+            JsonPrimitive paymentHash = asPrimitive(payload.get("payment_hash"));
+            if (paymentHash != null) {
+                fields.paymentHash = HexFormat.of().parseHex(paymentHash.getAsString());
+            }
+
+            JsonPrimitive partId = asPrimitive(payload.get("partid"));
+            fields.partId = partId == null ? 0L : partId.getAsLong();
+
+            JsonPrimitive groupId = asPrimitive(payload.get("groupid"));
+            fields.groupId = groupId == null ? 0L : groupId.getAsLong();
+
+            JsonPrimitive status = asPrimitive(payload.get("status"));
+            fields.status = status == null ? null : status.getAsString();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Could not decode 'sendpay_success' notification: " + e.getMessage(), e);
+        }
+        return fields.toPayload();
+    }
+
+    private static void readEnvelope(JsonReader reader, Fields fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("params".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readEnvelope(reader, fields);
+            } else if ("sendpay_success".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readPayload(reader, fields);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readPayload(JsonReader reader, Fields fields) throws IOException {
+        fields.hasPayload = true;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "amount_sent_msat" -> {
+                    // newer field name takes precedence
+                    fields.amountSentMsat = readMsat(reader);
+                    fields.hasAmountSent = true;
+                    fields.hasNewAmountSent = true;
+                }
+                case "msatoshi_sent" -> {
+                    long amountSentMsat = readMsat(reader);
+                    if (!fields.hasNewAmountSent) {
+                        fields.amountSentMsat = amountSentMsat;
+                        fields.hasAmountSent = true;
+                    }
+                }
+                case "amount_msat" -> {
+                    // newer field name takes precedence
+                    fields.amountMsat = readMsat(reader);
+                    fields.hasNewAmount = true;
+                }
+                case "msatoshi" -> {
+                    long amountMsat = readMsat(reader);
+                    if (!fields.hasNewAmount) {
+                        fields.amountMsat = amountMsat;
+                    }
+                }
+                case "payment_hash" -> {
+                    fields.paymentHash = HexFormat.of().parseHex(reader.nextString());
+                }
+                case "partid" -> {
+                    fields.partId = reader.nextLong();
+                }
+                case "groupid" -> {
+                    fields.groupId = reader.nextLong();
+                }
+                case "status" -> {
+                    fields.status = reader.nextString();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static long readMsat(JsonReader reader) throws IOException {
+        return reader.peek() == JsonToken.STRING
+                ? parseMsat(reader.nextString())
+                : reader.nextLong();
+    }
+
+    private static long parseMsat(String value) {
+        int end = value.endsWith(MSAT_SUFFIX) ? value.length() - MSAT_SUFFIX.length() : value.length();
+        return Long.parseLong(value, 0, end, 10);
+    }
+
+    private static JsonObject asObject(JsonElement element) {
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    private static JsonPrimitive asPrimitive(JsonElement element) {
+        return element != null && element.isJsonPrimitive() ? element.getAsJsonPrimitive() : null;
+    }
+
+    private static final class Fields {
+        private boolean hasPayload;
+        private boolean hasAmountSent;
+        private boolean hasNewAmountSent;
+        private long amountSentMsat;
+        private boolean hasNewAmount;
+        private long amountMsat;
+        private byte[] paymentHash;
+        private long partId;
+        private long groupId;
+        private String status;
+
+        private SendpaySuccessPayload toPayload() {
+            if (!hasPayload) {
+                throw new IllegalStateException("Could not extract 'sendpay_success' from notification.");
+            }
+            if (!hasAmountSent) {
+                throw new IllegalStateException("Could not extract 'amount_sent_msat' or 'msatoshi_sent' from payload.");
+            }
+            if (paymentHash == null) {
+                throw new IllegalStateException("Could not extract 'payment_hash' from payload.");
+            }
+            if (paymentHash.length != PAYMENT_HASH_LENGTH) {
+                throw new IllegalStateException("Invalid 'payment_hash' in payload: expected 32 bytes.");
+            }
+            return new SendpaySuccessPayload(paymentHash, amountSentMsat, amountMsat, partId, groupId, status);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.tbk.cln.snr.rpc.subscription;
+
+import fr.acinq.lightning.MilliSatoshi;
+import lombok.NonNull;
+import lombok.Value;
+import org.tbk.cln.snr.replacement.SpentPayment;
+
+import java.util.HexFormat;
+
+/**
+ * The fields of a {@code sendpay_success} notification needed to replace a payment.
+ */
+@Value
+public class SendpaySuccessPayload {
+
+    private static final String STATUS_COMPLETE = "complete";
+
+    @NonNull
+    byte[] paymentHash;
+
+    long amountSentMsat;
+
+    /**
+     * The amount delivered to the destination by the whole payment - shared by all parts of a multi-part payment,
+     * `0` if not present in the notification.
+     */
+    long amountMsat;
+
+    /**
+     * The part id of a multi-part payment - `0` if the payment has not been split.
+     */
+    long partId;
+
+    long groupId;
+
+    /**
+     * The status of the payment - `null` if not present in the notification.
+     */
+    String status;
+
+    public boolean isComplete() {
+        return status == null || STATUS_COMPLETE.equals(status);
+    }
+
+    public SpentPayment toSpentPayment() {
+        return toSpentPayment(System.nanoTime());
+    }
+
+    /**
+     * Creates the spent payment.
+     *
+     * @param receivedAt the {@link System#nanoTime()} the notification has been received at
+     */
+    public SpentPayment toSpentPayment(long receivedAt) {
+        return SpentPayment.builder()
+                .paymentHash(HexFormat.of().formatHex(paymentHash))
+                .groupId(groupId)
+                .partId(partId)
+                .amountSent(new MilliSatoshi(amountSentMsat))
+                .paymentAmount(amountMsat > 0L ? new MilliSatoshi(amountMsat) : null)
+                .receivedAt(receivedAt)
+                .build();
+    }
+}
@@ -0,0 +1,105 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.BaseExchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.InstrumentMetaData;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExchangeMetaDataHolderTest {
+
+    private static ExchangeMetaData metaData(String minimumAmount) {
+        InstrumentMetaData instrumentMetaData = new InstrumentMetaData.Builder()
+                .minimumAmount(new BigDecimal(minimumAmount))
+                .build();
+        return new ExchangeMetaData(Map.of(CurrencyPair.BTC_USD, instrumentMetaData), null, null, null, false);
+    }
+
+    @Test
+    void testLoadsMetaDataOnFirstAccess() {
+        TestExchange exchange = new TestExchange();
+        exchange.remoteMetaData = metaData("0.0001");
+
+        try (ExchangeMetaDataHolder sut = new ExchangeMetaDataHolder(exchange, Duration.ofHours(1))) {
+            ExchangeMetaDataSnapshot snapshot = sut.get();
+
+            assertThat(exchange.remoteInitCalls, is(1));
+            assertThat(snapshot.instrument(CurrencyPair.BTC_USD).map(InstrumentMetaData::getMinimumAmount).orElseThrow(),
+                    is(new BigDecimal("0.0001")));
+
+            assertThat(sut.get(), is(sameInstance(snapshot)));
+            assertThat(exchange.remoteInitCalls, is(1));
+        }
+    }
+
+    @Test
+    void testKeepsLastSnapshotIfRefreshFails() {
+        TestExchange exchange = new TestExchange();
+        exchange.getExchangeSpecification().setShouldLoadRemoteMetaData(true);
+        exchange.remoteMetaData = metaData("0.0001");
+
+        try (ExchangeMetaDataHolder sut = new ExchangeMetaDataHolder(exchange, Duration.ofHours(1))) {
+            ExchangeMetaDataSnapshot snapshot = sut.get();
+
+            exchange.remoteMetaData = null;
+            assertThrows(IllegalStateException.class, sut::refresh);
+            assertThat(sut.get(), is(sameInstance(snapshot)));
+
+            exchange.remoteMetaData = metaData("0.001");
+            ExchangeMetaDataSnapshot refreshed = sut.refresh();
+            assertThat(sut.get(), is(sameInstance(refreshed)));
+            assertThat(refreshed.instrument(CurrencyPair.BTC_USD).map(InstrumentMetaData::getMinimumAmount).orElseThrow(),
+                    is(new BigDecimal("0.001")));
+        }
+    }
+
+    @Test
+    void testFailsIfMetaDataIsNotAvailable() {
+        TestExchange exchange = new TestExchange();
+
+        try (ExchangeMetaDataHolder sut = new ExchangeMetaDataHolder(exchange, Duration.ofHours(1))) {
+            assertThrows(IllegalStateException.class, sut::get);
+        }
+    }
+
+    private static final class TestExchange extends BaseExchange {
+        private ExchangeMetaData remoteMetaData;
+        private int remoteInitCalls;
+
+        TestExchange() {
+            this.exchangeSpecification = getDefaultExchangeSpecification();
+        }
+
+        @Override
+        protected void initServices() {
+        }
+
+        @Override
+        public void remoteInit() throws IOException {
+            remoteInitCalls++;
+            if (remoteMetaData == null) {
+                throw new IOException("Remote metadata not available");
+            }
+            this.exchangeMetaData = remoteMetaData;
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification exchangeSpecification = new ExchangeSpecification(this.getClass());
+            exchangeSpecification.setExchangeName("Test");
+            exchangeSpecification.setShouldLoadRemoteMetaData(false);
+            return exchangeSpecification;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.dto.meta.RateLimit;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ExchangeRateLimiterTest {
+
+    @Test
+    void testTradingCallsJumpAheadOfPrivateCalls() throws InterruptedException {
+        // refills a single token every 5 seconds
+        ExchangeRateLimiter sut = ExchangeRateLimiter.of(null, Map.of(
+                ExchangeRateLimiter.EndpointClass.PRIVATE, new RateLimit(2, 10, TimeUnit.SECONDS)
+        ));
+
+        RateLimiter privateRateLimiter = sut.rateLimiter(ExchangeRateLimiter.EndpointClass.PRIVATE);
+        assertThat(sut.rateLimiter(ExchangeRateLimiter.EndpointClass.TRADING), is(sameInstance(privateRateLimiter)));
+
+        sut.acquire(ExchangeRateLimiter.EndpointClass.PRIVATE);
+
+        // the last token is reserved for trading calls
+        CompletableFuture<Void> privateCall = CompletableFuture.runAsync(() -> {
+            try {
+                sut.acquire(ExchangeRateLimiter.EndpointClass.PRIVATE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // let the private call start waiting
+        Thread.sleep(100);
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> sut.acquire(ExchangeRateLimiter.EndpointClass.TRADING));
+
+        assertThat(privateCall.isDone(), is(false));
+        // both calls counted against the same limit
+        assertThat(privateRateLimiter.availableTokens(), is(lessThan(1d)));
+        privateCall.cancel(true);
+    }
+
+    @Test
+    void testSeparateTradingLimitReservesNothing() {
+        ExchangeRateLimiter sut = ExchangeRateLimiter.of(null, Map.of(
+                ExchangeRateLimiter.EndpointClass.PRIVATE, new RateLimit(2, 10, TimeUnit.SECONDS),
+                ExchangeRateLimiter.EndpointClass.TRADING, new RateLimit(1, 10, TimeUnit.SECONDS)
+        ));
+
+        RateLimiter privateRateLimiter = sut.rateLimiter(ExchangeRateLimiter.EndpointClass.PRIVATE);
+        assertThat(sut.rateLimiter(ExchangeRateLimiter.EndpointClass.TRADING) == privateRateLimiter, is(false));
+
+        // no trading call ever waits for a private token - all of them can be taken
+        assertThat(privateRateLimiter.tryAcquire(RateLimiter.Priority.LOW), is(true));
+        assertThat(privateRateLimiter.tryAcquire(RateLimiter.Priority.LOW), is(true));
+    }
+}
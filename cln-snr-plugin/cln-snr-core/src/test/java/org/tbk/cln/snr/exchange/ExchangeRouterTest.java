@@ -0,0 +1,158 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.BaseExchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.InstrumentMetaData;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+import org.knowm.xchange.service.marketdata.params.Params;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.latency.LatencyStage;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class ExchangeRouterTest {
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void testRouteToBestEffectivePrice() {
+        ExchangeService cheap = exchangeService("Cheap", "20000", "0.0026", "0.0001", 0L);
+        ExchangeService cheapWithHighFee = exchangeService("HighFee", "19950", "0.01", "0.0001", 0L);
+        ExchangeService expensive = exchangeService("Expensive", "20100", null, "0.0001", 0L);
+
+        ExchangeRouter sut = router(List.of(expensive, cheapWithHighFee, cheap));
+
+        assertThat(names(sut.route(CurrencyPair.BTC_USD, 21_000L)), is(List.of("Cheap", "Expensive", "HighFee")));
+        assertThat(sut.primary().getExchangeName(), is("Expensive"));
+    }
+
+    @Test
+    void testSkipExchangesWithLargerMinimumAmount() {
+        ExchangeService cheap = exchangeService("Cheap", "20000", null, "0.001", 0L);
+        ExchangeService expensive = exchangeService("Expensive", "20100", null, "0.0001", 0L);
+
+        ExchangeRouter sut = router(List.of(cheap, expensive));
+
+        assertThat(names(sut.route(CurrencyPair.BTC_USD, 21_000L)), is(List.of("Expensive")));
+        assertThat(names(sut.route(CurrencyPair.BTC_USD, 210_000L)), is(List.of("Cheap", "Expensive")));
+    }
+
+    @Test
+    void testFallbackToSlowExchanges() {
+        ExchangeService slow = exchangeService("Slow", "19000", null, "0.0001", 1_000L);
+        ExchangeService fast = exchangeService("Fast", "20000", null, "0.0001", 0L);
+
+        ExchangeRouter sut = router(List.of(slow, fast));
+
+        assertThat(names(sut.route(CurrencyPair.BTC_USD, 21_000L)), is(List.of("Fast", "Slow")));
+    }
+
+    @Test
+    void testPenaliseOnlyQuoteAndOrderLatency() {
+        LatencyRecorder latencyRecorder = new LatencyRecorder();
+        ExchangeRouter sut = router(List.of(exchangeService("Expensive", "20010", null, "0.0001", 0L),
+                exchangeService("Cheap", "20000", null, "0.0001", 0L)), latencyRecorder);
+
+        // metadata lookups are not part of the round trip of the exchange
+        latencyRecorder.record("Cheap", LatencyStage.MARKET_DATA, TimeUnit.SECONDS.toNanos(10));
+        assertThat(names(sut.route(CurrencyPair.BTC_USD, 21_000L)), is(List.of("Cheap", "Expensive")));
+        assertThat(latencyRecorder.summary("Cheap", LatencyStage.QUOTE, Duration.ofMinutes(1)).orElseThrow().getCount(), is(1L));
+
+        latencyRecorder.record("Cheap", LatencyStage.PLACE_ORDER, TimeUnit.SECONDS.toNanos(10));
+        assertThat(names(sut.route(CurrencyPair.BTC_USD, 21_000L)), is(List.of("Expensive", "Cheap")));
+    }
+
+    @Test
+    void testPenaliseLatency() {
+        ExchangeRouter sut = router(List.of(exchangeService("Test", "20000", null, "0.0001", 0L)));
+
+        assertThat(sut.penalise(new BigDecimal("20000"), 0L).compareTo(new BigDecimal("20000")), is(0));
+        assertThat(sut.penalise(new BigDecimal("20000"), 2_000_000L).compareTo(new BigDecimal("20040")), is(0));
+        assertThat(ExchangeRouter.effectivePrice(new BigDecimal("20000"), new BigDecimal("0.0026")).compareTo(new BigDecimal("20052")), is(0));
+    }
+
+    private ExchangeRouter router(List<ExchangeService> exchangeServices) {
+        return router(exchangeServices, new LatencyRecorder());
+    }
+
+    private ExchangeRouter router(List<ExchangeService> exchangeServices, LatencyRecorder latencyRecorder) {
+        ExchangeRouter router = new ExchangeRouter(exchangeServices, Duration.ofMillis(200), new BigDecimal("0.001"), latencyRecorder);
+        resources.add(router);
+        return router;
+    }
+
+    private ExchangeService exchangeService(String name, String ask, String tradingFee, String minimumAmount, long delayMillis) {
+        TestExchange exchange = new TestExchange(name, new BigDecimal(ask), tradingFee == null ? null : new BigDecimal(tradingFee),
+                new BigDecimal(minimumAmount), delayMillis);
+        ExchangeMetaDataHolder exchangeMetaData = new ExchangeMetaDataHolder(exchange, Duration.ofHours(1));
+        TickerCache tickerCache = new TickerCache(exchange, Duration.ofSeconds(10), Duration.ZERO);
+        resources.add(exchangeMetaData);
+        resources.add(tickerCache);
+        return new ExchangeService(exchange, exchangeMetaData, tickerCache);
+    }
+
+    private static List<String> names(List<ExchangeService> exchangeServices) {
+        return exchangeServices.stream().map(ExchangeService::getExchangeName).toList();
+    }
+
+    private static final class TestExchange extends BaseExchange {
+
+        TestExchange(String name, BigDecimal ask, BigDecimal tradingFee, BigDecimal minimumAmount, long delayMillis) {
+            this.exchangeSpecification = getDefaultExchangeSpecification();
+            this.exchangeSpecification.setExchangeName(name);
+
+            InstrumentMetaData instrumentMetaData = new InstrumentMetaData.Builder()
+                    .tradingFee(tradingFee)
+                    .minimumAmount(minimumAmount)
+                    .build();
+            this.exchangeMetaData = new ExchangeMetaData(Map.of(CurrencyPair.BTC_USD, instrumentMetaData), null, null, null, false);
+            this.marketDataService = new TestMarketDataService(ask, delayMillis);
+        }
+
+        @Override
+        protected void initServices() {
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification exchangeSpecification = new ExchangeSpecification(this.getClass());
+            exchangeSpecification.setShouldLoadRemoteMetaData(false);
+            return exchangeSpecification;
+        }
+    }
+
+    private record TestMarketDataService(BigDecimal ask, long delayMillis) implements MarketDataService {
+
+        @Override
+        public List<Ticker> getTickers(Params params) throws IOException {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            return List.of(new Ticker.Builder().instrument(CurrencyPair.BTC_USD).ask(ask).bid(ask).build());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.meta.InstrumentMetaData;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InstrumentIndexTest {
+
+    @Test
+    void testResolveSpec() {
+        InstrumentMetaData metaData = new InstrumentMetaData.Builder()
+                .minimumAmount(new BigDecimal("0.0001"))
+                .volumeScale(8)
+                .priceScale(1)
+                .build();
+
+        InstrumentIndex sut = InstrumentIndex.of(Map.of(CurrencyPair.BTC_USD, metaData));
+
+        assertThat(sut.size(), is(1));
+        assertThat(sut.supports(CurrencyPair.BTC_USD), is(true));
+        assertThat(sut.supports(CurrencyPair.BTC_EUR), is(false));
+
+        InstrumentSpec spec = sut.require(CurrencyPair.BTC_USD);
+        assertThat(spec.getAmountScale(), is(8));
+        assertThat(spec.getPriceScale(), is(1));
+        assertThat(spec.getMinimumAmount(), is(new BigDecimal("0.0001")));
+        assertThat(spec.getOrderValuesHelper().amountUnderMinimum(new BigDecimal("0.00009")), is(true));
+        assertThat(spec.getOrderValuesHelper().adjustAmount(new BigDecimal("0.123456789")), is(new BigDecimal("0.12345678")));
+
+        // the spec is resolved once and reused
+        assertThat(sut.find(CurrencyPair.BTC_USD).orElseThrow() == spec, is(true));
+    }
+
+    @Test
+    void testRequireUnsupportedInstrument() {
+        InstrumentIndex sut = InstrumentIndex.of(Map.of());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> sut.require(CurrencyPair.BTC_USD));
+        assertThat(e.getMessage(), is("Currency pair is not supported: BTC/USD"));
+    }
+}
@@ -0,0 +1,86 @@
+package org.tbk.cln.snr.exchange;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.BaseExchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.instrument.Instrument;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MeteredExchangeTest {
+
+    @Test
+    void itShouldRecordRemoteCallsByOutcome() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MeteredExchange sut = new MeteredExchange(new TestExchange(), meterRegistry);
+
+        Ticker ticker = sut.getMarketDataService().getTicker((Instrument) CurrencyPair.BTC_USD);
+        assertThat(ticker.getInstrument(), is(CurrencyPair.BTC_USD));
+
+        assertThrows(IOException.class, () -> sut.getMarketDataService().getTicker((Instrument) CurrencyPair.BTC_EUR));
+
+        Timer success = meterRegistry.find(MeteredExchange.METRIC_NAME)
+                .tags("exchange", "Test", "service", "market_data", "method", "getTicker", "outcome", "success")
+                .timer();
+        Timer error = meterRegistry.find(MeteredExchange.METRIC_NAME)
+                .tags("exchange", "Test", "service", "market_data", "method", "getTicker", "outcome", "error")
+                .timer();
+
+        assertThat(success.count(), is(1L));
+        assertThat(error.count(), is(1L));
+    }
+
+    @Test
+    void itShouldNotRecordLocalCalls() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MeteredExchange sut = new MeteredExchange(new TestExchange(), meterRegistry);
+
+        assertThat(sut.getMarketDataService().toString(), is("MeteredExchange[TestMarketDataService]"));
+        assertThat(meterRegistry.find(MeteredExchange.METRIC_NAME).timer(), is(nullValue()));
+    }
+
+    private static final class TestExchange extends BaseExchange {
+
+        TestExchange() {
+            this.exchangeSpecification = getDefaultExchangeSpecification();
+            this.marketDataService = new TestMarketDataService();
+        }
+
+        @Override
+        protected void initServices() {
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification exchangeSpecification = new ExchangeSpecification(this.getClass());
+            exchangeSpecification.setExchangeName("Test");
+            return exchangeSpecification;
+        }
+    }
+
+    private static final class TestMarketDataService implements MarketDataService {
+
+        @Override
+        public Ticker getTicker(Instrument instrument, Object... args) throws IOException {
+            if (!CurrencyPair.BTC_USD.equals(instrument)) {
+                throw new IOException("Unknown instrument");
+            }
+            return new Ticker.Builder().instrument(instrument).build();
+        }
+
+        @Override
+        public String toString() {
+            return "TestMarketDataService";
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.BaseExchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.RateLimit;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+class RateLimitedExchangeTest {
+
+    @Test
+    void testRebuildRateLimiterIfLimitsChanged() {
+        TestExchange exchange = new TestExchange(metaData(new RateLimit(10, 1, TimeUnit.SECONDS)));
+        RateLimitedExchange sut = new RateLimitedExchange(exchange, Map.of());
+
+        ExchangeRateLimiter rateLimiter = sut.getRateLimiter();
+        assertThat(sut.getRateLimiter(), is(sameInstance(rateLimiter)));
+
+        // reloaded metadata announcing the same limits
+        exchange.setMetaData(metaData(new RateLimit(10, 1, TimeUnit.SECONDS)));
+        assertThat(sut.getRateLimiter(), is(sameInstance(rateLimiter)));
+
+        exchange.setMetaData(metaData(new RateLimit(5, 1, TimeUnit.SECONDS)));
+        ExchangeRateLimiter refreshedRateLimiter = sut.getRateLimiter();
+        assertThat(refreshedRateLimiter, is(not(sameInstance(rateLimiter))));
+        assertThat(refreshedRateLimiter.rateLimiter(ExchangeRateLimiter.EndpointClass.PUBLIC).availableTokens(), is(5.0d));
+    }
+
+    @Test
+    void testKeepRateLimiterIfLimitsAreOverridden() {
+        TestExchange exchange = new TestExchange(metaData(new RateLimit(10, 1, TimeUnit.SECONDS)));
+        RateLimitedExchange sut = new RateLimitedExchange(exchange, Map.of(
+                ExchangeRateLimiter.EndpointClass.PUBLIC, new RateLimit(1, 1, TimeUnit.SECONDS)
+        ));
+
+        ExchangeRateLimiter rateLimiter = sut.getRateLimiter();
+
+        exchange.setMetaData(metaData(new RateLimit(5, 1, TimeUnit.SECONDS)));
+        assertThat(sut.getRateLimiter(), is(sameInstance(rateLimiter)));
+    }
+
+    private static ExchangeMetaData metaData(RateLimit publicRateLimit) {
+        return new ExchangeMetaData(Map.of(), Map.of(), new RateLimit[]{publicRateLimit}, null, false);
+    }
+
+    private static final class TestExchange extends BaseExchange {
+
+        TestExchange(ExchangeMetaData metaData) {
+            this.exchangeSpecification = getDefaultExchangeSpecification();
+            this.exchangeMetaData = metaData;
+        }
+
+        void setMetaData(ExchangeMetaData metaData) {
+            this.exchangeMetaData = metaData;
+        }
+
+        @Override
+        protected void initServices() {
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification exchangeSpecification = new ExchangeSpecification(this.getClass());
+            exchangeSpecification.setExchangeName("Test");
+            return exchangeSpecification;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.RateLimit;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+class RateLimiterTest {
+
+    @Test
+    void testRefillOverTime() {
+        AtomicLong nanoTime = new AtomicLong();
+        RateLimiter sut = new RateLimiter(3, Duration.ofSeconds(3), nanoTime::get);
+
+        assertThat(sut.tryAcquire(RateLimiter.Priority.HIGH), is(true));
+        assertThat(sut.tryAcquire(RateLimiter.Priority.HIGH), is(true));
+        assertThat(sut.tryAcquire(RateLimiter.Priority.HIGH), is(true));
+        assertThat(sut.tryAcquire(RateLimiter.Priority.HIGH), is(false));
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(sut.tryAcquire(RateLimiter.Priority.HIGH), is(false));
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(sut.tryAcquire(RateLimiter.Priority.HIGH), is(true));
+
+        // never exceeds its capacity
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(sut.availableTokens(), is(closeTo(3d, 0.0001d)));
+    }
+
+    @Test
+    void testLastTokenIsReservedForHighPriority() {
+        AtomicLong nanoTime = new AtomicLong();
+        RateLimiter sut = new RateLimiter(2, Duration.ofSeconds(1), nanoTime::get);
+
+        assertThat(sut.tryAcquire(RateLimiter.Priority.LOW), is(true));
+        assertThat(sut.tryAcquire(RateLimiter.Priority.LOW), is(false));
+        assertThat(sut.tryAcquire(RateLimiter.Priority.HIGH), is(true));
+    }
+
+    @Test
+    void testRateLimitsFromMetaData() {
+        RateLimit[] publicRateLimits = {
+                new RateLimit(10, 1, TimeUnit.SECONDS),
+                new RateLimit(60, 1, TimeUnit.MINUTES)
+        };
+        ExchangeMetaData metaData = new ExchangeMetaData(Map.of(), Map.of(), publicRateLimits, null, false);
+
+        ExchangeRateLimiter sut = ExchangeRateLimiter.of(metaData, Map.of(
+                ExchangeRateLimiter.EndpointClass.TRADING, new RateLimit(5, 1, TimeUnit.SECONDS)
+        ));
+
+        // the most restrictive limit of the metadata is used
+        assertThat(sut.rateLimiter(ExchangeRateLimiter.EndpointClass.PUBLIC).availableTokens(), is(closeTo(60d, 0.0001d)));
+        // no private limits in metadata - falls back to a conservative default
+        assertThat(sut.rateLimiter(ExchangeRateLimiter.EndpointClass.PRIVATE).availableTokens(), is(closeTo(15d, 0.0001d)));
+        assertThat(sut.rateLimiter(ExchangeRateLimiter.EndpointClass.TRADING).availableTokens(), is(closeTo(5d, 0.0001d)));
+    }
+}
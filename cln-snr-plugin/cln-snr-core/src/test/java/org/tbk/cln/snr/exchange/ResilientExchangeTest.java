@@ -0,0 +1,207 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.BaseExchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.meta.RateLimit;
+import org.knowm.xchange.dto.trade.MarketOrder;
+import org.knowm.xchange.exceptions.ExchangeException;
+import org.knowm.xchange.instrument.Instrument;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+import org.knowm.xchange.service.trade.TradeService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResilientExchangeTest {
+
+    private static final ResilientExchange.Policy policy = ResilientExchange.Policy.builder()
+            .attemptTimeout(Duration.ofMillis(200))
+            .initialBackoff(Duration.ofMillis(10))
+            .maxBackoff(Duration.ofMillis(20))
+            .failureThreshold(5)
+            .build();
+
+    @Test
+    void testRetryIdempotentCalls() throws IOException {
+        TestExchange exchange = new TestExchange(2, 0L);
+        ResilientExchange sut = new ResilientExchange(exchange, policy);
+
+        Ticker ticker = sut.getMarketDataService().getTicker((Instrument) CurrencyPair.BTC_USD);
+
+        assertThat(ticker.getInstrument(), is(CurrencyPair.BTC_USD));
+        assertThat(exchange.calls.get(), is(3));
+        assertThat(sut.getCircuitBreaker().getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    void testPlaceOrdersOnlyOnceUnlessGuardedByUserReference() {
+        TestExchange exchange = new TestExchange(1, 0L);
+        ResilientExchange sut = new ResilientExchange(exchange, policy);
+
+        assertThrows(IOException.class, () -> sut.getTradeService().placeMarketOrder(order("42")));
+        assertThat(exchange.calls.get(), is(1));
+
+        TestExchange guardedExchange = new TestExchange(1, 0L);
+        ResilientExchange guardedSut = new ResilientExchange(guardedExchange, policy.toBuilder()
+                .retryOrdersWithUserReference(true)
+                .build());
+
+        // the retried order reaches the exchange, which rejects it
+        assertThrows(ExchangeException.class, () -> guardedSut.getTradeService().placeMarketOrder(order("42")));
+        assertThat(guardedExchange.calls.get(), is(2));
+
+        TestExchange unguardedExchange = new TestExchange(1, 0L);
+        ResilientExchange unguardedSut = new ResilientExchange(unguardedExchange, policy.toBuilder()
+                .retryOrdersWithUserReference(true)
+                .build());
+
+        assertThrows(IOException.class, () -> unguardedSut.getTradeService().placeMarketOrder(order(null)));
+        assertThat(unguardedExchange.calls.get(), is(1));
+    }
+
+    @Test
+    void testAbandonHungCalls() {
+        TestExchange exchange = new TestExchange(0, 10_000L);
+        ResilientExchange sut = new ResilientExchange(exchange, policy.toBuilder().maxAttempts(1).build());
+
+        long start = System.nanoTime();
+        assertThrows(InterruptedIOException.class, () -> sut.getMarketDataService().getTicker((Instrument) CurrencyPair.BTC_USD));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), lessThanOrEqualTo(2_000L));
+    }
+
+    @Test
+    void testReportUnknownOutcomeOfHungOrders() {
+        TestExchange exchange = new TestExchange(0, 1_000L);
+        ResilientExchange sut = new ResilientExchange(exchange, policy.toBuilder().maxAttempts(1).build());
+
+        assertThrows(ResilientExchange.OutcomeUnknownException.class, () -> sut.getTradeService().placeMarketOrder(order("42")));
+        assertThat(exchange.calls.get(), is(1));
+
+        // the order is not interrupted - it reaches the exchange, which rejects it
+        await().until(() -> exchange.completedCalls.get() == 1);
+    }
+
+    @Test
+    void testFailFastWhileCircuitIsOpen() {
+        TestExchange exchange = new TestExchange(Integer.MAX_VALUE, 0L);
+        ResilientExchange sut = new ResilientExchange(exchange, policy.toBuilder().failureThreshold(3).build());
+
+        assertThrows(IOException.class, () -> sut.getMarketDataService().getTicker((Instrument) CurrencyPair.BTC_USD));
+        assertThat(exchange.calls.get(), is(3));
+        assertThat(sut.getCircuitBreaker().getState(), is(CircuitBreaker.State.OPEN));
+
+        assertThrows(ResilientExchange.CircuitOpenException.class, () -> sut.getMarketDataService().getTicker((Instrument) CurrencyPair.BTC_USD));
+        assertThat(exchange.calls.get(), is(3));
+    }
+
+    @Test
+    void testExchangeErrorsDoNotOpenCircuit() {
+        TestExchange exchange = new TestExchange(0, 0L);
+        ResilientExchange sut = new ResilientExchange(exchange, policy.toBuilder().failureThreshold(1).build());
+
+        assertThrows(ExchangeException.class, () -> sut.getTradeService().placeMarketOrder(order("0")));
+
+        assertThat(exchange.calls.get(), is(1));
+        assertThat(sut.getCircuitBreaker().getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    void testWaitForRateLimitOutsideOfDeadline() throws IOException {
+        TestExchange exchange = new TestExchange(0, 0L);
+        RateLimitedExchange sut = new RateLimitedExchange(new ResilientExchange(exchange, policy.toBuilder().maxAttempts(1).build()), Map.of(
+                ExchangeRateLimiter.EndpointClass.TRADING, new RateLimit(1, 1, TimeUnit.SECONDS)
+        ));
+
+        assertThrows(ExchangeException.class, () -> sut.getTradeService().placeMarketOrder(order("1")));
+        // waits longer for a permit than an attempt may take - but the order has not been sent before
+        assertThrows(ExchangeException.class, () -> sut.getTradeService().placeMarketOrder(order("2")));
+        assertThat(exchange.calls.get(), is(2));
+    }
+
+    @Test
+    void testAcquirePermitsForRetries() throws IOException {
+        TestExchange exchange = new TestExchange(2, 0L);
+        RateLimitedExchange sut = new RateLimitedExchange(new ResilientExchange(exchange, policy), Map.of(
+                ExchangeRateLimiter.EndpointClass.PUBLIC, new RateLimit(1, 300, TimeUnit.MILLISECONDS)
+        ));
+
+        long startNanos = System.nanoTime();
+        sut.getMarketDataService().getTicker((Instrument) CurrencyPair.BTC_USD);
+
+        assertThat(exchange.calls.get(), is(3));
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos).toMillis(), greaterThanOrEqualTo(500L));
+    }
+
+    private static MarketOrder order(String userReference) {
+        return new MarketOrder.Builder(Order.OrderType.BID, CurrencyPair.BTC_USD)
+                .originalAmount(new BigDecimal("0.0001"))
+                .userReference(userReference)
+                .build();
+    }
+
+    private static final class TestExchange extends BaseExchange {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final AtomicInteger completedCalls = new AtomicInteger();
+
+        TestExchange(int failures, long delayMillis) {
+            this.exchangeSpecification = getDefaultExchangeSpecification();
+            this.marketDataService = new MarketDataService() {
+                @Override
+                public Ticker getTicker(Instrument instrument, Object... args) throws IOException {
+                    call(failures, delayMillis);
+                    return new Ticker.Builder().instrument(instrument).build();
+                }
+            };
+            this.tradeService = new TradeService() {
+                @Override
+                public String placeMarketOrder(MarketOrder marketOrder) throws IOException {
+                    call(failures, delayMillis);
+                    throw new ExchangeException("Insufficient funds");
+                }
+            };
+        }
+
+        private void call(int failures, long delayMillis) throws IOException {
+            if (calls.incrementAndGet() <= failures) {
+                throw new IOException("Connection reset");
+            }
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            completedCalls.incrementAndGet();
+        }
+
+        @Override
+        protected void initServices() {
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification exchangeSpecification = new ExchangeSpecification(this.getClass());
+            exchangeSpecification.setExchangeName("Test");
+            return exchangeSpecification;
+        }
+    }
+}
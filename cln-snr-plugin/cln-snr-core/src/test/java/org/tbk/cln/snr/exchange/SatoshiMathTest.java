@@ -0,0 +1,109 @@
+package org.tbk.cln.snr.exchange;
+
+import fr.acinq.bitcoin.Satoshi;
+import fr.acinq.lightning.MilliSatoshi;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class SatoshiMathTest {
+
+    // 21M bitcoin in msat - larger amounts cannot be sent
+    private static final long MAX_MSAT = 2_100_000_000_000_000_000L;
+
+    private static final int RANDOM_SAMPLES = 200_000;
+
+    @Test
+    void testExhaustiveSmallAmounts() {
+        for (long sats = -100_000L; sats <= 100_000L; sats++) {
+            assertEquivalent(sats);
+        }
+        for (long msat = -100_000L; msat <= 100_000L; msat++) {
+            assertThat(SatoshiMath.msatToSat(msat), is(new MilliSatoshi(msat).truncateToSatoshi().toLong()));
+        }
+    }
+
+    @Test
+    void testRandomAmounts() {
+        SplittableRandom random = new SplittableRandom(21L);
+        for (int i = 0; i < RANDOM_SAMPLES; i++) {
+            long msat = random.nextLong(-MAX_MSAT, MAX_MSAT);
+            assertThat(SatoshiMath.msatToSat(msat), is(new MilliSatoshi(msat).truncateToSatoshi().toLong()));
+            assertThat(SatoshiMath.satToMsat(SatoshiMath.msatToSat(msat)) + SatoshiMath.subSatMsat(msat), is(msat));
+
+            assertEquivalent(msat / SatoshiMath.MSAT_PER_SAT);
+        }
+    }
+
+    @Test
+    void testBtcToSatsWithArbitraryScales() {
+        SplittableRandom random = new SplittableRandom(42L);
+        for (int i = 0; i < RANDOM_SAMPLES; i++) {
+            long unscaled = random.nextLong(-1_000_000_000_000_000L, 1_000_000_000_000_000L);
+            int scale = random.nextInt(-4, 13);
+            BigDecimal btc = BigDecimal.valueOf(unscaled, scale);
+            assertBtcToSatsEquivalent(btc);
+        }
+
+        assertBtcToSatsEquivalent(new BigDecimal("21000000"));
+        assertBtcToSatsEquivalent(new BigDecimal("21000000.00000000"));
+        assertBtcToSatsEquivalent(new BigDecimal("0.000010000000"));
+        assertBtcToSatsEquivalent(new BigDecimal("9999999999.99999999"));
+        assertBtcToSatsEquivalent(new BigDecimal("92233720368.54775807"));
+        assertBtcToSatsEquivalent(new BigDecimal("1E+3"));
+    }
+
+    @Test
+    void testBtcToSatsInvalid() {
+        assertThrowsExactly(ArithmeticException.class, () -> SatoshiMath.btcToSats(new BigDecimal("0.000000000001")));
+        assertThrowsExactly(ArithmeticException.class, () -> SatoshiMath.btcToSats(new BigDecimal("0.123456789")));
+    }
+
+    @Test
+    void testMinimumAmount() {
+        BigDecimal[] minimums = {
+                new BigDecimal("0"),
+                new BigDecimal("0.00001"),
+                new BigDecimal("0.0001"),
+                new BigDecimal("0.000010001"),
+                new BigDecimal("0.000000001"),
+                new BigDecimal("1")
+        };
+        for (BigDecimal minimum : minimums) {
+            long minimumSats = SatoshiMath.btcToSatsCeiling(minimum);
+            for (long sats = 0L; sats <= 200_000L; sats++) {
+                boolean expected = ConversionUtils.satsToBtc(new Satoshi(sats)).compareTo(minimum) < 0;
+                assertThat(SatoshiMath.isUnderMinimum(sats, minimumSats), is(expected));
+            }
+        }
+    }
+
+    private static void assertEquivalent(long sats) {
+        BigDecimal btc = ConversionUtils.satsToBtc(new Satoshi(sats));
+        assertThat(SatoshiMath.satsToBtc(sats), is(btc));
+        assertThat(SatoshiMath.btcToSats(btc), is(ConversionUtils.btcToSats(btc).toLong()));
+        assertThat(SatoshiMath.satToMsat(sats), is(sats * 1_000L));
+
+        for (int scale = -2; scale <= 10; scale++) {
+            BigDecimal floored = btc.setScale(scale, RoundingMode.FLOOR);
+            assertThat(SatoshiMath.floorToScale(sats, scale), is(ConversionUtils.btcToSats(floored).toLong()));
+        }
+    }
+
+    private static void assertBtcToSatsEquivalent(BigDecimal btc) {
+        Long expected;
+        try {
+            expected = ConversionUtils.btcToSats(btc).toLong();
+        } catch (ArithmeticException e) {
+            assertThrowsExactly(ArithmeticException.class, () -> SatoshiMath.btcToSats(btc));
+            return;
+        }
+        assertThat(SatoshiMath.btcToSats(btc), is(expected));
+    }
+}
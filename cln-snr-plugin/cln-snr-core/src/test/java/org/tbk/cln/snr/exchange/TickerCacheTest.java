@@ -0,0 +1,178 @@
+package org.tbk.cln.snr.exchange;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TickerCacheTest {
+
+    private static Ticker ticker(int last) {
+        return new Ticker.Builder()
+                .instrument(CurrencyPair.BTC_USD)
+                .last(BigDecimal.valueOf(last))
+                .build();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2023-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+
+    @Test
+    void testServeFromCacheTillMaxAge() {
+        MutableClock clock = new MutableClock();
+        AtomicInteger fetches = new AtomicInteger();
+
+        try (TickerCache sut = new TickerCache(it -> ticker(fetches.incrementAndGet()), Duration.ofSeconds(10), Duration.ZERO, clock)) {
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(1));
+
+            clock.advance(Duration.ofSeconds(10));
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(1));
+
+            clock.advance(Duration.ofSeconds(1));
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(2));
+            assertThat(fetches.get(), is(2));
+        }
+    }
+
+    @Test
+    void testStaleWhileRevalidate() throws InterruptedException {
+        MutableClock clock = new MutableClock();
+        AtomicInteger fetches = new AtomicInteger();
+
+        try (TickerCache sut = new TickerCache(it -> ticker(fetches.incrementAndGet()), Duration.ofSeconds(10), Duration.ofSeconds(30), clock)) {
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(1));
+
+            clock.advance(Duration.ofSeconds(20));
+            // stale value is served immediately and refreshed in the background
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(1));
+
+            for (int i = 0; i < 100 && fetches.get() < 2; i++) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < 100 && sut.get(CurrencyPair.BTC_USD).getLast().intValue() != 2; i++) {
+                Thread.sleep(10);
+            }
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(2));
+
+            // values older than max age + stale window are never served
+            clock.advance(Duration.ofSeconds(41));
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(3));
+        }
+    }
+
+    @Test
+    void testConcurrentRequestsShareSingleFetch() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+
+        TickerCache.TickerFetcher fetcher = it -> {
+            fetchStarted.countDown();
+            releaseFetch.await(10, TimeUnit.SECONDS);
+            return ticker(fetches.incrementAndGet());
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (TickerCache sut = new TickerCache(fetcher, Duration.ofSeconds(10), Duration.ZERO, Clock.systemUTC())) {
+            List<Future<Ticker>> results = new ArrayList<>();
+            results.add(executor.submit(() -> sut.get(CurrencyPair.BTC_USD)));
+            fetchStarted.await(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> sut.get(CurrencyPair.BTC_USD)));
+            }
+            Thread.sleep(50);
+            releaseFetch.countDown();
+
+            for (Future<Ticker> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS).getLast().intValue(), is(1));
+            }
+            assertThat(fetches.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testDiscardFetchesStartedBeforeInvalidation() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+
+        TickerCache.TickerFetcher fetcher = it -> {
+            int fetch = fetches.incrementAndGet();
+            if (fetch == 1) {
+                fetchStarted.countDown();
+                releaseFetch.await(10, TimeUnit.SECONDS);
+            }
+            return ticker(fetch);
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (TickerCache sut = new TickerCache(fetcher, Duration.ofSeconds(10), Duration.ZERO, Clock.systemUTC())) {
+            Future<Ticker> outdated = executor.submit(() -> sut.get(CurrencyPair.BTC_USD));
+            fetchStarted.await(10, TimeUnit.SECONDS);
+
+            sut.invalidate(CurrencyPair.BTC_USD);
+
+            // does not wait for the fetch started before the invalidation
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(2));
+
+            releaseFetch.countDown();
+            assertThat(outdated.get(10, TimeUnit.SECONDS).getLast().intValue(), is(1));
+
+            // the outdated ticker has not been cached
+            assertThat(sut.get(CurrencyPair.BTC_USD).getLast().intValue(), is(2));
+            assertThat(fetches.get(), is(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFetchFailure() {
+        try (TickerCache sut = new TickerCache(it -> {
+            throw new IllegalStateException("Could not fetch ticker");
+        }, Duration.ofSeconds(10), Duration.ZERO, Clock.systemUTC())) {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> sut.get(CurrencyPair.BTC_USD));
+            assertThat(e.getMessage(), is("Could not fetch ticker"));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.tbk.cln.snr.exchange.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeFactory;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.tbk.cln.snr.demo.exchange.DummyExchange;
+import org.tbk.cln.snr.demo.exchange.DummyMarketDataWebSocketServer;
+import org.tbk.cln.snr.exchange.ExchangeMetaDataHolder;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import org.tbk.cln.snr.exchange.TickerCache;
+
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class TopOfBookTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private DummyMarketDataWebSocketServer server;
+
+    private TopOfBook sut;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new DummyMarketDataWebSocketServer();
+
+        MarketDataStream stream = new WebSocketMarketDataStream(HttpClient.newHttpClient(), server.getUri(),
+                new KrakenTickerMessageCodec(), Duration.ofSeconds(3));
+        sut = new TopOfBook(stream, Duration.ofMillis(50));
+        sut.start(Set.of(CurrencyPair.BTC_USD));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sut.close();
+        server.close();
+    }
+
+    @Test
+    void testStreamTickers() {
+        await().atMost(TIMEOUT).until(() -> sut.get(CurrencyPair.BTC_USD).isPresent());
+
+        Ticker snapshot = sut.get(CurrencyPair.BTC_USD).orElseThrow();
+        assertThat(snapshot.getAsk(), is(new BigDecimal("0.12")));
+        assertThat(snapshot.getOpen(), is(new BigDecimal("0.18")));
+        assertThat(sut.isConnected(), is(true));
+        assertThat(sut.get(CurrencyPair.BTC_GBP), is(Optional.empty()));
+
+        server.publish(ticker("21000"));
+
+        await().atMost(TIMEOUT).until(() -> askOf(sut.get(CurrencyPair.BTC_USD)).equals(new BigDecimal("21000")));
+    }
+
+    @Test
+    void testReconnect() {
+        await().atMost(TIMEOUT).until(() -> sut.get(CurrencyPair.BTC_USD).isPresent());
+        server.publish(ticker("21000"));
+        await().atMost(TIMEOUT).until(() -> askOf(sut.get(CurrencyPair.BTC_USD)).equals(new BigDecimal("21000")));
+
+        server.dropConnections();
+
+        // the snapshot of the new connection replaces the ticker of the dropped one
+        await().atMost(TIMEOUT).until(() -> askOf(sut.get(CurrencyPair.BTC_USD)).equals(new BigDecimal("0.12")));
+        assertThat(server.getConnectionCount(), is(1));
+    }
+
+    @Test
+    void testFallbackToRest() throws Exception {
+        Exchange exchange = ExchangeFactory.INSTANCE.createExchange(DummyExchange.class);
+        try (ExchangeMetaDataHolder exchangeMetaData = new ExchangeMetaDataHolder(exchange, Duration.ofHours(1));
+             TickerCache tickerCache = new TickerCache(exchange, Duration.ZERO, Duration.ZERO)) {
+            ExchangeService exchangeService = new ExchangeService(exchange, exchangeMetaData, tickerCache, sut);
+
+            await().atMost(TIMEOUT).until(() -> sut.get(CurrencyPair.BTC_USD).isPresent());
+            server.publish(ticker("21000"));
+            await().atMost(TIMEOUT).until(() -> exchangeService.fetchTicker(CurrencyPair.BTC_USD).getAsk().equals(new BigDecimal("21000")));
+
+            server.close();
+
+            await().atMost(TIMEOUT).until(() -> !sut.isConnected());
+            assertThat(exchangeService.fetchTicker(CurrencyPair.BTC_USD).getAsk(), is(new BigDecimal("0.12")));
+        }
+    }
+
+    private static BigDecimal askOf(Optional<Ticker> ticker) {
+        return ticker.map(Ticker::getAsk).orElse(BigDecimal.ZERO);
+    }
+
+    private static Ticker ticker(String ask) {
+        return new Ticker.Builder()
+                .instrument(CurrencyPair.BTC_USD)
+                .ask(new BigDecimal(ask))
+                .bid(new BigDecimal(ask))
+                .last(new BigDecimal(ask))
+                .open(new BigDecimal(ask))
+                .build();
+    }
+}
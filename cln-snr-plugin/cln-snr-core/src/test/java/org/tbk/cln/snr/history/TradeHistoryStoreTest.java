@@ -0,0 +1,133 @@
+package org.tbk.cln.snr.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.UserTrade;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+// CHECKSTYLE IGNORE RegexpSinglelineJava FOR NEXT 1 LINES - xchange requires legacy dates
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class TradeHistoryStoreTest {
+
+    private static final CurrencyPair instrument = CurrencyPair.BTC_USD;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testAddTradesAndReopen() throws IOException {
+        Path file = tempDir.resolve("trade-history.log");
+
+        try (TradeHistoryStore store = TradeHistoryStore.open(file)) {
+            assertThat(store.addTrades(List.of(trade("1", 1000), trade("2", 2000))), is(2));
+            // duplicates are ignored
+            assertThat(store.addTrades(List.of(trade("2", 2000), trade("3", 3000))), is(1));
+        }
+
+        try (TradeHistoryStore store = TradeHistoryStore.open(file)) {
+            assertThat(store.tradeCount(), is(3));
+            assertThat(store.lastTrade().map(UserTrade::getId).orElseThrow(), is("3"));
+            assertThat(store.tradesByOrderId("order-2").size(), is(1));
+            assertThat(store.tradesByUserReference("ref-1").size(), is(1));
+
+            UserTrade trade = store.trade("1").orElseThrow();
+            assertThat(trade.getPrice(), is(new BigDecimal("21000.5")));
+            assertThat(trade.getOriginalAmount(), is(new BigDecimal("0.00021")));
+            assertThat(trade.getTimestamp().getTime(), is(1000L));
+        }
+    }
+
+    @Test
+    void testTradesInTimeRange() throws IOException {
+        try (TradeHistoryStore store = TradeHistoryStore.open(tempDir.resolve("trade-history.log"))) {
+            store.addTrades(List.of(trade("1", 1000), trade("2", 2000), trade("3", 3000), trade("4", 4000)));
+
+            List<UserTrade> trades = store.trades(instrument, Instant.ofEpochMilli(2000), Instant.ofEpochMilli(4000), 0, 10);
+            assertThat(trades.stream().map(UserTrade::getId).toList(), is(List.of("2", "3")));
+
+            List<UserTrade> secondPage = store.trades(instrument, null, null, 2, 2);
+            assertThat(secondPage.stream().map(UserTrade::getId).toList(), is(List.of("3", "4")));
+
+            assertThat(store.trades(CurrencyPair.BTC_EUR, null, null, 0, 10).isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    void testOrderStates() throws IOException {
+        Path file = tempDir.resolve("trade-history.log");
+
+        try (TradeHistoryStore store = TradeHistoryStore.open(file)) {
+            store.putOrders(List.of(order("order-1", Order.OrderStatus.NEW)));
+            assertThat(store.openOrders(instrument).size(), is(1));
+
+            store.putOrders(List.of(order("order-1", Order.OrderStatus.FILLED)));
+            assertThat(store.openOrders(instrument).isEmpty(), is(true));
+        }
+
+        try (TradeHistoryStore store = TradeHistoryStore.open(file)) {
+            assertThat(store.order("order-1").map(Order::getStatus).orElseThrow(), is(Order.OrderStatus.FILLED));
+            assertThat(store.ordersByUserReference("ref-order-1").size(), is(1));
+        }
+    }
+
+    @Test
+    void testRecoverFromPartialWrite() throws IOException {
+        Path file = tempDir.resolve("trade-history.log");
+
+        try (TradeHistoryStore store = TradeHistoryStore.open(file)) {
+            store.addTrades(List.of(trade("1", 1000)));
+        }
+        long validLength = Files.size(file);
+
+        // simulate a crash in the middle of an append
+        Files.write(file, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (TradeHistoryStore store = TradeHistoryStore.open(file)) {
+            assertThat(store.tradeCount(), is(1));
+            assertThat(Files.size(file), is(validLength));
+
+            assertThat(store.addTrades(List.of(trade("2", 2000))), is(1));
+        }
+
+        try (TradeHistoryStore store = TradeHistoryStore.open(file)) {
+            assertThat(store.tradeCount(), is(2));
+        }
+    }
+
+    private static UserTrade trade(String id, long timestamp) {
+        return new UserTrade.Builder()
+                .id(id)
+                .orderId("order-" + id)
+                .orderUserReference("ref-" + id)
+                .type(Order.OrderType.BID)
+                .instrument(instrument)
+                .price(new BigDecimal("21000.5"))
+                .originalAmount(new BigDecimal("0.00021"))
+                .timestamp(new Date(timestamp))
+                .build();
+    }
+
+    private static LimitOrder order(String id, Order.OrderStatus status) {
+        return new LimitOrder.Builder(Order.OrderType.BID, instrument)
+                .id(id)
+                .userReference("ref-" + id)
+                .orderStatus(status)
+                .originalAmount(new BigDecimal("0.00021"))
+                .limitPrice(new BigDecimal("21000.5"))
+                .timestamp(new Date(1000))
+                .build();
+    }
+}
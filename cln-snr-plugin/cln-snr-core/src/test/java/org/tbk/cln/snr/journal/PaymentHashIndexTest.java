@@ -0,0 +1,94 @@
+package org.tbk.cln.snr.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PaymentHashIndexTest {
+
+    private static byte[] sha256(int value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(String.valueOf(value).getBytes());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void testAddAndContains(@TempDir Path directory) throws IOException {
+        try (PaymentHashIndex sut = PaymentHashIndex.open(directory.resolve("index.idx"))) {
+            assertThat(sut.contains(sha256(1)), is(false));
+
+            assertThat(sut.add(sha256(1)), is(true));
+            assertThat(sut.add(sha256(1)), is(false));
+
+            assertThat(sut.contains(sha256(1)), is(true));
+            assertThat(sut.contains(sha256(2)), is(false));
+
+            assertThat(sut.add(new byte[32]), is(true));
+            assertThat(sut.contains(new byte[32]), is(true));
+
+            assertThat(sut.size(), is(2L));
+        }
+    }
+
+    @Test
+    void testGrowAndReopen(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("index.idx");
+
+        try (PaymentHashIndex sut = PaymentHashIndex.open(file, 16)) {
+            for (int i = 0; i < 1_000; i++) {
+                assertThat(sut.add(sha256(i)), is(true));
+            }
+            assertThat(sut.size(), is(1_000L));
+            assertThat(sut.capacity(), is(2048L));
+        }
+
+        try (PaymentHashIndex sut = PaymentHashIndex.open(file, 16)) {
+            assertThat(sut.size(), is(1_000L));
+            for (int i = 0; i < 1_000; i++) {
+                assertThat(sut.contains(sha256(i)), is(true));
+            }
+            assertThat(sut.contains(sha256(1_000)), is(false));
+        }
+    }
+
+    @Test
+    void testKeepTableIfGrowingFails(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("index.idx");
+        // the temporary table cannot be created
+        Path blocker = Files.createDirectories(directory.resolve("index.idx.tmp")).resolve("blocker");
+        Files.createFile(blocker);
+
+        try (PaymentHashIndex sut = PaymentHashIndex.open(file, 16)) {
+            for (int i = 0; i < 11; i++) {
+                assertThat(sut.add(sha256(i)), is(true));
+            }
+            assertThrows(UncheckedIOException.class, () -> sut.add(sha256(11)));
+
+            assertThat(sut.capacity(), is(16L));
+            assertThat(sut.size(), is(11L));
+            assertThat(sut.contains(sha256(0)), is(true));
+            assertThat(sut.contains(sha256(11)), is(false));
+
+            Files.delete(blocker);
+            assertThat(sut.add(sha256(11)), is(true));
+            assertThat(sut.capacity(), is(32L));
+        }
+
+        try (PaymentHashIndex sut = PaymentHashIndex.open(file, 16)) {
+            assertThat(sut.size(), is(12L));
+            assertThat(sut.contains(sha256(11)), is(true));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.tbk.cln.snr.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+class ReplacementJournalTest {
+
+    private static final Duration SYNC_INTERVAL = Duration.ofMillis(10);
+
+    private static final Duration COMPACTION_INTERVAL = Duration.ofHours(1);
+
+    private static byte[] paymentHash(int value) {
+        byte[] paymentHash = new byte[32];
+        paymentHash[31] = (byte) value;
+        return paymentHash;
+    }
+
+    @Test
+    void testUnreplacedAmountsSurviveRestart(@TempDir Path directory) throws IOException {
+        try (ReplacementJournal sut = ReplacementJournal.open(directory, SYNC_INTERVAL, COMPACTION_INTERVAL)) {
+            sut.appendIntent(CurrencyPair.BTC_USD, paymentHash(1), 0L, 21_000L);
+            sut.appendIntent(CurrencyPair.BTC_USD, paymentHash(2), 1L, 2_100L);
+            sut.appendIntent(CurrencyPair.BTC_EUR, paymentHash(3), 0L, 1_000L);
+            sut.appendPlaced(CurrencyPair.BTC_USD, 20_000L, "order-1");
+            sut.appendPlaced(CurrencyPair.BTC_EUR, 1_000L, "order-2");
+
+            assertThat(sut.unreplaced(), is(Map.of(CurrencyPair.BTC_USD, 3_100L)));
+        }
+
+        try (ReplacementJournal sut = ReplacementJournal.open(directory, SYNC_INTERVAL, COMPACTION_INTERVAL)) {
+            assertThat(sut.unreplaced(), is(Map.of(CurrencyPair.BTC_USD, 3_100L)));
+
+            sut.appendPlaced(CurrencyPair.BTC_USD, 3_000L, "order-3");
+            assertThat(sut.unreplaced(), is(Map.of(CurrencyPair.BTC_USD, 100L)));
+        }
+    }
+
+    @Test
+    void testCompaction(@TempDir Path directory) throws IOException {
+        try (ReplacementJournal sut = ReplacementJournal.open(directory, SYNC_INTERVAL, COMPACTION_INTERVAL, 1024)) {
+            for (int i = 0; i < 100; i++) {
+                sut.appendIntent(CurrencyPair.BTC_USD, paymentHash(i), 0L, 1_000L);
+            }
+            sut.appendPlaced(CurrencyPair.BTC_USD, 90_000L, "order-1");
+            assertThat(sut.segmentCount(), is(greaterThan(1)));
+
+            sut.compact();
+
+            assertThat(sut.segmentCount(), is(1));
+            assertThat(segmentFiles(directory).size(), is(1));
+            assertThat(sut.unreplaced(), is(Map.of(CurrencyPair.BTC_USD, 10_000L)));
+
+            sut.appendIntent(CurrencyPair.BTC_USD, paymentHash(0), 0L, 1_000L);
+        }
+
+        try (ReplacementJournal sut = ReplacementJournal.open(directory, SYNC_INTERVAL, COMPACTION_INTERVAL, 1024)) {
+            assertThat(sut.unreplaced(), is(Map.of(CurrencyPair.BTC_USD, 11_000L)));
+        }
+    }
+
+    @Test
+    void testPartiallyWrittenRecordIsIgnored(@TempDir Path directory) throws IOException {
+        try (ReplacementJournal sut = ReplacementJournal.open(directory, SYNC_INTERVAL, COMPACTION_INTERVAL)) {
+            sut.appendIntent(CurrencyPair.BTC_USD, paymentHash(1), 0L, 21_000L);
+        }
+
+        // simulate a torn write: a record header with a payload that has not been written completely
+        Path segment = segmentFiles(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(9).putInt(64).putInt(42).put((byte) 1).flip();
+            channel.write(header, 256);
+        }
+
+        try (ReplacementJournal sut = ReplacementJournal.open(directory, SYNC_INTERVAL, COMPACTION_INTERVAL)) {
+            assertThat(sut.unreplaced(), is(Map.of(CurrencyPair.BTC_USD, 21_000L)));
+
+            sut.appendIntent(CurrencyPair.BTC_USD, paymentHash(2), 0L, 1_000L);
+        }
+
+        try (ReplacementJournal sut = ReplacementJournal.open(directory, SYNC_INTERVAL, COMPACTION_INTERVAL)) {
+            assertThat(sut.unreplaced(), is(Map.of(CurrencyPair.BTC_USD, 22_000L)));
+        }
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}
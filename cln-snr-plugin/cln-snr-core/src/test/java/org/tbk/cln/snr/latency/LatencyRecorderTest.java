@@ -0,0 +1,77 @@
+package org.tbk.cln.snr.latency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class LatencyRecorderTest {
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2023-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+
+    @Test
+    void testSummaryPerExchangeAndStage() {
+        LatencyRecorder sut = new LatencyRecorder(new MutableClock());
+
+        for (int i = 1; i <= 100; i++) {
+            sut.record("Kraken", LatencyStage.PLACE_ORDER, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        sut.record("Bitstamp", LatencyStage.DECODE, TimeUnit.MICROSECONDS.toNanos(42));
+
+        assertThat(sut.exchanges(), is(Set.of("Bitstamp", "Kraken")));
+        assertThat(sut.summary("Kraken", LatencyStage.DECODE, Duration.ofMinutes(1)).isPresent(), is(false));
+
+        LatencyRecorder.Summary summary = sut.summary("Kraken", LatencyStage.PLACE_ORDER, Duration.ofMinutes(1)).orElseThrow();
+        assertThat(summary.getCount(), is(100L));
+        assertThat(Math.abs(summary.getP50() - 50_000L) <= 500L, is(true));
+        assertThat(Math.abs(summary.getP99() - 99_000L) <= 1_000L, is(true));
+        assertThat(Math.abs(summary.getMax() - 100_000L) <= 1_000L, is(true));
+        assertThat(summary.getP90(), lessThanOrEqualTo(summary.getP99()));
+    }
+
+    @Test
+    void testValuesLeaveSlidingWindow() {
+        MutableClock clock = new MutableClock();
+        LatencyRecorder sut = new LatencyRecorder(clock);
+
+        sut.record("Kraken", LatencyStage.TOTAL, TimeUnit.SECONDS.toNanos(1));
+        clock.advance(Duration.ofMinutes(2));
+        sut.record("Kraken", LatencyStage.TOTAL, TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(sut.summary("Kraken", LatencyStage.TOTAL, Duration.ofMinutes(1)).orElseThrow().getCount(), is(1L));
+        assertThat(sut.summary("Kraken", LatencyStage.TOTAL, Duration.ofMinutes(5)).orElseThrow().getCount(), is(2L));
+
+        clock.advance(Duration.ofMinutes(20));
+        assertThat(sut.summary("Kraken", LatencyStage.TOTAL, Duration.ofMinutes(15)).isPresent(), is(false));
+    }
+}
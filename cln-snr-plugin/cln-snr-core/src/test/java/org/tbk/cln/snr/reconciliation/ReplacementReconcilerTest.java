@@ -0,0 +1,249 @@
+package org.tbk.cln.snr.reconciliation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.UserTrade;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+// CHECKSTYLE IGNORE RegexpSinglelineJava FOR NEXT 1 LINES - xchange requires legacy dates
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class ReplacementReconcilerTest {
+
+    private static final Duration fillDeadline = Duration.ofMinutes(15);
+
+    private static final String KRAKEN = "Kraken";
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2023-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testMatchPartialAndCompleteFills() throws IOException {
+        Path file = tempDir.resolve("reconciliation.log");
+
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, new MutableClock())) {
+            sut.placed(KRAKEN, List.of("aa".repeat(32)), "order-1", "42", 21_000L);
+
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-1", "order-1", null, "0.0001"))), is(1));
+            assertThat(sut.byOrderId("order-1").orElseThrow().getState(), is(ReplacementReconciler.State.PARTIALLY_FILLED));
+
+            // trades are only matched once
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-1", "order-1", null, "0.0001"))), is(0));
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-2", "order-1", null, "0.00011"))), is(1));
+        }
+
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, new MutableClock())) {
+            ReplacementReconciler.Entry entry = sut.byPaymentHash("aa".repeat(32)).orElseThrow();
+            assertThat(entry.getOrderId(), is("order-1"));
+            assertThat(entry.getUserReference(), is("42"));
+            assertThat(entry.getFilledSats(), is(21_000L));
+            assertThat(entry.getState(), is(ReplacementReconciler.State.FILLED));
+            assertThat(sut.stats().getUnfilled(), is(0L));
+        }
+    }
+
+    @Test
+    void testMatchByUserReference() throws IOException {
+        try (ReplacementReconciler sut = ReplacementReconciler.open(tempDir.resolve("reconciliation.log"), fillDeadline, new MutableClock())) {
+            sut.placed(KRAKEN, List.of("aa".repeat(32)), "order-1", "42", 1_000L);
+            sut.placed(KRAKEN, List.of("bb".repeat(32)), "order-2", "42", 1_000L);
+            sut.placed(KRAKEN, List.of("cc".repeat(32)), "order-3", "7", 1_000L);
+
+            // the truncated payment hashes of order-1 and order-2 collide
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-1", null, "42", "0.00001"))), is(0));
+            assertThat(sut.stats().getAmbiguousTrades(), is(1L));
+
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-2", null, "7", "0.00001"))), is(1));
+            assertThat(sut.byOrderId("order-3").orElseThrow().getState(), is(ReplacementReconciler.State.FILLED));
+
+            // once order-1 is filled, the user reference is unique again
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-3", "order-1", "42", "0.00001"))), is(1));
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-1", null, "42", "0.00001"))), is(1));
+            assertThat(sut.byOrderId("order-2").orElseThrow().getState(), is(ReplacementReconciler.State.FILLED));
+        }
+    }
+
+    @Test
+    void testOverdue() throws IOException {
+        MutableClock clock = new MutableClock();
+        try (ReplacementReconciler sut = ReplacementReconciler.open(tempDir.resolve("reconciliation.log"), fillDeadline, clock)) {
+            sut.placed(KRAKEN, List.of("aa".repeat(32)), "order-1", "1", 1_000L);
+            clock.advance(Duration.ofMinutes(10));
+            sut.placed(KRAKEN, List.of("bb".repeat(32)), "order-2", "2", 1_000L);
+            sut.placed(KRAKEN, List.of(), "order-3", "3", 1_000L);
+
+            assertThat(sut.overdue().isEmpty(), is(true));
+
+            clock.advance(Duration.ofMinutes(6));
+            assertThat(sut.overdue().stream().map(ReplacementReconciler.Entry::getOrderId).toList(), is(List.of("order-1")));
+            assertThat(sut.byOrderId("order-1").orElseThrow().getState(), is(ReplacementReconciler.State.OVERDUE));
+
+            sut.match(KRAKEN, List.of(trade("trade-1", "order-2", null, "0.00001")));
+            clock.advance(Duration.ofMinutes(10));
+
+            assertThat(sut.overdue().stream().map(ReplacementReconciler.Entry::getOrderId).toList(), is(List.of("order-1", "order-3")));
+            assertThat(sut.stats().getOverdue(), is(2L));
+            assertThat(sut.stats().getOrders(), is(3L));
+        }
+    }
+
+    @Test
+    void testRecordAllPaymentHashesOfAnOrder() throws IOException {
+        Path file = tempDir.resolve("reconciliation.log");
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, new MutableClock())) {
+            // the amounts of two earlier payments have been carried over
+            sut.placed(KRAKEN, List.of("aa".repeat(32), "bb".repeat(32), "cc".repeat(32)), "order-1", "1", 21_000L);
+        }
+
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, new MutableClock())) {
+            assertThat(sut.byPaymentHash("aa".repeat(32)).orElseThrow().getOrderId(), is("order-1"));
+            assertThat(sut.byPaymentHash("bb".repeat(32)).orElseThrow().getOrderId(), is("order-1"));
+            assertThat(sut.byPaymentHash("cc".repeat(32)).orElseThrow().getPaymentHashes().size(), is(3));
+        }
+    }
+
+    @Test
+    void testResolveUnknownOutcomes() throws IOException {
+        Path file = tempDir.resolve("reconciliation.log");
+        MutableClock clock = new MutableClock();
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, clock)) {
+            sut.unknown(KRAKEN, CurrencyPair.BTC_USD, List.of("aa".repeat(32)), "1", 1_000L);
+            sut.unknown(KRAKEN, CurrencyPair.BTC_USD, List.of("bb".repeat(32)), "2", 1_000L);
+        }
+
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, clock)) {
+            assertThat(sut.stats().getUnknown(), is(2L));
+
+            Map<String, List<UserTrade>> tradesByUserReference = Map.of("1", List.of(trade("trade-1", "order-1", "1", "0.00001")));
+            List<ReplacementReconciler.Resolution> resolutions = sut.resolve(KRAKEN, 
+                    it -> tradesByUserReference.getOrDefault(it, List.of()), it -> List.of(), clock.instant());
+
+            assertThat(resolutions.size(), is(1));
+            assertThat(resolutions.get(0).isPlaced(), is(true));
+            assertThat(resolutions.get(0).getOrderId(), is("order-1"));
+            assertThat(sut.byPaymentHash("aa".repeat(32)).orElseThrow().getState(), is(ReplacementReconciler.State.FILLED));
+
+            // no trade of the other order has shown up within the fill deadline
+            clock.advance(fillDeadline);
+            resolutions = sut.resolve(KRAKEN, it -> List.of(), it -> List.of(), clock.instant());
+
+            assertThat(resolutions.size(), is(1));
+            assertThat(resolutions.get(0).isPlaced(), is(false));
+            assertThat(resolutions.get(0).getAttempt().getUserReference(), is("2"));
+        }
+
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, clock)) {
+            assertThat(sut.unresolved().isEmpty(), is(true));
+            assertThat(sut.byOrderId("order-1").orElseThrow().getState(), is(ReplacementReconciler.State.FILLED));
+        }
+    }
+
+    @Test
+    void testKeepAttemptsSharingAUserReference() throws IOException {
+        Path file = tempDir.resolve("reconciliation.log");
+        MutableClock clock = new MutableClock();
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, clock)) {
+            sut.unknown(KRAKEN, CurrencyPair.BTC_USD, List.of("aa".repeat(32)), "1", 1_000L);
+            sut.unknown(KRAKEN, CurrencyPair.BTC_USD, List.of("aa".repeat(32), "bb".repeat(32)), "1", 2_000L);
+        }
+
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, clock)) {
+            assertThat(sut.stats().getUnknown(), is(2L));
+
+            // only one of them has been placed
+            Map<String, List<UserTrade>> tradesByUserReference = Map.of("1", List.of(trade("trade-1", "order-1", "1", "0.00001")));
+            clock.advance(fillDeadline);
+            List<ReplacementReconciler.Resolution> resolutions = sut.resolve(KRAKEN,
+                    it -> tradesByUserReference.getOrDefault(it, List.of()), it -> List.of(), clock.instant());
+
+            assertThat(resolutions.size(), is(2));
+            assertThat(resolutions.get(0).isPlaced(), is(true));
+            assertThat(resolutions.get(0).getAttempt().getAmountSats(), is(1_000L));
+            assertThat(resolutions.get(1).isPlaced(), is(false));
+            assertThat(resolutions.get(1).getAttempt().getAmountSats(), is(2_000L));
+        }
+
+        try (ReplacementReconciler sut = ReplacementReconciler.open(file, fillDeadline, clock)) {
+            assertThat(sut.unresolved().isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    void testResolveOnlyWithTheTradeHistoryOfTheSameExchange() throws IOException {
+        MutableClock clock = new MutableClock();
+        try (ReplacementReconciler sut = ReplacementReconciler.open(tempDir.resolve("reconciliation.log"), fillDeadline, clock)) {
+            sut.unknown("Bitstamp", CurrencyPair.BTC_USD, List.of("aa".repeat(32)), "1", 1_000L);
+            sut.placed("Bitstamp", List.of("bb".repeat(32)), "order-2", "2", 1_000L);
+
+            // the user references are only unique per exchange
+            Map<String, List<UserTrade>> tradesByUserReference = Map.of(
+                    "1", List.of(trade("trade-1", "order-1", "1", "0.00001")),
+                    "2", List.of(trade("trade-2", "order-3", "2", "0.00001")));
+            clock.advance(fillDeadline);
+            List<ReplacementReconciler.Resolution> resolutions = sut.resolve(KRAKEN,
+                    it -> tradesByUserReference.getOrDefault(it, List.of()), it -> List.of(), clock.instant());
+            assertThat(sut.match(KRAKEN, List.of(trade("trade-2", "order-3", "2", "0.00001"))), is(0));
+
+            // neither resolved nor released - the order might have been placed on the other exchange
+            assertThat(resolutions.isEmpty(), is(true));
+            assertThat(sut.stats().getUnknown(), is(1L));
+            assertThat(sut.byPaymentHash("bb".repeat(32)).orElseThrow().getState(), is(ReplacementReconciler.State.UNFILLED));
+
+            resolutions = sut.resolve("Bitstamp", it -> tradesByUserReference.getOrDefault(it, List.of()), it -> List.of(), clock.instant());
+
+            assertThat(resolutions.size(), is(1));
+            assertThat(resolutions.get(0).getOrderId(), is("order-1"));
+            assertThat(sut.byOrderId("order-1").orElseThrow().getExchange(), is("Bitstamp"));
+        }
+    }
+
+    private static UserTrade trade(String id, String orderId, String userReference, String amount) {
+        return new UserTrade.Builder()
+                .id(id)
+                .orderId(orderId)
+                .orderUserReference(userReference)
+                .type(Order.OrderType.BID)
+                .instrument(CurrencyPair.BTC_USD)
+                .price(new BigDecimal("21000"))
+                .originalAmount(new BigDecimal(amount))
+                .timestamp(new Date(0L))
+                .build();
+    }
+}
@@ -0,0 +1,50 @@
+package org.tbk.cln.snr.replacement;
+
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class DeferredReplacementsTest {
+
+    @Test
+    void testDeferWithIncreasingDelay() throws InterruptedException {
+        LinkedBlockingQueue<CurrencyPair> attempts = new LinkedBlockingQueue<>();
+
+        try (DeferredReplacements sut = new DeferredReplacements(Duration.ofMillis(50), Duration.ofMillis(150), attempts::add)) {
+            assertThat(sut.defer(CurrencyPair.BTC_USD), is(Duration.ofMillis(50)));
+            // only a single attempt per currency pair is scheduled
+            assertThat(sut.defer(CurrencyPair.BTC_USD), is(Duration.ofMillis(50)));
+            assertThat(sut.size(), is(1));
+
+            assertThat(attempts.poll(5, TimeUnit.SECONDS), is(CurrencyPair.BTC_USD));
+            await().atMost(Duration.ofSeconds(5)).until(() -> sut.size() == 0);
+
+            assertThat(sut.defer(CurrencyPair.BTC_USD), is(Duration.ofMillis(100)));
+            assertThat(attempts.poll(5, TimeUnit.SECONDS), is(CurrencyPair.BTC_USD));
+            await().atMost(Duration.ofSeconds(5)).until(() -> sut.size() == 0);
+            assertThat(sut.defer(CurrencyPair.BTC_USD), is(Duration.ofMillis(150)));
+        }
+    }
+
+    @Test
+    void testSucceededCancelsAttemptAndResetsDelay() throws InterruptedException {
+        LinkedBlockingQueue<CurrencyPair> attempts = new LinkedBlockingQueue<>();
+
+        try (DeferredReplacements sut = new DeferredReplacements(Duration.ofMillis(200), Duration.ofSeconds(1), attempts::add)) {
+            sut.defer(CurrencyPair.BTC_EUR);
+            sut.succeeded(CurrencyPair.BTC_EUR);
+
+            assertThat(attempts.poll(500, TimeUnit.MILLISECONDS), is(nullValue()));
+            assertThat(sut.size(), is(0));
+            assertThat(sut.defer(CurrencyPair.BTC_EUR), is(Duration.ofMillis(200)));
+        }
+    }
+}
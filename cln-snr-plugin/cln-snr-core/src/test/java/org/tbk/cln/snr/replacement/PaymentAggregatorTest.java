@@ -0,0 +1,113 @@
+package org.tbk.cln.snr.replacement;
+
+import fr.acinq.lightning.MilliSatoshi;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+class PaymentAggregatorTest {
+
+    private static SpentPayment part(String paymentHash, long partId, long msat) {
+        return SpentPayment.builder()
+                .paymentHash(paymentHash)
+                .groupId(1L)
+                .partId(partId)
+                .amountSent(new MilliSatoshi(msat))
+                .build();
+    }
+
+    @Test
+    void testSinglePaymentIsHandedOverImmediately() {
+        List<SpentPayment> payments = new CopyOnWriteArrayList<>();
+
+        try (PaymentAggregator sut = new PaymentAggregator(Duration.ofMinutes(1), 10, payments::add)) {
+            sut.add(part("00", 0L, 1_000L));
+
+            assertThat(payments, hasSize(1));
+            assertThat(sut.pendingPayments(), is(0));
+        }
+    }
+
+    @Test
+    void testPartsAreCombined() {
+        List<SpentPayment> payments = new CopyOnWriteArrayList<>();
+
+        try (PaymentAggregator sut = new PaymentAggregator(Duration.ofMinutes(1), 10, payments::add)) {
+            sut.add(part("00", 1L, 1_000L));
+            sut.add(part("00", 2L, 2_000L));
+            sut.add(part("00", 2L, 2_000L)); // duplicate part
+            sut.add(part("00", 3L, 3_000L));
+
+            assertThat(payments, hasSize(0));
+            assertThat(sut.pendingPayments(), is(1));
+        }
+
+        assertThat(payments, hasSize(1));
+        assertThat(payments.get(0).getAmountSent(), is(new MilliSatoshi(6_000L)));
+        assertThat(payments.get(0).getParts(), is(3));
+        assertThat(payments.get(0).isPart(), is(false));
+    }
+
+    @Test
+    void testPartsAreHandedOverAfterWindow() throws InterruptedException {
+        List<SpentPayment> payments = new CopyOnWriteArrayList<>();
+
+        try (PaymentAggregator sut = new PaymentAggregator(Duration.ofMillis(10), 10, payments::add)) {
+            sut.add(part("00", 1L, 1_000L));
+            sut.add(part("00", 2L, 2_000L));
+
+            for (int i = 0; i < 100 && payments.isEmpty(); i++) {
+                Thread.sleep(10);
+            }
+
+            assertThat(payments, hasSize(1));
+            assertThat(payments.get(0).getAmountSent(), is(new MilliSatoshi(3_000L)));
+        }
+    }
+
+    @Test
+    void testPartsCoveringThePaymentAreHandedOverImmediately() {
+        List<SpentPayment> payments = new CopyOnWriteArrayList<>();
+
+        try (PaymentAggregator sut = new PaymentAggregator(Duration.ofMinutes(1), 10, payments::add)) {
+            // a single successful retry part
+            sut.add(part("00", 2L, 3_001L).toBuilder().paymentAmount(new MilliSatoshi(3_000L)).build());
+
+            assertThat(payments, hasSize(1));
+            assertThat(payments.get(0).getAmountSent(), is(new MilliSatoshi(3_001L)));
+
+            sut.add(part("01", 1L, 1_001L).toBuilder().paymentAmount(new MilliSatoshi(3_000L)).build());
+            assertThat(payments, hasSize(1));
+            assertThat(sut.pendingPayments(), is(1));
+
+            sut.add(part("01", 2L, 2_001L).toBuilder().paymentAmount(new MilliSatoshi(3_000L)).build());
+            assertThat(payments, hasSize(2));
+            assertThat(payments.get(1).getAmountSent(), is(new MilliSatoshi(3_002L)));
+            assertThat(payments.get(1).getParts(), is(2));
+            assertThat(sut.pendingPayments(), is(0));
+        }
+
+        assertThat(payments, hasSize(2));
+    }
+
+    @Test
+    void testOldestPaymentIsEvicted() {
+        List<SpentPayment> payments = new CopyOnWriteArrayList<>();
+
+        try (PaymentAggregator sut = new PaymentAggregator(Duration.ofMinutes(1), 2, payments::add)) {
+            sut.add(part("00", 1L, 1_000L));
+            sut.add(part("01", 1L, 2_000L));
+            sut.add(part("02", 1L, 3_000L));
+
+            assertThat(payments, hasSize(1));
+            assertThat(payments.get(0).getPaymentHash(), is("00"));
+            assertThat(sut.pendingPayments(), is(2));
+        }
+    }
+}
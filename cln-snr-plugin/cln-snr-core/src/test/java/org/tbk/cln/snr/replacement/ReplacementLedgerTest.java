@@ -0,0 +1,91 @@
+package org.tbk.cln.snr.replacement;
+
+import fr.acinq.lightning.MilliSatoshi;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class ReplacementLedgerTest {
+
+    @Test
+    void testCreditAccumulates() {
+        ReplacementLedger sut = new ReplacementLedger();
+
+        sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(400_500L));
+        ReplacementLedger.Entry entry = sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(600_600L));
+
+        assertThat(entry.getPending(), is(new MilliSatoshi(1_001_100L)));
+        assertThat(entry.getInflight(), is(new MilliSatoshi(0L)));
+        assertThat(entry.getReplaced(), is(new MilliSatoshi(0L)));
+        assertThat(entry.getOrders(), is(0L));
+
+        assertThat(sut.entry(CurrencyPair.BTC_GBP).getPending(), is(new MilliSatoshi(0L)));
+    }
+
+    @Test
+    void testReserveAndCommitKeepsRemainder() {
+        ReplacementLedger sut = new ReplacementLedger();
+        sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(1_001_100L));
+
+        ReplacementLedger.Reservation reservation = sut.reserve(CurrencyPair.BTC_USD, new MilliSatoshi(1_000_000L)).orElseThrow();
+        assertThat(sut.entry(CurrencyPair.BTC_USD).getInflight(), is(new MilliSatoshi(1_000_000L)));
+
+        ReplacementLedger.Entry entry = sut.commit(CurrencyPair.BTC_USD, reservation);
+        assertThat(entry.getPending(), is(new MilliSatoshi(1_100L)));
+        assertThat(entry.getInflight(), is(new MilliSatoshi(0L)));
+        assertThat(entry.getReplaced(), is(new MilliSatoshi(1_000_000L)));
+        assertThat(entry.getOrders(), is(1L));
+    }
+
+    @Test
+    void testReleaseRestoresPending() {
+        ReplacementLedger sut = new ReplacementLedger();
+        sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(2_000_000L));
+        ReplacementLedger.Reservation reservation = sut.reserve(CurrencyPair.BTC_USD, new MilliSatoshi(2_000_000L)).orElseThrow();
+
+        ReplacementLedger.Entry entry = sut.release(CurrencyPair.BTC_USD, reservation);
+        assertThat(entry.getPending(), is(new MilliSatoshi(2_000_000L)));
+        assertThat(entry.getInflight(), is(new MilliSatoshi(0L)));
+        assertThat(entry.getOrders(), is(0L));
+    }
+
+    @Test
+    void testReserveCoversAllPendingPayments() {
+        ReplacementLedger sut = new ReplacementLedger();
+        sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(400_000L), "aa");
+        sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(600_000L), "bb");
+
+        ReplacementLedger.Reservation reservation = sut.reserve(CurrencyPair.BTC_USD, new MilliSatoshi(1_000_000L)).orElseThrow();
+        assertThat(reservation.getPaymentHashes(), is(List.of("aa", "bb")));
+
+        sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(100_000L), "cc");
+        assertThat(sut.entry(CurrencyPair.BTC_USD).getPaymentHashes(), is(List.of("cc")));
+
+        // released payments are older than the ones credited in the meantime
+        ReplacementLedger.Entry entry = sut.release(CurrencyPair.BTC_USD, reservation);
+        assertThat(entry.getPaymentHashes(), is(List.of("aa", "bb", "cc")));
+    }
+
+    @Test
+    void testReserveMoreThanPending() {
+        ReplacementLedger sut = new ReplacementLedger();
+        sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(999L));
+
+        assertThat(sut.reserve(CurrencyPair.BTC_USD, new MilliSatoshi(1_000L)).isPresent(), is(false));
+        assertThat(sut.entry(CurrencyPair.BTC_USD).getPending(), is(new MilliSatoshi(999L)));
+    }
+
+    @Test
+    void testInvalidAmounts() {
+        ReplacementLedger sut = new ReplacementLedger();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sut.credit(CurrencyPair.BTC_USD, new MilliSatoshi(0L)));
+        Assertions.assertThrows(IllegalStateException.class, () -> sut.commit(CurrencyPair.BTC_USD,
+                new ReplacementLedger.Reservation(new MilliSatoshi(1L), List.of())));
+    }
+}
@@ -0,0 +1,77 @@
+package org.tbk.cln.snr.replacement;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class ReplacementPipelineTest {
+
+    @Test
+    void testTasksWithSameKeyAreExecutedInOrder() {
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+
+        try (ReplacementPipeline sut = new ReplacementPipeline(4, 100, ReplacementPipeline.OverflowPolicy.BLOCK, Duration.ofSeconds(1))) {
+            IntStream.range(0, 50).forEach(i -> assertThat(sut.submit("key", () -> executed.add(i)), is(true)));
+        }
+
+        assertThat(executed, is(IntStream.range(0, 50).boxed().toList()));
+    }
+
+    @Test
+    void testRejectWhenFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ReplacementPipeline sut = new ReplacementPipeline(1, 1, ReplacementPipeline.OverflowPolicy.REJECT, Duration.ZERO)) {
+            assertThat(sut.submit("key", () -> {
+                started.countDown();
+                await(release);
+            }), is(true));
+            assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+            assertThat(sut.submit("key", () -> {
+            }), is(true));
+            assertThat(sut.submit("key", () -> {
+            }), is(false));
+
+            ReplacementPipeline.Stats stats = sut.stats();
+            assertThat(stats.getQueued(), is(1));
+            assertThat(stats.getActive(), is(1));
+            assertThat(stats.getRejected(), is(1L));
+
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testFailingTaskDoesNotStopWorker() {
+        ReplacementPipeline sut = new ReplacementPipeline(1, 10, ReplacementPipeline.OverflowPolicy.BLOCK, Duration.ofSeconds(1));
+        sut.submit("key", () -> {
+            throw new IllegalStateException("expected");
+        });
+        sut.submit("key", () -> {
+        });
+        sut.close();
+
+        assertThat(sut.stats().getFailed(), is(1L));
+        assertThat(sut.stats().getCompleted(), is(1L));
+        assertThat(sut.submit("key", () -> {
+        }), is(false));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
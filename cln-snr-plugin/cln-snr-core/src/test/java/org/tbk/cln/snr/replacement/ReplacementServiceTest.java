@@ -0,0 +1,291 @@
+package org.tbk.cln.snr.replacement;
+
+import fr.acinq.lightning.MilliSatoshi;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jrpc.clightning.plugins.ICLightningPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.knowm.xchange.BaseExchange;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.InstrumentMetaData;
+import org.knowm.xchange.dto.trade.MarketOrder;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+import org.knowm.xchange.service.marketdata.params.Params;
+import org.knowm.xchange.service.trade.TradeService;
+import org.tbk.cln.snr.RunOptions;
+import org.tbk.cln.snr.exchange.ExchangeMetaDataHolder;
+import org.tbk.cln.snr.exchange.ExchangeRouter;
+import org.tbk.cln.snr.exchange.ExchangeService;
+import org.tbk.cln.snr.exchange.ResilientExchange;
+import org.tbk.cln.snr.exchange.TickerCache;
+import org.tbk.cln.snr.journal.ReplacementJournal;
+import org.tbk.cln.snr.latency.LatencyRecorder;
+import org.tbk.cln.snr.reconciliation.ReplacementReconciler;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+class ReplacementServiceTest {
+
+    private static final CurrencyPair currencyPair = CurrencyPair.BTC_USD;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    private final ICLightningPlugin plugin = mock(ICLightningPlugin.class);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+
+    private final ReplacementLedger ledger = new ReplacementLedger();
+
+    @TempDir
+    Path tempDir;
+
+    private ReplacementJournal journal;
+
+    private ReplacementReconciler reconciler;
+
+    private DeferredReplacements deferredReplacements;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journal = ReplacementJournal.open(tempDir.resolve("journal"), Duration.ofSeconds(1), Duration.ofHours(1));
+        reconciler = ReplacementReconciler.open(tempDir.resolve("reconciliation.log"), Duration.ofMinutes(15));
+        // no deferred attempt is run during a test
+        deferredReplacements = new DeferredReplacements(Duration.ofHours(1), Duration.ofHours(1), it -> {
+        });
+        resources.add(journal);
+        resources.add(reconciler);
+        resources.add(deferredReplacements);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void testFallBackToNextExchangeAfterFailure() {
+        TestExchange failing = new TestExchange("Failing", "20000", "0.0001", order -> {
+            throw new IOException("Connection refused");
+        });
+        TestExchange fallback = new TestExchange("Fallback", "20100", "0.0001", order -> "order-1");
+
+        ReplacementService sut = replacementService(failing, fallback);
+        sut.replace(plugin, payment("aa", 21_000_000L));
+
+        assertThat(failing.placedOrders.get(), is(1));
+        assertThat(fallback.placedOrders.get(), is(1));
+
+        ReplacementLedger.Entry entry = ledger.entry(currencyPair);
+        assertThat(entry.getReplaced(), is(new MilliSatoshi(21_000_000L)));
+        assertThat(entry.getInflight(), is(new MilliSatoshi(0L)));
+        assertThat(reconciler.byPaymentHash(paymentHash("aa")).orElseThrow().getOrderId(), is("order-1"));
+        assertThat(countOrders("failed"), is(1.0));
+        assertThat(countOrders("placed"), is(1.0));
+        assertThat(deferredReplacements.size(), is(0));
+    }
+
+    @Test
+    void testReleaseAndDeferIfEveryExchangeFails() {
+        TestExchange failing = new TestExchange("Failing", "20000", "0.0001", order -> {
+            throw new IOException("Connection refused");
+        });
+        TestExchange alsoFailing = new TestExchange("AlsoFailing", "20100", "0.0001", order -> {
+            throw new IOException("Connection reset");
+        });
+
+        ReplacementService sut = replacementService(failing, alsoFailing);
+        sut.replace(plugin, payment("aa", 21_000_000L));
+
+        assertThat(failing.placedOrders.get(), is(1));
+        assertThat(alsoFailing.placedOrders.get(), is(1));
+
+        // the amount is given back - together with the payment it has been spent for
+        ReplacementLedger.Entry entry = ledger.entry(currencyPair);
+        assertThat(entry.getPending(), is(new MilliSatoshi(21_000_000L)));
+        assertThat(entry.getInflight(), is(new MilliSatoshi(0L)));
+        assertThat(entry.getPaymentHashes(), is(List.of(paymentHash("aa"))));
+        assertThat(countOrders("failed"), is(2.0));
+        assertThat(deferredReplacements.size(), is(1));
+    }
+
+    @Test
+    void testCarryOverAmountsUnderMinimum() {
+        TestExchange exchange = new TestExchange("Test", "20000", "0.0001", order -> "order-1");
+
+        ReplacementService sut = replacementService(exchange);
+        sut.replace(plugin, payment("aa", 6_000_000L));
+
+        assertThat(exchange.placedOrders.get(), is(0));
+        assertThat(ledger.entry(currencyPair).getPending(), is(new MilliSatoshi(6_000_000L)));
+        assertThat(countOrders("skipped"), is(1.0));
+        assertThat(deferredReplacements.size(), is(0));
+
+        sut.replace(plugin, payment("bb", 5_000_000L));
+
+        assertThat(exchange.placedOrders.get(), is(1));
+        assertThat(ledger.entry(currencyPair).getReplaced(), is(new MilliSatoshi(11_000_000L)));
+        // the order covers both payments
+        assertThat(reconciler.byPaymentHash(paymentHash("aa")).orElseThrow().getOrderId(), is("order-1"));
+        assertThat(reconciler.byPaymentHash(paymentHash("bb")).orElseThrow().getOrderId(), is("order-1"));
+    }
+
+    @Test
+    void testCarryOverSubSatoshiAmounts() {
+        TestExchange exchange = new TestExchange("Test", "20000", null, order -> "order-1");
+
+        ReplacementService sut = replacementService(exchange);
+        sut.replace(plugin, payment("aa", 500L));
+
+        assertThat(exchange.placedOrders.get(), is(0));
+        assertThat(ledger.entry(currencyPair).getPending(), is(new MilliSatoshi(500L)));
+        assertThat(ledger.entry(currencyPair).getInflight(), is(new MilliSatoshi(0L)));
+        assertThat(countOrders("skipped"), is(1.0));
+    }
+
+    @Test
+    void testKeepOrdersOfUnknownOutcomeInflight() {
+        TestExchange hanging = new TestExchange("Hanging", "20000", "0.0001", order -> {
+            try {
+                Thread.sleep(5_000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "order-1";
+        });
+        TestExchange fallback = new TestExchange("Fallback", "20100", "0.0001", order -> "order-2");
+
+        ResilientExchange resilientExchange = new ResilientExchange(hanging, ResilientExchange.Policy.builder()
+                .attemptTimeout(Duration.ofMillis(200))
+                .maxAttempts(1)
+                .build());
+
+        ReplacementService sut = replacementService(resilientExchange, fallback);
+        sut.replace(plugin, payment("aa", 21_000_000L));
+
+        // the order might have been placed - it is neither placed on another exchange nor deferred
+        assertThat(fallback.placedOrders.get(), is(0));
+        assertThat(ledger.entry(currencyPair).getInflight(), is(new MilliSatoshi(21_000_000L)));
+        assertThat(reconciler.unresolved().get(0).getPaymentHashes(), is(List.of(paymentHash("aa"))));
+        assertThat(countOrders("unknown"), is(1.0));
+        assertThat(deferredReplacements.size(), is(0));
+    }
+
+    @Test
+    void testTreatConcurrentReservationAsCovered() {
+        TestExchange exchange = new TestExchange("Test", "20000", "0.0001", order -> "order-1");
+        TestExchange other = new TestExchange("Other", "20100", "0.0001", order -> "order-2");
+        // e.g. an order placed concurrently covers the pending amount while the exchanges are quoted
+        exchange.beforeTicker = () -> ledger.reserve(currencyPair, new MilliSatoshi(21_000_000L));
+
+        ReplacementService sut = replacementService(exchange, other);
+        sut.replace(plugin, payment("aa", 21_000_000L));
+
+        assertThat(exchange.placedOrders.get(), is(0));
+        assertThat(other.placedOrders.get(), is(0));
+        assertThat(ledger.entry(currencyPair).getInflight(), is(new MilliSatoshi(21_000_000L)));
+        assertThat(countOrders("skipped"), is(0.0));
+        assertThat(deferredReplacements.size(), is(0));
+    }
+
+    private ReplacementService replacementService(Exchange... exchanges) {
+        List<ExchangeService> exchangeServices = new ArrayList<>();
+        for (Exchange exchange : exchanges) {
+            ExchangeMetaDataHolder exchangeMetaData = new ExchangeMetaDataHolder(exchange, Duration.ofHours(1));
+            TickerCache tickerCache = new TickerCache(exchange, Duration.ofSeconds(10), Duration.ZERO);
+            resources.add(exchangeMetaData);
+            resources.add(tickerCache);
+            exchangeServices.add(new ExchangeService(exchange, exchangeMetaData, tickerCache));
+        }
+        ExchangeRouter exchangeRouter = new ExchangeRouter(exchangeServices, Duration.ofSeconds(1), BigDecimal.ZERO, latencyRecorder);
+        resources.add(exchangeRouter);
+
+        return new ReplacementService(exchangeRouter, Currency.USD, RunOptions.builder().build(), ledger, journal,
+                meterRegistry, latencyRecorder, reconciler, deferredReplacements);
+    }
+
+    private double countOrders(String result) {
+        return meterRegistry.counter("snr.orders", "currency_pair", currencyPair.toString(), "result", result).count();
+    }
+
+    private static SpentPayment payment(String hashByte, long amountMsat) {
+        return SpentPayment.builder()
+                .paymentHash(paymentHash(hashByte))
+                .amountSent(new MilliSatoshi(amountMsat))
+                .build();
+    }
+
+    private static String paymentHash(String hashByte) {
+        return hashByte.repeat(32);
+    }
+
+    @FunctionalInterface
+    private interface OrderPlacement {
+        String place(MarketOrder order) throws IOException;
+    }
+
+    private static final class TestExchange extends BaseExchange {
+
+        private final AtomicInteger placedOrders = new AtomicInteger();
+
+        private volatile Runnable beforeTicker = () -> {
+        };
+
+        TestExchange(String name, String ask, String minimumAmount, OrderPlacement orderPlacement) {
+            this.exchangeSpecification = getDefaultExchangeSpecification();
+            this.exchangeSpecification.setExchangeName(name);
+
+            InstrumentMetaData instrumentMetaData = new InstrumentMetaData.Builder()
+                    .minimumAmount(minimumAmount == null ? null : new BigDecimal(minimumAmount))
+                    .build();
+            this.exchangeMetaData = new ExchangeMetaData(Map.of(currencyPair, instrumentMetaData), null, null, null, false);
+            this.marketDataService = new MarketDataService() {
+                @Override
+                public List<Ticker> getTickers(Params params) {
+                    beforeTicker.run();
+                    return List.of(new Ticker.Builder().instrument(currencyPair).ask(new BigDecimal(ask)).bid(new BigDecimal(ask)).build());
+                }
+            };
+            this.tradeService = new TradeService() {
+                @Override
+                public String placeMarketOrder(MarketOrder marketOrder) throws IOException {
+                    placedOrders.incrementAndGet();
+                    return orderPlacement.place(marketOrder);
+                }
+            };
+        }
+
+        @Override
+        protected void initServices() {
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification exchangeSpecification = new ExchangeSpecification(this.getClass());
+            exchangeSpecification.setShouldLoadRemoteMetaData(false);
+            return exchangeSpecification;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.tbk.cln.snr.rpc;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+class RpcDispatcherTest {
+
+    private final CountDownLatch slowLatch = new CountDownLatch(1);
+
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+
+    private final ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+
+    private final PipedOutputStream stdin = new PipedOutputStream();
+
+    private RpcDispatcher sut;
+
+    private CompletableFuture<Void> reading;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Map<String, RpcDispatcher.Handler> handlers = Map.of(
+                "slow", (request, response) -> Mono.fromCallable(() -> {
+                    slowLatch.await();
+                    response.add("result", "slow");
+                    return response;
+                }).then(),
+                "fast", (request, response) -> Mono.fromRunnable(() -> response.add("result", request.getWrapper().get("params").getAsString())),
+                "hanging", (request, response) -> Mono.never()
+        );
+        sut = new RpcDispatcher(handlers, 4, 2, Map.of("slow", 1), Duration.ofSeconds(2),
+                new JsonRpcWriter(new PrintStream(stdout, true, StandardCharsets.UTF_8)));
+
+        PipedInputStream input = new PipedInputStream(stdin);
+        reading = CompletableFuture.runAsync(() -> sut.run(input, forwarded));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        slowLatch.countDown();
+        stdin.close();
+        reading.join();
+        sut.close();
+    }
+
+    @Test
+    void testAnswerRequestsAsSoonAsTheyComplete() throws IOException {
+        send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slow\",\"params\":[]}");
+        send("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"fast\",\"params\":\"fast\"}");
+
+        await().until(() -> response("2").isPresent());
+        assertThat(response("1").isPresent(), is(false));
+        assertThat(response("2").orElseThrow().getAsJsonObject("result").get("result").getAsString(), is("fast"));
+
+        slowLatch.countDown();
+
+        await().until(() -> response("1").isPresent());
+        assertThat(response("1").orElseThrow().getAsJsonObject("result").get("result").getAsString(), is("slow"));
+    }
+
+    @Test
+    void testRejectRequestsExceedingConcurrencyLimit() throws IOException {
+        send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slow\",\"params\":[]}");
+        send("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"slow\",\"params\":[]}");
+
+        await().until(() -> response("2").isPresent());
+        assertThat(response("2").orElseThrow().getAsJsonObject("result").get("error").getAsString(),
+                containsString("Too many concurrent 'slow' requests"));
+        assertThat(response("1").isPresent(), is(false));
+    }
+
+    @Test
+    void testAnswerTimedOutRequestsWithError() throws IOException {
+        send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"hanging\",\"params\":[]}");
+
+        await().until(() -> response("1").isPresent());
+        assertThat(response("1").orElseThrow().getAsJsonObject("result").get("error").getAsString(), is("Timed out after PT2S"));
+    }
+
+    @Test
+    void testHoldPermitsOfTimedOutRequestsTillCompleted() throws IOException {
+        send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slow\",\"params\":[]}");
+        await().until(() -> response("1").isPresent());
+        assertThat(response("1").orElseThrow().getAsJsonObject("result").get("error").getAsString(), is("Timed out after PT2S"));
+
+        // the timed out request is still running
+        send("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"slow\",\"params\":[]}");
+        await().until(() -> response("2").isPresent());
+        assertThat(response("2").orElseThrow().getAsJsonObject("result").get("error").getAsString(),
+                containsString("Too many concurrent 'slow' requests"));
+
+        slowLatch.countDown();
+
+        // the permit is released once the first request has completed
+        AtomicInteger ids = new AtomicInteger(2);
+        await().until(() -> {
+            String id = String.valueOf(ids.incrementAndGet());
+            send("{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"slow\",\"params\":[]}");
+            await().until(() -> response(id).isPresent());
+            return response(id).orElseThrow().getAsJsonObject("result").has("result");
+        });
+    }
+
+    @Test
+    void testForwardOtherMessages() throws IOException {
+        send("{\"jsonrpc\":\"2.0\",\"id\":\"getmanifest\",\"method\":\"getmanifest\",\"params\":[]}");
+        send("{\"jsonrpc\":\"2.0\",\"method\":\"sendpay_success\",\"params\":{}}");
+        send("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"fast\",\"params\":\"fast\"}");
+
+        await().until(() -> response("3").isPresent());
+
+        List<JsonElement> forwardedMessages = parse(forwarded.toString(StandardCharsets.UTF_8));
+        assertThat(forwardedMessages.size(), is(2));
+        assertThat(forwardedMessages.get(0).getAsJsonObject().get("method").getAsString(), is("getmanifest"));
+        assertThat(forwardedMessages.get(1).getAsJsonObject().get("method").getAsString(), is("sendpay_success"));
+    }
+
+    private void send(String message) throws IOException {
+        stdin.write((message + "\n\n").getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+    }
+
+    private Optional<JsonObject> response(String id) throws IOException {
+        return parse(stdout.toString(StandardCharsets.UTF_8)).stream()
+                .map(JsonElement::getAsJsonObject)
+                .filter(it -> id.equals(it.get("id").getAsString()))
+                .findFirst();
+    }
+
+    private static List<JsonElement> parse(String messages) throws IOException {
+        if (messages.isBlank()) {
+            return List.of();
+        }
+        JsonReader reader = new JsonReader(new StringReader(messages));
+        reader.setLenient(true);
+
+        List<JsonElement> result = new ArrayList<>();
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            result.add(JsonParser.parseReader(reader));
+        }
+        return result;
+    }
+}
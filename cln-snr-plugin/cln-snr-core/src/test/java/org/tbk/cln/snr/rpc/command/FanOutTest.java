@@ -0,0 +1,57 @@
+package org.tbk.cln.snr.rpc.command;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class FanOutTest {
+
+    @Test
+    void testCallConcurrently() {
+        Map<String, Mono<String>> calls = new LinkedHashMap<>();
+        calls.put("first", FanOut.blocking(() -> sleepAndReturn(200L, "1")));
+        calls.put("second", FanOut.blocking(() -> sleepAndReturn(200L, "2")));
+        calls.put("third", FanOut.blocking(() -> sleepAndReturn(200L, "3")));
+
+        long start = System.nanoTime();
+        Map<String, FanOut.Result<String>> results = FanOut.callAsync(calls, Duration.ofSeconds(5)).block();
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertThat(List.copyOf(results.keySet()), is(List.of("first", "second", "third")));
+        assertThat(results.get("first").getValue(), is("1"));
+        assertThat(results.get("third").getValue(), is("3"));
+        assertThat(elapsedMillis, lessThan(600L));
+    }
+
+    @Test
+    void testPartialResults() {
+        Map<String, Mono<String>> calls = new LinkedHashMap<>();
+        calls.put("fast", Mono.just("ok"));
+        calls.put("slow", FanOut.blocking(() -> sleepAndReturn(5_000L, "too late")));
+        calls.put("failing", FanOut.blocking(() -> {
+            throw new IOException("Connection refused");
+        }));
+
+        Map<String, FanOut.Result<String>> results = FanOut.callAsync(calls, Duration.ofMillis(200)).block();
+
+        assertThat(results.get("fast").isSuccess(), is(true));
+        assertThat(results.get("fast").getValue(), is("ok"));
+        assertThat(results.get("slow").isSuccess(), is(false));
+        assertThat(results.get("slow").getError(), is("Timed out after PT0.2S"));
+        assertThat(results.get("failing").getError(), is("Connection refused"));
+    }
+
+    private static String sleepAndReturn(long millis, String value) throws InterruptedException {
+        Thread.sleep(millis);
+        return value;
+    }
+}
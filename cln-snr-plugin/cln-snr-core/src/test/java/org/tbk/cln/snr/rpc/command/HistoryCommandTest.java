@@ -0,0 +1,147 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonObject;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import org.junit.jupiter.api.Test;
+import org.knowm.xchange.BaseExchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.Trades;
+import org.knowm.xchange.dto.trade.OpenOrders;
+import org.knowm.xchange.dto.trade.UserTrade;
+import org.knowm.xchange.dto.trade.UserTrades;
+import org.knowm.xchange.service.trade.TradeService;
+import org.knowm.xchange.service.trade.params.TradeHistoryParamOffset;
+import org.knowm.xchange.service.trade.params.TradeHistoryParams;
+import org.knowm.xchange.service.trade.params.orders.DefaultOpenOrdersParam;
+import org.knowm.xchange.service.trade.params.orders.OpenOrdersParams;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+// CHECKSTYLE IGNORE RegexpSinglelineJava FOR NEXT 1 LINES - xchange requires legacy dates
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class HistoryCommandTest {
+
+    private static final int TRADES = 120;
+
+    @Test
+    void testFollowShortPagesOfTheExchange() throws Exception {
+        // e.g. kraken: at most 50 trades per call, less than the default limit
+        TestExchange exchange = new TestExchange(50);
+        HistoryCommand sut = new HistoryCommand(exchange, new DefaultOpenOrdersParam(), new OffsetParams());
+
+        Set<String> tradeIds = fetchAllPages(sut);
+
+        assertThat(tradeIds.size(), is(TRADES));
+        // three non-empty pages and the empty page marking the end
+        assertThat(exchange.calls, is(4));
+    }
+
+    @Test
+    void testPageExchangesIgnoringPagingParams() throws Exception {
+        TestExchange exchange = new TestExchange(Integer.MAX_VALUE);
+        HistoryCommand sut = new HistoryCommand(exchange, new DefaultOpenOrdersParam(), new TradeHistoryParams() {
+        });
+
+        Set<String> tradeIds = fetchAllPages(sut);
+
+        assertThat(tradeIds.size(), is(TRADES));
+        assertThat(exchange.calls, is(2));
+    }
+
+    private static Set<String> fetchAllPages(HistoryCommand sut) throws Exception {
+        Set<String> tradeIds = new LinkedHashSet<>();
+        JsonObject params = new JsonObject();
+        for (int i = 0; i < 10; i++) {
+            CLightningJsonObject request = new CLightningJsonObject();
+            request.add("params", params);
+            CLightningJsonObject response = new CLightningJsonObject();
+
+            sut.execute(null, request, response);
+
+            JsonObject result = response.getAsJsonObject("result");
+            tradeIds.addAll(result.getAsJsonObject("closed").keySet());
+            if (!result.has("next-cursor")) {
+                return tradeIds;
+            }
+            params = new JsonObject();
+            params.addProperty("cursor", result.get("next-cursor").getAsString());
+        }
+        throw new IllegalStateException("Too many pages");
+    }
+
+    private static final class OffsetParams implements TradeHistoryParamOffset {
+        private Long offset;
+
+        @Override
+        public Long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public void setOffset(Long offset) {
+            this.offset = offset;
+        }
+    }
+
+    private static final class TestExchange extends BaseExchange {
+
+        private int calls;
+
+        TestExchange(int maxTradesPerCall) {
+            List<UserTrade> trades = new ArrayList<>();
+            for (int i = 0; i < TRADES; i++) {
+                trades.add(new UserTrade.Builder()
+                        .id("trade-" + i)
+                        .orderId("order-" + i)
+                        .type(Order.OrderType.BID)
+                        .instrument(CurrencyPair.BTC_USD)
+                        .originalAmount(new BigDecimal("0.0001"))
+                        .price(new BigDecimal("30000"))
+                        .feeAmount(BigDecimal.ZERO)
+                        .feeCurrency(Currency.USD)
+                        .timestamp(new Date(1_621_000_000_000L + i * 1_000L))
+                        .build());
+            }
+
+            this.exchangeSpecification = getDefaultExchangeSpecification();
+            this.tradeService = new TradeService() {
+                @Override
+                public OpenOrders getOpenOrders(OpenOrdersParams params) {
+                    return new OpenOrders(List.of());
+                }
+
+                @Override
+                public UserTrades getTradeHistory(TradeHistoryParams params) {
+                    calls++;
+                    int offset = params instanceof TradeHistoryParamOffset offsetParams
+                            ? Math.toIntExact(offsetParams.getOffset())
+                            : 0;
+                    int from = Math.min(offset, trades.size());
+                    int to = (int) Math.min((long) from + maxTradesPerCall, trades.size());
+                    return new UserTrades(trades.subList(from, to), Trades.TradeSortType.SortByTimestamp);
+                }
+            };
+        }
+
+        @Override
+        protected void initServices() {
+        }
+
+        @Override
+        public ExchangeSpecification getDefaultExchangeSpecification() {
+            ExchangeSpecification exchangeSpecification = new ExchangeSpecification(this.getClass());
+            exchangeSpecification.setExchangeName("Test");
+            return exchangeSpecification;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoryQueryTest {
+
+    @Test
+    void testDefaults() {
+        HistoryQuery query = HistoryQuery.of(null);
+
+        assertThat(query.getSince(), is(nullValue()));
+        assertThat(query.getUntil(), is(nullValue()));
+        assertThat(query.getLimit(), is(HistoryQuery.DEFAULT_LIMIT));
+        assertThat(query.isFirstPage(), is(true));
+        assertThat(HistoryQuery.of(new JsonArray()), is(query));
+    }
+
+    @Test
+    void testNamedAndPositionalParams() {
+        JsonObject namedParams = new JsonObject();
+        namedParams.addProperty("since", 1621000000L);
+        namedParams.addProperty("until", "2021-05-26T03:33:20Z");
+        namedParams.addProperty("limit", 10);
+
+        JsonArray positionalParams = new JsonArray();
+        positionalParams.add("1621000000");
+        positionalParams.add(1622000000L);
+        positionalParams.add(10);
+
+        HistoryQuery query = HistoryQuery.of(namedParams);
+        assertThat(query.getSince(), is(Instant.ofEpochSecond(1621000000L)));
+        assertThat(query.getUntil(), is(Instant.ofEpochSecond(1622000000L)));
+        assertThat(query.getLimit(), is(10));
+        assertThat(query.contains(Instant.ofEpochSecond(1621000000L)), is(true));
+        assertThat(query.contains(Instant.ofEpochSecond(1622000000L)), is(false));
+
+        assertThat(HistoryQuery.of(positionalParams), is(query));
+    }
+
+    @Test
+    void testCursor() {
+        JsonObject params = new JsonObject();
+        params.addProperty("since", 1621000000L);
+        params.addProperty("limit", 10);
+
+        HistoryQuery firstPage = HistoryQuery.of(params);
+
+        JsonObject cursorParams = new JsonObject();
+        cursorParams.addProperty("cursor", firstPage.nextCursor(7L));
+        HistoryQuery secondPage = HistoryQuery.of(cursorParams);
+
+        assertThat(secondPage.getSince(), is(firstPage.getSince()));
+        assertThat(secondPage.getUntil(), is(nullValue()));
+        assertThat(secondPage.getLimit(), is(10));
+        assertThat(secondPage.getOffset(), is(7L));
+        assertThat(secondPage.isFirstPage(), is(false));
+    }
+
+    @Test
+    void testInvalidParams() {
+        JsonObject invalidLimit = new JsonObject();
+        invalidLimit.addProperty("limit", HistoryQuery.MAX_LIMIT + 1);
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.of(invalidLimit));
+
+        JsonObject invalidSince = new JsonObject();
+        invalidSince.addProperty("since", "yesterday");
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.of(invalidSince));
+
+        JsonObject invalidCursor = new JsonObject();
+        invalidCursor.addProperty("cursor", "not-a-cursor");
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.of(invalidCursor));
+    }
+}
@@ -0,0 +1,83 @@
+package org.tbk.cln.snr.rpc.command;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import jrpc.service.converters.jsonwrapper.CLightningJsonObject;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReactiveRpcCommandTest {
+
+    @Test
+    void testComposeCommandsConcurrently() {
+        ReactiveRpcCommand ticker = (plugin, request) -> FanOut.blocking(() -> sleepAndReturn(300L, "ticker"));
+        ReactiveRpcCommand balance = (plugin, request) -> FanOut.blocking(() -> sleepAndReturn(300L, "balance"));
+
+        long start = System.nanoTime();
+        JsonArray results = Mono.zip(ticker.result(null, request()), balance.result(null, request()), (first, second) -> {
+            JsonArray array = new JsonArray();
+            array.add(first);
+            array.add(second);
+            return array;
+        }).block();
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertThat(results.get(0).getAsString(), is("ticker"));
+        assertThat(results.get(1).getAsString(), is("balance"));
+        assertThat(elapsedMillis, lessThan(550L));
+    }
+
+    @Test
+    void testCancelBlockingCallsOnTimeout() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ReactiveRpcCommand sut = (plugin, request) -> FanOut.blocking(() -> {
+            try {
+                return sleepAndReturn(10_000L, "too late");
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        });
+
+        Mono<JsonElement> result = sut.result(null, request()).timeout(Duration.ofMillis(100));
+
+        assertThrows(RuntimeException.class, result::block);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    void testExecuteAddsResultOrThrowsUnwrappedException() {
+        ReactiveRpcCommand succeeding = (plugin, request) -> Mono.just(new JsonPrimitive("ok"));
+        ReactiveRpcCommand failing = (plugin, request) -> FanOut.blocking(() -> {
+            throw new IOException("Connection refused");
+        });
+
+        CLightningJsonObject response = new CLightningJsonObject();
+        assertDoesNotThrow(() -> succeeding.execute(null, request(), response));
+        assertThat(response.get("result").getAsString(), is("ok"));
+
+        IOException e = assertThrows(IOException.class, () -> failing.execute(null, request(), new CLightningJsonObject()));
+        assertThat(e.getMessage(), is("Connection refused"));
+    }
+
+    private static CLightningJsonObject request() {
+        return new CLightningJsonObject();
+    }
+
+    private static JsonElement sleepAndReturn(long millis, String value) throws InterruptedException {
+        Thread.sleep(millis);
+        return new JsonPrimitive(value);
+    }
+}
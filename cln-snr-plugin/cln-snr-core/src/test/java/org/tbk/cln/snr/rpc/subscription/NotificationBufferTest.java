@@ -0,0 +1,48 @@
+package org.tbk.cln.snr.rpc.subscription;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+class NotificationBufferTest {
+
+    @Test
+    void testRunBufferedHandlersInOrderWhenOpened() {
+        List<Integer> handled = new ArrayList<>();
+        NotificationBuffer sut = new NotificationBuffer(10);
+
+        sut.submit(() -> handled.add(1));
+        sut.submit(() -> {
+            handled.add(2);
+            // submitted while the buffered handlers are running
+            sut.submit(() -> handled.add(4));
+        });
+        sut.submit(() -> handled.add(3));
+
+        assertThat(handled.isEmpty(), is(true));
+        assertThat(sut.size(), is(3));
+
+        sut.open();
+        assertThat(handled, contains(1, 2, 3, 4));
+        assertThat(sut.size(), is(0));
+
+        sut.submit(() -> handled.add(5));
+        assertThat(handled, contains(1, 2, 3, 4, 5));
+    }
+
+    @Test
+    void testRejectHandlersIfFull() {
+        NotificationBuffer sut = new NotificationBuffer(1);
+
+        assertThat(sut.submit(() -> {
+        }), is(true));
+        assertThat(sut.submit(() -> {
+        }), is(false));
+        assertThat(sut.size(), is(1));
+    }
+}
@@ -0,0 +1,92 @@
+package org.tbk.cln.snr.rpc.subscription;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SendpaySuccessDecoderTest {
+
+    private static final String PAYMENT_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    // e.g. CLN < v23.05
+    private static final String LEGACY_NOTIFICATION = """
+            {"jsonrpc": "2.0", "method": "sendpay_success", "params": {"sendpay_success": {
+              "id": 1, "payment_hash": "%s", "destination": "02eec7", "msatoshi": 1000,
+              "amount_msat": "1000msat", "msatoshi_sent": 1001, "amount_sent_msat": "1001msat",
+              "created_at": 1684756800, "status": "complete", "route": [{"id": "02eec7"}]
+            }}}
+            """.formatted(PAYMENT_HASH);
+
+    private static final String NOTIFICATION = """
+            {"jsonrpc": "2.0", "method": "sendpay_success", "params": {"sendpay_success": {
+              "created_index": 1, "id": 1, "payment_hash": "%s", "groupid": 2, "partid": 3,
+              "amount_msat": 1000, "amount_sent_msat": 1001, "created_at": 1684756800, "status": "complete"
+            }}}
+            """.formatted(PAYMENT_HASH);
+
+    @Test
+    void testDecodeLegacyFieldNames() {
+        String json = LEGACY_NOTIFICATION.replace(", \"amount_sent_msat\": \"1001msat\"", "");
+        SendpaySuccessPayload payload = SendpaySuccessDecoder.decode(json);
+
+        assertThat(HexFormat.of().formatHex(payload.getPaymentHash()), is(PAYMENT_HASH));
+        assertThat(payload.getAmountSentMsat(), is(1001L));
+        assertThat(payload.getAmountMsat(), is(1000L));
+        assertThat(payload.getPartId(), is(0L));
+        assertThat(payload.getGroupId(), is(0L));
+        assertThat(payload.isComplete(), is(true));
+    }
+
+    @Test
+    void testDecodeAmountWithMsatSuffix() {
+        String json = LEGACY_NOTIFICATION.replace("\"msatoshi_sent\": 1001, ", "");
+        assertThat(SendpaySuccessDecoder.decode(json).getAmountSentMsat(), is(1001L));
+    }
+
+    @Test
+    void testStreamingAndTreeDecodingAreEqual() {
+        for (String json : new String[]{LEGACY_NOTIFICATION, NOTIFICATION}) {
+            SendpaySuccessPayload streamed = SendpaySuccessDecoder.decode(json);
+            SendpaySuccessPayload tree = SendpaySuccessDecoder.decode(JsonParser.parseString(json).getAsJsonObject());
+            assertThat(streamed, is(tree));
+        }
+
+        SendpaySuccessPayload payload = SendpaySuccessDecoder.decode(NOTIFICATION);
+        assertThat(payload.getAmountSentMsat(), is(1001L));
+        assertThat(payload.getAmountMsat(), is(1000L));
+        assertThat(payload.getGroupId(), is(2L));
+        assertThat(payload.getPartId(), is(3L));
+        assertThat(payload.getStatus(), is("complete"));
+        assertThat(payload.toSpentPayment().getPaymentHash(), is(PAYMENT_HASH));
+        assertThat(payload.toSpentPayment().coversPaymentAmount(), is(true));
+    }
+
+    @Test
+    void testMissingFields() {
+        String withoutAmount = NOTIFICATION.replace("\"amount_sent_msat\": 1001, ", "");
+        IllegalStateException e1 = assertThrows(IllegalStateException.class, () -> SendpaySuccessDecoder.decode(withoutAmount));
+        assertThat(e1.getMessage(), is("Could not extract 'amount_sent_msat' or 'msatoshi_sent' from payload."));
+
+        String withoutHash = NOTIFICATION.replace("\"payment_hash\": \"" + PAYMENT_HASH + "\", ", "");
+        IllegalStateException e2 = assertThrows(IllegalStateException.class,
+                () -> SendpaySuccessDecoder.decode(JsonParser.parseString(withoutHash).getAsJsonObject()));
+        assertThat(e2.getMessage(), is("Could not extract 'payment_hash' from payload."));
+
+        IllegalStateException e3 = assertThrows(IllegalStateException.class, () -> SendpaySuccessDecoder.decode("{\"params\": {}}"));
+        assertThat(e3.getMessage(), is("Could not extract 'sendpay_success' from notification."));
+
+        SendpaySuccessPayload withoutStatus = SendpaySuccessDecoder.decode(NOTIFICATION.replace(", \"status\": \"complete\"", ""));
+        assertThat(withoutStatus.getStatus(), is(nullValue()));
+        assertThat(withoutStatus.isComplete(), is(true));
+
+        SendpaySuccessPayload withoutPaymentAmount = SendpaySuccessDecoder.decode(NOTIFICATION.replace("\"amount_msat\": 1000, ", ""));
+        assertThat(withoutPaymentAmount.getAmountMsat(), is(0L));
+        assertThat(withoutPaymentAmount.toSpentPayment().getPaymentAmount(), is(nullValue()));
+    }
+}
@@ -0,0 +1,320 @@
+package org.tbk.cln.snr.demo.exchange;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local stand-in for an exchange websocket - should only be used while testing.
+ * <p>
+ * Speaks the ticker channel of the Kraken websocket api v2: on subscription, a snapshot of the
+ * {@link DummyExchange} ticker is sent for every requested symbol. Afterwards, tickers can be published via
+ * {@link #publish(Ticker)}. A heartbeat is sent every second. Only the parts of RFC 6455 needed for a single local
+ * client are implemented (no extensions, no fragmented client frames).
+ */
+@Slf4j
+public final class DummyMarketDataWebSocketServer implements AutoCloseable {
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final DummyExchange.DummyMarketDataService marketDataService = new DummyExchange.DummyMarketDataService();
+
+    private final ServerSocket serverSocket;
+
+    private final Set<Connection> connections = new CopyOnWriteArraySet<>();
+
+    private final ExecutorService connectionExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "dummy-websocket");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dummy-websocket-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DummyMarketDataWebSocketServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.connectionExecutor.execute(this::acceptConnections);
+        this.heartbeatExecutor.scheduleAtFixedRate(this::sendHeartbeats, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public URI getUri() {
+        return URI.create("ws://localhost:" + serverSocket.getLocalPort() + "/v2");
+    }
+
+    /**
+     * Sends the ticker to every connection subscribed to its currency pair.
+     */
+    public void publish(Ticker ticker) {
+        String message = tickerMessage("update", List.of(ticker));
+        connections.stream()
+                .filter(it -> it.symbols.contains(ticker.getInstrument().toString()))
+                .forEach(it -> it.send(message));
+    }
+
+    /**
+     * Drops all connections without a close handshake - like a network failure would.
+     */
+    public void dropConnections() {
+        connections.forEach(Connection::close);
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        heartbeatExecutor.shutdownNow();
+        serverSocket.close();
+        dropConnections();
+        connectionExecutor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Could not accept connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        Connection connection = new Connection(socket);
+        try (socket) {
+            handshake(socket);
+            connections.add(connection);
+            connection.readFrames();
+        } catch (EOFException | SocketException e) {
+            log.debug("Connection closed: {}", e.getMessage());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.warn("Connection failed: {}", e.getMessage());
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private static void handshake(Socket socket) throws IOException, NoSuchAlgorithmException {
+        InputStream input = socket.getInputStream();
+
+        String key = null;
+        for (String line = readLine(input); !line.isEmpty(); line = readLine(input)) {
+            int separator = line.indexOf(':');
+            if (separator > 0 && "sec-websocket-key".equalsIgnoreCase(line.substring(0, separator).strip())) {
+                key = line.substring(separator + 1).strip();
+            }
+        }
+        if (key == null) {
+            throw new IOException("Missing websocket key");
+        }
+
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + Base64.getEncoder().encodeToString(digest) + "\r\n\r\n";
+        socket.getOutputStream().write(response.getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = input.read(); c != '\n'; c = input.read()) {
+            if (c < 0) {
+                throw new EOFException("Connection closed during handshake");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private void sendHeartbeats() {
+        connections.forEach(it -> it.send("{\"channel\":\"heartbeat\"}"));
+    }
+
+    private void onMessage(Connection connection, String message) throws IOException {
+        JsonNode json = objectMapper.readTree(message);
+        if (!"subscribe".equals(json.path("method").asText())) {
+            return;
+        }
+
+        JsonNode params = json.path("params");
+        ObjectNode ack = objectMapper.createObjectNode()
+                .put("method", "subscribe")
+                .put("success", "ticker".equals(params.path("channel").asText()));
+        if (!ack.get("success").asBoolean()) {
+            ack.put("error", "Channel not supported");
+            connection.send(ack.toString());
+            return;
+        }
+        connection.send(ack.toString());
+
+        List<Ticker> snapshot = new ArrayList<>();
+        for (JsonNode symbol : params.path("symbol")) {
+            connection.symbols.add(symbol.asText());
+            snapshot.add(marketDataService.getTicker(new CurrencyPair(symbol.asText())));
+        }
+        connection.send(tickerMessage("snapshot", snapshot));
+    }
+
+    private String tickerMessage(String type, List<Ticker> tickers) {
+        ArrayNode data = objectMapper.createArrayNode();
+        for (Ticker ticker : tickers) {
+            ObjectNode tickerJson = data.addObject()
+                    .put("symbol", ticker.getInstrument().toString())
+                    .put("bid", ticker.getBid())
+                    .put("bid_qty", ticker.getBidSize())
+                    .put("ask", ticker.getAsk())
+                    .put("ask_qty", ticker.getAskSize())
+                    .put("last", ticker.getLast())
+                    .put("volume", ticker.getVolume())
+                    .put("vwap", ticker.getVwap())
+                    .put("low", ticker.getLow())
+                    .put("high", ticker.getHigh());
+            if (ticker.getLast() != null && ticker.getOpen() != null) {
+                BigDecimal change = ticker.getLast().subtract(ticker.getOpen());
+                tickerJson.put("change", change);
+            }
+        }
+
+        return objectMapper.createObjectNode()
+                .put("channel", "ticker")
+                .put("type", type)
+                .set("data", data)
+                .toString();
+    }
+
+    private final class Connection {
+        private final Socket socket;
+
+        private final Set<String> symbols = ConcurrentHashMap.newKeySet();
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        void readFrames() throws IOException {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            while (true) {
+                int first = input.readUnsignedByte();
+                int second = input.readUnsignedByte();
+                int opcode = first & 0x0F;
+
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = input.readUnsignedShort();
+                } else if (length == 127) {
+                    length = input.readLong();
+                }
+
+                byte[] mask = new byte[4];
+                boolean isMasked = (second & 0x80) != 0;
+                if (isMasked) {
+                    input.readFully(mask);
+                }
+
+                byte[] payload = new byte[Math.toIntExact(length)];
+                input.readFully(payload);
+                if (isMasked) {
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] = (byte) (payload[i] ^ mask[i % 4]);
+                    }
+                }
+
+                switch (opcode) {
+                    case OPCODE_TEXT -> onMessage(this, new String(payload, StandardCharsets.UTF_8));
+                    case OPCODE_PING -> write(OPCODE_PONG, payload);
+                    case OPCODE_CLOSE -> {
+                        write(OPCODE_CLOSE, payload);
+                        return;
+                    }
+                    default -> {
+                        // ignore pongs and unsupported frames
+                    }
+                }
+            }
+        }
+
+        void send(String message) {
+            try {
+                write(OPCODE_TEXT, message.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.debug("Could not send message: {}", e.getMessage());
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Could not close connection: {}", e.getMessage());
+            }
+        }
+
+        private synchronized void write(int opcode, byte[] payload) throws IOException {
+            OutputStream stream = socket.getOutputStream();
+            stream.write(0x80 | opcode);
+            if (payload.length < 126) {
+                stream.write(payload.length);
+            } else if (payload.length <= 0xFFFF) {
+                stream.write(126);
+                stream.write(payload.length >>> 8);
+                stream.write(payload.length & 0xFF);
+            } else {
+                stream.write(127);
+                for (int i = 7; i >= 0; i--) {
+                    stream.write(i >= 4 ? 0 : (payload.length >>> (8 * i)) & 0xFF);
+                }
+            }
+            stream.write(payload);
+            stream.flush();
+        }
+    }
+}